@@ -0,0 +1,570 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import elki.Algorithm;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.model.MeanModel;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.WeightedLPNormDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.math.statistics.kernelfunctions.EpanechnikovKernelDensityFunction;
+import elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import elki.parallel.ParallelExecutor;
+import elki.result.Metadata;
+import elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+/**
+ * Mean-shift clustering with parallel mode seeking.
+ * <p>
+ * In contrast to {@link NaiveMeanShiftClustering}, which shifts one object at
+ * a time and compares it to the modes found so far, this variant shifts all
+ * seeds independently (and hence in parallel), and only afterwards merges the
+ * modes that converged to the same location using a union-find structure.
+ * The kernel neighborhoods are obtained with range queries, so the algorithm
+ * benefits from index structures.
+ * <p>
+ * Optionally, the seeds are not all objects, but the means of the occupied
+ * cells of a grid with the kernel bandwidth as width (bin seeding). Each
+ * object is then assigned to the closest mode; objects are never considered
+ * noise in this case. Without bin seeding, an object that does not have any
+ * other object within the kernel bandwidth is noise, and every other object
+ * belongs to the cluster of the mode its own shift converged to.
+ * <p>
+ * Reference:
+ * <p>
+ * Y. Cheng<br>
+ * Mean shift, mode seeking, and clustering<br>
+ * IEEE Transactions on Pattern Analysis and Machine Intelligence 17-8
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "Y. Cheng", //
+    title = "Mean shift, mode seeking, and clustering", //
+    booktitle = "IEEE Transactions on Pattern Analysis and Machine Intelligence 17-8", //
+    url = "https://doi.org/10.1109/34.400568", //
+    bibkey = "DBLP:journals/pami/Cheng95")
+public class MeanShiftClustering<V extends NumberVector> implements ClusteringAlgorithm<Clustering<MeanModel>> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MeanShiftClustering.class);
+
+  /**
+   * Distance function used.
+   */
+  protected NumberVectorDistance<? super V> distance;
+
+  /**
+   * Density estimation kernel.
+   */
+  protected KernelDensityFunction kernel;
+
+  /**
+   * Range of the kernel.
+   */
+  protected double bandwidth;
+
+  /**
+   * Use bin seeding.
+   */
+  protected boolean binning;
+
+  /**
+   * Minimum number of objects in a bin to be used as seed.
+   */
+  protected int minbinfreq;
+
+  /**
+   * Modes closer than this fraction of the bandwidth are merged.
+   */
+  protected double merge;
+
+  /**
+   * Maximum number of iterations.
+   */
+  protected static final int MAXITER = 1000;
+
+  /**
+   * Minimum number of seeds per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param kernel Kernel function
+   * @param range Kernel radius
+   * @param binning Use bin seeding
+   * @param minbinfreq Minimum number of objects per seed bin
+   * @param merge Mode merging radius, relative to the bandwidth
+   */
+  public MeanShiftClustering(NumberVectorDistance<? super V> distance, KernelDensityFunction kernel, double range, boolean binning, int minbinfreq, double merge) {
+    super();
+    this.distance = distance;
+    this.kernel = kernel;
+    this.bandwidth = range;
+    this.binning = binning;
+    this.minbinfreq = minbinfreq;
+    this.merge = merge;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Run the mean-shift clustering algorithm.
+   *
+   * @param relation Data relation
+   * @return Clustering result
+   */
+  public Clustering<MeanModel> run(Relation<V> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final QueryBuilder<V> qb = new QueryBuilder<>(relation, distance);
+    final NumberVector.Factory<V> factory = RelationUtil.getNumberVectorFactory(relation);
+    final double[][] seeds = binning ? binSeeds(relation, ids) : pointSeeds(relation, ids);
+
+    // Shift all seeds independently:
+    final double[][] modes = new double[seeds.length][];
+    final int[] support = new int[seeds.length];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Mean-shift clustering", seeds.length, LOG) : null;
+    List<Integer> unconverged = ParallelExecutor.run(seeds.length, MIN_BLOCKSIZE, (start, end) -> {
+      RangeSearcher<V> rangeq = qb.rangeByObject(bandwidth);
+      int c = 0;
+      for(int i = start; i < end; i++) {
+        c += shift(relation, rangeq, factory, seeds[i], modes, support, i) ? 0 : 1;
+        LOG.incrementProcessed(prog);
+      }
+      return c;
+    });
+    LOG.ensureCompleted(prog);
+    int nonconv = 0;
+    for(Integer c : unconverged) {
+      nonconv += c;
+    }
+    if(nonconv > 0) {
+      LOG.warning("No convergence after " + MAXITER + " iterations for " + nonconv + " seeds.");
+    }
+
+    // Merge modes, and choose the strongest mode of each component as center:
+    final int[] comp = new int[seeds.length];
+    final double[][] centers = mergeModes(modes, support, comp);
+    LOG.statistics(new LongStatistic(MeanShiftClustering.class.getName() + ".modes", centers.length));
+
+    // Assign objects to clusters:
+    final int[] assign = binning ? assignNearest(relation, ids, centers) : comp;
+    List<ModifiableDBIDs> members = new ArrayList<>(centers.length);
+    for(int i = 0; i < centers.length; i++) {
+      members.add(DBIDUtil.newArray());
+    }
+    ModifiableDBIDs noise = DBIDUtil.newArray();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int c = assign[it.getOffset()];
+      (c >= 0 ? members.get(c) : noise).add(it);
+    }
+    ArrayList<Cluster<MeanModel>> cs = new ArrayList<>(centers.length + 1);
+    for(int i = 0; i < centers.length; i++) {
+      if(!members.get(i).isEmpty()) {
+        cs.add(new Cluster<>(members.get(i), new MeanModel(centers[i])));
+      }
+    }
+    if(!noise.isEmpty()) {
+      cs.add(new Cluster<MeanModel>(noise, true));
+    }
+    Clustering<MeanModel> c = new Clustering<>(cs);
+    Metadata.of(c).setLongName("Mean-shift Clustering");
+    return c;
+  }
+
+  /**
+   * Use every object as seed.
+   *
+   * @param relation Data relation
+   * @param ids Object ids
+   * @return Seeds
+   */
+  private static double[][] pointSeeds(Relation<? extends NumberVector> relation, ArrayDBIDs ids) {
+    double[][] seeds = new double[ids.size()][];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      seeds[it.getOffset()] = relation.get(it).toArray();
+    }
+    return seeds;
+  }
+
+  /**
+   * Bin the data on a grid with the kernel bandwidth as width, and use the
+   * means of sufficiently populated bins as seeds.
+   *
+   * @param relation Data relation
+   * @param ids Object ids
+   * @return Seeds
+   */
+  private double[][] binSeeds(Relation<? extends NumberVector> relation, ArrayDBIDs ids) {
+    final int dim = RelationUtil.dimensionality(relation);
+    // Last element of each sum is the number of objects in the bin.
+    Map<GridCell, double[]> bins = new LinkedHashMap<>();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final NumberVector vec = relation.get(it);
+      final long[] cell = new long[dim];
+      for(int d = 0; d < dim; d++) {
+        cell[d] = (long) Math.floor(vec.doubleValue(d) / bandwidth);
+      }
+      double[] sum = bins.computeIfAbsent(new GridCell(cell), x -> new double[dim + 1]);
+      for(int d = 0; d < dim; d++) {
+        sum[d] += vec.doubleValue(d);
+      }
+      sum[dim] += 1;
+    }
+    List<double[]> seeds = new ArrayList<>(bins.size());
+    for(double[] sum : bins.values()) {
+      final double cnt = sum[dim];
+      if(cnt >= minbinfreq) {
+        double[] seed = Arrays.copyOf(sum, dim);
+        for(int d = 0; d < dim; d++) {
+          seed[d] /= cnt;
+        }
+        seeds.add(seed);
+      }
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Number of bins: " + bins.size() + " seeds: " + seeds.size());
+    }
+    return seeds.toArray(new double[seeds.size()][]);
+  }
+
+  /**
+   * Shift a single seed until convergence.
+   *
+   * @param relation Data relation
+   * @param rangeq Range searcher (not shared across threads)
+   * @param factory Vector factory
+   * @param seed Seed position
+   * @param modes Output array of modes
+   * @param support Output array of mode support
+   * @param i Seed index
+   * @return {@code false} if the iteration limit was reached
+   */
+  private boolean shift(Relation<V> relation, RangeSearcher<V> rangeq, NumberVector.Factory<V> factory, double[] seed, double[][] modes, int[] support, int i) {
+    final int dim = seed.length;
+    final double threshold = bandwidth * 1E-10;
+    double[] position = seed;
+    for(int j = 1;; j++) {
+      DoubleDBIDList neigh = rangeq.getRange(factory.newNumberVector(position), bandwidth);
+      // Objects without any neighbor are noise, a seed bin always is non-empty
+      if(neigh.size() < (binning || j > 1 ? 1 : 2)) {
+        return true;
+      }
+      double[] newpos = new double[dim];
+      double wsum = 0.;
+      for(DoubleDBIDListIter niter = neigh.iter(); niter.valid(); niter.advance()) {
+        final double weight = kernel.density(niter.doubleValue() / bandwidth);
+        if(weight > 0) {
+          final NumberVector vec = relation.get(niter);
+          for(int d = 0; d < dim; d++) {
+            newpos[d] += weight * vec.doubleValue(d);
+          }
+          wsum += weight;
+        }
+      }
+      if(!(wsum > 0)) { // Only neighbors at the kernel border, do not move.
+        newpos = position;
+      }
+      else {
+        for(int d = 0; d < dim; d++) {
+          newpos[d] /= wsum;
+        }
+      }
+      final double delta = distance.distance(DoubleVector.wrap(position), DoubleVector.wrap(newpos));
+      if(Double.isNaN(delta)) {
+        LOG.warning("Encountered NaN distance. Invalid center vector? " + Arrays.toString(newpos));
+        return true;
+      }
+      if(j == MAXITER || !(delta >= threshold)) {
+        modes[i] = newpos;
+        support[i] = neigh.size();
+        return j < MAXITER;
+      }
+      position = newpos;
+    }
+  }
+
+  /**
+   * Merge all modes within the merging radius (transitively) using a
+   * union-find data structure. The mode with the largest support becomes the
+   * center of each component.
+   *
+   * @param modes Modes, {@code null} for noise
+   * @param support Mode support
+   * @param comp Output: component number of each seed, -1 for noise
+   * @return Component centers
+   */
+  private double[][] mergeModes(double[][] modes, int[] support, int[] comp) {
+    final double radius = merge * bandwidth;
+    // Order valid modes by the first coordinate
+    int[] order = new int[modes.length];
+    int m = 0;
+    for(int i = 0; i < modes.length; i++) {
+      if(modes[i] != null) {
+        order[m++] = i;
+      }
+    }
+    order = Arrays.copyOf(order, m);
+    IntArrays.quickSort(order, (a, b) -> Double.compare(modes[a][0], modes[b][0]));
+    // For unweighted Minkowski norms, a single coordinate is a lower bound of
+    // the distance, which allows a sweep; otherwise compare all pairs.
+    final boolean sweep = distance instanceof LPNormDistance && !(distance instanceof WeightedLPNormDistance);
+    WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+    for(int i = 0; i < m; i++) {
+      uf.nextIndex(1);
+    }
+    for(int i = 0; i < m; i++) {
+      final double[] mi = modes[order[i]];
+      final DoubleVector vi = DoubleVector.wrap(mi);
+      for(int j = i + 1; j < m; j++) {
+        final double[] mj = modes[order[j]];
+        if(sweep && mj[0] - mi[0] > radius) {
+          break;
+        }
+        if(!uf.isConnected(i, j) && distance.distance(vi, DoubleVector.wrap(mj)) <= radius) {
+          uf.union(i, j);
+        }
+      }
+    }
+    // Number components in seed order, choose the best supported center.
+    int[] rootcomp = new int[m], best = new int[m];
+    Arrays.fill(rootcomp, -1);
+    Arrays.fill(comp, -1);
+    int[] pos = new int[modes.length];
+    for(int i = 0; i < m; i++) {
+      pos[order[i]] = i;
+    }
+    int k = 0;
+    for(int s = 0; s < modes.length; s++) {
+      if(modes[s] == null) {
+        continue;
+      }
+      final int root = uf.find(pos[s]);
+      int c = rootcomp[root];
+      if(c < 0) {
+        c = rootcomp[root] = k++;
+        best[c] = s;
+      }
+      else if(support[s] > support[best[c]]) {
+        best[c] = s;
+      }
+      comp[s] = c;
+    }
+    double[][] centers = new double[k][];
+    for(int c = 0; c < k; c++) {
+      centers[c] = modes[best[c]];
+    }
+    return centers;
+  }
+
+  /**
+   * Assign each object to the nearest center.
+   *
+   * @param relation Data relation
+   * @param ids Object ids
+   * @param centers Cluster centers
+   * @return Assignment
+   */
+  private int[] assignNearest(Relation<V> relation, ArrayDBIDs ids, double[][] centers) {
+    final int[] assign = new int[ids.size()];
+    final DoubleVector[] cvecs = new DoubleVector[centers.length];
+    for(int i = 0; i < centers.length; i++) {
+      cvecs[i] = DoubleVector.wrap(centers[i]);
+    }
+    ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE << 4, (start, end) -> {
+      DBIDArrayIter it = ids.iter();
+      for(int i = start; i < end; i++) {
+        final V vec = relation.get(it.seek(i));
+        double bestd = Double.POSITIVE_INFINITY;
+        int best = -1;
+        for(int c = 0; c < cvecs.length; c++) {
+          final double d = distance.distance(vec, cvecs[c]);
+          if(d < bestd) {
+            bestd = d;
+            best = c;
+          }
+        }
+        assign[i] = best;
+      }
+      return null;
+    });
+    return assign;
+  }
+
+  /**
+   * Grid cell key for bin seeding.
+   *
+   * @author Erich Schubert
+   */
+  private static final class GridCell {
+    /**
+     * Cell coordinates.
+     */
+    final long[] coords;
+
+    /**
+     * Hash code.
+     */
+    final int hash;
+
+    /**
+     * Constructor.
+     *
+     * @param coords Cell coordinates
+     */
+    GridCell(long[] coords) {
+      this.coords = coords;
+      this.hash = Arrays.hashCode(coords);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return this == obj || (obj instanceof GridCell && Arrays.equals(coords, ((GridCell) obj).coords));
+    }
+  }
+
+  /**
+   * Parameterizer.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Flag to enable bin seeding.
+     */
+    public static final OptionID BINNING_ID = new OptionID("meanshift.bin-seeding", "Use the means of grid bins with the kernel bandwidth as width as seeds, instead of all objects.");
+
+    /**
+     * Minimum number of objects in a bin.
+     */
+    public static final OptionID MINBINFREQ_ID = new OptionID("meanshift.min-bin-freq", "Minimum number of objects in a bin to use it as seed.");
+
+    /**
+     * Mode merging radius.
+     */
+    public static final OptionID MERGE_ID = new OptionID("meanshift.merge", "Merge modes closer than this fraction of the kernel bandwidth.");
+
+    /**
+     * Kernel function.
+     */
+    KernelDensityFunction kernel = EpanechnikovKernelDensityFunction.KERNEL;
+
+    /**
+     * Kernel radius.
+     */
+    double range;
+
+    /**
+     * Use bin seeding.
+     */
+    boolean binning;
+
+    /**
+     * Minimum bin frequency.
+     */
+    int minbinfreq = 1;
+
+    /**
+     * Mode merging radius.
+     */
+    double merge;
+
+    /**
+     * The distance function to use.
+     */
+    protected NumberVectorDistance<? super V> distance;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<NumberVectorDistance<? super V>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, NumberVectorDistance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new ObjectParameter<KernelDensityFunction>(NaiveMeanShiftClustering.Par.KERNEL_ID, KernelDensityFunction.class, EpanechnikovKernelDensityFunction.class) //
+          .grab(config, x -> kernel = x);
+      new DoubleParameter(NaiveMeanShiftClustering.Par.RANGE_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> range = x);
+      new Flag(BINNING_ID).grab(config, x -> binning = x);
+      if(binning) {
+        new IntParameter(MINBINFREQ_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> minbinfreq = x);
+      }
+      new DoubleParameter(MERGE_ID, 0.5) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> merge = x);
+    }
+
+    @Override
+    public MeanShiftClustering<V> make() {
+      return new MeanShiftClustering<>(distance, kernel, range, binning, minbinfreq, merge);
+    }
+  }
+}
@@ -254,7 +254,7 @@ public class AffinityPropagation<O> implements ClusteringAlgorithm<Clustering<Me
    * @param assignment Cluster assignment
    * @return Index
    */
-  private Int2ObjectOpenHashMap<ModifiableDBIDs> makeClusterMap(ArrayDBIDs ids, int[] assignment) {
+  private static Int2ObjectOpenHashMap<ModifiableDBIDs> makeClusterMap(ArrayDBIDs ids, int[] assignment) {
     Int2ObjectOpenHashMap<ModifiableDBIDs> map = new Int2ObjectOpenHashMap<>();
     DBIDArrayIter i1 = ids.iter();
     for(int i = 0; i1.valid(); i1.advance(), i++) {
@@ -288,7 +288,7 @@ public class AffinityPropagation<O> implements ClusteringAlgorithm<Clustering<Me
    * @param assignment Assignment index
    * @return Clustering
    */
-  private Clustering<MedoidModel> buildResult(ArrayDBIDs ids, int[] assignment) {
+  protected static Clustering<MedoidModel> buildResult(ArrayDBIDs ids, int[] assignment) {
     Int2ObjectOpenHashMap<ModifiableDBIDs> map = makeClusterMap(ids, assignment);
 
     Clustering<MedoidModel> clustering = new Clustering<>();
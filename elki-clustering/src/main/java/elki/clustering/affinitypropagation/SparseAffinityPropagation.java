@@ -0,0 +1,530 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.affinitypropagation;
+
+import java.util.Arrays;
+
+import elki.clustering.ClusteringAlgorithm;
+import elki.data.Clustering;
+import elki.data.model.MedoidModel;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDList;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.IndefiniteProgress;
+import elki.logging.progress.MutableProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.datastructures.QuickSelect;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Affinity propagation on a sparse neighborhood graph.
+ * <p>
+ * Rather than using a dense similarity matrix, messages are only passed along
+ * the edges of a k-nearest-neighbor graph (or a radius graph), obtained via the
+ * query API, so an index can be used to accelerate the graph construction.
+ * Similarities, responsibilities, and availabilities are stored in compressed
+ * sparse row arrays, and the message updates are performed in parallel. This
+ * needs O(nk) memory rather than O(n²), and scales to much larger data sets.
+ * <p>
+ * The similarity is the negative distance, and the preference of each point
+ * is set to a quantile of the similarities in the graph.
+ * <p>
+ * Reference:
+ * <p>
+ * B. J. Frey, D. Dueck<br>
+ * Clustering by Passing Messages Between Data Points<br>
+ * Science Vol 315
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @param <O> object type
+ */
+@Title("Sparse Affinity Propagation")
+@Reference(title = "Clustering by Passing Messages Between Data Points", //
+    authors = "B. J. Frey, D. Dueck", //
+    booktitle = "Science Vol 315", //
+    url = "https://doi.org/10.1126/science.1136800", //
+    bibkey = "doi:10.1126/science.1136800")
+public class SparseAffinityPropagation<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(SparseAffinityPropagation.class);
+
+  /**
+   * Minimum number of rows per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 1024;
+
+  /**
+   * Distance function.
+   */
+  Distance<? super O> distance;
+
+  /**
+   * Number of neighbors, when using a kNN graph.
+   */
+  int knn;
+
+  /**
+   * Radius, when using a radius graph.
+   */
+  double radius;
+
+  /**
+   * Quantile to use for the preferences.
+   */
+  double quantile;
+
+  /**
+   * Damping factor lambda.
+   */
+  double lambda = 0.5;
+
+  /**
+   * Terminate after 10 iterations with no changes.
+   */
+  int convergence = 10;
+
+  /**
+   * Maximum number of iterations.
+   */
+  int maxiter = 1000;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param knn Number of neighbors (kNN graph)
+   * @param radius Radius (radius graph, if positive)
+   * @param quantile Quantile for the preferences
+   * @param lambda Damping factor
+   * @param convergence Termination threshold (Number of stable iterations)
+   * @param maxiter Maximum number of iterations
+   */
+  public SparseAffinityPropagation(Distance<? super O> distance, int knn, double radius, double quantile, double lambda, int convergence, int maxiter) {
+    super();
+    this.distance = distance;
+    this.knn = knn;
+    this.radius = radius;
+    this.quantile = quantile;
+    this.lambda = lambda;
+    this.convergence = convergence;
+    this.maxiter = maxiter;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Perform affinity propagation clustering.
+   *
+   * @param relation Relation
+   * @return Clustering result
+   */
+  public Clustering<MedoidModel> run(Relation<O> relation) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    Graph g = buildGraph(relation, ids);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".edges", g.col.length));
+    }
+    double[] r = new double[g.col.length], a = new double[g.col.length];
+    int[] assignment = new int[size];
+    Arrays.fill(assignment, -1);
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Affinity Propagation Iteration", LOG) : null;
+    MutableProgress aprog = LOG.isVerbose() ? new MutableProgress("Stable assignments", size + 1, LOG) : null;
+
+    int inactive = 0;
+    for(int iteration = 0; iteration < maxiter && inactive < convergence; iteration++) {
+      ParallelExecutor.run(size, MIN_BLOCKSIZE, (start, end) -> updateResponsibilities(g, a, r, start, end));
+      ParallelExecutor.run(size, MIN_BLOCKSIZE, (start, end) -> updateAvailabilities(g, r, a, start, end));
+      int changed = 0;
+      for(Integer c : ParallelExecutor.run(size, MIN_BLOCKSIZE, (start, end) -> updateAssignment(g, r, a, assignment, start, end))) {
+        changed += c;
+      }
+      inactive = changed > 0 ? 0 : (inactive + 1);
+      LOG.incrementProcessed(prog);
+      if(aprog != null) {
+        aprog.setProcessed(size - changed, LOG);
+      }
+    }
+    if(aprog != null) {
+      aprog.setProcessed(aprog.getTotal(), LOG);
+    }
+    LOG.setCompleted(prog);
+    return AffinityPropagation.buildResult(ids, assignment);
+  }
+
+  /**
+   * Build the sparse similarity graph. The first entry of each row is the
+   * diagonal (preference) entry.
+   *
+   * @param relation Relation
+   * @param ids Object ids
+   * @return Graph
+   */
+  protected Graph buildGraph(Relation<O> relation, ArrayDBIDs ids) {
+    final int size = ids.size();
+    // Map objects to their offsets:
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    // Neighborhood queries, in parallel:
+    final int[][] nbrs = new int[size][];
+    final double[][] sims = new double[size][];
+    ParallelExecutor.run(size, 1, (start, end) -> {
+      // Searchers are not thread safe, use one per block.
+      QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+      final KNNSearcher<DBIDRef> knnq = radius > 0 ? null : qb.kNNByDBID(knn + 1);
+      final RangeSearcher<DBIDRef> rangeq = radius > 0 ? qb.rangeByDBID(radius) : null;
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        DoubleDBIDList neighbors = knnq != null ? knnq.getKNN(it, knn + 1) : rangeq.getRange(it, radius);
+        int[] nbr = new int[neighbors.size() + 1];
+        double[] sim = new double[neighbors.size() + 1];
+        final int self = it.getOffset();
+        nbr[0] = self; // Diagonal first
+        int j = 1;
+        for(DoubleDBIDListIter n = neighbors.iter(); n.valid() && j < nbr.length; n.advance()) {
+          final int o = offsets.intValue(n);
+          if(o != self) {
+            nbr[j] = o;
+            sim[j++] = -n.doubleValue();
+          }
+        }
+        nbrs[self] = j < nbr.length ? Arrays.copyOf(nbr, j) : nbr;
+        sims[self] = j < sim.length ? Arrays.copyOf(sim, j) : sim;
+      }
+      return null;
+    });
+    offsets.destroy();
+    // Compressed sparse row representation:
+    Graph g = new Graph(size, nbrs, sims);
+    // The preference is a quantile of the (off-diagonal) similarities:
+    double[] flat = new double[g.col.length - size];
+    for(int i = 0, j = 0; i < size; i++) {
+      final int e = g.rowstart[i + 1] - g.rowstart[i] - 1;
+      System.arraycopy(g.s, g.rowstart[i] + 1, flat, j, e);
+      j += e;
+    }
+    double pref = flat.length > 0 ? QuickSelect.quantile(flat, quantile) : 0.;
+    for(int i = 0; i < size; i++) {
+      g.s[g.rowstart[i]] = pref;
+    }
+    return g;
+  }
+
+  /**
+   * Update the responsibilities of a block of rows.
+   *
+   * @param g Graph
+   * @param a Availabilities
+   * @param r Responsibilities
+   * @param start First row
+   * @param end End row (exclusive)
+   * @return {@code null}
+   */
+  private Void updateResponsibilities(Graph g, double[] a, double[] r, int start, int end) {
+    final double[] s = g.s;
+    for(int i = start; i < end; i++) {
+      final int rs = g.rowstart[i], re = g.rowstart[i + 1];
+      // Find the two largest values
+      double max1 = Double.NEGATIVE_INFINITY, max2 = Double.NEGATIVE_INFINITY;
+      int maxk = -1;
+      for(int e = rs; e < re; e++) {
+        double val = a[e] + s[e];
+        if(val > max1) {
+          max2 = max1;
+          max1 = val;
+          maxk = e;
+        }
+        else if(val > max2) {
+          max2 = val;
+        }
+      }
+      // Isolated points only have the diagonal entry.
+      max2 = max2 > Double.NEGATIVE_INFINITY ? max2 : max1;
+      // With the maximum value known, update r:
+      for(int e = rs; e < re; e++) {
+        double val = s[e] - ((e != maxk) ? max1 : max2);
+        r[e] = r[e] * lambda + val * (1. - lambda);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Update the availabilities of a block of columns.
+   *
+   * @param g Graph
+   * @param r Responsibilities
+   * @param a Availabilities
+   * @param start First column
+   * @param end End column (exclusive)
+   * @return {@code null}
+   */
+  private Void updateAvailabilities(Graph g, double[] r, double[] a, int start, int end) {
+    final int[] colstart = g.colstart, coledge = g.coledge;
+    for(int k = start; k < end; k++) {
+      final int cs = colstart[k], ce = colstart[k + 1], diag = g.rowstart[k];
+      // Compute sum of max(0, r_ik) for all i.
+      // For r_kk, don't apply the max.
+      double colposum = 0.;
+      for(int c = cs; c < ce; c++) {
+        final int e = coledge[c];
+        if(e == diag || r[e] > 0.) {
+          colposum += r[e];
+        }
+      }
+      for(int c = cs; c < ce; c++) {
+        final int e = coledge[c];
+        double val = colposum;
+        // Adjust column sum by the one extra term.
+        if(e == diag || r[e] > 0.) {
+          val -= r[e];
+        }
+        if(e != diag && val > 0.) { // min
+          val = 0.;
+        }
+        a[e] = a[e] * lambda + val * (1 - lambda);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Update the cluster assignment of a block of rows.
+   *
+   * @param g Graph
+   * @param r Responsibilities
+   * @param a Availabilities
+   * @param assignment Assignment storage
+   * @param start First row
+   * @param end End row (exclusive)
+   * @return Number of changed entries
+   */
+  private static Integer updateAssignment(Graph g, double[] r, double[] a, int[] assignment, int start, int end) {
+    int changed = 0;
+    for(int i = start; i < end; i++) {
+      final int rs = g.rowstart[i], re = g.rowstart[i + 1];
+      // The diagonal comes first, and hence wins ties.
+      double max = Double.NEGATIVE_INFINITY;
+      int maxj = -1;
+      for(int e = rs; e < re; e++) {
+        double v = a[e] + r[e];
+        if(v > max) {
+          max = v;
+          maxj = g.col[e];
+        }
+      }
+      if(assignment[i] != maxj) {
+        changed += 1;
+        assignment[i] = maxj;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Sparse similarity graph, in compressed sparse row format, with an
+   * additional column index.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Graph {
+    /**
+     * Start of each row, and end of the last row.
+     */
+    int[] rowstart;
+
+    /**
+     * Column of each edge.
+     */
+    int[] col;
+
+    /**
+     * Similarity of each edge.
+     */
+    double[] s;
+
+    /**
+     * Start of each column in the column index.
+     */
+    int[] colstart;
+
+    /**
+     * Edges, sorted by column.
+     */
+    int[] coledge;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of rows
+     * @param nbrs Neighbors of each row
+     * @param sims Similarities of each row
+     */
+    protected Graph(int size, int[][] nbrs, double[][] sims) {
+      rowstart = new int[size + 1];
+      for(int i = 0; i < size; i++) {
+        rowstart[i + 1] = rowstart[i] + nbrs[i].length;
+      }
+      final int nnz = rowstart[size];
+      col = new int[nnz];
+      s = new double[nnz];
+      colstart = new int[size + 1];
+      for(int i = 0; i < size; i++) {
+        System.arraycopy(nbrs[i], 0, col, rowstart[i], nbrs[i].length);
+        System.arraycopy(sims[i], 0, s, rowstart[i], sims[i].length);
+        nbrs[i] = null; // Free memory early
+        sims[i] = null;
+      }
+      // Build the column index, by counting sort.
+      for(int e = 0; e < nnz; e++) {
+        ++colstart[col[e] + 1];
+      }
+      for(int k = 0; k < size; k++) {
+        colstart[k + 1] += colstart[k];
+      }
+      coledge = new int[nnz];
+      int[] pos = Arrays.copyOf(colstart, size);
+      for(int e = 0; e < nnz; e++) {
+        coledge[pos[col[e]]++] = e;
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Number of neighbors to pass messages to.
+     */
+    public static final OptionID KNN_ID = new OptionID("ap.knn", "Number of nearest neighbors to exchange messages with.");
+
+    /**
+     * Radius of the neighborhood graph, as alternative to the kNN graph.
+     */
+    public static final OptionID RADIUS_ID = new OptionID("ap.radius", "Use a radius graph instead of a kNN graph, exchanging messages with all neighbors within this distance.");
+
+    /**
+     * Distance function.
+     */
+    Distance<? super O> distance;
+
+    /**
+     * Number of neighbors.
+     */
+    int knn;
+
+    /**
+     * Radius.
+     */
+    double radius;
+
+    /**
+     * Quantile to use.
+     */
+    double quantile;
+
+    /**
+     * Dampening parameter.
+     */
+    double lambda = .5;
+
+    /**
+     * Number of stable iterations for convergence.
+     */
+    int convergence;
+
+    /**
+     * Maximum number of iterations.
+     */
+    int maxiter;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(DistanceBasedInitializationWithMedian.Par.DISTANCE_ID, Distance.class, SquaredEuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new DoubleParameter(RADIUS_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .setOptional(true) //
+          .grab(config, x -> radius = x);
+      if(!(radius > 0)) {
+        new IntParameter(KNN_ID, 20) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> knn = x);
+      }
+      new DoubleParameter(AffinityPropagationInitialization.QUANTILE_ID, .5) //
+          .grab(config, x -> quantile = x);
+      new DoubleParameter(AffinityPropagation.Par.LAMBDA_ID, .5) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .addConstraint(CommonConstraints.LESS_THAN_ONE_DOUBLE) //
+          .grab(config, x -> lambda = x);
+      new IntParameter(AffinityPropagation.Par.CONVERGENCE_ID, 15) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> convergence = x);
+      new IntParameter(AffinityPropagation.Par.MAXITER_ID, 1000) //
+          .grab(config, x -> maxiter = x);
+    }
+
+    @Override
+    public SparseAffinityPropagation<O> make() {
+      return new SparseAffinityPropagation<>(distance, knn, radius, quantile, lambda, convergence, maxiter);
+    }
+  }
+}
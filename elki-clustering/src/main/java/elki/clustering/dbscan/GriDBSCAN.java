@@ -165,7 +165,17 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
       LOG.warning("Invalid grid width (less than 2*epsilon, recommended 10*epsilon). Increasing grid width automatically.");
       adjgridwidth = 2. * epsilon;
     }
-    return new Instance<V>(distance, epsilon, minpts, adjgridwidth).run(relation);
+    return makeInstance(adjgridwidth).run(relation);
+  }
+
+  /**
+   * Make the instance for a single run.
+   *
+   * @param gridwidth Grid width
+   * @return Instance
+   */
+  protected Instance<V> makeInstance(double gridwidth) {
+    return new Instance<V>(distance, epsilon, minpts, gridwidth);
   }
 
   /**
@@ -229,7 +239,7 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
     /**
      * Data grid partitioning.
      */
-    Long2ObjectOpenHashMap<ModifiableDBIDs> grid;
+    protected Long2ObjectOpenHashMap<ModifiableDBIDs> grid;
 
     /**
      * Core identifier objects (shared to conserve memory).
@@ -278,24 +288,7 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
      */
     public Clustering<Model> run(Relation<V> relation) {
       final DBIDs ids = relation.getDBIDs();
-      final int size = ids.size();
-
-      // Domain of the database
-      this.domain = RelationUtil.computeMinMax(relation);
-      this.dim = domain[0].length;
-      this.offset = new double[dim];
-      this.cells = new int[dim];
-      // Compute the grid start, and the number of cells in each dimension.
-      long numcells = computeGridBaseOffsets(size);
-
-      // Build the data grid.
-      buildGrid(relation, (int) numcells, offset);
-      if(grid.size() <= dim) {
-        LOG.warning("There are only " + grid.size() + " occupied cells. This will likely be slower than regular DBSCAN!");
-      }
-
-      // Check grid cell counts:
-      int mincells = checkGridCellSizes(size, numcells);
+      int mincells = partitionData(relation);
 
       // (Temporary) store the cluster ID assigned.
       clusterids = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP, Assignment.class);
@@ -326,6 +319,32 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
       return buildResult(ids, clusterid);
     }
 
+    /**
+     * Compute the grid layout, and partition the data into the grid cells.
+     *
+     * @param relation Relation to process
+     * @return Number of cells with at least minPts objects
+     */
+    protected int partitionData(Relation<V> relation) {
+      final int size = relation.size();
+      // Domain of the database
+      this.domain = RelationUtil.computeMinMax(relation);
+      this.dim = domain[0].length;
+      this.offset = new double[dim];
+      this.cells = new int[dim];
+      // Compute the grid start, and the number of cells in each dimension.
+      long numcells = computeGridBaseOffsets(size);
+
+      // Build the data grid.
+      buildGrid(relation, (int) numcells, offset);
+      if(grid.size() <= dim) {
+        LOG.warning("There are only " + grid.size() + " occupied cells. This will likely be slower than regular DBSCAN!");
+      }
+
+      // Check grid cell counts:
+      return checkGridCellSizes(size, numcells);
+    }
+
     private int runDBSCANOnCell(DBIDs cellids, Relation<V> relation, ModifiableDoubleDBIDList neighbors, ArrayModifiableDBIDs activeSet, int clusterid) {
       temporary.clear(); // Reset to "UNPROCESSED"
       ProxyView<V> rel = new ProxyView<>(cellids, relation);
@@ -372,7 +391,7 @@ public class GriDBSCAN<V extends NumberVector> implements ClusteringAlgorithm<Cl
      * @param size Data set size
      * @return Total number of grid cells
      */
-    private long computeGridBaseOffsets(int size) {
+    protected long computeGridBaseOffsets(int size) {
       StringBuilder buf = LOG.isDebuggingFinest() ? new StringBuilder() : null;
       double[] min = domain[0], max = domain[1];
       long total = 1;
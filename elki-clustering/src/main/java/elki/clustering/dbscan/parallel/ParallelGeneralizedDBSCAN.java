@@ -20,31 +20,32 @@
  */
 package elki.clustering.dbscan.parallel;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import elki.clustering.ClusteringAlgorithm;
 import elki.clustering.dbscan.predicates.CorePredicate;
 import elki.clustering.dbscan.predicates.EpsilonNeighborPredicate;
 import elki.clustering.dbscan.predicates.MinPtsCorePredicate;
 import elki.clustering.dbscan.predicates.NeighborPredicate;
-import elki.clustering.dbscan.util.Assignment;
-import elki.clustering.dbscan.util.Border;
-import elki.clustering.dbscan.util.Core;
-import elki.clustering.dbscan.util.MultiBorder;
 import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.data.model.ClusterModel;
+import elki.data.model.CoreObjectsModel;
 import elki.data.model.Model;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
-import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
-import elki.database.ids.DBIDs;
 import elki.database.ids.ModifiableDBIDs;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
@@ -52,6 +53,7 @@ import elki.parallel.Executor;
 import elki.parallel.ParallelExecutor;
 import elki.parallel.processor.Processor;
 import elki.result.Metadata;
+import elki.utilities.datastructures.unionfind.ConcurrentUnionFindInteger;
 import elki.utilities.documentation.Reference;
 import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
@@ -68,10 +70,11 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * sequentially expand a cluster, but processes points in arbitrary order and
  * merges clusters when neighboring core points occur.
  * <p>
- * Because of synchronization when labeling points, the speedup will only be
- * sublinear in the number of cores. But in particular without an index and on
- * large data, the majority of the work is finding the neighbors; not in
- * labeling the points.
+ * Labeling does not use locks: core objects are merged using a lock-free
+ * concurrent union-find ({@link ConcurrentUnionFindInteger}), and border
+ * objects are labeled with compare-and-swap operations. Border objects are
+ * assigned to the neighboring core object with the smallest index, so the
+ * result does not depend on the number of threads.
  * <p>
  * Reference:
  * <p>
@@ -79,9 +82,7 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * <p>
  * Related is the following publication, whose "disjoint set data structure"
  * appears to be a similar union-find approach to ours, and whose DSDBSCAN
- * appears rather similar. The main benefit of our approach is that we avoid
- * using the union-find data structure for every object, but only use it for
- * merging clusters.
+ * appears rather similar.
  * <p>
  * M. Patwary, D. Palsetia, A. Agrawal, W. K. Liao, F. Manne, A. Choudhary<br>
  * A new scalable parallel DBSCAN algorithm using the disjoint-set data
@@ -170,6 +171,16 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
    * @composed - - - NeighborPredicate.Instance
    */
   public static class Instance<T> implements Processor {
+    /**
+     * State of core objects.
+     */
+    private static final int CORE = -2;
+
+    /**
+     * State of objects not (yet) assigned to any cluster.
+     */
+    private static final int UNASSIGNED = -1;
+
     /**
      * The neighborhood predicate
      */
@@ -186,24 +197,25 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
     protected boolean coremodel = false;
 
     /**
-     * Cluster assignment storage.
+     * Object state: core, unassigned, or the (smallest) core object a border
+     * object was assigned to.
      */
-    private WritableDataStore<Assignment> clusterids;
+    private AtomicIntegerArray state;
 
     /**
-     * Core objects (shared)
+     * Union-find for merging core objects.
      */
-    private Core[] cores;
+    private ConcurrentUnionFindInteger uf;
 
     /**
-     * Border objects (shared)
+     * Object ids, for array addressing.
      */
-    private Border[] borders;
+    private ArrayDBIDs ids;
 
     /**
-     * Next cluster number assigned.
+     * Offset of each object in the ids array.
      */
-    private int nextclus = 0;
+    private WritableIntegerDataStore offsets;
 
     /**
      * Database for cloning neighbor predicates.
@@ -235,9 +247,6 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
       this.npreds = npreds;
       this.corepred = corepred.instantiate(database);
       this.coremodel = coremodel;
-      this.clusterids = DataStoreUtil.makeStorage(npred.getIDs(), DataStoreFactory.HINT_TEMP, Assignment.class);
-      this.cores = new Core[100];
-      this.borders = new Border[100];
     }
 
     /**
@@ -246,53 +255,62 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
      * @return Clustering result
      */
     public Clustering<Model> run() {
-      DBIDs ids = npred.getIDs();
+      ids = DBIDUtil.ensureArray(npred.getIDs());
+      final int size = ids.size();
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      state = new AtomicIntegerArray(size);
+      for(int i = 0; i < size; i++) {
+        state.lazySet(i, UNASSIGNED);
+      }
+      uf = new ConcurrentUnionFindInteger(size);
 
-      progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN clustering", ids.size(), LOG) : null;
+      progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN clustering", size, LOG) : null;
       // Do the majority of the work in parallel:
       // (This will call "instantiate".)
       ParallelExecutor.run(ids, this);
       LOG.ensureCompleted(progress);
 
       // Build the final result
-      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", ids.size(), LOG) : null;
-      ModifiableDBIDs[] clusters = new ModifiableDBIDs[nextclus];
+      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", size, LOG) : null;
+      // Map component roots to cluster numbers, in order of first occurrence.
+      int[] clusternum = new int[size];
+      Arrays.fill(clusternum, -1);
+      List<ModifiableDBIDs> clusters = new ArrayList<>(), corelists = coremodel ? new ArrayList<>() : null;
       ModifiableDBIDs noise = DBIDUtil.newArray();
-      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-        Assignment cids = clusterids.get(it);
-        if(cids == null) {
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int s = state.get(it.getOffset());
+        if(s == UNASSIGNED) {
           noise.add(it);
           LOG.incrementProcessed(pprog);
           continue;
         }
-        if(cids instanceof MultiBorder) {
-          cids = ((MultiBorder) cids).getCore();
-        }
-        else if(cids instanceof Border) {
-          cids = ((Border) cids).core;
-        }
-        assert (cids instanceof Core);
-        Core co = (Core) cids;
-        while(cores[co.num].num != co.num) {
-          co = cores[co.num = cores[co.num].num];
+        final int root = uf.find(s == CORE ? it.getOffset() : s);
+        int c = clusternum[root];
+        if(c < 0) {
+          c = clusternum[root] = clusters.size();
+          clusters.add(DBIDUtil.newArray());
+          if(corelists != null) {
+            corelists.add(DBIDUtil.newArray());
+          }
         }
-        ModifiableDBIDs clu = clusters[co.num];
-        if(clu == null) {
-          clu = clusters[co.num] = DBIDUtil.newArray();
+        clusters.get(c).add(it);
+        if(corelists != null && s == CORE) {
+          corelists.get(c).add(it);
         }
-        clu.add(it);
         LOG.incrementProcessed(pprog);
       }
       LOG.ensureCompleted(pprog);
-      clusterids.destroy();
+      offsets.destroy();
 
       // Wrap into final format
       Clustering<Model> result = new Clustering<>();
       Metadata.of(result).setLongName("Generalized DBSCAN Clustering");
-      for(int i = 0; i < clusters.length; i++) {
-        if(clusters[i] != null) {
-          result.addToplevelCluster(new Cluster<Model>(clusters[i], ClusterModel.CLUSTER));
-        }
+      for(int i = 0; i < clusters.size(); i++) {
+        Model m = coremodel ? new CoreObjectsModel(corelists.get(i)) : ClusterModel.CLUSTER;
+        result.addToplevelCluster(new Cluster<Model>(clusters.get(i), m));
       }
       if(noise.size() > 0) {
         result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
@@ -301,7 +319,13 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
     }
 
     /**
-     * Synchronize function to process the neighbors.
+     * Process the neighbors of a point, without locking.
+     * <p>
+     * A core point is marked as core <em>before</em> inspecting its neighbors.
+     * Of two neighboring core points processed concurrently, at least one
+     * will hence see the other as core, and merge the two. Border points are
+     * assigned to their core neighbor with the smallest index, so the result
+     * does not depend on the processing order.
      *
      * @param id Current point
      * @param neighbors Neighbors
@@ -311,50 +335,20 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
         LOG.incrementProcessed(progress);
         return;
       }
-      Core core = null;
-      // Find a possible cluster assignment
+      final int i = offsets.intValue(id);
+      state.set(i, CORE);
+      // Label neighbors, execute merges.
       for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-        Assignment cand = clusterids.get(it);
-        if(cand instanceof Core) { // Another core point
-          core = (Core) cand;
-          break;
-        }
-      }
-      synchronized(this) {
-        // Make a new cluster
-        if(core == null) {
-          // Grow arrays when necessary:
-          if(nextclus == cores.length) {
-            cores = Arrays.copyOf(cores, cores.length + (cores.length >> 1));
-            borders = Arrays.copyOf(borders, cores.length);
-          }
-          core = cores[nextclus] = new Core(nextclus);
-          borders[nextclus] = new Border(core);
-          ++nextclus;
-        }
-        Border border = borders[core.num];
-        clusterids.put(id, core);
-        // Label neighbors, execute merges.
-        for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-          Assignment oclus = clusterids.get(it);
-          if(oclus == core) {
-            continue;
-          }
-          if(oclus == null) { // Neighbor is still noise:
-            clusterids.put(it, border);
-          }
-          else if(oclus instanceof Core) { // Core and core - merge!
-            core.mergeWith((Core) oclus);
-          }
-          else if(oclus instanceof Border) { // Border point -> MultiBorder
-            Border oborder = (Border) oclus;
-            if(border.core.num != oborder.core.num) {
-              clusterids.put(it, new MultiBorder(border, oborder));
-            }
+        final int j = offsets.intValue(it);
+        while(j != i) {
+          final int s = state.get(j);
+          if(s == CORE) { // Core and core - merge!
+            uf.union(i, j);
+            break;
           }
-          else { // Point is already border for multiple clusters
-            assert (oclus instanceof MultiBorder);
-            clusterids.put(it, ((MultiBorder) oclus).update(border));
+          // Noise becomes border, or border of a larger core index.
+          if((s >= 0 && s <= i) || state.compareAndSet(j, s, i)) {
+            break;
           }
         }
       }
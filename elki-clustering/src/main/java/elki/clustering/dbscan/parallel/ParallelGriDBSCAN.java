@@ -0,0 +1,332 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.dbscan.parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import elki.clustering.dbscan.GriDBSCAN;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.ClusterModel;
+import elki.data.model.Model;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.ProxyView;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
+import elki.result.Metadata;
+import elki.utilities.datastructures.unionfind.ConcurrentUnionFindInteger;
+import elki.utilities.documentation.Reference;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of the grid-accelerated DBSCAN.
+ * <p>
+ * The data set is partitioned into overlapping grid cells as in
+ * {@link GriDBSCAN}, and the cells are processed concurrently, largest cells
+ * first. Within each cell, only the objects whose <em>home</em> cell (the cell
+ * containing the object without the epsilon overlap) is the current cell are
+ * queried, hence every object is queried exactly once, and the overlap is only
+ * used to find the neighbors.
+ * <p>
+ * Instead of merging per-cell clusterings afterwards, labeling uses the same
+ * lock-free approach as {@link ParallelGeneralizedDBSCAN}: core objects are
+ * merged with a concurrent union-find, and border objects are assigned to the
+ * neighboring core object with the smallest index using compare-and-swap. The
+ * result hence does not depend on the number of threads.
+ * <p>
+ * Reference:
+ * <p>
+ * S. Mahran, K. Mahar<br>
+ * Using grid for accelerating density-based clustering<br>
+ * In 8th IEEE Int. Conf. on Computer and Information Technology, 2008.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @composed - - - Instance
+ *
+ * @param <V> the type of vector the algorithm is applied to
+ */
+@Reference(authors = "S. Mahran, K. Mahar", //
+    title = "Using grid for accelerating density-based clustering", //
+    booktitle = "8th IEEE Int. Conf. on Computer and Information Technology", //
+    url = "https://doi.org/10.1109/CIT.2008.4594646", //
+    bibkey = "DBLP:conf/IEEEcit/MahranM08")
+public class ParallelGriDBSCAN<V extends NumberVector> extends GriDBSCAN<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGriDBSCAN.class);
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param gridwidth Grid width
+   */
+  public ParallelGriDBSCAN(Distance<? super V> distance, double epsilon, int minpts, double gridwidth) {
+    super(distance, epsilon, minpts, gridwidth);
+  }
+
+  @Override
+  protected GriDBSCAN.Instance<V> makeInstance(double gridwidth) {
+    return new Instance<V>(distance, epsilon, minpts, gridwidth);
+  }
+
+  /**
+   * Instance, for a single run.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  protected static class Instance<V extends NumberVector> extends GriDBSCAN.Instance<V> {
+    /**
+     * State of core objects.
+     */
+    private static final int CORE = -2;
+
+    /**
+     * State of objects not (yet) assigned to any cluster.
+     */
+    private static final int UNASSIGNED = -1;
+
+    /**
+     * Object state: core, unassigned, or the (smallest) core object a border
+     * object was assigned to.
+     */
+    private AtomicIntegerArray state;
+
+    /**
+     * Union-find for merging core objects.
+     */
+    private ConcurrentUnionFindInteger uf;
+
+    /**
+     * Offset of each object in the ids array.
+     */
+    private WritableIntegerDataStore offsets;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param epsilon Epsilon
+     * @param minpts MinPts
+     * @param gridwidth Grid width
+     */
+    public Instance(Distance<? super V> distance, double epsilon, int minpts, double gridwidth) {
+      super(distance, epsilon, minpts, gridwidth);
+    }
+
+    @Override
+    public Clustering<Model> run(Relation<V> relation) {
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size();
+      final int mincells = partitionData(relation);
+
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      state = new AtomicIntegerArray(size);
+      for(int i = 0; i < size; i++) {
+        state.lazySet(i, UNASSIGNED);
+      }
+      uf = new ConcurrentUnionFindInteger(size);
+
+      // Process large cells first, for better load balancing.
+      final long[] keys = new long[mincells];
+      int n = 0;
+      for(Long2ObjectMap.Entry<ModifiableDBIDs> e : grid.long2ObjectEntrySet()) {
+        if(e.getValue().size() >= minpts) {
+          keys[n++] = e.getLongKey();
+        }
+      }
+      final long[] sorted = Arrays.stream(keys, 0, n).boxed() //
+          .sorted((a, b) -> Integer.compare(grid.get(b.longValue()).size(), grid.get(a.longValue()).size())) //
+          .mapToLong(Long::longValue).toArray();
+
+      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Processing grid cells", sorted.length, LOG) : null;
+      // Each block is one worker, pulling the next cell from a shared counter:
+      final AtomicInteger next = new AtomicInteger();
+      ParallelExecutor.run(sorted.length, 1, (start, end) -> {
+        ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList(minpts << 1);
+        for(int c = next.getAndIncrement(); c < sorted.length; c = next.getAndIncrement()) {
+          processCell(relation, sorted[c], neighbors);
+          LOG.incrementProcessed(cprog);
+        }
+        return null;
+      });
+      LOG.ensureCompleted(cprog);
+      grid = null;
+      return buildResult(ids);
+    }
+
+    /**
+     * Process a single grid cell.
+     *
+     * @param relation Data relation
+     * @param key Cell key
+     * @param neighbors Reusable storage for neighbors
+     */
+    protected void processCell(Relation<V> relation, long key, ModifiableDoubleDBIDList neighbors) {
+      final DBIDs cellids = grid.get(key);
+      ProxyView<V> rel = new ProxyView<>(cellids, relation);
+      RangeSearcher<DBIDRef> rq = new QueryBuilder<>(rel, distance).rangeByDBID(epsilon);
+      for(DBIDIter id = cellids.iter(); id.valid(); id.advance()) {
+        // Only query objects in their home cell, each exactly once.
+        if(homeCell(relation.get(id)) != key) {
+          continue;
+        }
+        rq.getRange(id, epsilon, neighbors.clear());
+        if(neighbors.size() >= minpts) {
+          processCorePoint(id, neighbors);
+        }
+      }
+    }
+
+    /**
+     * Process the neighbors of a core point, without locking.
+     * <p>
+     * A core point is marked as core <em>before</em> inspecting its neighbors.
+     * Of two neighboring core points processed concurrently, at least one
+     * will hence see the other as core, and merge the two.
+     *
+     * @param id Core point
+     * @param neighbors Neighbors
+     */
+    protected void processCorePoint(DBIDRef id, DoubleDBIDList neighbors) {
+      final int i = offsets.intValue(id);
+      state.set(i, CORE);
+      for(DBIDIter it = neighbors.iter(); it.valid(); it.advance()) {
+        final int j = offsets.intValue(it);
+        while(j != i) {
+          final int s = state.get(j);
+          if(s == CORE) { // Core and core - merge!
+            uf.union(i, j);
+            break;
+          }
+          // Noise becomes border, or border of a larger core index.
+          if((s >= 0 && s <= i) || state.compareAndSet(j, s, i)) {
+            break;
+          }
+        }
+      }
+    }
+
+    /**
+     * Compute the home cell of an object, i.e., the grid cell containing the
+     * object when ignoring the epsilon overlap. This uses the same arithmetic
+     * as building the grid.
+     *
+     * @param obj Object
+     * @return Cell key
+     */
+    protected long homeCell(V obj) {
+      int c = 0;
+      for(int d = 0; d < dim; d++) {
+        final int cn = cells[d];
+        final int i = (int) FastMath.floor((obj.doubleValue(d) - offset[d]) / gridwidth);
+        c = c * cn + Math.max(0, Math.min(cn - 1, i));
+      }
+      return c;
+    }
+
+    /**
+     * Build the final clustering result.
+     *
+     * @param ids Object ids
+     * @return Clustering result
+     */
+    protected Clustering<Model> buildResult(ArrayDBIDs ids) {
+      final int size = ids.size();
+      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", size, LOG) : null;
+      // Map component roots to cluster numbers, in order of first occurrence.
+      int[] clusternum = new int[size];
+      Arrays.fill(clusternum, -1);
+      List<ModifiableDBIDs> clusters = new ArrayList<>();
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int s = state.get(it.getOffset());
+        if(s == UNASSIGNED) {
+          noise.add(it);
+          LOG.incrementProcessed(pprog);
+          continue;
+        }
+        final int root = uf.find(s == CORE ? it.getOffset() : s);
+        int c = clusternum[root];
+        if(c < 0) {
+          c = clusternum[root] = clusters.size();
+          clusters.add(DBIDUtil.newArray());
+        }
+        clusters.get(c).add(it);
+        LOG.incrementProcessed(pprog);
+      }
+      LOG.ensureCompleted(pprog);
+      offsets.destroy();
+
+      Clustering<Model> result = new Clustering<>();
+      Metadata.of(result).setLongName("DBSCAN Clustering");
+      for(ModifiableDBIDs cluster : clusters) {
+        result.addToplevelCluster(new Cluster<Model>(cluster, ClusterModel.CLUSTER));
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Vector type to use
+   */
+  public static class Par<O extends NumberVector> extends GriDBSCAN.Par<O> {
+    @Override
+    public ParallelGriDBSCAN<O> make() {
+      return new ParallelGriDBSCAN<>(distance, epsilon, minpts, gridwidth);
+    }
+  }
+}
@@ -109,6 +109,18 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param parent Parent model
+   */
+  private DiagonalGaussianModel(DiagonalGaussianModel parent) {
+    final int dim = parent.mean.length;
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.variances = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -142,6 +154,32 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public boolean supportsMerge() {
+    return true;
+  }
+
+  @Override
+  public DiagonalGaussianModel newAccumulator() {
+    return new DiagonalGaussianModel(this);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> o) {
+    final DiagonalGaussianModel other = (DiagonalGaussianModel) o;
+    if(!(other.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + other.wsum;
+    final double f = other.wsum / nwsum, s = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      variances[i] += other.variances[i] + delta * delta * s;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
@@ -54,6 +54,7 @@ import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -237,7 +238,7 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     // initial models
     List<? extends EMClusterModel<O, M>> models = mfactory.buildInitialModels(relation, k);
     WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
-    double loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+    double loglikelihood = expectationStep(relation, models, probClusterIGivenX);
     DoubleStatistic likestat = new DoubleStatistic(this.getClass().getName() + ".loglikelihood");
     LOG.statistics(likestat.setDouble(loglikelihood));
 
@@ -246,9 +247,9 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     double bestloglikelihood = loglikelihood; // For detecting instabilities.
     for(++it; it < maxiter || maxiter < 0; it++) {
       final double oldloglikelihood = loglikelihood;
-      recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+      maximizationStep(relation, probClusterIGivenX, models, prior);
       // reassign probabilities
-      loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+      loglikelihood = expectationStep(relation, models, probClusterIGivenX);
 
       LOG.statistics(likestat.setDouble(loglikelihood));
       if(loglikelihood - bestloglikelihood > delta) {
@@ -286,6 +287,30 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     return result;
   }
 
+  /**
+   * Perform the expectation step, assigning cluster probabilities.
+   *
+   * @param relation Vector data
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @return Average log likelihood
+   */
+  protected double expectationStep(Relation<O> relation, List<? extends EMClusterModel<O, M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    return assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+  }
+
+  /**
+   * Perform the maximization step, updating the cluster models.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   * @param prior MAP prior (use 0 for MLE)
+   */
+  protected void maximizationStep(Relation<O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<O, M>> models, double prior) {
+    recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+  }
+
   /**
    * Recompute the covariance matrixes.
    * 
@@ -330,9 +355,22 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
         wsum[i] += prob;
       }
     }
-    for(int i = 0; i < models.size(); i++) {
+    finalizeEStep(models, wsum, relation.size(), prior);
+  }
+
+  /**
+   * Finalize the E step of all models, computing the cluster weights.
+   *
+   * @param models Cluster models
+   * @param wsum Weight sums
+   * @param size Data set size
+   * @param prior MAP prior (use 0 for MLE)
+   */
+  static void finalizeEStep(List<? extends EMClusterModel<?, ?>> models, double[] wsum, int size, double prior) {
+    final int k = models.size();
+    for(int i = 0; i < k; i++) {
       // MLE / MAP
-      final double weight = prior <= 0. ? wsum[i] / relation.size() : (wsum[i] + prior - 1) / (relation.size() + prior * k - k);
+      final double weight = prior <= 0. ? wsum[i] / size : (wsum[i] + prior - 1) / (size + prior * k - k);
       models.get(i).finalizeEStep(weight, prior);
     }
   }
@@ -355,22 +393,35 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     double emSum = 0.;
 
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      O vec = relation.get(iditer);
       double[] probs = new double[k];
-      for(int i = 0; i < k; i++) {
-        double v = models.get(i).estimateLogDensity(vec);
-        probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
-      }
-      final double logP = logSumExp(probs);
-      for(int i = 0; i < k; i++) {
-        probs[i] = FastMath.exp(probs[i] - logP);
-      }
+      emSum += computeProbabilities(relation.get(iditer), models, probs);
       probClusterIGivenX.put(iditer, probs);
-      emSum += logP;
     }
     return emSum / relation.size();
   }
 
+  /**
+   * Compute the cluster probabilities of a single object.
+   *
+   * @param vec Object
+   * @param models Cluster models
+   * @param probs Output array for the probabilities
+   * @param <O> Object type
+   * @return log likelihood of the object
+   */
+  static <O> double computeProbabilities(O vec, List<? extends EMClusterModel<O, ?>> models, double[] probs) {
+    final int k = probs.length;
+    for(int i = 0; i < k; i++) {
+      double v = models.get(i).estimateLogDensity(vec);
+      probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+    }
+    final double logP = logSumExp(probs);
+    for(int i = 0; i < k; i++) {
+      probs[i] = FastMath.exp(probs[i] - logP);
+    }
+    return logP;
+  }
+
   /**
    * Compute log(sum(exp(x_i)), with attention to numerical issues.
    * 
@@ -438,6 +489,11 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
      */
     public static final OptionID PRIOR_ID = new OptionID("em.map.prior", "Regularization factor for MAP estimation.");
 
+    /**
+     * Flag to retain the soft assignments.
+     */
+    public static final OptionID SOFT_ID = new OptionID("em.soft", "Retain soft assignments.");
+
     /**
      * Number of clusters.
      */
@@ -468,6 +524,11 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
      */
     double prior = 0.;
 
+    /**
+     * Retain soft assignments.
+     */
+    boolean soft = false;
+
     @Override
     public void configure(Parameterization config) {
       new IntParameter(K_ID) //
@@ -490,11 +551,12 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
           .setOptional(true) //
           .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
           .grab(config, x -> prior = x);
+      new Flag(SOFT_ID).grab(config, x -> soft = x);
     }
 
     @Override
     public EM<O, M> make() {
-      return new EM<>(k, delta, initializer, miniter, maxiter, prior, false);
+      return new EM<>(k, delta, initializer, miniter, maxiter, prior, soft);
     }
   }
 }
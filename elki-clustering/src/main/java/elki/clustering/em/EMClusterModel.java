@@ -75,6 +75,54 @@ public interface EMClusterModel<O, M extends Model> {
    */
   void updateE(O vec, double weight);
 
+  /**
+   * True, if the model supports partial statistics via
+   * {@link #newAccumulator()}, {@link #mergeFirstPassE} and {@link #mergeE}.
+   * <p>
+   * By default, this is not supported.
+   *
+   * @return {@code true} when the statistics can be merged.
+   */
+  default boolean supportsMerge() {
+    return false;
+  }
+
+  /**
+   * Create an empty accumulator for the statistics of {@link #firstPassE} and
+   * {@link #updateE}, such that a partition of the data can be processed by a
+   * separate thread. The partial statistics are combined using
+   * {@link #mergeFirstPassE} and {@link #mergeE}.
+   * <p>
+   * Only used if {@link #supportsMerge()} is true.
+   *
+   * @return Accumulator, or {@code null} if not supported.
+   */
+  default EMClusterModel<O, M> newAccumulator() {
+    return null;
+  }
+
+  /**
+   * Merge the first pass statistics of an accumulator into this model.
+   * <p>
+   * By default, this is not used (c.f. {@link #needsTwoPass()}.
+   *
+   * @param other Accumulator obtained from {@link #newAccumulator()}
+   */
+  default void mergeFirstPassE(EMClusterModel<O, M> other) {
+    // empty.
+  }
+
+  /**
+   * Merge the statistics of an accumulator into this model.
+   * <p>
+   * Only used if {@link #supportsMerge()} is true.
+   *
+   * @param other Accumulator obtained from {@link #newAccumulator()}
+   */
+  default void mergeE(EMClusterModel<O, M> other) {
+    throw new UnsupportedOperationException("This model does not support parallel processing.");
+  }
+
   /**
    * Finalize the E step.
    * 
@@ -111,6 +111,18 @@ public class MultivariateGaussianModel implements EMClusterModel<NumberVector, E
     this.logNormDet = FastMath.log(weight) - .5 * logNorm - getHalfLogDeterminant(this.chol);
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param parent Parent model
+   */
+  private MultivariateGaussianModel(MultivariateGaussianModel parent) {
+    final int dim = parent.mean.length;
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -151,6 +163,39 @@ public class MultivariateGaussianModel implements EMClusterModel<NumberVector, E
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public boolean supportsMerge() {
+    return true;
+  }
+
+  @Override
+  public MultivariateGaussianModel newAccumulator() {
+    return new MultivariateGaussianModel(this);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> o) {
+    final MultivariateGaussianModel other = (MultivariateGaussianModel) o;
+    if(!(other.wsum > 0.)) {
+      return;
+    }
+    final int dim = mean.length;
+    final double nwsum = wsum + other.wsum;
+    final double f = other.wsum / nwsum, s = wsum * f;
+    // Combine the scatter matrixes, and the means:
+    for(int i = 0; i < dim; i++) {
+      final double delta_i = other.mean[i] - mean[i];
+      final double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] + delta_i * (other.mean[j] - mean[j]) * s;
+      }
+    }
+    for(int i = 0; i < dim; i++) {
+      mean[i] += (other.mean[i] - mean[i]) * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
@@ -0,0 +1,316 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.em;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.data.model.MeanModel;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.logging.Logging;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Parallel version of the EM clustering algorithm.
+ * <p>
+ * Both steps are partitioned across the available cores: the cluster
+ * probabilities of each object are computed independently, and each thread
+ * aggregates the sufficient statistics (weights, means, scatter matrices) of
+ * its partition into an accumulator obtained from
+ * {@link EMClusterModel#newAccumulator()}; the accumulators are then merged
+ * into the cluster models. All bundled Gaussian models support this; models
+ * that do not (c.f. {@link EMClusterModel#supportsMerge()}) are updated
+ * serially.
+ * <p>
+ * Because the partial aggregates are merged in the order in which the threads
+ * finish, results may differ from the serial implementation in the last
+ * digits.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - EMClusterModel
+ *
+ * @param <O> object type to analyze
+ * @param <M> model type to produce
+ */
+public class ParallelEM<O, M extends MeanModel> extends EM<O, M> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param miniter Minimum number of iterations
+   * @param maxiter Maximum number of iterations
+   * @param prior MAP prior
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<O, M> mfactory, int miniter, int maxiter, double prior, boolean soft) {
+    super(k, delta, mfactory, miniter, maxiter, prior, soft);
+  }
+
+  @Override
+  protected double expectationStep(Relation<O> relation, List<? extends EMClusterModel<O, M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    AssignmentProcessor<O> proc = new AssignmentProcessor<>(relation, models, probClusterIGivenX);
+    ParallelExecutor.run(relation.getDBIDs(), proc);
+    return proc.loglikelihood / relation.size();
+  }
+
+  @Override
+  protected void maximizationStep(Relation<O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<O, M>> models, double prior) {
+    boolean needsTwoPass = false;
+    for(EMClusterModel<O, M> m : models) {
+      m.beginEStep();
+      needsTwoPass |= m.needsTwoPass();
+      if(!m.supportsMerge()) {
+        LOG.warning("Cluster model does not support parallel processing: " + m.getClass().getName());
+        EM.recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+        return;
+      }
+    }
+    // First pass, only for two-pass models.
+    if(needsTwoPass) {
+      ParallelExecutor.run(relation.getDBIDs(), new UpdateProcessor<>(relation, probClusterIGivenX, models, true));
+      for(EMClusterModel<O, M> m : models) {
+        m.finalizeFirstPassE();
+      }
+    }
+    UpdateProcessor<O, M> proc = new UpdateProcessor<>(relation, probClusterIGivenX, models, false);
+    ParallelExecutor.run(relation.getDBIDs(), proc);
+    EM.finalizeEStep(models, proc.wsum, relation.size(), prior);
+  }
+
+  /**
+   * Processor to compute the cluster probabilities.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class AssignmentProcessor<O> implements Processor {
+    /**
+     * Data relation.
+     */
+    Relation<O> relation;
+
+    /**
+     * Cluster models.
+     */
+    List<? extends EMClusterModel<O, ?>> models;
+
+    /**
+     * Output storage.
+     */
+    WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Log likelihood sum.
+     */
+    double loglikelihood = 0.;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param models Cluster models
+     * @param probClusterIGivenX Output storage
+     */
+    AssignmentProcessor(Relation<O> relation, List<? extends EMClusterModel<O, ?>> models, WritableDataStore<double[]> probClusterIGivenX) {
+      this.relation = relation;
+      this.models = models;
+      this.probClusterIGivenX = probClusterIGivenX;
+    }
+
+    @Override
+    public Processor.Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      loglikelihood += ((AssignmentProcessor<?>.Instance) inst).loglikelihood;
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Log likelihood sum.
+       */
+      double loglikelihood = 0.;
+
+      @Override
+      public void map(DBIDRef id) {
+        double[] probs = new double[models.size()];
+        loglikelihood += EM.computeProbabilities(relation.get(id), models, probs);
+        probClusterIGivenX.put(id, probs);
+      }
+    }
+  }
+
+  /**
+   * Processor to aggregate the model statistics.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   * @param <M> Model type
+   */
+  private static class UpdateProcessor<O, M extends MeanModel> implements Processor {
+    /**
+     * Data relation.
+     */
+    Relation<O> relation;
+
+    /**
+     * Object probabilities.
+     */
+    WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Cluster models.
+     */
+    List<? extends EMClusterModel<O, M>> models;
+
+    /**
+     * Flag for the first pass of two-pass models.
+     */
+    boolean firstPass;
+
+    /**
+     * Weight sums.
+     */
+    double[] wsum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param probClusterIGivenX Object probabilities
+     * @param models Cluster models
+     * @param firstPass First pass flag
+     */
+    UpdateProcessor(Relation<O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<O, M>> models, boolean firstPass) {
+      this.relation = relation;
+      this.probClusterIGivenX = probClusterIGivenX;
+      this.models = models;
+      this.firstPass = firstPass;
+      this.wsum = new double[models.size()];
+    }
+
+    @Override
+    public Processor.Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      ((UpdateProcessor<?, ?>.Instance) inst).merge();
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Partial statistics.
+       */
+      List<EMClusterModel<O, M>> accumulators;
+
+      /**
+       * Weight sums.
+       */
+      double[] wsum;
+
+      /**
+       * Constructor.
+       */
+      Instance() {
+        accumulators = new ArrayList<>(models.size());
+        for(EMClusterModel<O, M> m : models) {
+          accumulators.add(m.newAccumulator());
+        }
+        wsum = new double[models.size()];
+      }
+
+      /**
+       * Merge the partial statistics into the cluster models. Must be called
+       * while holding the lock of the processor.
+       */
+      void merge() {
+        for(int i = 0; i < wsum.length; i++) {
+          if(firstPass) {
+            models.get(i).mergeFirstPassE(accumulators.get(i));
+          }
+          else {
+            models.get(i).mergeE(accumulators.get(i));
+          }
+          UpdateProcessor.this.wsum[i] += wsum[i];
+        }
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        double[] clusterProbabilities = probClusterIGivenX.get(id);
+        O instance = relation.get(id);
+        for(int i = 0; i < clusterProbabilities.length; i++) {
+          final double prob = clusterProbabilities[i];
+          if(prob > 1e-10) {
+            if(firstPass) {
+              accumulators.get(i).firstPassE(instance, prob);
+            }
+            else {
+              accumulators.get(i).updateE(instance, prob);
+            }
+          }
+          wsum[i] += prob;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O, M extends MeanModel> extends EM.Par<O, M> {
+    @Override
+    public ParallelEM<O, M> make() {
+      return new ParallelEM<>(k, delta, initializer, miniter, maxiter, prior, soft);
+    }
+  }
+}
@@ -99,6 +99,16 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param parent Parent model
+   */
+  private SphericalGaussianModel(SphericalGaussianModel parent) {
+    this.mean = new double[parent.mean.length];
+    this.nmea = new double[parent.mean.length];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -131,6 +141,34 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public boolean supportsMerge() {
+    return true;
+  }
+
+  @Override
+  public SphericalGaussianModel newAccumulator() {
+    return new SphericalGaussianModel(this);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> o) {
+    final SphericalGaussianModel other = (SphericalGaussianModel) o;
+    if(!(other.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + other.wsum;
+    final double f = other.wsum / nwsum, s = wsum * f;
+    double sqdelta = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      sqdelta += delta * delta;
+      mean[i] += delta * f;
+    }
+    variance += other.variance + sqdelta * s;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
@@ -107,6 +107,18 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<NumberV
     this.logNormDet = FastMath.log(weight) - .5 * logNorm - MultivariateGaussianModel.getHalfLogDeterminant(this.chol);
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param parent Parent model
+   */
+  private TextbookMultivariateGaussianModel(TextbookMultivariateGaussianModel parent) {
+    final int dim = parent.mean.length;
+    this.mean = new double[dim];
+    this.tmp = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -137,6 +149,25 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<NumberV
     wsum += wei;
   }
 
+  @Override
+  public boolean supportsMerge() {
+    return true;
+  }
+
+  @Override
+  public TextbookMultivariateGaussianModel newAccumulator() {
+    return new TextbookMultivariateGaussianModel(this);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> o) {
+    final TextbookMultivariateGaussianModel other = (TextbookMultivariateGaussianModel) o;
+    // Naive aggregates can simply be added:
+    plusEquals(mean, other.mean);
+    plusEquals(covariance, other.covariance);
+    wsum += other.wsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
@@ -75,6 +75,11 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
    */
   double[][] priormatrix;
 
+  /**
+   * Flag to indicate the first pass of the E step.
+   */
+  boolean firstPass;
+
   /**
    * Constructor.
    * 
@@ -104,8 +109,22 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     this.logNormDet = FastMath.log(weight) - .5 * logNorm - MultivariateGaussianModel.getHalfLogDeterminant(this.chol);
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param parent Parent model
+   */
+  private TwoPassMultivariateGaussianModel(TwoPassMultivariateGaussianModel parent) {
+    final int dim = parent.mean.length;
+    // In the second pass, we need the mean of the first pass for centering:
+    this.mean = parent.firstPass ? new double[dim] : parent.mean;
+    this.tmp = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
+    firstPass = true;
     wsum = 0.;
     clear(mean);
     clear(covariance);
@@ -138,6 +157,7 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
    */
   @Override
   public void finalizeFirstPassE() {
+    firstPass = false;
     double s = 1. / wsum;
     for(int i = 0; i < mean.length; i++) {
       mean[i] *= s;
@@ -169,6 +189,28 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     }
   }
 
+  @Override
+  public boolean supportsMerge() {
+    return true;
+  }
+
+  @Override
+  public TwoPassMultivariateGaussianModel newAccumulator() {
+    return new TwoPassMultivariateGaussianModel(this);
+  }
+
+  @Override
+  public void mergeFirstPassE(EMClusterModel<NumberVector, EMModel> o) {
+    final TwoPassMultivariateGaussianModel other = (TwoPassMultivariateGaussianModel) o;
+    plusEquals(mean, other.mean);
+    wsum += other.wsum;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> o) {
+    plusEquals(covariance, ((TwoPassMultivariateGaussianModel) o).covariance);
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
@@ -20,6 +20,8 @@
  */
 package elki.clustering.hierarchical;
 
+import java.util.function.Supplier;
+
 import elki.Algorithm;
 import elki.clustering.hierarchical.linkage.CentroidLinkage;
 import elki.clustering.hierarchical.linkage.Linkage;
@@ -43,6 +45,7 @@ import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -82,6 +85,10 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * R. M. Cormack<br>
  * A Review of Classification<br>
  * Journal of the Royal Statistical Society. Series A, Vol. 134, No. 3
+ * <p>
+ * Optionally, the distance matrix is computed and scanned in parallel. Ties
+ * are resolved by matrix position, so the result does not depend on the number
+ * of threads.
  *
  * @author Erich Schubert
  * @since 0.6.0
@@ -123,6 +130,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Process the distance matrix in parallel.
+   */
+  protected boolean parallel = false;
+
   /**
    * Constructor.
    *
@@ -130,9 +142,21 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   public AGNES(Distance<? super O> distance, Linkage linkage) {
+    this(distance, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param linkage Linkage method
+   * @param parallel Process the distance matrix in parallel
+   */
+  public AGNES(Distance<? super O> distance, Linkage linkage, boolean parallel) {
     super();
     this.distance = distance;
     this.linkage = linkage;
+    this.parallel = parallel;
   }
 
   /**
@@ -151,7 +175,7 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
 
     // Compute the initial (lower triangular) distance matrix.
     MatrixParadigm mat = new MatrixParadigm(ids);
-    initializeDistanceMatrix(mat, dq, linkage);
+    initializeDistanceMatrix(mat, distanceQueries(relation, dq), linkage, parallel);
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
@@ -189,6 +213,18 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
     return end;
   }
 
+  /**
+   * Distance queries to use for initializing the matrix. In parallel mode,
+   * every thread gets its own query.
+   *
+   * @param relation Data relation
+   * @param dq Distance query for serial use
+   * @return Supplier of distance queries
+   */
+  protected Supplier<DistanceQuery<O>> distanceQueries(Relation<O> relation, DistanceQuery<O> dq) {
+    return parallel ? () -> new QueryBuilder<>(relation, distance).distanceQuery() : () -> dq;
+  }
+
   /**
    * Initialize a distance matrix.
    *
@@ -197,25 +233,31 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   protected static void initializeDistanceMatrix(MatrixParadigm mat, DistanceQuery<?> dq, Linkage linkage) {
-    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
+    initializeDistanceMatrix(mat, () -> dq, linkage, false);
+  }
+
+  /**
+   * Initialize a distance matrix, optionally in parallel.
+   *
+   * @param mat Matrix
+   * @param dqs Distance queries, one per parallel block
+   * @param linkage Linkage method
+   * @param parallel Initialize in parallel
+   */
+  protected static void initializeDistanceMatrix(MatrixParadigm mat, Supplier<? extends DistanceQuery<?>> dqs, Linkage linkage, boolean parallel) {
     final double[] matrix = mat.matrix;
-    final boolean issquare = dq.getDistance().isSquared();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", matrix.length, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == MatrixParadigm.triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = linkage.initial(dq.distance(ix, iy), issquare);
-      }
-      if(prog != null) {
-        prog.setProcessed(pos, LOG);
-      }
-    }
-    // Avoid logging errors in case scratch space was too large:
-    if(prog != null) {
-      prog.setProcessed(matrix.length, LOG);
-    }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", mat.size, LOG) : null;
+    mat.processRows(mat.size, parallel, () -> {
+      final DistanceQuery<?> dq = dqs.get();
+      final boolean issquare = dq.getDistance().isSquared();
+      return (ix, iy) -> {
+        final int x = ix.getOffset();
+        for(int pos = MatrixParadigm.triangleSize(x); iy.getOffset() < x; iy.advance()) {
+          matrix[pos++] = linkage.initial(dq.distance(ix, iy), issquare);
+        }
+        LOG.incrementProcessed(prog);
+      };
+    });
     LOG.ensureCompleted(prog);
   }
 
@@ -229,34 +271,90 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    */
   protected int findMerge(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     assert (end > 0);
-    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
-    double mindist = Double.POSITIVE_INFINITY;
+    MergeCandidate best = null;
+    for(MergeCandidate c : mat.processRows(end, parallel, () -> new MergeCandidate(mat.matrix, builder))) {
+      if(best == null || c.better(best)) {
+        best = c;
+      }
+    }
+    final int x = best.x, y = best.y;
+    assert (x >= 0 && y >= 0);
+    assert (y < x); // We could swap otherwise, but this shouldn't arise.
+    merge(end, mat, builder, best.dist, x, y);
+    return x;
+  }
+
+  /**
+   * Candidate for merging, found by scanning rows of the matrix.
+   * <p>
+   * Ties are resolved by preferring later objects, to truncate more often.
+   * This is independent of the scanning order, hence parallel and serial
+   * scanning yield the same merges.
+   *
+   * @author Erich Schubert
+   */
+  private static class MergeCandidate implements MatrixParadigm.RowProcessor {
+    /**
+     * Distance matrix.
+     */
+    final double[] matrix;
+
+    /**
+     * Pointer representation builder.
+     */
+    final PointerHierarchyRepresentationBuilder builder;
+
+    /**
+     * Merge distance.
+     */
+    double dist = Double.POSITIVE_INFINITY;
+
+    /**
+     * Objects to merge, {@code y < x}.
+     */
     int x = -1, y = -1;
-    // Find minimum:
-    for(int ox = 0, xbase = 0; ox < end; xbase += ox++) {
+
+    /**
+     * Constructor.
+     *
+     * @param matrix Distance matrix
+     * @param builder Pointer representation builder
+     */
+    MergeCandidate(double[] matrix, PointerHierarchyRepresentationBuilder builder) {
+      this.matrix = matrix;
+      this.builder = builder;
+    }
+
+    @Override
+    public void processRow(DBIDArrayIter ix, DBIDArrayIter iy) {
       // Skip if object has already joined a cluster:
-      if(builder.isLinked(ix.seek(ox))) {
-        continue;
+      if(builder.isLinked(ix)) {
+        return;
       }
-      assert (xbase == MatrixParadigm.triangleSize(ox));
+      final int ox = ix.getOffset(), xbase = MatrixParadigm.triangleSize(ox);
       for(int oy = 0; oy < ox; oy++) {
         // Skip if object has already joined a cluster:
         if(builder.isLinked(iy.seek(oy))) {
           continue;
         }
-        final double dist = matrix[xbase + oy];
-        if(dist <= mindist) { // Prefer later on ==, to truncate more often.
-          mindist = dist;
+        final double d = matrix[xbase + oy];
+        if(d < dist || d == dist && (ox > x || ox == x && oy > y)) {
+          dist = d;
           x = ox;
           y = oy;
         }
       }
     }
-    assert (x >= 0 && y >= 0);
-    assert (y < x); // We could swap otherwise, but this shouldn't arise.
-    merge(end, mat, builder, mindist, x, y);
-    return x;
+
+    /**
+     * Test if this candidate is preferable to another.
+     *
+     * @param other Other candidate
+     * @return {@code true} if better
+     */
+    boolean better(MergeCandidate other) {
+      return dist < other.dist || dist == other.dist && (x > other.x || x == other.x && y > other.y);
+    }
   }
 
   /**
@@ -355,6 +453,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Flag to process the distance matrix in parallel.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("hierarchical.parallel", "Compute and update the distance matrix in parallel. The result does not depend on the number of threads.");
+
     /**
      * Current linkage in use.
      */
@@ -365,6 +468,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Process the distance matrix in parallel.
+     */
+    protected boolean parallel = false;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Linkage>(LINKAGE_ID, Linkage.class) //
@@ -374,11 +482,12 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
           ? SquaredEuclideanDistance.class : EuclideanDistance.class;
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, defaultD) //
           .grab(config, x -> distance = x);
+      new Flag(PARALLEL_ID).grab(config, x -> parallel = x);
     }
 
     @Override
     public AGNES<O> make() {
-      return new AGNES<>(distance, linkage);
+      return new AGNES<>(distance, linkage, parallel);
     }
   }
 }
@@ -40,10 +40,13 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.ParallelExecutor.BlockTask;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -59,6 +62,10 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * <p>
  * This optimization is attributed to M. R. Anderberg.
  * <p>
+ * Optionally, the distance matrix and the nearest-neighbor cache are computed
+ * and updated in parallel. Every row is processed independently, so the result
+ * does not depend on the number of threads.
+ * <p>
  * Reference:
  * <p>
  * M. R. Anderberg<br>
@@ -85,6 +92,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    */
   private static final Logging LOG = Logging.getLogger(Anderberg.class);
 
+  /**
+   * Minimum number of rows per parallel block when updating the matrix.
+   */
+  private static final int MIN_UPDATE_BLOCKSIZE = 4096;
+
   /**
    * Distance function used.
    */
@@ -95,6 +107,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Process the distance matrix in parallel.
+   */
+  protected boolean parallel = false;
+
   /**
    * Constructor.
    *
@@ -102,9 +119,21 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   public Anderberg(Distance<? super O> distance, Linkage linkage) {
+    this(distance, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param linkage Linkage method
+   * @param parallel Process the distance matrix in parallel
+   */
+  public Anderberg(Distance<? super O> distance, Linkage linkage, boolean parallel) {
     super();
     this.distance = distance;
     this.linkage = linkage;
+    this.parallel = parallel;
   }
 
   /**
@@ -123,12 +152,13 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     final int size = ids.size();
 
     // Position counter - must agree with computeOffset!
-    AGNES.initializeDistanceMatrix(mat, dq, linkage);
+    // Use a separate distance query for each thread.
+    AGNES.initializeDistanceMatrix(mat, parallel ? () -> new QueryBuilder<>(relation, distance).distanceQuery() : () -> dq, linkage, parallel);
 
     // Arrays used for caching:
     double[] bestd = new double[size];
     int[] besti = new int[size];
-    initializeNNCache(mat.matrix, bestd, besti);
+    initializeNNCache(mat, bestd, besti, parallel);
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
@@ -158,22 +188,52 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
     besti[0] = Integer.MAX_VALUE; // invalid, but not deactivated
-    int p = 0;
     for(int x = 1; x < size; x++) {
-      double bestdx = Double.POSITIVE_INFINITY;
-      int bestix = -1;
-      for(int y = 0; y < x; y++) {
-        final double v = scratch[p++];
-        if(v < bestdx) {
-          bestdx = v;
-          bestix = y;
-        }
+      initializeNNCacheRow(scratch, bestd, besti, x);
+    }
+  }
+
+  /**
+   * Initialize the NN cache, optionally in parallel.
+   *
+   * @param mat Matrix paradigm
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param parallel Process the rows in parallel
+   */
+  protected static void initializeNNCache(MatrixParadigm mat, double[] bestd, int[] besti, boolean parallel) {
+    Arrays.fill(bestd, Double.POSITIVE_INFINITY);
+    Arrays.fill(besti, -1);
+    besti[0] = Integer.MAX_VALUE; // invalid, but not deactivated
+    final double[] scratch = mat.matrix;
+    // Every row only writes its own cache entry.
+    mat.processRows(mat.size, parallel, () -> (ix, iy) -> initializeNNCacheRow(scratch, bestd, besti, ix.getOffset()));
+  }
+
+  /**
+   * Initialize the NN cache for a single row.
+   *
+   * @param scratch Scratch space
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param x Row
+   */
+  private static void initializeNNCacheRow(double[] scratch, double[] bestd, int[] besti, int x) {
+    if(x == 0) {
+      return;
+    }
+    double bestdx = Double.POSITIVE_INFINITY;
+    int bestix = -1;
+    for(int y = 0, p = MatrixParadigm.triangleSize(x); y < x; y++) {
+      final double v = scratch[p++];
+      if(v < bestdx) {
+        bestdx = v;
+        bestix = y;
       }
-      assert 0 <= bestix && bestix < x;
-      bestd[x] = bestdx;
-      besti[x] = bestix;
     }
-    assert p == MatrixParadigm.triangleSize(size);
+    assert 0 <= bestix && bestix < x;
+    bestd[x] = bestdx;
+    besti[x] = bestix;
   }
 
   /**
@@ -236,7 +296,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     final int sizex = builder.getSize(ix), sizey = builder.getSize(iy);
     builder.setSize(iy, sizex + sizey);
     besti[x] = -1; // Deactivate removed cluster.
-    updateMatrix(size, mat.matrix, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    updateMatrix(size, mat, bestd, besti, builder, mindist, x, y, sizex, sizey);
     if(y > 0) {
       findBest(mat.matrix, bestd, besti, y);
     }
@@ -244,10 +304,12 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
 
   /**
    * Update the scratch distance matrix.
+   * <p>
+   * Every row is updated independently, so this can be done in parallel. The
+   * result is the same as when updating the rows sequentially.
    *
    * @param size Data set size
-   * @param scratch Scratch matrix.
-   * @param ij Iterator to reuse
+   * @param mat Matrix paradigm
    * @param bestd Best distance
    * @param besti Index of best distance
    * @param builder Hierarchy builder
@@ -257,44 +319,31 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param sizex Old size of first cluster, with {@code x > y}
    * @param sizey Old size of second cluster, with {@code y > x}
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, MatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
     final int xbase = MatrixParadigm.triangleSize(x);
     final int ybase = MatrixParadigm.triangleSize(y);
-
-    // Write to (y, j), with j < y
-    int j = 0;
-    for(; j < y; j++) {
-      if(builder.isLinked(ij.seek(j))) {
-        continue;
-      }
-      final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
-    }
-    j++; // Skip y
-    // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
-    for(; j < x; jbase += j++) {
-      if(builder.isLinked(ij.seek(j))) {
-        continue;
+    final double[] scratch = mat.matrix;
+    final BlockTask<Void> task = (start, end) -> {
+      final DBIDArrayIter ij = mat.getDBIDs().iter();
+      for(int j = start; j < end; j++) {
+        if(j == y || builder.isLinked(ij.seek(j))) {
+          continue; // Skip y, x, and objects already merged
+        }
+        final int sizej = builder.getSize(ij);
+        // Positions of (y, j) and (x, j) in the triangular matrix:
+        final int jb = j < y ? ybase + j : MatrixParadigm.triangleSize(j) + y;
+        final int xb = j < x ? xbase + j : MatrixParadigm.triangleSize(j) + x;
+        final double d = scratch[jb] = linkage.combine(sizex, scratch[xb], sizey, scratch[jb], sizej, mindist);
+        updateCache(scratch, bestd, besti, x, y, j, d);
       }
-      final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      return null;
+    };
+    if(parallel) {
+      ParallelExecutor.run(size, MIN_UPDATE_BLOCKSIZE, task);
     }
-    jbase += j++; // Skip x
-    // Write to (j, y), with y < x < j
-    for(; j < size; jbase += j++) {
-      if(builder.isLinked(ij.seek(j))) {
-        continue;
-      }
-      final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+    else {
+      task.run(0, size);
     }
   }
 
@@ -375,6 +424,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Process the distance matrix in parallel.
+     */
+    protected boolean parallel = false;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Linkage>(AGNES.Par.LINKAGE_ID, Linkage.class) //
@@ -384,11 +438,12 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
           ? SquaredEuclideanDistance.class : EuclideanDistance.class;
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, defaultD) //
           .grab(config, x -> distance = x);
+      new Flag(AGNES.Par.PARALLEL_ID).grab(config, x -> parallel = x);
     }
 
     @Override
     public Anderberg<O> make() {
-      return new Anderberg<>(distance, linkage);
+      return new Anderberg<>(distance, linkage, parallel);
     }
   }
 }
@@ -0,0 +1,605 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import java.util.Arrays;
+
+import elki.Algorithm;
+import elki.data.NumberVector;
+import elki.data.spatial.SpatialComparable;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDBIDDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.utilities.datastructures.heap.DoubleLongHeap;
+import elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * HDBSCAN using a dual-tree Boruvka algorithm to compute the minimum spanning
+ * tree of the mutual reachability graph.
+ * <p>
+ * The core distances are computed with the kNN query API (so an index will be
+ * used if available). Then a k-d-tree is built, and in each Boruvka round a
+ * dual-tree traversal finds the nearest neighbor component of every
+ * component. Node pairs are pruned using the minimum distance of their
+ * bounding boxes, the minimum core distance of the nodes, and whether all
+ * points of both nodes are already in the same component. For low-dimensional
+ * data, this needs much fewer distance computations than the O(n²) of
+ * {@link HDBSCANLinearMemory} and {@link SLINKHDBSCANLinearMemory}.
+ * <p>
+ * With minPts=1, all core distances are zero, and this computes the single
+ * linkage hierarchy, as {@link SLINK} does.
+ * <p>
+ * References:
+ * <p>
+ * W. B. March, P. Ram, A. G. Gray<br>
+ * Fast Euclidean minimum spanning tree: algorithm, analysis, and
+ * applications<br>
+ * Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining
+ * <p>
+ * L. McInnes, J. Healy<br>
+ * Accelerated Hierarchical Density Based Clustering<br>
+ * IEEE Int. Conf. Data Mining Workshops (ICDMW)
+ * <p>
+ * R. J. G. B. Campello, D. Moulavi, J. Sander<br>
+ * Density-Based Clustering Based on Hierarchical Density Estimates<br>
+ * Pacific-Asia Conf. Advances in Knowledge Discovery and Data Mining (PAKDD)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - PointerDensityHierarchyRepresentationResult
+ *
+ * @param <V> Vector type
+ */
+@Title("HDBSCAN with dual-tree Boruvka minimum spanning tree")
+@Reference(authors = "W. B. March, P. Ram, A. G. Gray", //
+    title = "Fast Euclidean minimum spanning tree: algorithm, analysis, and applications", //
+    booktitle = "Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining", //
+    url = "https://doi.org/10.1145/1835804.1835882", //
+    bibkey = "DBLP:conf/kdd/MarchRG10")
+@Reference(authors = "L. McInnes, J. Healy", //
+    title = "Accelerated Hierarchical Density Based Clustering", //
+    booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW)", //
+    url = "https://doi.org/10.1109/ICDMW.2017.12", //
+    bibkey = "DBLP:conf/icdm/McInnesH17")
+public class HDBSCANBoruvka<V extends NumberVector> extends AbstractHDBSCAN<V> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HDBSCANBoruvka.class);
+
+  /**
+   * Maximum leaf size of the k-d-tree.
+   */
+  protected int leafsize;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param minPts Minimum number of points for density
+   * @param leafsize Maximum leaf size of the k-d-tree
+   */
+  public HDBSCANBoruvka(SpatialPrimitiveDistance<? super V> distance, int minPts, int leafsize) {
+    super(distance, minPts);
+    this.leafsize = leafsize;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Relation<V> relation) {
+    final KNNSearcher<DBIDRef> knnQ = new QueryBuilder<>(relation, distance).kNNByDBID(minPts);
+    // We need array addressing later, and will reorder the array.
+    final ArrayModifiableDBIDs ids = DBIDUtil.newArray(relation.getDBIDs());
+
+    // 1. Compute the core distances
+    final WritableDoubleDataStore coredists = computeCoreDists(ids, knnQ, minPts);
+
+    // 2. Build spanning tree.
+    DoubleLongHeap heap = new DoubleLongMinHeap(Math.max(ids.size() - 1, 1));
+    new Instance(relation, ids, coredists).run(heap);
+
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distance.isSquared(), coredists);
+  }
+
+  /**
+   * Instance for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected class Instance {
+    /**
+     * Distance function.
+     */
+    protected SpatialPrimitiveDistance<? super V> distance;
+
+    /**
+     * Object ids, in tree order.
+     */
+    protected ArrayModifiableDBIDs ids;
+
+    /**
+     * Data vectors, in tree order.
+     */
+    protected V[] vecs;
+
+    /**
+     * Core distances, in tree order.
+     */
+    protected double[] core;
+
+    /**
+     * Component of each point.
+     */
+    protected int[] comp;
+
+    /**
+     * Best edge length of each component.
+     */
+    protected double[] cdist;
+
+    /**
+     * Best edge of each component.
+     */
+    protected int[] cfrom, cto;
+
+    /**
+     * Root of the k-d-tree.
+     */
+    protected KDNode root;
+
+    /**
+     * Number of distance computations.
+     */
+    protected long distcalcs;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object ids (will be reordered)
+     * @param coredists Core distances
+     */
+    @SuppressWarnings("unchecked")
+    protected Instance(Relation<V> relation, ArrayModifiableDBIDs ids, DoubleDataStore coredists) {
+      this.distance = (SpatialPrimitiveDistance<? super V>) HDBSCANBoruvka.this.distance;
+      this.ids = ids;
+      final int size = ids.size();
+      this.vecs = (V[]) new NumberVector[size];
+      this.core = new double[size];
+      this.comp = new int[size];
+      this.cdist = new double[size];
+      this.cfrom = new int[size];
+      this.cto = new int[size];
+      if(size > 0) {
+        root = buildTree(relation, ids.iter(), 0, size);
+      }
+      DBIDArrayIter it = ids.iter();
+      for(int i = 0; i < size; i++, it.advance()) {
+        vecs[i] = relation.get(it);
+        core[i] = coredists.doubleValue(it);
+        comp[i] = i;
+      }
+      if(root != null) {
+        updateNodes(root);
+      }
+    }
+
+    /**
+     * Build the k-d-tree using midpoint splitting.
+     *
+     * @param relation Data relation
+     * @param iter Iterator
+     * @param left Left subinterval
+     * @param right Right subinterval
+     * @return Root node
+     */
+    protected KDNode buildTree(Relation<V> relation, DBIDArrayIter iter, int left, int right) {
+      KDNode node = new KDNode(relation, iter, left, right);
+      if(right - left <= leafsize) {
+        return node;
+      }
+      int dim = 0;
+      for(int d = 1; d < node.min.length; d++) {
+        if(node.max[d] - node.min[d] > node.max[dim] - node.min[dim]) {
+          dim = d;
+        }
+      }
+      final double mid = 0.5 * (node.min[dim] + node.max[dim]);
+      int l = left, r = right - 1;
+      while(true) {
+        while(l <= r && relation.get(iter.seek(l)).doubleValue(dim) <= mid) {
+          ++l;
+        }
+        while(l <= r && relation.get(iter.seek(r)).doubleValue(dim) >= mid) {
+          --r;
+        }
+        if(l >= r) {
+          break;
+        }
+        ids.swap(l++, r--);
+      }
+      ++r;
+      if(r == right) { // Duplicate points!
+        return node;
+      }
+      node.leftChild = buildTree(relation, iter, left, r);
+      node.rightChild = buildTree(relation, iter, r, right);
+      return node;
+    }
+
+    /**
+     * Compute the minimum spanning tree.
+     *
+     * @param heap Output heap for the edges
+     */
+    protected void run(DoubleLongHeap heap) {
+      final int size = ids.size();
+      WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+      for(int i = 0; i < size; i++) {
+        uf.nextIndex(1);
+      }
+      Arrays.fill(cfrom, -1);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", size - 1, LOG) : null;
+      int edges = 0, rounds = 0;
+      while(edges < size - 1) {
+        ++rounds;
+        Arrays.fill(cdist, Double.POSITIVE_INFINITY);
+        resetBounds(root);
+        findComponentNeighbors(root, root);
+        // Add the best edge of each component.
+        int added = 0;
+        for(int c = 0; c < size; c++) {
+          final int i = cfrom[c], j = cto[c];
+          if(i < 0) {
+            continue;
+          }
+          cfrom[c] = -1;
+          if(uf.find(i) != uf.find(j)) {
+            uf.union(i, j);
+            heap.add(cdist[c], (((long) i) << 31) | j);
+            ++added;
+            LOG.incrementProcessed(prog);
+          }
+        }
+        if(added == 0) {
+          throw new IllegalStateException("No edges found in Boruvka round.");
+        }
+        edges += added;
+        for(int i = 0; i < size; i++) {
+          comp[i] = uf.find(i);
+        }
+        updateNodes(root);
+      }
+      LOG.ensureCompleted(prog);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(HDBSCANBoruvka.class.getName() + ".boruvka-rounds", rounds));
+        LOG.statistics(new LongStatistic(HDBSCANBoruvka.class.getName() + ".distance-computations", distcalcs));
+      }
+    }
+
+    /**
+     * Dual-tree search for the nearest other component of each component.
+     *
+     * @param q Query node
+     * @param r Reference node
+     */
+    protected void findComponentNeighbors(KDNode q, KDNode r) {
+      if(q.comp >= 0 && q.comp == r.comp) {
+        return; // Fully connected already.
+      }
+      if(lowerBound(q, r) > q.bound) {
+        return; // Cannot improve.
+      }
+      if(q.leftChild == null) {
+        if(r.leftChild == null) {
+          baseCase(q, r);
+          return;
+        }
+        descendReference(q, r);
+        return;
+      }
+      if(r.leftChild == null) {
+        findComponentNeighbors(q.leftChild, r);
+        findComponentNeighbors(q.rightChild, r);
+      }
+      else {
+        descendReference(q.leftChild, r);
+        descendReference(q.rightChild, r);
+      }
+      q.bound = Math.max(q.leftChild.bound, q.rightChild.bound);
+    }
+
+    /**
+     * Descend into the children of the reference node, closer child first.
+     *
+     * @param q Query node
+     * @param r Reference node (not a leaf)
+     */
+    private void descendReference(KDNode q, KDNode r) {
+      if(lowerBound(q, r.leftChild) <= lowerBound(q, r.rightChild)) {
+        findComponentNeighbors(q, r.leftChild);
+        findComponentNeighbors(q, r.rightChild);
+      }
+      else {
+        findComponentNeighbors(q, r.rightChild);
+        findComponentNeighbors(q, r.leftChild);
+      }
+    }
+
+    /**
+     * Compare all points of two leaf nodes.
+     *
+     * @param q Query leaf
+     * @param r Reference leaf
+     */
+    protected void baseCase(KDNode q, KDNode r) {
+      double bound = 0.;
+      for(int i = q.start; i < q.end; i++) {
+        final int ci = comp[i];
+        final double corei = core[i];
+        if(Math.max(corei, r.minCore) <= cdist[ci]) {
+          final V vi = vecs[i];
+          for(int j = r.start; j < r.end; j++) {
+            if(comp[j] == ci) {
+              continue;
+            }
+            double d = Math.max(corei, core[j]);
+            if(d > cdist[ci]) {
+              continue;
+            }
+            d = Math.max(d, distance.distance(vi, vecs[j]));
+            ++distcalcs;
+            // Also accept infinite distances, if there is no other edge.
+            if(d < cdist[ci] || cfrom[ci] < 0) {
+              cdist[ci] = d;
+              cfrom[ci] = i;
+              cto[ci] = j;
+            }
+          }
+        }
+        bound = Math.max(bound, cdist[ci]);
+      }
+      q.bound = bound;
+    }
+
+    /**
+     * Lower bound of the mutual reachability distance of two nodes.
+     *
+     * @param q First node
+     * @param r Second node
+     * @return Lower bound
+     */
+    protected double lowerBound(KDNode q, KDNode r) {
+      return Math.max(Math.max(q.minCore, r.minCore), distance.minDist(q, r));
+    }
+
+    /**
+     * Reset the pruning bounds of all nodes.
+     *
+     * @param node Current node
+     */
+    private void resetBounds(KDNode node) {
+      node.bound = Double.POSITIVE_INFINITY;
+      if(node.leftChild != null) {
+        resetBounds(node.leftChild);
+        resetBounds(node.rightChild);
+      }
+    }
+
+    /**
+     * Update the components and minimum core distances of the nodes.
+     *
+     * @param node Current node
+     */
+    private void updateNodes(KDNode node) {
+      if(node.leftChild == null) {
+        int c = comp[node.start];
+        double minCore = core[node.start];
+        for(int i = node.start + 1; i < node.end; i++) {
+          c = comp[i] == c ? c : -1;
+          minCore = Math.min(minCore, core[i]);
+        }
+        node.comp = c;
+        node.minCore = minCore;
+        return;
+      }
+      updateNodes(node.leftChild);
+      updateNodes(node.rightChild);
+      node.comp = node.leftChild.comp == node.rightChild.comp ? node.leftChild.comp : -1;
+      node.minCore = Math.min(node.leftChild.minCore, node.rightChild.minCore);
+    }
+  }
+
+  /**
+   * Node of the k-d-tree used internally.
+   *
+   * @author Erich Schubert
+   */
+  protected static class KDNode implements SpatialComparable {
+    /**
+     * Bounding box.
+     */
+    double[] min, max;
+
+    /**
+     * Left child node
+     */
+    KDNode leftChild;
+
+    /**
+     * Right child node
+     */
+    KDNode rightChild;
+
+    /**
+     * First index of child nodes.
+     */
+    int start;
+
+    /**
+     * End index of child nodes (exclusive).
+     */
+    int end;
+
+    /**
+     * Component of all points in this node, -1 if mixed.
+     */
+    int comp = -1;
+
+    /**
+     * Minimum core distance in this node.
+     */
+    double minCore;
+
+    /**
+     * Upper bound of the best edge lengths of the contained components.
+     */
+    double bound = Double.POSITIVE_INFINITY;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data
+     * @param iter Iterator on the sorted ids.
+     * @param start First index
+     * @param end Last index (exclusive)
+     */
+    public KDNode(Relation<? extends NumberVector> relation, DBIDArrayIter iter, int start, int end) {
+      this.start = start;
+      this.end = end;
+      iter.seek(start);
+      double[] min = relation.get(iter).toArray(), max = min.clone();
+      final int dim = min.length;
+      for(iter.advance(); iter.getOffset() < end; iter.advance()) {
+        NumberVector currentVector = relation.get(iter);
+        for(int i = 0; i < dim; i++) {
+          double v = currentVector.doubleValue(i);
+          if(v > max[i]) {
+            max[i] = v;
+          }
+          else if(v < min[i]) {
+            min[i] = v;
+          }
+        }
+      }
+      this.min = min;
+      this.max = max;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return min.length;
+    }
+
+    @Override
+    public double getMin(int dimension) {
+      return min[dimension];
+    }
+
+    @Override
+    public double getMax(int dimension) {
+      return max[dimension];
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends AbstractHDBSCAN.Par<V> {
+    /**
+     * Option ID for the leaf size.
+     */
+    public static final OptionID LEAFSIZE_ID = new OptionID("hdbscan.kdtree.leafsize", "Leaf size of the k-d-tree.");
+
+    /**
+     * Desired leaf size.
+     */
+    protected int leafsize;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<SpatialPrimitiveDistance<? super V>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, SpatialPrimitiveDistance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      // minPts = 1 yields single-linkage clustering
+      new IntParameter(MIN_PTS_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> minPts = x);
+      new IntParameter(LEAFSIZE_ID, 20) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> leafsize = x);
+    }
+
+    @Override
+    public HDBSCANBoruvka<V> make() {
+      return new HDBSCANBoruvka<>((SpatialPrimitiveDistance<? super V>) distance, minPts, leafsize);
+    }
+  }
+}
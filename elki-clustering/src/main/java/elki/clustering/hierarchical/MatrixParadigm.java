@@ -20,11 +20,16 @@
  */
 package elki.clustering.hierarchical;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.query.distance.DistanceQuery;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.exceptions.AbortException;
 
 /**
@@ -37,11 +42,30 @@ import elki.utilities.exceptions.AbortException;
  * <p>
  * While this will usually store (merge-) distances when clustering, it can
  * store arbitrary doubles.
+ * <p>
+ * Rows can optionally be processed in parallel. Because the rows of the
+ * triangular matrix have different lengths, rows are then processed in pairs
+ * of a short and a long row, such that all work units have the same cost.
+ * <p>
+ * The matrix is always stored with double precision in a single Java array.
+ * A float or memory-mapped storage is not provided: single precision changes
+ * the tie handling and the merge heights, and the Java array size limit stays
+ * the same, so it would not allow larger data sets.
  *
  * @author Erich Schubert
  * @since 0.7.5
  */
 public class MatrixParadigm {
+  /**
+   * Minimum number of matrix cells per parallel work block.
+   */
+  public static final int MIN_BLOCKCELLS = 1 << 16;
+
+  /**
+   * Object ids, in matrix order.
+   */
+  private final ArrayDBIDs ids;
+
   /**
    * Two iterators to reference to objects.
    */
@@ -69,12 +93,21 @@ public class MatrixParadigm {
           0x10000 // = 65535
           + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
     }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-    ix = aids.iter();
-    iy = aids.iter();
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
     matrix = new double[triangleSize(size)];
   }
 
+  /**
+   * Get the object ids, in matrix order.
+   *
+   * @return Object ids
+   */
+  public ArrayDBIDs getDBIDs() {
+    return ids;
+  }
+
   /**
    * Compute the size of a complete x by x triangle (minus diagonal)
    *
@@ -118,4 +151,59 @@ public class MatrixParadigm {
     }
     return this;
   }
+
+  /**
+   * Process the first {@code end} rows of the triangular matrix, optionally in
+   * parallel.
+   * <p>
+   * Each row is processed exactly once. Serially, a single processor sees all
+   * rows in order. In parallel, every block of rows gets its own processor
+   * from the factory, and sees its rows in no particular order. A processor
+   * must only write to its own row (or to its own state).
+   *
+   * @param end Number of rows to process
+   * @param parallel Process blocks of rows in parallel
+   * @param factory Factory for row processors
+   * @param <T> Processor type
+   * @return Processors used, in block order
+   */
+  public <T extends RowProcessor> List<T> processRows(int end, boolean parallel, Supplier<T> factory) {
+    if(!parallel) {
+      final T proc = factory.get();
+      final DBIDArrayIter bx = ids.iter(), by = ids.iter();
+      for(int i = 0; i < end; i++) {
+        proc.processRow(bx.seek(i), by.seek(0));
+      }
+      return Collections.singletonList(proc);
+    }
+    final int half = (end + 1) >>> 1;
+    return ParallelExecutor.run(half, Math.max(1, MIN_BLOCKCELLS / Math.max(1, end)), (start, stop) -> {
+      final T proc = factory.get();
+      final DBIDArrayIter bx = ids.iter(), by = ids.iter();
+      for(int i = start; i < stop; i++) {
+        proc.processRow(bx.seek(i), by.seek(0));
+        final int j = end - 1 - i;
+        if(j != i) {
+          proc.processRow(bx.seek(j), by.seek(0));
+        }
+      }
+      return proc;
+    });
+  }
+
+  /**
+   * Processor for a single row of the triangular matrix.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface RowProcessor {
+    /**
+     * Process the row of {@code ix}, i.e., all columns before it.
+     *
+     * @param ix Row object
+     * @param iy Column iterator, positioned at the first column
+     */
+    void processRow(DBIDArrayIter ix, DBIDArrayIter iy);
+  }
 }
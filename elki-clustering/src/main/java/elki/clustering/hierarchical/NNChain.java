@@ -45,6 +45,9 @@ import elki.utilities.documentation.Reference;
  * D. Müllner<br>
  * Modern hierarchical, agglomerative clustering algorithms<br>
  * arXiv preprint arXiv:1109.2378
+ * <p>
+ * Optionally, the initial distance matrix is computed in parallel; the chain
+ * itself is inherently sequential.
  *
  * @author Erich Schubert
  * @since 0.7.5
@@ -76,6 +79,17 @@ public class NNChain<O> extends AGNES<O> {
     super(distance, linkage);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param linkage Linkage method
+   * @param parallel Compute the distance matrix in parallel
+   */
+  public NNChain(Distance<? super O> distance, Linkage linkage, boolean parallel) {
+    super(distance, linkage, parallel);
+  }
+
   @Override
   public PointerHierarchyRepresentationResult run(Relation<O> relation) {
     if(SingleLinkage.class.isInstance(linkage)) {
@@ -86,7 +100,7 @@ public class NNChain<O> extends AGNES<O> {
     MatrixParadigm mat = new MatrixParadigm(ids);
 
     // Compute the initial (lower triangular) distance matrix.
-    initializeDistanceMatrix(mat, dq, linkage);
+    initializeDistanceMatrix(mat, distanceQueries(relation, dq), linkage, parallel);
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistance().isSquared());
@@ -212,7 +226,7 @@ public class NNChain<O> extends AGNES<O> {
   public static class Par<O> extends AGNES.Par<O> {
     @Override
     public NNChain<O> make() {
-      return new NNChain<>(distance, linkage);
+      return new NNChain<>(distance, linkage, parallel);
     }
   }
 }
@@ -0,0 +1,535 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import elki.clustering.hierarchical.linkage.WardLinkage;
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.utilities.datastructures.QuickSelect;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * NNChain for Ward linkage without a distance matrix.
+ * <p>
+ * Instead of maintaining the O(n²) matrix with Lance-Williams updates, each
+ * cluster is represented by its centroid and weight, and the Ward distance
+ * \(\tfrac{|A|\cdot|B|}{|A|+|B|} ||\mu_A-\mu_B||^2\) is computed directly.
+ * Nearest neighbors for the chain are found with a k-d-tree over the cluster
+ * centroids: merged clusters are removed from the tree, and the bounding boxes
+ * are extended when a centroid moves. The tree is rebuilt when half of the
+ * clusters have been merged. Each node also stores a lower bound of the
+ * cluster weights, which gives a lower bound on the Ward distance.
+ * <p>
+ * This needs only memory linear in the data size, and produces the same
+ * hierarchy as {@link NNChain} with {@link WardLinkage} and squared Euclidean
+ * distance (up to numerical precision and the resolution of ties).
+ * <p>
+ * Only Ward linkage is supported: centroid and median linkage are not
+ * reducible, so the nearest-neighbor chain would produce incorrect results.
+ * <p>
+ * References:
+ * <p>
+ * F. Murtagh<br>
+ * A survey of recent advances in hierarchical clustering algorithms<br>
+ * The Computer Journal 26(4)
+ * <p>
+ * D. Müllner<br>
+ * Modern hierarchical, agglomerative clustering algorithms<br>
+ * arXiv preprint arXiv:1109.2378
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "F. Murtagh", //
+    title = "A survey of recent advances in hierarchical clustering algorithms", //
+    booktitle = "The Computer Journal 26(4)", //
+    url = "https://doi.org/10.1093/comjnl/26.4.354", //
+    bibkey = "DBLP:journals/cj/Murtagh83")
+@Reference(authors = "D. Müllner", //
+    title = "Modern hierarchical, agglomerative clustering algorithms", //
+    booktitle = "arXiv preprint arXiv:1109.2378", //
+    url = "https://arxiv.org/abs/1109.2378", //
+    bibkey = "DBLP:journals/corr/abs-1109-2378")
+public class WardNNChainLinearMemory<V extends NumberVector> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(WardNNChainLinearMemory.class);
+
+  /**
+   * Maximum leaf size of the k-d-tree.
+   */
+  protected int leafsize;
+
+  /**
+   * Constructor.
+   *
+   * @param leafsize Maximum leaf size of the k-d-tree
+   */
+  public WardNNChainLinearMemory(int leafsize) {
+    super();
+    this.leafsize = leafsize;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult run(Relation<V> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, true);
+    if(ids.size() > 1) {
+      new Instance(relation, ids).run(builder);
+    }
+    return builder.complete();
+  }
+
+  /**
+   * Instance for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance implements QuickSelect.Adapter<int[]> {
+    /**
+     * Object ids.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Cluster centroids, indexed by the cluster representative.
+     */
+    double[][] centroid;
+
+    /**
+     * Cluster weights, zero for clusters merged into another.
+     */
+    int[] weight;
+
+    /**
+     * Number of remaining clusters.
+     */
+    int active;
+
+    /**
+     * Permutation of clusters in the k-d-tree.
+     */
+    int[] perm;
+
+    /**
+     * Leaf node of each cluster.
+     */
+    KDNode[] leafOf;
+
+    /**
+     * Root of the k-d-tree.
+     */
+    KDNode root;
+
+    /**
+     * Number of clusters when the tree was built.
+     */
+    int treesize;
+
+    /**
+     * Current split dimension, for QuickSelect.
+     */
+    int splitdim;
+
+    /**
+     * Best distance of the last nearest-neighbor search.
+     */
+    double bestd;
+
+    /**
+     * Best cluster of the last nearest-neighbor search.
+     */
+    int besti;
+
+    /**
+     * Number of distance computations.
+     */
+    long distcalcs;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     */
+    Instance(Relation<? extends NumberVector> relation, ArrayDBIDs ids) {
+      final int size = ids.size();
+      this.ids = ids;
+      centroid = new double[size][];
+      weight = new int[size];
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        centroid[it.getOffset()] = relation.get(it).toArray();
+        weight[it.getOffset()] = 1;
+      }
+      active = size;
+      perm = new int[size];
+      leafOf = new KDNode[size];
+      rebuild();
+    }
+
+    /**
+     * Run the NN-chain algorithm.
+     *
+     * @param builder Hierarchy builder
+     */
+    void run(PointerHierarchyRepresentationBuilder builder) {
+      final int size = ids.size();
+      final DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      int[] chain = new int[size];
+      int clen = 0, next = 0;
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Running NNChain", size - 1, LOG) : null;
+      for(int k = 1; k < size; k++) {
+        if(clen == 0) {
+          while(weight[next] == 0) {
+            ++next;
+          }
+          chain[clen++] = next;
+        }
+        // Extend the chain until we find reciprocal nearest neighbors:
+        while(true) {
+          final int a = chain[clen - 1], b = clen > 1 ? chain[clen - 2] : -1;
+          nearestNeighbor(a, b);
+          if(besti == b) {
+            break;
+          }
+          chain[clen++] = besti;
+        }
+        clen -= 2;
+        // We always merge the larger into the smaller index:
+        final int a = chain[clen], b = chain[clen + 1];
+        final int x = a > b ? a : b, y = a > b ? b : a;
+        builder.add(ix.seek(x), WardLinkage.STATIC.restore(bestd, true), iy.seek(y));
+        merge(x, y);
+        LOG.incrementProcessed(progress);
+      }
+      LOG.ensureCompleted(progress);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(WardNNChainLinearMemory.class.getName() + ".distance-computations", distcalcs));
+      }
+    }
+
+    /**
+     * Merge cluster x into cluster y.
+     *
+     * @param x Cluster to remove
+     * @param y Cluster to keep
+     */
+    void merge(int x, int y) {
+      final double[] cx = centroid[x], cy = centroid[y];
+      final int wx = weight[x], wy = weight[y], w = wx + wy;
+      for(int d = 0; d < cy.length; d++) {
+        cy[d] = (wx * cx[d] + wy * cy[d]) / w;
+      }
+      weight[y] = w;
+      weight[x] = 0;
+      centroid[x] = null;
+      --active;
+      for(KDNode n = leafOf[x]; n != null; n = n.parent) {
+        n.count--;
+      }
+      // Extend the bounding boxes for the moved centroid:
+      for(KDNode n = leafOf[y]; n != null; n = n.parent) {
+        for(int d = 0; d < cy.length; d++) {
+          final double v = cy[d];
+          n.min[d] = v < n.min[d] ? v : n.min[d];
+          n.max[d] = v > n.max[d] ? v : n.max[d];
+        }
+      }
+      if(active > leafsize && active < (treesize >>> 1)) {
+        rebuild();
+      }
+    }
+
+    /**
+     * Rebuild the k-d-tree over the remaining clusters.
+     */
+    void rebuild() {
+      int n = 0;
+      for(int i = 0; i < weight.length; i++) {
+        if(weight[i] > 0) {
+          perm[n++] = i;
+        }
+      }
+      assert n == active;
+      treesize = n;
+      root = build(0, n, null);
+    }
+
+    /**
+     * Build a k-d-tree node.
+     *
+     * @param start Start of interval
+     * @param end End of interval (exclusive)
+     * @param parent Parent node
+     * @return Node
+     */
+    KDNode build(int start, int end, KDNode parent) {
+      KDNode node = new KDNode(start, end, parent);
+      final double[] min = node.min = centroid[perm[start]].clone(), max = node.max = min.clone();
+      int minw = Integer.MAX_VALUE;
+      for(int i = start; i < end; i++) {
+        final double[] c = centroid[perm[i]];
+        for(int d = 0; d < c.length; d++) {
+          final double v = c[d];
+          min[d] = v < min[d] ? v : min[d];
+          max[d] = v > max[d] ? v : max[d];
+        }
+        minw = Math.min(minw, weight[perm[i]]);
+      }
+      node.minw = minw;
+      // Find the widest dimension:
+      int dim = 0;
+      double width = max[0] - min[0];
+      for(int d = 1; d < min.length; d++) {
+        final double w = max[d] - min[d];
+        if(w > width) {
+          width = w;
+          dim = d;
+        }
+      }
+      if(end - start <= leafsize || width <= 0) {
+        for(int i = start; i < end; i++) {
+          leafOf[perm[i]] = node;
+        }
+        return node;
+      }
+      final int mid = (start + end) >>> 1;
+      splitdim = dim;
+      QuickSelect.quickSelect(perm, this, start, end, mid);
+      node.left = build(start, mid, node);
+      node.right = build(mid, end, node);
+      return node;
+    }
+
+    /**
+     * Find the nearest neighbor of a cluster. On ties, the previous chain
+     * element is preferred, then the smallest index.
+     * <p>
+     * The result is stored in {@link #bestd} and {@link #besti}.
+     *
+     * @param a Query cluster
+     * @param pref Preferred cluster on ties (previous chain element), or -1
+     */
+    void nearestNeighbor(int a, int pref) {
+      bestd = pref >= 0 ? ward(a, pref) : Double.POSITIVE_INFINITY;
+      besti = pref;
+      search(root, a, pref, lowerBound(root, a));
+    }
+
+    /**
+     * Recursive nearest-neighbor search.
+     *
+     * @param node Current node
+     * @param a Query cluster
+     * @param pref Preferred cluster on ties
+     * @param lb Lower bound of the node
+     */
+    void search(KDNode node, int a, int pref, double lb) {
+      if(node.count == 0 || lb > bestd) {
+        return;
+      }
+      if(node.left == null) {
+        for(int i = node.start; i < node.end; i++) {
+          final int c = perm[i];
+          if(c == a || c == pref || weight[c] == 0) {
+            continue;
+          }
+          final double d = ward(a, c);
+          if(d < bestd || d == bestd && besti != pref && c < besti) {
+            bestd = d;
+            besti = c;
+          }
+        }
+        return;
+      }
+      final double lbl = lowerBound(node.left, a), lbr = lowerBound(node.right, a);
+      if(lbl <= lbr) {
+        search(node.left, a, pref, lbl);
+        search(node.right, a, pref, lbr);
+      }
+      else {
+        search(node.right, a, pref, lbr);
+        search(node.left, a, pref, lbl);
+      }
+    }
+
+    /**
+     * Lower bound of the Ward distance to any cluster in a node.
+     *
+     * @param node Node
+     * @param a Query cluster
+     * @return Lower bound
+     */
+    double lowerBound(KDNode node, int a) {
+      final double[] c = centroid[a], min = node.min, max = node.max;
+      double sum = 0;
+      for(int d = 0; d < c.length; d++) {
+        final double v = c[d];
+        final double delta = v < min[d] ? min[d] - v : v > max[d] ? v - max[d] : 0;
+        sum += delta * delta;
+      }
+      final double wa = weight[a], wb = node.minw;
+      return wa * wb / (wa + wb) * sum;
+    }
+
+    /**
+     * Ward distance of two clusters, in the Lance-Williams scale of
+     * {@link WardLinkage}.
+     *
+     * @param a First cluster
+     * @param b Second cluster
+     * @return Distance
+     */
+    double ward(int a, int b) {
+      ++distcalcs;
+      final double[] ca = centroid[a], cb = centroid[b];
+      double sum = 0;
+      for(int d = 0; d < ca.length; d++) {
+        final double delta = ca[d] - cb[d];
+        sum += delta * delta;
+      }
+      final double wa = weight[a], wb = weight[b];
+      return wa * wb / (wa + wb) * sum;
+    }
+
+    @Override
+    public void swap(int[] data, int i, int j) {
+      final int tmp = data[i];
+      data[i] = data[j];
+      data[j] = tmp;
+    }
+
+    @Override
+    public int compare(int[] data, int i, int j) {
+      return Double.compare(centroid[data[i]][splitdim], centroid[data[j]][splitdim]);
+    }
+  }
+
+  /**
+   * Node of the k-d-tree over cluster centroids.
+   *
+   * @author Erich Schubert
+   */
+  private static class KDNode {
+    /**
+     * Bounding box of the centroids (may be larger than necessary).
+     */
+    double[] min, max;
+
+    /**
+     * Parent node.
+     */
+    KDNode parent;
+
+    /**
+     * Child nodes, {@code null} for leaves.
+     */
+    KDNode left, right;
+
+    /**
+     * Interval in the permutation array.
+     */
+    int start, end;
+
+    /**
+     * Number of remaining clusters in this node.
+     */
+    int count;
+
+    /**
+     * Lower bound of the cluster weights (weights only grow).
+     */
+    int minw;
+
+    /**
+     * Constructor.
+     *
+     * @param start Start of interval
+     * @param end End of interval (exclusive)
+     * @param parent Parent node
+     */
+    KDNode(int start, int end, KDNode parent) {
+      this.start = start;
+      this.end = end;
+      this.count = end - start;
+      this.parent = parent;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Option ID for the leaf size.
+     */
+    public static final OptionID LEAFSIZE_ID = new OptionID("nnchain.kdtree.leafsize", "Leaf size of the k-d-tree.");
+
+    /**
+     * Desired leaf size.
+     */
+    protected int leafsize;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(LEAFSIZE_ID, 20) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> leafsize = x);
+    }
+
+    @Override
+    public WardNNChainLinearMemory<V> make() {
+      return new WardNNChainLinearMemory<>(leafsize);
+    }
+  }
+}
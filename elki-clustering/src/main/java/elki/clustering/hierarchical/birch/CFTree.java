@@ -22,13 +22,18 @@ package elki.clustering.hierarchical.birch;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import elki.data.NumberVector;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.relation.Relation;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.datastructures.iterator.Iter;
 import elki.utilities.documentation.Reference;
 import elki.utilities.io.FormatUtil;
@@ -57,6 +62,18 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * Condensing and merging refinement are possible, and improvements to this code
  * are welcome - please send a pull request!
  * <p>
+ * The data can be split into multiple partitions, which are summarized
+ * independently (and in parallel), then merged by inserting the leaf entries
+ * of the partition trees into the first tree. Because clustering features are
+ * additive, this yields a valid CF-tree of the entire data. Each partition
+ * tree is limited to its share of the maximum number of leaves, so the merged
+ * tree usually does not need to be compacted again.
+ * <p>
+ * Storing the tree to disk and resuming from it, or building the tree from an
+ * unbounded stream are not supported: the BIRCH clustering algorithms assign
+ * every object of the relation to its leaf at the end, and hence need the
+ * entire relation.
+ * <p>
  * References:
  * <p>
  * T. Zhang, R. Ramakrishnan, M. Livny<br>
@@ -166,7 +183,6 @@ public class CFTree {
    * Rebuild the CFTree to condense it to approximately half the size.
    */
   protected void rebuildTree() {
-    final int dim = root.getDimensionality();
     double t = estimateThreshold(root) / leaves;
     t *= t;
     // Never decrease the threshold.
@@ -175,23 +191,35 @@ public class CFTree {
 
     LeafIterator iter = new LeafIterator(root); // Will keep the old root.
     assert (iter.valid());
-    ClusteringFeature first = iter.get();
-
     leaves = 0;
-    // Make a new root node:
-    root = new TreeNode(dim, capacity);
-    root.children[0] = first;
-    root.addToStatistics(first);
-    ++leaves;
-    for(iter.advance(); iter.valid(); iter.advance()) {
-      TreeNode other = insert(root, iter.get());
-      // Handle root overflow:
-      if(other != null) {
-        TreeNode newnode = new TreeNode(dim, capacity);
-        newnode.addToStatistics(newnode.children[0] = root);
-        newnode.addToStatistics(newnode.children[1] = other);
-        root = newnode;
-      }
+    root = null;
+    for(; iter.valid(); iter.advance()) {
+      insert(iter.get());
+    }
+  }
+
+  /**
+   * Insert a leaf entry (e.g., of another tree) into the tree.
+   *
+   * @param leaf Leaf clustering feature
+   */
+  protected void insert(ClusteringFeature leaf) {
+    final int dim = leaf.getDimensionality();
+    // No root created yet:
+    if(root == null) {
+      root = new TreeNode(dim, capacity);
+      root.children[0] = leaf;
+      root.addToStatistics(leaf);
+      ++leaves;
+      return;
+    }
+    TreeNode other = insert(root, leaf);
+    // Handle root overflow:
+    if(other != null) {
+      TreeNode newnode = new TreeNode(dim, capacity);
+      newnode.addToStatistics(newnode.children[0] = root);
+      newnode.addToStatistics(newnode.children[1] = other);
+      root = newnode;
     }
   }
 
@@ -623,6 +651,11 @@ public class CFTree {
      */
     double maxleaves;
 
+    /**
+     * Number of data partitions to summarize independently.
+     */
+    int partitions = 1;
+
     /**
      * Constructor.
      *
@@ -633,11 +666,26 @@ public class CFTree {
      * @param maxleaves Maximum number of leaves
      */
     public Factory(BIRCHDistance distance, BIRCHAbsorptionCriterion absorption, double threshold, int branchingFactor, double maxleaves) {
+      this(distance, absorption, threshold, branchingFactor, maxleaves, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     * @param absorption Absorption criterion (diameter, distance).
+     * @param threshold Distance threshold
+     * @param branchingFactor Maximum branching factor.
+     * @param maxleaves Maximum number of leaves
+     * @param partitions Number of partitions to summarize in parallel
+     */
+    public Factory(BIRCHDistance distance, BIRCHAbsorptionCriterion absorption, double threshold, int branchingFactor, double maxleaves, int partitions) {
       this.distance = distance;
       this.absorption = absorption;
       this.threshold = threshold;
       this.branchingFactor = branchingFactor;
       this.maxleaves = maxleaves;
+      this.partitions = partitions;
     }
 
     /**
@@ -648,23 +696,76 @@ public class CFTree {
      * @return New tree
      */
     public CFTree newTree(DBIDs ids, Relation<? extends NumberVector> relation) {
-      CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
       final double max = maxleaves <= 1 ? maxleaves * ids.size() : maxleaves;
       FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building tree", relation.size(), LOG) : null;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        tree.insert(relation.get(it));
-        if(tree.leaves > max) {
-          if(LOG.isVerbose()) {
-            LOG.verbose("Compacting CF-tree.");
-          }
-          tree.rebuildTree();
+      if(partitions <= 1) {
+        CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
+        for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+          tree.insert(relation.get(it));
+          compactIfNeeded(tree, max);
+          LOG.incrementProcessed(prog);
         }
-        LOG.incrementProcessed(prog);
+        LOG.ensureCompleted(prog);
+        return tree;
       }
+      // Summarize each partition independently, in parallel.
+      final ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+      final int size = aids.size(), psize = (size + partitions - 1) / partitions;
+      // Each partition gets its share of the leaves, to avoid rebuilds when
+      // merging the trees. But allow at least one leaf per partition, or we
+      // would rebuild the tree on every insertion.
+      final double pmax = Math.max(1., max / partitions);
+      List<List<CFTree>> blocks = ParallelExecutor.run(partitions, 1, (start, end) -> {
+        List<CFTree> trees = new ArrayList<>(end - start);
+        DBIDArrayIter it = aids.iter();
+        for(int p = start; p < end; p++) {
+          CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
+          for(it.seek(p * psize); it.valid() && it.getOffset() < (p + 1) * psize; it.advance()) {
+            tree.insert(relation.get(it));
+            compactIfNeeded(tree, pmax);
+            LOG.incrementProcessed(prog);
+          }
+          if(tree.root != null) {
+            trees.add(tree);
+          }
+        }
+        return trees;
+      });
       LOG.ensureCompleted(prog);
+      // Merge the partition trees, in order.
+      CFTree tree = null;
+      for(List<CFTree> block : blocks) {
+        for(CFTree other : block) {
+          if(tree == null) {
+            tree = other;
+            continue;
+          }
+          // Never decrease the threshold.
+          tree.thresholdsq = Math.max(tree.thresholdsq, other.thresholdsq);
+          for(LeafIterator iter = other.leafIterator(); iter.valid(); iter.advance()) {
+            tree.insert(iter.get());
+            compactIfNeeded(tree, max);
+          }
+        }
+      }
       return tree;
     }
 
+    /**
+     * Compact the tree, if it has too many leaves.
+     *
+     * @param tree Tree
+     * @param max Maximum number of leaves
+     */
+    private static void compactIfNeeded(CFTree tree, double max) {
+      if(tree.leaves > max) {
+        if(LOG.isVerbose()) {
+          LOG.verbose("Compacting CF-tree.");
+        }
+        tree.rebuildTree();
+      }
+    }
+
     /**
      * Parameterization class for CFTrees.
      *
@@ -696,6 +797,11 @@ public class CFTree {
        */
       public static final OptionID MAXLEAVES_ID = new OptionID("cftree.maxleaves", "Maximum number of leaves (if less than 1, the values is assumed to be relative)");
 
+      /**
+       * Number of partitions.
+       */
+      public static final OptionID PARTITIONS_ID = new OptionID("cftree.partitions", "Number of data partitions to summarize independently and in parallel, before merging the trees.");
+
       /**
        * BIRCH distance function to use
        */
@@ -721,6 +827,11 @@ public class CFTree {
        */
       double maxleaves;
 
+      /**
+       * Number of data partitions.
+       */
+      int partitions = 1;
+
       @Override
       public void configure(Parameterization config) {
         new ObjectParameter<BIRCHDistance>(DISTANCE_ID, BIRCHDistance.class, VarianceIncreaseDistance.class) //
@@ -739,11 +850,15 @@ public class CFTree {
             .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
             .setDefaultValue(0.05) //
             .grab(config, x -> maxleaves = x);
+        new IntParameter(PARTITIONS_ID) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .setDefaultValue(1) //
+            .grab(config, x -> partitions = x);
       }
 
       @Override
       public CFTree.Factory make() {
-        return new CFTree.Factory(distance, absorption, threshold, branchingFactor, maxleaves);
+        return new CFTree.Factory(distance, absorption, threshold, branchingFactor, maxleaves, partitions);
       }
     }
   }
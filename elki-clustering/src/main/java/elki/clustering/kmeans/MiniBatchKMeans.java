@@ -0,0 +1,400 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.datasource.bundle.BundleMeta;
+import elki.datasource.bundle.BundleStreamSource;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Mini-batch k-means, which updates the centers with small random batches of
+ * the data, using a per-center learning rate that decreases with the number of
+ * points assigned to the center so far.
+ * <p>
+ * The batches are sampled from the relation, and a final assignment pass over
+ * the relation produces the clustering; optionally, this can be followed by a
+ * few iterations of the standard (Lloyd) algorithm for refinement.
+ * <p>
+ * With {@link #processStream}, the centers can also be estimated in a single
+ * pass over a {@link BundleStreamSource} that does not fit into memory: the
+ * first batch is materialized to run the initialization method, all further
+ * objects are processed in consecutive batches.
+ * <p>
+ * Reference:
+ * <p>
+ * D. Sculley<br>
+ * Web-scale k-means clustering<br>
+ * Proc. 19th Int. Conf. on World Wide Web (WWW 2010)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @navassoc - - - KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "D. Sculley", //
+    title = "Web-scale k-means clustering", //
+    booktitle = "Proc. 19th Int. Conf. on World Wide Web (WWW 2010)", //
+    url = "https://doi.org/10.1145/1772690.1772862", //
+    bibkey = "DBLP:conf/www/Sculley10")
+public class MiniBatchKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(MiniBatchKMeans.class);
+
+  /**
+   * Batch size.
+   */
+  protected int batchsize;
+
+  /**
+   * Number of batches.
+   */
+  protected int batches;
+
+  /**
+   * Random generator for sampling the batches.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param refine Number of final Lloyd refinement iterations
+   * @param initializer Initialization method
+   * @param batchsize Batch size
+   * @param batches Number of batches
+   * @param rnd Random generator for sampling the batches
+   */
+  public MiniBatchKMeans(NumberVectorDistance<? super V> distance, int k, int refine, KMeansInitialization initializer, int batchsize, int batches, RandomFactory rnd) {
+    // The first iteration is the final assignment.
+    super(distance, k, refine + 1, initializer);
+    this.batchsize = batchsize;
+    this.batches = batches;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    instance.runMiniBatches(distance, batchsize, batches, rnd.getSingleThreadedRandom());
+    instance.run(maxiter);
+    return instance.buildResult();
+  }
+
+  /**
+   * Estimate the cluster centers in a single pass over a data stream.
+   * <p>
+   * Only the first batch is kept in memory for the initialization.
+   *
+   * @param source Data source
+   * @return Cluster centers
+   */
+  public double[][] processStream(BundleStreamSource source) {
+    List<NumberVector> batch = new ArrayList<>(batchsize);
+    BatchState state = null;
+    SimpleTypeInformation<?> type = null;
+    int col = -1;
+    long count = 0;
+    for(BundleStreamSource.Event ev = source.nextEvent(); ev != BundleStreamSource.Event.END_OF_STREAM; ev = source.nextEvent()) {
+      if(ev == BundleStreamSource.Event.META_CHANGED) {
+        BundleMeta meta = source.getMeta();
+        col = -1;
+        for(int i = 0; i < meta.size(); i++) {
+          if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+            col = i;
+            type = meta.get(i);
+            break;
+          }
+        }
+        continue;
+      }
+      if(col < 0) {
+        throw new AbortException("No number vector field in data stream.");
+      }
+      batch.add((NumberVector) source.data(col));
+      ++count;
+      if(batch.size() < batchsize) {
+        continue;
+      }
+      if(state == null) {
+        state = new BatchState(initialMeans(batch, type), distance);
+      }
+      state.update(batch);
+      batch.clear();
+    }
+    if(!batch.isEmpty()) {
+      state = state != null ? state : new BatchState(initialMeans(batch, type), distance);
+      state.update(batch);
+    }
+    if(state == null) {
+      throw new AbortException("Data stream was empty.");
+    }
+    LOG.statistics(new LongStatistic(getClass().getName() + ".objects", count));
+    return state.means;
+  }
+
+  /**
+   * Run the initialization on the first batch of a stream.
+   *
+   * @param batch First batch
+   * @param type Vector type
+   * @return Initial means
+   */
+  @SuppressWarnings("unchecked")
+  private double[][] initialMeans(List<NumberVector> batch, SimpleTypeInformation<?> type) {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(batch.size());
+    MaterializedRelation<V> sample = new MaterializedRelation<>("first batch", (SimpleTypeInformation<V>) type, ids);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      sample.insert(it, (V) batch.get(i));
+    }
+    return initialMeans(sample);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * State of the mini-batch updates.
+   *
+   * @author Erich Schubert
+   */
+  private static class BatchState {
+    /**
+     * Current cluster centers.
+     */
+    double[][] means;
+
+    /**
+     * Number of points assigned to each center so far.
+     */
+    long[] counts;
+
+    /**
+     * Distance function.
+     */
+    NumberVectorDistance<?> df;
+
+    /**
+     * Assignment buffer.
+     */
+    int[] assignment = new int[0];
+
+    /**
+     * Constructor.
+     *
+     * @param means Initial means
+     * @param df Distance function
+     */
+    BatchState(double[][] means, NumberVectorDistance<?> df) {
+      this.means = means;
+      this.counts = new long[means.length];
+      this.df = df;
+    }
+
+    /**
+     * Process one mini batch: assign all points to the current centers, then
+     * move each center towards its points, with learning rate 1 / count.
+     *
+     * @param batch Batch of vectors
+     */
+    void update(List<? extends NumberVector> batch) {
+      final int size = batch.size();
+      if(assignment.length < size) {
+        assignment = new int[size];
+      }
+      for(int j = 0; j < size; j++) {
+        final NumberVector fv = batch.get(j);
+        double mindist = Double.POSITIVE_INFINITY;
+        int minIndex = 0;
+        for(int i = 0; i < means.length; i++) {
+          final double dist = df.distance(fv, DoubleVector.wrap(means[i]));
+          if(dist < mindist) {
+            minIndex = i;
+            mindist = dist;
+          }
+        }
+        assignment[j] = minIndex;
+      }
+      for(int j = 0; j < size; j++) {
+        final int c = assignment[j];
+        final double eta = 1. / ++counts[c];
+        final NumberVector fv = batch.get(j);
+        final double[] mean = means[c];
+        for(int d = 0; d < mean.length; d++) {
+          mean[d] += eta * (fv.doubleValue(d) - mean[d]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends AbstractKMeans.Instance {
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means) {
+      super(relation, df, means);
+    }
+
+    /**
+     * Update the means using random mini batches.
+     *
+     * @param df Distance function
+     * @param batchsize Batch size
+     * @param batches Number of batches
+     * @param random Random generator
+     */
+    protected void runMiniBatches(NumberVectorDistance<?> df, int batchsize, int batches, Random random) {
+      BatchState state = new BatchState(means, df);
+      List<NumberVector> batch = new ArrayList<>(batchsize);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Mini batches", batches, LOG) : null;
+      for(int b = 0; b < batches; b++) {
+        for(DBIDIter it = DBIDUtil.randomSample(relation.getDBIDs(), Math.min(batchsize, relation.size()), random).iter(); it.valid(); it.advance()) {
+          batch.add(relation.get(it));
+        }
+        state.update(batch);
+        diststat += batch.size() * (long) k;
+        batch.clear();
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      // First iteration: assign to the mini-batch means, then Lloyd steps.
+      means = iteration == 1 ? means : means(clusters, means, relation);
+      return assignToNearestCluster();
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends AbstractKMeans.Par<V> {
+    /**
+     * Batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.minibatch.size", "Number of objects in each mini batch.");
+
+    /**
+     * Number of batches.
+     */
+    public static final OptionID BATCHES_ID = new OptionID("kmeans.minibatch.batches", "Number of mini batches to process.");
+
+    /**
+     * Number of refinement iterations.
+     */
+    public static final OptionID REFINE_ID = new OptionID("kmeans.minibatch.refine", "Number of iterations of the standard algorithm to refine the result. 0 only assigns the points to the final centers.");
+
+    /**
+     * Random seed for sampling the batches.
+     */
+    public static final OptionID SEED_ID = new OptionID("kmeans.minibatch.seed", "Random generator seed for sampling the mini batches.");
+
+    /**
+     * Batch size.
+     */
+    protected int batchsize;
+
+    /**
+     * Number of batches.
+     */
+    protected int batches;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      getParameterK(config);
+      getParameterInitialization(config);
+      getParameterDistance(config);
+      new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> batchsize = x);
+      new IntParameter(BATCHES_ID, 100) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> batches = x);
+      new IntParameter(REFINE_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> maxiter = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+
+    @Override
+    public MiniBatchKMeans<V> make() {
+      return new MiniBatchKMeans<>(distance, k, maxiter, initializer, batchsize, batches, rnd);
+    }
+  }
+}
@@ -24,8 +24,10 @@ import static elki.math.linearalgebra.VMath.normalize;
 import static elki.math.linearalgebra.VMath.timesEquals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import elki.clustering.kmeans.initialization.KMeansInitialization;
 import elki.clustering.kmeans.initialization.Predefined;
@@ -48,8 +50,12 @@ import elki.logging.progress.MutableProgress;
 import elki.logging.statistics.LongStatistic;
 import elki.logging.statistics.StringStatistic;
 import elki.math.MathUtil;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
+import elki.utilities.datastructures.arraylike.IntegerArray;
+import elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.WrongParameterValueException;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -69,6 +75,9 @@ import elki.utilities.random.RandomFactory;
  * acceleration. Also note that kmax is not a hard threshold - the algorithm
  * can return up to 2*kmax clusters!
  * <p>
+ * The splits of the different clusters are independent, and are evaluated
+ * concurrently.
+ * <p>
  * Reference:
  * <p>
  * D. Pelleg, A. Moore<br>
@@ -113,9 +122,9 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
   private int k, k_min, k_max;
 
   /**
-   * Initializer for k-means.
+   * Initializer for k-means, with thread-local means.
    */
-  Predefined splitInitializer;
+  SplitInitializer splitInitializer;
 
   /**
    * Information criterion to choose the better split.
@@ -127,6 +136,12 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
    */
   RandomFactory rnd;
 
+  /**
+   * Clusters of this size are split one at a time, with the full parallelism
+   * available to the inner k-means.
+   */
+  protected static final int LARGE_CLUSTER = 1 << 16;
+
   /**
    * Constructor.
    *
@@ -145,7 +160,7 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     this.k_max = k_max;
     this.k = k_min;
     this.innerKMeans = innerKMeans;
-    this.splitInitializer = new Predefined((double[][]) null);
+    this.splitInitializer = new SplitInitializer();
     this.innerKMeans.setInitializer(this.splitInitializer);
     this.innerKMeans.setDistance(distance);
     this.informationCriterion = informationCriterion;
@@ -175,10 +190,9 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     ArrayList<Cluster<M>> clusters = new ArrayList<>(clustering.getAllClusters());
     while(clusters.size() <= k_max) {
       // Improve-Structure:
+      List<List<Cluster<M>>> splits = splitClusters(clusters, relation);
       ArrayList<Cluster<M>> nextClusters = new ArrayList<>();
-      for(Cluster<M> cluster : clusters) {
-        // Try to split this cluster:
-        List<Cluster<M>> childClusterList = splitCluster(cluster, relation);
+      for(List<Cluster<M>> childClusterList : splits) {
         nextClusters.addAll(childClusterList);
         if(childClusterList.size() > 1) {
           k += childClusterList.size() - 1;
@@ -212,15 +226,62 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     return result;
   }
 
+  /**
+   * Try to split every cluster. The splits are independent, and hence are
+   * evaluated concurrently: clusters of at least {@link #LARGE_CLUSTER}
+   * objects are split one after another, such that a parallel inner k-means
+   * can use all threads, the remaining clusters are split in parallel, largest
+   * first. Each split uses its own random generator, drawn in cluster order, so
+   * the result does not depend on the number of threads.
+   *
+   * @param clusters Current clusters
+   * @param relation Data relation
+   * @return Split result of each cluster, in the same order
+   */
+  protected List<List<Cluster<M>>> splitClusters(List<Cluster<M>> clusters, Relation<V> relation) {
+    final int size = clusters.size();
+    final Random[] rands = new Random[size];
+    IntegerArray small = new IntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      final int csize = clusters.get(i).size();
+      rands[i] = csize > 1 ? rnd.getSingleThreadedRandom() : null;
+      if(csize < LARGE_CLUSTER) {
+        small.add(i);
+      }
+    }
+    @SuppressWarnings("unchecked")
+    final List<Cluster<M>>[] splits = (List<Cluster<M>>[]) new List<?>[size];
+    innerKMeans.setK(2);
+    // Split the small clusters concurrently, largest first:
+    final int[] order = small.toArray();
+    IntegerArrayQuickSort.sort(order, (a, b) -> Integer.compare(clusters.get(b).size(), clusters.get(a).size()));
+    final AtomicInteger next = new AtomicInteger();
+    ParallelExecutor.run(order.length, 1, (start, end) -> {
+      for(int j = next.getAndIncrement(); j < order.length; j = next.getAndIncrement()) {
+        final int i = order[j];
+        splits[i] = splitCluster(clusters.get(i), relation, rands[i]);
+      }
+      return null;
+    });
+    // Split the large clusters, one after another:
+    for(int i = 0; i < size; i++) {
+      if(splits[i] == null) {
+        splits[i] = splitCluster(clusters.get(i), relation, rands[i]);
+      }
+    }
+    return Arrays.asList(splits);
+  }
+
   /**
    * Conditionally splits the clusters based on the information criterion.
    *
    * @param parentCluster Cluster to split
    * @param relation Data relation
+   * @param random Random generator
    * @return Parent cluster when split decreases clustering quality or child
    *         clusters when split improves clustering.
    */
-  protected List<Cluster<M>> splitCluster(Cluster<M> parentCluster, Relation<V> relation) {
+  protected List<Cluster<M>> splitCluster(Cluster<M> parentCluster, Relation<V> relation, Random random) {
     // Transform parent cluster into a clustering
     ArrayList<Cluster<M>> parentClusterList = new ArrayList<>(1);
     parentClusterList.add(parentCluster);
@@ -229,8 +290,8 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
       return parentClusterList;
     }
     Clustering<M> parentClustering = new Clustering<>(parentClusterList);
-    splitInitializer.setInitialMeans(splitCentroid(parentCluster, relation));
-    innerKMeans.setK(2);
+    // The split initializer is thread-local, see splitClusters
+    splitInitializer.setInitialMeans(splitCentroid(parentCluster, relation, random));
     Clustering<M> childClustering = innerKMeans.run(new ProxyView<V>(parentCluster.getIDs(), relation));
 
     double parentEvaluation = informationCriterion.quality(parentClustering, distance, relation);
@@ -250,9 +311,10 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
    *
    * @param parentCluster Existing cluster
    * @param relation Data relation
+   * @param random Random generator
    * @return List of new centroids
    */
-  protected double[][] splitCentroid(Cluster<? extends MeanModel> parentCluster, Relation<V> relation) {
+  protected double[][] splitCentroid(Cluster<? extends MeanModel> parentCluster, Relation<V> relation, Random random) {
     double[] parentCentroid = parentCluster.getModel().getMean().clone(); // Modified!
 
     // Compute size of cluster/region
@@ -264,7 +326,6 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     }
 
     // Choose random vector
-    Random random = rnd.getSingleThreadedRandom();
     final int dim = RelationUtil.dimensionality(relation);
     double[] randomVector = normalize(MathUtil.randomDoubleArray(dim, random));
     timesEquals(randomVector, (.4 + random.nextDouble() * .5) * radius);
@@ -288,6 +349,51 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     return LOG;
   }
 
+  /**
+   * Predefined initial means, separately for each thread, such that splits can
+   * be evaluated concurrently with a shared inner k-means.
+   *
+   * @author Erich Schubert
+   */
+  static class SplitInitializer extends Predefined {
+    /**
+     * Initial means of the current thread.
+     */
+    private final ThreadLocal<double[][]> means = new ThreadLocal<>();
+
+    /**
+     * Constructor.
+     */
+    SplitInitializer() {
+      super((double[][]) null);
+    }
+
+    @Override
+    public void setInitialClusters(List<? extends Cluster<? extends MeanModel>> initialMeans) {
+      double[][] vecs = new double[initialMeans.size()][];
+      for(int i = 0; i < vecs.length; i++) {
+        vecs[i] = initialMeans.get(i).getModel().getMean();
+      }
+      means.set(vecs);
+    }
+
+    @Override
+    public void setInitialMeans(double[][] initialMeans) {
+      means.set(initialMeans.clone());
+    }
+
+    @Override
+    public double[][] chooseInitialMeans(Relation<? extends NumberVector> relation, int k, NumberVectorDistance<?> distance) {
+      double[][] initialMeans = means.get();
+      means.remove();
+      if(initialMeans == null || k != initialMeans.length) {
+        throw new AbortException("Predefined initial means contained " + (initialMeans == null ? 0 : initialMeans.length) //
+            + " means, algorithm requested " + k + " means instead.");
+      }
+      return initialMeans;
+    }
+  }
+
   /**
    * Parameterization class.
    *
@@ -307,6 +307,23 @@ public class CLARA<V> extends PAM<V> {
       bad = 0;
     }
 
+    /**
+     * Precompute all pairwise distances of a set of objects. Afterwards,
+     * distance queries within this set only read the cache, and can hence be
+     * performed concurrently.
+     *
+     * @param ids Objects
+     */
+    public void fill(DBIDs ids) {
+      for(DBIDIter i = ids.iter(); i.valid(); i.advance()) {
+        for(DBIDIter j = ids.iter(); j.valid(); j.advance()) {
+          if(DBIDUtil.compare(i, j) < 0) {
+            distance(i, j);
+          }
+        }
+      }
+    }
+
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       if(DBIDUtil.equal(id1, id2)) {
@@ -20,6 +20,8 @@
  */
 package elki.clustering.kmedoids;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import elki.clustering.ClusteringAlgorithmUtil;
@@ -41,6 +43,8 @@ import elki.distance.Distance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
@@ -60,6 +64,11 @@ import elki.utilities.random.RandomFactory;
  * TODO: use a triangular distance matrix, rather than a hash-map based cache,
  * for a bit better performance and less memory.
  * <p>
+ * Optionally, the swaps are evaluated in parallel. If the previous medoids
+ * are not kept, the samples are independent, and are then also processed
+ * concurrently. The samples are still drawn and initialized
+ * sequentially, so the result does not depend on the number of threads.
+ * <p>
  * Reference:
  * <p>
  * Erich Schubert, Peter J. Rousseeuw<br>
@@ -118,7 +127,24 @@ public class FastCLARA<V> extends FastPAM<V> {
    * @param random Random generator
    */
   public FastCLARA(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, double fasttol, int numsamples, double sampling, boolean keepmed, RandomFactory random) {
-    super(distance, k, maxiter, initializer, fasttol);
+    this(distance, k, maxiter, initializer, fasttol, numsamples, sampling, keepmed, random, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param k Number of clusters to produce
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization function
+   * @param numsamples Number of samples (sampling iterations)
+   * @param sampling Sampling rate (absolute or relative)
+   * @param keepmed Keep the previous medoids in the next sample
+   * @param random Random generator
+   * @param parallel Process swaps and independent samples in parallel
+   */
+  public FastCLARA(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, double fasttol, int numsamples, double sampling, boolean keepmed, RandomFactory random, boolean parallel) {
+    super(distance, k, maxiter, initializer, fasttol, parallel);
     this.numsamples = numsamples;
     this.sampling = sampling;
     this.random = random;
@@ -134,36 +160,53 @@ public class FastCLARA<V> extends FastPAM<V> {
       LOG.warning("The sampling size is set to a very small value, it should be much larger than k.");
     }
 
-    CLARA.CachedDistanceQuery<V> cachedQ = new CLARA.CachedDistanceQuery<V>(distQ, (samplesize * (samplesize - 1)) >> 1);
-
     double best = Double.POSITIVE_INFINITY;
     ArrayModifiableDBIDs bestmedoids = null;
     WritableIntegerDataStore bestclusters = null;
 
+    // Independent samples can be processed concurrently.
+    final int batch = parallel && !keepmed ? Math.max(1, Math.min(ParallelCore.getCore().getParallelism(), numsamples)) : 1;
+    List<Sample> samples = new ArrayList<>(batch);
+
     Random rnd = random.getSingleThreadedRandom();
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
-    for(int j = 0; j < numsamples; j++) {
-      DBIDs rids = CLARA.randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
-      cachedQ.clear(); // TODO: an actual matrix would be better.
-
-      // Choose initial medoids
-      ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, cachedQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      double score = new /* PAM */Instance(cachedQ, rids, assignment, fasttol).run(medoids, maxiter) //
-          + CLARA.assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + j + ".cost", score));
+    for(int j = 0; j < numsamples; j += batch) {
+      final int n = Math.min(batch, numsamples - j);
+      // Draw samples and initialize sequentially, for reproducibility.
+      for(int i = 0; i < n; i++) {
+        DBIDs rids = CLARA.randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
+        if(samples.size() <= i) {
+          samples.add(new Sample(distQ, ids, samplesize));
+        }
+        samples.get(i).init(rids);
       }
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
+      if(n == 1) {
+        samples.get(0).run(parallel);
       }
-      if(cachedQ.hasUncachedQueries()) {
-        LOG.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+      else {
+        // Do not parallelize within the samples, as we already use all workers.
+        ParallelExecutor.run(n, 1, (start, end) -> {
+          for(int i = start; i < end; i++) {
+            samples.get(i).run(false);
+          }
+          return null;
+        });
+      }
+      for(int i = 0; i < n; i++) {
+        final Sample sample = samples.get(i);
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + (j + i) + ".cost", sample.score));
+        }
+        if(sample.score < best) {
+          best = sample.score;
+          bestmedoids = sample.medoids;
+          bestclusters = sample.assignment;
+        }
+        if(sample.cachedQ.hasUncachedQueries()) {
+          LOG.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+        }
+        LOG.incrementProcessed(prog);
       }
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
     if(LOG.isStatistics()) {
@@ -185,6 +228,90 @@ public class FastCLARA<V> extends FastPAM<V> {
     return result;
   }
 
+  /**
+   * State of a single sample.
+   *
+   * @author Erich Schubert
+   */
+  private class Sample {
+    /**
+     * Distance query.
+     */
+    DistanceQuery<V> distQ;
+
+    /**
+     * All objects.
+     */
+    DBIDs ids;
+
+    /**
+     * Sampled objects.
+     */
+    DBIDs rids;
+
+    /**
+     * Distance cache for the sample.
+     */
+    CLARA.CachedDistanceQuery<V> cachedQ;
+
+    /**
+     * Medoids.
+     */
+    ArrayModifiableDBIDs medoids;
+
+    /**
+     * Cluster assignment.
+     */
+    WritableIntegerDataStore assignment;
+
+    /**
+     * Total cost.
+     */
+    double score;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids All objects
+     * @param samplesize Sample size
+     */
+    Sample(DistanceQuery<V> distQ, DBIDs ids, int samplesize) {
+      this.distQ = distQ;
+      this.ids = ids;
+      this.cachedQ = new CLARA.CachedDistanceQuery<V>(distQ, (samplesize * (samplesize - 1)) >> 1);
+    }
+
+    /**
+     * Choose the initial medoids for a new sample.
+     *
+     * @param rids Sampled objects
+     */
+    void init(DBIDs rids) {
+      this.rids = rids;
+      cachedQ.clear(); // TODO: an actual matrix would be better.
+      medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, cachedQ));
+      assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    }
+
+    /**
+     * Optimize the medoids and assign the remaining objects.
+     *
+     * @param parswap Evaluate swaps in parallel
+     * @return Total cost
+     */
+    double run(boolean parswap) {
+      if(parallel) {
+        // Make the distance cache read-only, for concurrent access
+        cachedQ.fill(rids);
+      }
+      Instance pam = new /* PAM */Instance(cachedQ, rids, assignment, fasttol);
+      pam.parallel = parswap;
+      return score = pam.run(medoids, maxiter) //
+          + CLARA.assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
+    }
+  }
+
   /**
    * Parameterization class.
    *
@@ -249,7 +376,7 @@ public class FastCLARA<V> extends FastPAM<V> {
 
     @Override
     public FastCLARA<V> make() {
-      return new FastCLARA<>(distance, k, maxiter, initializer, fasttol, numsamples, sampling, keepmed, random);
+      return new FastCLARA<>(distance, k, maxiter, initializer, fasttol, numsamples, sampling, keepmed, random, parallel);
     }
   }
 }
@@ -115,13 +115,29 @@ public class FastPAM<V> extends FastPAM1<V> {
    * @param fasttol Tolerance for fast swapping
    */
   public FastPAM(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, double fasttol) {
-    super(distance, k, maxiter, initializer);
+    this(distance, k, maxiter, initializer, fasttol, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   * @param fasttol Tolerance for fast swapping
+   * @param parallel Evaluate the swaps in parallel
+   */
+  public FastPAM(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, double fasttol, boolean parallel) {
+    super(distance, k, maxiter, initializer, parallel);
     this.fasttol = fasttol;
   }
 
   @Override
   protected void run(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
-    new Instance(distQ, ids, assignment, fasttol).run(medoids, maxiter);
+    Instance instance = new Instance(distQ, ids, assignment, fasttol);
+    instance.parallel = parallel;
+    instance.run(medoids, maxiter);
   }
 
   /**
@@ -170,12 +186,12 @@ public class FastPAM<V> extends FastPAM1<V> {
       DBIDArrayIter m = medoids.iter();
       ArrayModifiableDBIDs bestids = DBIDUtil.newArray(k);
       DBIDVar bestid = DBIDUtil.newVar();
-      double[] best = new double[k], cost = new double[k];
+      double[] best = new double[k];
       int iteration = 0;
       while(iteration < maxiter || maxiter <= 0) {
         ++iteration;
         LOG.incrementProcessed(prog);
-        findBestSwaps(m, bestids, best, cost);
+        findBestSwaps(medoids, bestids, best);
         // Convergence check
         int min = argmin(best);
         if(!(best[min] < -1e-12 * tc)) {
@@ -226,15 +242,39 @@ public class FastPAM<V> extends FastPAM1<V> {
     /**
      * Find the best swaps.
      *
-     * @param m Medoids
+     * @param medoids Medoids
      * @param bestids Storage for best non-medois
      * @param best Storage for best cost
-     * @param cost Scratch space for cost
      */
-    protected void findBestSwaps(DBIDArrayIter m, ArrayModifiableDBIDs bestids, double[] best, double[] cost) {
+    protected void findBestSwaps(ArrayDBIDs medoids, ArrayModifiableDBIDs bestids, double[] best) {
       Arrays.fill(best, Double.POSITIVE_INFINITY);
+      DBIDVar h = DBIDUtil.newVar();
+      for(BestSwaps block : evaluateBlocks((start, end) -> findBestSwaps(medoids, start, end))) {
+        // Merge in block order, to obtain the same result as a serial pass.
+        for(int i = 0; i < best.length; i++) {
+          if(block.best[i] < best[i]) {
+            best[i] = block.best[i];
+            bestids.set(i, block.bestids.assignVar(i, h));
+          }
+        }
+      }
+    }
+
+    /**
+     * Find the best swaps for a block of non-medoids.
+     *
+     * @param medoids Medoids
+     * @param start Start offset of the block
+     * @param end End offset of the block
+     * @return Best swaps of this block
+     */
+    protected BestSwaps findBestSwaps(ArrayDBIDs medoids, int start, int end) {
+      final int k = medoids.size();
+      final DBIDArrayIter m = medoids.iter();
+      final BestSwaps ret = new BestSwaps(k);
+      final double[] best = ret.best, cost = new double[k];
       // Iterate over all non-medoids:
-      for(DBIDIter h = ids.iter(); h.valid(); h.advance()) {
+      for(DBIDArrayIter h = aids.iter().seek(start); h.getOffset() < end; h.advance()) {
         // Compare object to its own medoid.
         if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
           continue; // This is a medoid.
@@ -244,14 +284,15 @@ public class FastPAM<V> extends FastPAM1<V> {
         computeReassignmentCost(h, cost);
 
         // Find the best possible swap for each medoid:
-        for(int i = 0; i < cost.length; i++) {
+        for(int i = 0; i < k; i++) {
           final double costi = cost[i];
           if(costi < best[i]) {
             best[i] = costi;
-            bestids.set(i, h);
+            ret.bestids.set(i, h);
           }
         }
       }
+      return ret;
     }
 
     /**
@@ -306,6 +347,34 @@ public class FastPAM<V> extends FastPAM1<V> {
     }
   }
 
+  /**
+   * Best swap candidates for each medoid.
+   *
+   * @author Erich Schubert
+   */
+  protected static class BestSwaps {
+    /**
+     * Best cost change for each medoid.
+     */
+    double[] best;
+
+    /**
+     * Best non-medoid for each medoid.
+     */
+    ArrayModifiableDBIDs bestids;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of medoids
+     */
+    BestSwaps(int k) {
+      best = new double[k];
+      Arrays.fill(best, Double.POSITIVE_INFINITY);
+      bestids = DBIDUtil.newArray(k);
+    }
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -344,7 +413,7 @@ public class FastPAM<V> extends FastPAM1<V> {
 
     @Override
     public FastPAM<V> make() {
-      return new FastPAM<>(distance, k, maxiter, initializer, fasttol);
+      return new FastPAM<>(distance, k, maxiter, initializer, fasttol, parallel);
     }
   }
 }
@@ -21,6 +21,8 @@
 package elki.clustering.kmedoids;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
 import elki.database.datastore.WritableIntegerDataStore;
@@ -31,9 +33,14 @@ import elki.logging.Logging;
 import elki.logging.progress.IndefiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.ParallelExecutor.BlockTask;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
 import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * FastPAM1: A version of PAM that is O(k) times faster, i.e., now in O((n-k)²).
@@ -46,6 +53,10 @@ import elki.utilities.exceptions.AbortException;
  * can affect the result, see also {@link FastPAM}, which is recommended
  * for usage in practice.
  * <p>
+ * Optionally, the candidate swaps can be evaluated in parallel on blocks of
+ * the non-medoids. The block results are merged in order, so the result does
+ * not depend on the number of threads.
+ * <p>
  * Reference:
  * <p>
  * Erich Schubert, Peter J. Rousseeuw<br>
@@ -75,6 +86,11 @@ public class FastPAM1<V> extends PAM<V> {
    */
   private static final String KEY = FastPAM1.class.getName();
 
+  /**
+   * Evaluate the swaps in parallel.
+   */
+  protected boolean parallel = false;
+
   /**
    * Constructor.
    *
@@ -84,12 +100,28 @@ public class FastPAM1<V> extends PAM<V> {
    * @param initializer Function to generate the initial means
    */
   public FastPAM1(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer) {
+    this(distance, k, maxiter, initializer, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   * @param parallel Evaluate the swaps in parallel
+   */
+  public FastPAM1(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, boolean parallel) {
     super(distance, k, maxiter, initializer);
+    this.parallel = parallel;
   }
 
   @Override
   protected void run(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
-    new Instance(distQ, ids, assignment).run(medoids, maxiter);
+    Instance instance = new Instance(distQ, ids, assignment);
+    instance.parallel = parallel;
+    instance.run(medoids, maxiter);
   }
 
   /**
@@ -98,6 +130,21 @@ public class FastPAM1<V> extends PAM<V> {
    * @author Erich Schubert
    */
   protected static class Instance extends PAM.Instance {
+    /**
+     * Minimum number of objects per block for parallel processing.
+     */
+    private static final int MIN_BLOCKSIZE = 64;
+
+    /**
+     * IDs to process, as array for block processing.
+     */
+    protected ArrayDBIDs aids;
+
+    /**
+     * Evaluate the swaps in parallel.
+     */
+    protected boolean parallel = false;
+
     /**
      * Constructor.
      *
@@ -107,6 +154,58 @@ public class FastPAM1<V> extends PAM<V> {
      */
     public Instance(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment) {
       super(distQ, ids, assignment);
+      this.aids = DBIDUtil.ensureArray(ids);
+    }
+
+    /**
+     * Evaluate a function on contiguous blocks of the objects. If enabled, the
+     * blocks are processed in parallel, but the results are returned in block
+     * order, so merging them in order yields the same result as a serial pass.
+     * <p>
+     * The function must only read the shared state.
+     *
+     * @param eval Block evaluation function
+     * @param <T> Result type
+     * @return Block results, in order
+     */
+    protected <T> List<T> evaluateBlocks(BlockTask<T> eval) {
+      return parallel ? ParallelExecutor.run(aids.size(), MIN_BLOCKSIZE, eval) //
+          : Collections.singletonList(eval.run(0, aids.size()));
+    }
+
+    /**
+     * Find the best swap for a block of non-medoids.
+     *
+     * @param medoids Medoids
+     * @param start Start offset of the block
+     * @param end End offset of the block
+     * @return Best swap (infinite cost if none)
+     */
+    protected Swap findBestSwap(ArrayDBIDs medoids, int start, int end) {
+      final int k = medoids.size();
+      final DBIDArrayIter m = medoids.iter();
+      final double[] cost = new double[k];
+      final Swap best = new Swap();
+      for(DBIDArrayIter h = aids.iter().seek(start); h.getOffset() < end; h.advance()) {
+        // Compare object to its own medoid.
+        if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
+          continue; // This is a medoid.
+        }
+        // The cost we get back by making the non-medoid h medoid.
+        Arrays.fill(cost, -nearest.doubleValue(h));
+        computeReassignmentCost(h, cost);
+
+        // Find the best possible swap for h:
+        for(int i = 0; i < k; i++) {
+          final double costi = cost[i];
+          if(costi < best.cost) {
+            best.cost = costi;
+            best.h.set(h);
+            best.m = i;
+          }
+        }
+      }
+      return best;
     }
 
     /**
@@ -129,31 +228,18 @@ public class FastPAM1<V> extends PAM<V> {
       // Swap phase
       DBIDVar bestid = DBIDUtil.newVar();
       DBIDArrayIter m = medoids.iter();
-      double[] cost = new double[k];
       int iteration = 0;
       while(iteration < maxiter || maxiter <= 0) {
         ++iteration;
         LOG.incrementProcessed(prog);
         double best = Double.POSITIVE_INFINITY;
         int bestcluster = -1;
-        // Iterate over all non-medoids:
-        for(DBIDIter h = ids.iter(); h.valid(); h.advance()) {
-          // Compare object to its own medoid.
-          if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
-            continue; // This is a medoid.
-          }
-          // The cost we get back by making the non-medoid h medoid.
-          Arrays.fill(cost, -nearest.doubleValue(h));
-          computeReassignmentCost(h, cost);
-
-          // Find the best possible swap for h:
-          for(int i = 0; i < k; i++) {
-            final double costi = cost[i];
-            if(costi < best) {
-              best = costi;
-              bestid.set(h);
-              bestcluster = i;
-            }
+        // Iterate over all non-medoids, in blocks:
+        for(Swap swap : evaluateBlocks((start, end) -> findBestSwap(medoids, start, end))) {
+          if(swap.cost < best) {
+            best = swap.cost;
+            bestid.set(swap.h);
+            bestcluster = swap.m;
           }
         }
         if(!(best < -1e-12 * tc)) {
@@ -346,6 +432,28 @@ public class FastPAM1<V> extends PAM<V> {
     }
   }
 
+  /**
+   * Candidate swap.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Swap {
+    /**
+     * Change in cost.
+     */
+    double cost = Double.POSITIVE_INFINITY;
+
+    /**
+     * Medoid to replace.
+     */
+    int m = -1;
+
+    /**
+     * Non-medoid to become medoid.
+     */
+    DBIDVar h = DBIDUtil.newVar();
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -357,9 +465,25 @@ public class FastPAM1<V> extends PAM<V> {
    * @author Erich Schubert
    */
   public static class Par<V> extends PAM.Par<V> {
+    /**
+     * Flag to evaluate the swaps in parallel.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("pam.parallel", "Evaluate the candidate swaps in parallel. The result does not depend on the number of threads.");
+
+    /**
+     * Evaluate the swaps in parallel.
+     */
+    protected boolean parallel = false;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new Flag(PARALLEL_ID).grab(config, x -> parallel = x);
+    }
+
     @Override
     public FastPAM1<V> make() {
-      return new FastPAM1<>(distance, k, maxiter, initializer);
+      return new FastPAM1<>(distance, k, maxiter, initializer, parallel);
     }
   }
 }
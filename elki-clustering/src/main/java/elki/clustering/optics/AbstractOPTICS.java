@@ -23,9 +23,16 @@ package elki.clustering.optics;
 import elki.Algorithm;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.Alias;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
@@ -33,13 +40,15 @@ import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * The OPTICS algorithm for density-based hierarchical clustering.
  * <p>
- * This is the abstract base class, providing the shared parameters only.
+ * This is the abstract base class, providing the shared parameters, and the
+ * (optionally parallel precomputed) neighborhood queries.
  * <p>
  * Reference:
  * <p>
@@ -77,6 +86,11 @@ public abstract class AbstractOPTICS<O> implements OPTICSTypeAlgorithm {
    */
   protected int minpts;
 
+  /**
+   * Precompute all neighborhoods in parallel.
+   */
+  protected boolean parallel = false;
+
   /**
    * Constructor.
    * 
@@ -85,10 +99,23 @@ public abstract class AbstractOPTICS<O> implements OPTICSTypeAlgorithm {
    * @param minpts Minpts value
    */
   public AbstractOPTICS(Distance<? super O> distance, double epsilon, int minpts) {
+    this(distance, epsilon, minpts, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   * @param parallel Precompute all neighborhoods in parallel
+   */
+  public AbstractOPTICS(Distance<? super O> distance, double epsilon, int minpts, boolean parallel) {
     super();
     this.distance = distance;
     this.epsilon = epsilon;
     this.minpts = minpts;
+    this.parallel = parallel;
   }
 
   @Override
@@ -109,6 +136,108 @@ public abstract class AbstractOPTICS<O> implements OPTICSTypeAlgorithm {
     return minpts;
   }
 
+  /**
+   * Neighborhoods of core objects, as needed by the OPTICS ordering.
+   * <p>
+   * The range queries and core distances do not depend on the processing
+   * order, so they can be computed in parallel upfront, and the sequential
+   * ordering phase then only consumes the cached results. Only neighborhoods
+   * of core objects are stored, and each is released once consumed, as OPTICS
+   * processes every object exactly once. Because the same range queries are
+   * used in both modes, the resulting cluster order is identical.
+   *
+   * @author Erich Schubert
+   */
+  protected class Neighborhoods {
+    /**
+     * Minimum block size for parallel precomputation.
+     */
+    private static final int MIN_BLOCKSIZE = 256;
+
+    /**
+     * Range query, if not precomputed.
+     */
+    private RangeSearcher<DBIDRef> rangeQuery;
+
+    /**
+     * Reused storage for the neighbors, if not precomputed.
+     */
+    private ModifiableDoubleDBIDList neighbors;
+
+    /**
+     * Precomputed neighborhoods of core objects, null for other objects.
+     */
+    private DoubleDBIDList[] cache;
+
+    /**
+     * Offset of each object in the cache.
+     */
+    private WritableIntegerDataStore offsets;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     */
+    public Neighborhoods(Relation<O> relation) {
+      rangeQuery = new QueryBuilder<>(relation, distance).rangeByDBID(epsilon);
+      if(!parallel) {
+        neighbors = DBIDUtil.newDistanceDBIDList();
+        return;
+      }
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      cache = new DoubleDBIDList[ids.size()];
+      ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+        // Range queries are not thread safe, use one per block.
+        RangeSearcher<DBIDRef> rq = new QueryBuilder<>(relation, distance).rangeByDBID(epsilon);
+        for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+          ModifiableDoubleDBIDList n = rq.getRange(it, epsilon, DBIDUtil.newDistanceDBIDList());
+          if(n.size() >= minpts) {
+            n.sort();
+            cache[it.getOffset()] = n;
+          }
+        }
+        return null;
+      });
+      rangeQuery = null;
+    }
+
+    /**
+     * Get the neighborhood of a core object, sorted by distance.
+     *
+     * @param id Object
+     * @return Sorted neighbors, or {@code null} if not a core object
+     */
+    public DoubleDBIDList getCoreNeighbors(DBIDRef id) {
+      if(cache != null) {
+        final int i = offsets.intValue(id);
+        final DoubleDBIDList n = cache[i];
+        cache[i] = null; // Each object is processed only once.
+        return n;
+      }
+      rangeQuery.getRange(id, epsilon, neighbors.clear());
+      if(neighbors.size() < minpts) {
+        return null;
+      }
+      neighbors.sort(); // A quick select would be enough, but its cheap.
+      return neighbors;
+    }
+
+    /**
+     * Release the temporary storage.
+     */
+    public void destroy() {
+      if(offsets != null) {
+        offsets.destroy();
+      }
+      cache = null;
+    }
+  }
+
   /**
    * Parameterization class.
    * 
@@ -131,6 +260,11 @@ public abstract class AbstractOPTICS<O> implements OPTICSTypeAlgorithm {
      */
     public static final OptionID MINPTS_ID = new OptionID("optics.minpts", "Threshold for minimum number of points in the epsilon-neighborhood of a point.");
 
+    /**
+     * Flag to precompute all neighborhoods in parallel.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("optics.parallel", "Precompute all neighborhoods and core distances in parallel, at the cost of keeping them in memory.");
+
     /**
      * Epsilon radius.
      */
@@ -141,6 +275,11 @@ public abstract class AbstractOPTICS<O> implements OPTICSTypeAlgorithm {
      */
     protected int minpts = 0;
 
+    /**
+     * Precompute neighborhoods in parallel.
+     */
+    protected boolean parallel = false;
+
     /**
      * The distance function to use.
      */
@@ -156,6 +295,7 @@ public abstract class AbstractOPTICS<O> implements OPTICSTypeAlgorithm {
       new IntParameter(MINPTS_ID) //
           .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
           .grab(config, x -> minpts = x);
+      new Flag(PARALLEL_ID).grab(config, x -> parallel = x);
     }
   }
 }
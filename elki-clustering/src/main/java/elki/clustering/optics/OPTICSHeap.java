@@ -24,11 +24,9 @@ import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.database.ids.DoubleDBIDList;
 import elki.database.ids.DoubleDBIDListIter;
 import elki.database.ids.ModifiableDBIDs;
-import elki.database.ids.ModifiableDoubleDBIDList;
-import elki.database.query.QueryBuilder;
-import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.logging.Logging;
@@ -86,6 +84,18 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
     super(distance, epsilon, minpts);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   * @param parallel Precompute all neighborhoods in parallel
+   */
+  public OPTICSHeap(Distance<? super O> distance, double epsilon, int minpts, boolean parallel) {
+    super(distance, epsilon, minpts, parallel);
+  }
+
   @Override
   public ClusterOrder run(Relation<O> relation) {
     return new Instance(relation).run();
@@ -123,9 +133,9 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
     FiniteProgress progress;
 
     /**
-     * Range query.
+     * Neighborhood queries.
      */
-    RangeSearcher<DBIDRef> rangeQuery;
+    Neighborhoods neighborhoods;
 
     /**
      * Constructor for a single data set.
@@ -138,7 +148,7 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
       clusterOrder = new ClusterOrder(ids);
       Metadata.of(clusterOrder).setLongName("OPTICS Clusterorder");
       progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
-      rangeQuery = new QueryBuilder<>(relation, distance).rangeByDBID(epsilon);
+      neighborhoods = new Neighborhoods(relation);
       heap = new UpdatableHeap<>();
     }
 
@@ -155,6 +165,7 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
         }
       }
       LOG.ensureCompleted(progress);
+      neighborhoods.destroy();
       return clusterOrder;
     }
 
@@ -164,8 +175,6 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
      * @param objectID the currently processed object
      */
     protected void expandClusterOrder(DBIDRef objectID) {
-      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
-      DoubleDBIDListIter neighbor = neighbors.iter();
       heap.add(new OPTICSHeapEntry(DBIDUtil.deref(objectID), null, Double.POSITIVE_INFINITY));
 
       while(!heap.isEmpty()) {
@@ -173,12 +182,11 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
         clusterOrder.add(current.objectID, current.reachability, current.predecessorID);
         processedIDs.add(current.objectID);
 
-        rangeQuery.getRange(current.objectID, epsilon, neighbors.clear());
-        if(neighbors.size() >= minpts) {
-          neighbors.sort();
-          final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+        final DoubleDBIDList neighbors = neighborhoods.getCoreNeighbors(current.objectID);
+        if(neighbors != null) {
+          final double coreDistance = neighbors.doubleValue(minpts - 1);
 
-          for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+          for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
             if(processedIDs.contains(neighbor)) {
               continue;
             }
@@ -199,7 +207,7 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
   public static class Par<O> extends AbstractOPTICS.Par<O> {
     @Override
     public OPTICSHeap<O> make() {
-      return new OPTICSHeap<>(distance, epsilon, minpts);
+      return new OPTICSHeap<>(distance, epsilon, minpts, parallel);
     }
   }
 }
@@ -31,11 +31,9 @@ import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDVar;
 import elki.database.ids.DBIDs;
+import elki.database.ids.DoubleDBIDList;
 import elki.database.ids.DoubleDBIDListIter;
 import elki.database.ids.ModifiableDBIDs;
-import elki.database.ids.ModifiableDoubleDBIDList;
-import elki.database.query.QueryBuilder;
-import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.logging.Logging;
@@ -93,6 +91,18 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
     super(distance, epsilon, minpts);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   * @param parallel Precompute all neighborhoods in parallel
+   */
+  public OPTICSList(Distance<? super O> distance, double epsilon, int minpts, boolean parallel) {
+    super(distance, epsilon, minpts, parallel);
+  }
+
   @Override
   public ClusterOrder run(Relation<O> relation) {
     return new Instance(relation).run();
@@ -140,9 +150,9 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
     FiniteProgress progress;
 
     /**
-     * Range query.
+     * Neighborhood queries.
      */
-    RangeSearcher<DBIDRef> rangeQuery;
+    Neighborhoods neighborhoods;
 
     /**
      * Constructor for a single data set.
@@ -158,7 +168,7 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
       clusterOrder = new ClusterOrder(ids);
       Metadata.of(clusterOrder).setLongName("OPTICS Clusterorder");
       progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
-      rangeQuery = new QueryBuilder<>(relation, distance).rangeByDBID(epsilon);
+      neighborhoods = new Neighborhoods(relation);
     }
 
     /**
@@ -174,6 +184,7 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
         expandClusterOrder(iditer);
       }
       LOG.ensureCompleted(progress);
+      neighborhoods.destroy();
       return clusterOrder;
     }
 
@@ -183,8 +194,6 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
      * @param objectID the currently processed object
      */
     protected void expandClusterOrder(DBIDRef objectID) {
-      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
-      DoubleDBIDListIter neighbor = neighbors.iter();
       candidates.add(objectID);
       predecessor.putDBID(objectID, objectID);
       reachability.put(objectID, Double.POSITIVE_INFINITY);
@@ -198,12 +207,11 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
         clusterOrder.add(cur, reachability.doubleValue(cur), predecessor.assignVar(cur, prev));
         LOG.incrementProcessed(progress);
 
-        rangeQuery.getRange(cur, epsilon, neighbors.clear());
-        if(neighbors.size() >= minpts) {
-          neighbors.sort(); // A quick select would be enough, but its cheap.
-          final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+        final DoubleDBIDList neighbors = neighborhoods.getCoreNeighbors(cur);
+        if(neighbors != null) {
+          final double coreDistance = neighbors.doubleValue(minpts - 1);
 
-          for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+          for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
             if(processedIDs.contains(neighbor)) {
               continue;
             }
@@ -252,7 +260,7 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
   public static class Par<O> extends AbstractOPTICS.Par<O> {
     @Override
     public OPTICSList<O> make() {
-      return new OPTICSList<>(distance, epsilon, minpts);
+      return new OPTICSList<>(distance, epsilon, minpts, parallel);
     }
   }
 }
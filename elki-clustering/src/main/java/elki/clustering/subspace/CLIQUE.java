@@ -31,14 +31,14 @@ import elki.data.Subspace;
 import elki.data.model.SubspaceModel;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
-import elki.database.ids.DBIDIter;
-import elki.database.ids.ModifiableDBIDs;
+import elki.database.ids.*;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
 import elki.logging.Logging;
 import elki.logging.progress.StepProgress;
 import elki.math.MathUtil;
 import elki.math.linearalgebra.Centroid;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Reference;
@@ -66,8 +66,10 @@ import net.jafama.FastMath;
  * The third step of the original algorithm (Generation of minimal description
  * for the clusters) is not (yet) implemented.
  * <p>
- * Note: this is fairly old code, and not well optimized.
- * Do not use this for runtime benchmarking!
+ * Units store their objects as bitsets, such that the support of a candidate
+ * unit can be counted by bitset intersection. The one-dimensional units are
+ * filled in parallel per dimension, and candidate subspaces are joined in
+ * parallel.
  * <p>
  * Reference:
  * <p>
@@ -235,12 +237,12 @@ public class CLIQUE implements SubspaceClusteringAlgorithm<SubspaceModel> {
   }
 
   /**
-   * Initializes and returns the one dimensional units.
+   * Initializes the one dimensional units, and assigns the objects.
    * 
    * @param database the database to run the algorithm on
-   * @return the created one dimensional units
+   * @return the created one dimensional units, by dimension
    */
-  private Collection<CLIQUEUnit> initOneDimensionalUnits(Relation<? extends NumberVector> database) {
+  private CLIQUEUnit[][] initOneDimensionalUnits(Relation<? extends NumberVector> database) {
     StringBuilder buf = LOG.isDebuggingFiner() ? new StringBuilder(1000) : null;
     int dimensionality = RelationUtil.dimensionality(database);
     // initialize minima and maxima
@@ -280,15 +282,42 @@ public class CLIQUE implements SubspaceClusteringAlgorithm<SubspaceModel> {
     }
 
     // build the 1 dimensional units
-    List<CLIQUEUnit> units = new ArrayList<>(xsi * dimensionality);
-    for(int x = 0; x < xsi; x++) {
-      for(int d = 0; d < dimensionality; d++) {
-        units.add(new CLIQUEUnit(d, unit_bounds[x][d], unit_bounds[x + 1][d]));
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(database.getDBIDs());
+    CLIQUEUnit[][] units = new CLIQUEUnit[dimensionality][xsi];
+    for(int d = 0; d < dimensionality; d++) {
+      for(int x = 0; x < xsi; x++) {
+        units[d][x] = new CLIQUEUnit(d, unit_bounds[x][d], unit_bounds[x + 1][d], ids);
       }
     }
 
+    // assign the objects, in parallel for each dimension
+    ParallelExecutor.run(dimensionality, 1, (start, end) -> {
+      DBIDArrayIter it = ids.iter();
+      for(int d = start; d < end; d++) {
+        final CLIQUEUnit[] ud = units[d];
+        for(it.seek(0); it.valid(); it.advance()) {
+          final NumberVector vec = database.get(it);
+          final double v = vec.doubleValue(d);
+          if(v != v) { // NaN values are contained in every unit
+            for(CLIQUEUnit unit : ud) {
+              unit.addFeatureVector(it, vec);
+            }
+            continue;
+          }
+          // Guess the unit, but verify because of rounding:
+          final int x = Math.max(0, Math.min(xsi - 1, (int) ((v - minima[d]) / unit_lengths[d])));
+          if(!ud[x].addFeatureVector(it, vec) && !(x > 0 && ud[x - 1].addFeatureVector(it, vec))) {
+            if(x + 1 < xsi) {
+              ud[x + 1].addFeatureVector(it, vec);
+            }
+          }
+        }
+      }
+      return null;
+    });
+
     if(buf != null) {
-      LOG.debugFiner(buf.append("   total number of 1-dim units: ").append(units.size()).toString());
+      LOG.debugFiner(buf.append("   total number of 1-dim units: ").append(xsi * dimensionality).toString());
     }
     return units;
   }
@@ -322,31 +351,24 @@ public class CLIQUE implements SubspaceClusteringAlgorithm<SubspaceModel> {
    *         their coverage
    */
   private List<CLIQUESubspace> findOneDimensionalDenseSubspaceCandidates(Relation<? extends NumberVector> database) {
-    Collection<CLIQUEUnit> units = initOneDimensionalUnits(database);
+    CLIQUEUnit[][] units = initOneDimensionalUnits(database);
     // identify dense units
     double total = database.size();
-    for(DBIDIter it = database.iterDBIDs(); it.valid(); it.advance()) {
-      NumberVector featureVector = database.get(it);
-      // FIXME: rather than repeatedly testing, use a clever data structure?
-      for(CLIQUEUnit unit : units) {
-        unit.addFeatureVector(it, featureVector);
-      }
-    }
-
     int dimensionality = RelationUtil.dimensionality(database);
-    Collection<CLIQUEUnit> denseUnits = new ArrayList<>();
+    int denseUnits = 0;
     CLIQUESubspace[] denseSubspaces = new CLIQUESubspace[dimensionality];
-    for(CLIQUEUnit unit : units) {
-      // unit is a dense unit
-      if(unit.selectivity(total) >= tau) {
-        denseUnits.add(unit);
-        // add the one-dimensional dense unit to its subspace
-        int dim = unit.getDimension(0);
-        CLIQUESubspace subspace_d = denseSubspaces[dim];
-        if(subspace_d == null) {
-          denseSubspaces[dim] = subspace_d = new CLIQUESubspace(dim);
+    for(int dim = 0; dim < dimensionality; dim++) {
+      for(CLIQUEUnit unit : units[dim]) {
+        // unit is a dense unit
+        if(unit.selectivity(total) >= tau) {
+          denseUnits++;
+          // add the one-dimensional dense unit to its subspace
+          CLIQUESubspace subspace_d = denseSubspaces[dim];
+          if(subspace_d == null) {
+            denseSubspaces[dim] = subspace_d = new CLIQUESubspace(dim);
+          }
+          subspace_d.addDenseUnit(unit);
         }
-        subspace_d.addDenseUnit(unit);
       }
     }
     // Omit null values where no dense unit was found:
@@ -359,7 +381,7 @@ public class CLIQUE implements SubspaceClusteringAlgorithm<SubspaceModel> {
     Collections.sort(subspaceCandidates, CLIQUESubspace.BY_COVERAGE);
 
     if(LOG.isDebugging()) {
-      LOG.debugFine(new StringBuilder().append("   number of 1-dim dense units: ").append(denseUnits.size()) //
+      LOG.debugFine(new StringBuilder().append("   number of 1-dim dense units: ").append(denseUnits) //
           .append("\n   number of 1-dim dense subspace candidates: ").append(subspaceCandidates.size()).toString());
     }
     return subspaceCandidates;
@@ -379,18 +401,24 @@ public class CLIQUE implements SubspaceClusteringAlgorithm<SubspaceModel> {
     List<CLIQUESubspace> denseSubspacesByDimensions = new ArrayList<>(denseSubspaces);
     Collections.sort(denseSubspacesByDimensions, Subspace.DIMENSION_COMPARATOR);
 
-    // determine k-dimensional dense subspace candidates
-    double all = database.size();
+    // determine k-dimensional dense subspace candidates, in parallel
+    final double all = database.size();
+    final int n = denseSubspacesByDimensions.size();
     List<CLIQUESubspace> denseSubspaceCandidates = new ArrayList<>();
-
-    while(!denseSubspacesByDimensions.isEmpty()) {
-      CLIQUESubspace s1 = denseSubspacesByDimensions.remove(0);
-      for(CLIQUESubspace s2 : denseSubspacesByDimensions) {
-        CLIQUESubspace s = s1.join(s2, all, tau);
-        if(s != null) {
-          denseSubspaceCandidates.add(s);
+    for(List<CLIQUESubspace> block : ParallelExecutor.run(n, 1, (start, end) -> {
+      List<CLIQUESubspace> candidates = new ArrayList<>();
+      for(int i = start; i < end; i++) {
+        CLIQUESubspace s1 = denseSubspacesByDimensions.get(i);
+        for(int j = i + 1; j < n; j++) {
+          CLIQUESubspace s = s1.join(denseSubspacesByDimensions.get(j), all, tau);
+          if(s != null) {
+            candidates.add(s);
+          }
         }
       }
+      return candidates;
+    })) {
+      denseSubspaceCandidates.addAll(block);
     }
 
     // sort reverse by coverage
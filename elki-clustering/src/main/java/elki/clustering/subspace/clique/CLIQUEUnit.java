@@ -24,16 +24,20 @@ import java.util.Arrays;
 
 import elki.data.NumberVector;
 import elki.database.ids.*;
+import elki.utilities.datastructures.BitsUtil;
 import elki.utilities.io.FormatUtil;
 
 /**
  * Represents a unit in the CLIQUE algorithm.
+ * <p>
+ * The objects contained are stored as a bitset over the offsets in an array
+ * of all object ids, such that joins are bitset intersections, and the
+ * support of a candidate can be counted (by popcount) before materializing it.
  * 
  * @author Elke Achtert
  * @since 0.1
  * 
  * @composed - - - CLIQUEInterval
- * @composed - - - ModifiableDBIDs
  */
 public class CLIQUEUnit {
   /**
@@ -47,9 +51,19 @@ public class CLIQUEUnit {
   private double[] bounds;
 
   /**
-   * The ids of the feature vectors this unit contains.
+   * All object ids, the bitset refers to offsets in this array.
    */
-  private ModifiableDBIDs ids;
+  private ArrayDBIDs ids;
+
+  /**
+   * Bitset of the feature vectors this unit contains.
+   */
+  private long[] bits;
+
+  /**
+   * Number of feature vectors this unit contains.
+   */
+  private int count;
 
   /**
    * Flag that indicates if this unit is already assigned to a cluster.
@@ -63,16 +77,19 @@ public class CLIQUEUnit {
    * @param newdim Additional dimension
    * @param min Minimum bound
    * @param max Maximum bound
-   * @param ids the ids of the feature vectors belonging to this unit
+   * @param bits the feature vectors belonging to this unit
+   * @param count the number of feature vectors belonging to this unit
    */
-  private CLIQUEUnit(CLIQUEUnit prefix, int newdim, double min, double max, ModifiableDBIDs ids) {
+  private CLIQUEUnit(CLIQUEUnit prefix, int newdim, double min, double max, long[] bits, int count) {
     int dimensionality = prefix.dims.length + 1;
     this.dims = Arrays.copyOf(prefix.dims, dimensionality);
     dims[dimensionality - 1] = newdim;
     this.bounds = Arrays.copyOf(prefix.bounds, dimensionality << 1);
     bounds[(dimensionality - 1) << 1] = min;
     bounds[(dimensionality << 1) - 1] = max;
-    this.ids = ids;
+    this.ids = prefix.ids;
+    this.bits = bits;
+    this.count = count;
     assigned = false;
   }
 
@@ -82,11 +99,13 @@ public class CLIQUEUnit {
    * @param dim Dimension
    * @param min Minimum
    * @param max MAximum
+   * @param ids All object ids
    */
-  public CLIQUEUnit(int dim, double min, double max) {
+  public CLIQUEUnit(int dim, double min, double max, ArrayDBIDs ids) {
     dims = new int[] { dim };
     bounds = new double[] { min, max };
-    ids = DBIDUtil.newHashSet();
+    this.ids = ids;
+    bits = BitsUtil.zero(ids.size());
     assigned = false;
   }
 
@@ -131,14 +150,18 @@ public class CLIQUEUnit {
    * Adds the id of the specified feature vector to this unit, if this unit
    * contains the feature vector.
    * 
-   * @param id Vector id
+   * @param id Vector id, an iterator over the ids of this unit
    * @param vector the feature vector to be added
    * @return true, if this unit contains the specified feature vector, false
    *         otherwise
    */
-  public boolean addFeatureVector(DBIDRef id, NumberVector vector) {
+  public boolean addFeatureVector(DBIDArrayIter id, NumberVector vector) {
     if(contains(vector)) {
-      ids.add(id);
+      final int off = id.getOffset();
+      if(!BitsUtil.get(bits, off)) {
+        BitsUtil.setI(bits, off);
+        count++;
+      }
       return true;
     }
     return false;
@@ -150,7 +173,7 @@ public class CLIQUEUnit {
    * @return the number of feature vectors this unit contains
    */
   public int numberOfFeatureVectors() {
-    return ids.size();
+    return count;
   }
 
   /**
@@ -161,7 +184,7 @@ public class CLIQUEUnit {
    * @return the selectivity of this unit
    */
   public double selectivity(double total) {
-    return ids.size() / total;
+    return count / total;
   }
 
   /**
@@ -211,7 +234,12 @@ public class CLIQUEUnit {
    * @return the ids of the feature vectors this unit contains
    */
   public DBIDs getIds() {
-    return ids;
+    ArrayModifiableDBIDs res = DBIDUtil.newArray(count);
+    DBIDArrayIter it = ids.iter();
+    for(int i = BitsUtil.nextSetBit(bits, 0); i >= 0; i = BitsUtil.nextSetBit(bits, i + 1)) {
+      res.add(it.seek(i));
+    }
+    return res;
   }
 
   /**
@@ -233,10 +261,10 @@ public class CLIQUEUnit {
       return null;
     }
 
-    ModifiableDBIDs resultIDs = DBIDUtil.intersection(this.ids, other.ids);
-
-    return resultIDs.size() / all < tau ? null : //
-        new CLIQUEUnit(this, other.dims[e], other.bounds[e << 1], other.bounds[(e << 1) + 1], resultIDs);
+    // Count first, only materialize dense units:
+    final int size = BitsUtil.intersectionSize(this.bits, other.bits);
+    return size / all < tau ? null : //
+        new CLIQUEUnit(this, other.dims[e], other.bounds[e << 1], other.bounds[(e << 1) + 1], BitsUtil.andI(BitsUtil.copy(this.bits), other.bits), size);
   }
 
   /**
@@ -20,12 +20,16 @@
  */
 package elki.evaluation.clustering.internal;
 
+import java.util.Arrays;
 import java.util.List;
 
 import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.database.Database;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
@@ -38,6 +42,8 @@ import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
 import elki.logging.statistics.StringStatistic;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
 import elki.result.EvaluationResult;
 import elki.result.EvaluationResult.MeasurementGroup;
 import elki.result.Metadata;
@@ -56,7 +62,9 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * Compute the C-index of a data set.
  * <p>
  * Note: This requires pairwise distance computations, so it is not recommended
- * to use this on larger data sets.
+ * to use this on larger data sets. The distances are computed in parallel,
+ * with every thread keeping its own heaps of the smallest and largest
+ * distances.
  * <p>
  * Reference:
  * <p>
@@ -98,6 +106,16 @@ public class CIndex<O> implements Evaluator {
    */
   private String key = CIndex.class.getName();
 
+  /**
+   * Minimum number of objects per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Number of blocks per thread, to keep the partial heaps small.
+   */
+  private static final int BLOCKS_PER_THREAD = 4;
+
   /**
    * Constructor.
    *
@@ -120,8 +138,8 @@ public class CIndex<O> implements Evaluator {
   public double evaluateClustering(Relation<? extends O> rel, DistanceQuery<O> dq, Clustering<?> c) {
     List<? extends Cluster<?>> clusters = c.getAllClusters();
 
-    // Count ignored noise, and within-cluster distances
-    int ignorednoise = 0, w = 0;
+    // Count ignored noise, processed objects, and within-cluster distances
+    int ignorednoise = 0, w = 0, total = 0;
     for(Cluster<?> cluster : clusters) {
       if(cluster.size() <= 1 || cluster.isNoise()) {
         switch(noiseOption){
@@ -129,6 +147,7 @@ public class CIndex<O> implements Evaluator {
           ignorednoise += cluster.size();
           continue; // Ignore
         case TREAT_NOISE_AS_SINGLETONS:
+          total += cluster.size();
           continue; // No within-cluster distances!
         case MERGE_NOISE:
           break; // Treat like a cluster
@@ -136,6 +155,7 @@ public class CIndex<O> implements Evaluator {
           LOG.warning("Unknown noise handling option: " + noiseOption);
         }
       }
+      total += cluster.size();
       w += (cluster.size() * (cluster.size() - 1)) >>> 1;
     }
 
@@ -143,44 +163,69 @@ public class CIndex<O> implements Evaluator {
     // just build a long array with all distances, and select the quantiles.
     // The heaps used below pay off in memory consumption for k > 2
 
+    // Objects to process, and their cluster numbers. Objects in overlapping or
+    // hierarchical clusters occur once per cluster.
+    ArrayModifiableDBIDs objs = DBIDUtil.newArray(total);
+    final int[] cnum = new int[total];
+    for(int i = 0; i < clusters.size(); i++) {
+      Cluster<?> cluster = clusters.get(i);
+      if(noiseOption == NoiseHandling.IGNORE_NOISE && (cluster.size() <= 1 || cluster.isNoise())) {
+        continue; // Ignore
+      }
+      Arrays.fill(cnum, objs.size(), objs.size() + cluster.size(), i);
+      objs.addDBIDs(cluster.getIDs());
+    }
     // Yes, maxDists is supposed to be a min heap, and the other way.
     // Because we want to replace the smallest of the current k-largest
     // distances.
     DoubleHeap maxDists = new DoubleMinHeap(w);
     DoubleHeap minDists = new DoubleMaxHeap(w);
-    double theta = 0.; // Sum of within-cluster distances
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing clusters for C-Index", clusters.size(), LOG) : null;
-    for(int i = 0; i < clusters.size(); i++) {
-      Cluster<?> cluster = clusters.get(i);
-      if(cluster.size() <= 1 || cluster.isNoise()) {
-        switch(noiseOption){
-        case IGNORE_NOISE:
-          LOG.incrementProcessed(prog);
-          continue; // Ignore
-        case TREAT_NOISE_AS_SINGLETONS:
-          processSingleton(cluster, rel, dq, maxDists, minDists, w);
-          LOG.incrementProcessed(prog);
-          continue;
-        case MERGE_NOISE:
-          break; // Treat like a cluster, below
+    // Every block of objects collects its distances in small, growing heaps,
+    // which are merged into the global heaps as soon as the block is done.
+    // The number of blocks in flight is limited by the available memory.
+    final int fw = w, size = objs.size();
+    final int nb = BLOCKS_PER_THREAD * ParallelCore.getCore().getParallelism();
+    final int blocksize = Math.max(MIN_BLOCKSIZE, (size + nb - 1) / nb);
+    final int numblocks = (size + blocksize - 1) / blocksize;
+    // Two heaps of at most w doubles, with up to twice the capacity each.
+    final int maxconcurrent = ParallelExecutor.concurrencyForMemory(4L * Double.BYTES * w);
+    final double[] thetas = new double[size];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing objects for C-Index", size, LOG) : null;
+    ParallelExecutor.runOrdered(numblocks, maxconcurrent, b -> {
+      final int start = b * blocksize, end = Math.min(start + blocksize, size);
+      Partial part = new Partial();
+      DBIDArrayIter it = objs.iter();
+      for(int p = start; p < end; p++) {
+        final int i = cnum[p];
+        Cluster<?> cluster = clusters.get(i);
+        if(noiseOption == NoiseHandling.TREAT_NOISE_AS_SINGLETONS && (cluster.size() <= 1 || cluster.isNoise())) {
+          processSingleton(it.seek(p), rel, dq, part.maxDists, part.minDists, fw);
         }
+        else {
+          thetas[p] = processObject(it.seek(p), cluster, clusters, i, dq, part.maxDists, part.minDists, fw);
+        }
+        LOG.incrementProcessed(prog);
       }
-      theta += processCluster(cluster, clusters, i, dq, maxDists, minDists, w);
-      LOG.incrementProcessed(prog);
-    }
+      return part;
+    }, (part, b) -> {
+      for(DoubleHeap.UnsortedIter it = part.maxDists.unsortedIter(); it.valid(); it.advance()) {
+        maxDists.add(it.get(), fw);
+      }
+      for(DoubleHeap.UnsortedIter it = part.minDists.unsortedIter(); it.valid(); it.advance()) {
+        minDists.add(it.get(), fw);
+      }
+    });
     LOG.ensureCompleted(prog);
+    double theta = 0.; // Sum of within-cluster distances
+    for(double t : thetas) {
+      theta += t;
+    }
 
     // Simulate best and worst cases:
-    double min = 0, max = 0; // Sum of largest and smallest
     assert (minDists.size() == w);
     assert (maxDists.size() == w);
-    for(DoubleHeap.UnsortedIter it = minDists.unsortedIter(); it.valid(); it.advance()) {
-      min += it.get();
-    }
-    for(DoubleHeap.UnsortedIter it = maxDists.unsortedIter(); it.valid(); it.advance()) {
-      max += it.get();
-    }
+    // Sum of smallest and largest, independent of the number of threads
+    double min = sortedSum(minDists), max = sortedSum(maxDists);
     assert (max >= min);
 
     double cIndex = (max > min) ? (theta - min) / (max - min) : 1.;
@@ -202,55 +247,113 @@ public class CIndex<O> implements Evaluator {
     return cIndex;
   }
 
-  protected double processCluster(Cluster<?> cluster, List<? extends Cluster<?>> clusters, int i, DistanceQuery<O> dq, DoubleHeap maxDists, DoubleHeap minDists, int w) {
+  /**
+   * Process the distances of a single clustered object.
+   *
+   * @param it1 Object
+   * @param cluster Cluster of the object
+   * @param clusters All clusters
+   * @param i Index of the cluster
+   * @param dq Distance query
+   * @param maxDists Heap of largest distances
+   * @param minDists Heap of smallest distances
+   * @param w Number of within-cluster distances
+   * @return Sum of within-cluster distances
+   */
+  protected double processObject(DBIDRef it1, Cluster<?> cluster, List<? extends Cluster<?>> clusters, int i, DistanceQuery<O> dq, DoubleHeap maxDists, DoubleHeap minDists, int w) {
     double theta = 0.;
-    for(DBIDIter it1 = cluster.getIDs().iter(); it1.valid(); it1.advance()) {
-      // Compare object to every cluster, but only once
-      for(int j = i; j < clusters.size(); j++) {
-        Cluster<?> ocluster = clusters.get(j);
-        if(ocluster.size() <= 1 || ocluster.isNoise()) {
-          switch(noiseOption){
-          case IGNORE_NOISE:
-            continue; // Ignore this cluster.
-          case TREAT_NOISE_AS_SINGLETONS:
-            break; // Treat like a cluster
-          case MERGE_NOISE:
-            break; // Treat like a cluster
-          }
+    // Compare object to every cluster, but only once
+    for(int j = i; j < clusters.size(); j++) {
+      Cluster<?> ocluster = clusters.get(j);
+      if(ocluster.size() <= 1 || ocluster.isNoise()) {
+        switch(noiseOption){
+        case IGNORE_NOISE:
+          continue; // Ignore this cluster.
+        case TREAT_NOISE_AS_SINGLETONS:
+          break; // Treat like a cluster
+        case MERGE_NOISE:
+          break; // Treat like a cluster
         }
-        for(DBIDIter it2 = ocluster.getIDs().iter(); it2.valid(); it2.advance()) {
-          // Careful: we don't want duplicate distances, but we already do the
-          // same trick on the clusters; so on different clusters we need to
-          // look at all pairs, within a cluster only half.
-          if(i == j && DBIDUtil.compare(it1, it2) <= 0) {
-            continue;
-          }
-          double dist = dq.distance(it1, it2);
-          minDists.add(dist, w);
-          maxDists.add(dist, w);
-          if(ocluster == cluster) { // Within-cluster distances.
-            theta += dist;
-          }
+      }
+      for(DBIDIter it2 = ocluster.getIDs().iter(); it2.valid(); it2.advance()) {
+        // Careful: we don't want duplicate distances, but we already do the
+        // same trick on the clusters; so on different clusters we need to
+        // look at all pairs, within a cluster only half.
+        if(i == j && DBIDUtil.compare(it1, it2) <= 0) {
+          continue;
+        }
+        double dist = dq.distance(it1, it2);
+        minDists.add(dist, w);
+        maxDists.add(dist, w);
+        if(ocluster == cluster) { // Within-cluster distances.
+          theta += dist;
         }
       }
     }
     return theta;
   }
 
-  protected void processSingleton(Cluster<?> cluster, Relation<? extends O> rel, DistanceQuery<O> dq, DoubleHeap maxDists, DoubleHeap minDists, int w) {
+  /**
+   * Process the distances of a single noise object.
+   *
+   * @param it1 Object
+   * @param rel Data relation
+   * @param dq Distance query
+   * @param maxDists Heap of largest distances
+   * @param minDists Heap of smallest distances
+   * @param w Number of within-cluster distances
+   */
+  protected void processSingleton(DBIDRef it1, Relation<? extends O> rel, DistanceQuery<O> dq, DoubleHeap maxDists, DoubleHeap minDists, int w) {
     // All other objects are in other clusters!
-    for(DBIDIter it1 = cluster.getIDs().iter(); it1.valid(); it1.advance()) {
-      for(DBIDIter it2 = rel.iterDBIDs(); it2.valid(); it2.advance()) {
-        if(DBIDUtil.compare(it1, it2) <= 0) { // Only once.
-          continue;
-        }
-        double dist = dq.distance(it1, it2);
-        minDists.add(dist, w);
-        maxDists.add(dist, w);
+    for(DBIDIter it2 = rel.iterDBIDs(); it2.valid(); it2.advance()) {
+      if(DBIDUtil.compare(it1, it2) <= 0) { // Only once.
+        continue;
       }
+      double dist = dq.distance(it1, it2);
+      minDists.add(dist, w);
+      maxDists.add(dist, w);
     }
   }
 
+  /**
+   * Sum the heap contents in sorted order, so the result does not depend on
+   * the order in which the heap was filled.
+   *
+   * @param heap Heap
+   * @return Sum
+   */
+  private static double sortedSum(DoubleHeap heap) {
+    double[] vals = new double[heap.size()];
+    int i = 0;
+    for(DoubleHeap.UnsortedIter it = heap.unsortedIter(); it.valid(); it.advance()) {
+      vals[i++] = it.get();
+    }
+    Arrays.sort(vals);
+    double sum = 0.;
+    for(double v : vals) {
+      sum += v;
+    }
+    return sum;
+  }
+
+  /**
+   * Partial result of a block of objects. The heaps start small, and only
+   * grow to the number of distances of the block, at most w.
+   *
+   * @author Erich Schubert
+   */
+  private static class Partial {
+    /**
+     * Largest distances, in a min heap.
+     */
+    DoubleHeap maxDists = new DoubleMinHeap();
+
+    /**
+     * Smallest distances, in a max heap.
+     */
+    DoubleHeap minDists = new DoubleMaxHeap();
+  }
+
   @Override
   public void processNewResult(Object result) {
     List<Clustering<?>> crs = Clustering.getClusteringResults(result);
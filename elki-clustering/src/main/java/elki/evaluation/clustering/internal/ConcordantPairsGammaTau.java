@@ -20,6 +20,7 @@
  */
 package elki.evaluation.clustering.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -27,6 +28,8 @@ import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.data.NumberVector;
 import elki.database.Database;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.relation.Relation;
@@ -37,10 +40,12 @@ import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
 import elki.logging.statistics.StringStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.result.EvaluationResult;
 import elki.result.EvaluationResult.MeasurementGroup;
 import elki.result.Metadata;
 import elki.result.ResultUtil;
+import elki.utilities.datastructures.arraylike.IntegerArray;
 import elki.utilities.documentation.Reference;
 import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.Parameterizer;
@@ -66,7 +71,8 @@ import net.jafama.FastMath;
  * Methods of comparing classifications<br>
  * Annual Review of Ecology and Systematics
  * <p>
- * The runtime complexity of this measure is O(n*n*log(n)).
+ * The runtime complexity of this measure is O(n*n*log(n)). Distances are
+ * computed, sorted, and compared in parallel.
  *
  * @author Stephan Baier
  * @author Erich Schubert
@@ -101,6 +107,16 @@ public class ConcordantPairsGammaTau implements Evaluator {
    */
   private String key = ConcordantPairsGammaTau.class.getName();
 
+  /**
+   * Minimum number of objects per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Minimum number of distances per parallel sorting block.
+   */
+  private static final int MIN_SORTBLOCK = 1 << 13;
+
   /**
    * Constructor.
    *
@@ -124,7 +140,7 @@ public class ConcordantPairsGammaTau implements Evaluator {
   public double evaluateClustering(Relation<? extends NumberVector> rel, Clustering<?> c) {
     List<? extends Cluster<?>> clusters = c.getAllClusters();
 
-    int ignorednoise = 0, withinPairs = 0;
+    int ignorednoise = 0, withinPairs = 0, total = 0;
     for(Cluster<?> cluster : clusters) {
       if((cluster.size() <= 1 || cluster.isNoise())) {
         switch(noiseHandling){
@@ -132,11 +148,13 @@ public class ConcordantPairsGammaTau implements Evaluator {
           ignorednoise += cluster.size();
           continue;
         case TREAT_NOISE_AS_SINGLETONS:
+          total += cluster.size();
           continue; // No concordant distances.
         case MERGE_NOISE:
           break; // Treat like a cluster below.
         }
       }
+      total += cluster.size();
       withinPairs += (cluster.size() * (cluster.size() - 1)) >>> 1;
       if(withinPairs < 0) {
         throw new AbortException("Integer overflow - clusters too large to compute pairwise distances.");
@@ -148,15 +166,19 @@ public class ConcordantPairsGammaTau implements Evaluator {
     // Count ties within
     countTies(withinDistances, withinTies);
 
-    long concordantPairs = 0, discordantPairs = 0, betweenPairs = 0;
-
-    // Step two, compute discordant distances:
+    // Step two, compute discordant distances. Objects in overlapping or
+    // hierarchical clusters occur once per cluster.
+    long betweenPairs = 0;
+    ArrayModifiableDBIDs objs = DBIDUtil.newArray(total);
+    final int[] cnum = new int[total];
     for(int i = 0; i < clusters.size(); i++) {
       Cluster<?> ocluster1 = clusters.get(i);
       if((ocluster1.size() <= 1 || ocluster1.isNoise()) //
           && noiseHandling.equals(NoiseHandling.IGNORE_NOISE)) {
         continue;
       }
+      Arrays.fill(cnum, objs.size(), objs.size() + ocluster1.size(), i);
+      objs.addDBIDs(ocluster1.getIDs());
       for(int j = i + 1; j < clusters.size(); j++) {
         Cluster<?> ocluster2 = clusters.get(j);
         if((ocluster2.size() <= 1 || ocluster2.isNoise()) //
@@ -164,26 +186,20 @@ public class ConcordantPairsGammaTau implements Evaluator {
           continue;
         }
         betweenPairs += ocluster1.size() * (long) ocluster2.size();
-        for(DBIDIter oit1 = ocluster1.getIDs().iter(); oit1.valid(); oit1.advance()) {
-          NumberVector obj = rel.get(oit1);
-          for(DBIDIter oit2 = ocluster2.getIDs().iter(); oit2.valid(); oit2.advance()) {
-            double dist = distance.distance(obj, rel.get(oit2));
-            int p = Arrays.binarySearch(withinDistances, dist);
-            if(p >= 0) { // Tied distances:
-              while(p > 0 && withinDistances[p - 1] >= dist) {
-                --p;
-              }
-              concordantPairs += p;
-              discordantPairs += withinDistances.length - p - withinTies[p];
-              continue;
-            }
-            p = -p - 1;
-            concordantPairs += p;
-            discordantPairs += withinDistances.length - p;
-          }
-        }
       }
     }
+    long concordantPairs = 0, discordantPairs = 0;
+    for(long[] part : ParallelExecutor.run(objs.size(), MIN_BLOCKSIZE, (start, end) -> {
+      long[] cd = new long[2];
+      DBIDArrayIter oit1 = objs.iter();
+      for(int p = start; p < end; p++) {
+        countDiscordant(rel, rel.get(oit1.seek(p)), clusters, cnum[p], withinDistances, withinTies, cd);
+      }
+      return cd;
+    })) {
+      concordantPairs += part[0];
+      discordantPairs += part[1];
+    }
 
     // Total number of pairs possible:
     final long t = ((rel.size() - ignorednoise) * (long) (rel.size() - ignorednoise - 1)) >>> 1;
@@ -239,8 +255,56 @@ public class ConcordantPairsGammaTau implements Evaluator {
     return wties;
   }
 
+  /**
+   * Count the concordant and discordant pairs of a single object with the
+   * objects of all following clusters.
+   *
+   * @param rel Data relation
+   * @param obj Object
+   * @param clusters Clusters
+   * @param i Cluster index of the object
+   * @param withinDistances Sorted within-cluster distances
+   * @param withinTies Tie counts
+   * @param cd Output: concordant and discordant pairs
+   */
+  private void countDiscordant(Relation<? extends NumberVector> rel, NumberVector obj, List<? extends Cluster<?>> clusters, int i, double[] withinDistances, int[] withinTies, long[] cd) {
+    for(int j = i + 1; j < clusters.size(); j++) {
+      Cluster<?> ocluster2 = clusters.get(j);
+      if((ocluster2.size() <= 1 || ocluster2.isNoise()) //
+          && noiseHandling.equals(NoiseHandling.IGNORE_NOISE)) {
+        continue;
+      }
+      for(DBIDIter oit2 = ocluster2.getIDs().iter(); oit2.valid(); oit2.advance()) {
+        double dist = distance.distance(obj, rel.get(oit2));
+        int p = Arrays.binarySearch(withinDistances, dist);
+        if(p >= 0) { // Tied distances:
+          while(p > 0 && withinDistances[p - 1] >= dist) {
+            --p;
+          }
+          cd[0] += p;
+          cd[1] += withinDistances.length - p - withinTies[p];
+          continue;
+        }
+        p = -p - 1;
+        cd[0] += p;
+        cd[1] += withinDistances.length - p;
+      }
+    }
+  }
+
+  /**
+   * Compute all within-cluster distances, sorted.
+   *
+   * @param rel Data relation
+   * @param clusters Clusters
+   * @param withinPairs Number of within-cluster pairs
+   * @return Sorted within-cluster distances
+   */
   protected double[] computeWithinDistances(Relation<? extends NumberVector> rel, List<? extends Cluster<?>> clusters, int withinPairs) {
     double[] concordant = new double[withinPairs];
+    // Sorted cluster members, and output offsets of each cluster
+    List<ArrayModifiableDBIDs> cids = new ArrayList<>(clusters.size());
+    IntegerArray offsets = new IntegerArray(clusters.size());
     int i = 0;
     for(Cluster<?> cluster : clusters) {
       if(cluster.size() <= 1 || cluster.isNoise()) {
@@ -253,22 +317,72 @@ public class ConcordantPairsGammaTau implements Evaluator {
           break; // Treat like a cluster below.
         }
       }
-
-      for(DBIDIter it1 = cluster.getIDs().iter(); it1.valid(); it1.advance()) {
-        NumberVector obj = rel.get(it1);
-        for(DBIDIter it2 = cluster.getIDs().iter(); it2.valid(); it2.advance()) {
-          if(DBIDUtil.compare(it1, it2) <= 0) {
-            continue;
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray(cluster.getIDs());
+      ids.sort();
+      cids.add(ids);
+      offsets.add(i);
+      i += (ids.size() * (ids.size() - 1)) >>> 1;
+    }
+    assert (concordant.length == i);
+    // Object p of a cluster is paired with all preceding objects.
+    for(int c = 0; c < cids.size(); c++) {
+      final ArrayModifiableDBIDs ids = cids.get(c);
+      final int off = offsets.get(c);
+      ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+        DBIDArrayIter it1 = ids.iter(), it2 = ids.iter();
+        for(int p = start; p < end; p++) {
+          NumberVector obj = rel.get(it1.seek(p));
+          int o = off + ((p * (p - 1)) >>> 1);
+          for(it2.seek(0); it2.getOffset() < p; it2.advance()) {
+            concordant[o++] = distance.distance(obj, rel.get(it2));
           }
-          concordant[i++] = distance.distance(obj, rel.get(it2));
         }
-      }
+        return null;
+      });
     }
-    assert (concordant.length == i);
-    Arrays.sort(concordant);
+    sort(concordant);
     return concordant;
   }
 
+  /**
+   * Sort an array, by sorting blocks in parallel and merging the sorted runs.
+   *
+   * @param data Data to sort
+   */
+  private static void sort(double[] data) {
+    List<int[]> runs = ParallelExecutor.run(data.length, MIN_SORTBLOCK, (start, end) -> {
+      Arrays.sort(data, start, end);
+      return new int[] { start, end };
+    });
+    double[] src = data, dst = runs.size() > 1 ? new double[data.length] : null;
+    while(runs.size() > 1) {
+      List<int[]> merged = new ArrayList<>((runs.size() + 1) >>> 1);
+      for(int i = 0; i < runs.size(); i += 2) {
+        final int[] a = runs.get(i);
+        if(i + 1 == runs.size()) { // Odd run out
+          System.arraycopy(src, a[0], dst, a[0], a[1] - a[0]);
+          merged.add(a);
+          continue;
+        }
+        final int[] b = runs.get(i + 1);
+        int x = a[0], y = b[0], o = a[0];
+        while(x < a[1] && y < b[1]) {
+          dst[o++] = Double.compare(src[y], src[x]) < 0 ? src[y++] : src[x++];
+        }
+        System.arraycopy(src, x, dst, o, a[1] - x);
+        System.arraycopy(src, y, dst, o + a[1] - x, b[1] - y);
+        merged.add(new int[] { a[0], b[1] });
+      }
+      runs = merged;
+      double[] tmp = src;
+      src = dst;
+      dst = tmp;
+    }
+    if(src != data) {
+      System.arraycopy(src, 0, data, 0, data.length);
+    }
+  }
+
   /**
    * Compute the Tau correlation measure
    *
@@ -41,6 +41,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.evaluation.Evaluator;
 import elki.math.MathUtil;
 import elki.math.geometry.PrimsMinimumSpanningTree;
+import elki.parallel.ParallelExecutor;
 import elki.result.EvaluationResult;
 import elki.result.EvaluationResult.MeasurementGroup;
 import elki.result.Metadata;
@@ -81,6 +82,11 @@ public class DBCV<O> implements Evaluator {
    */
   private Distance<? super O> distance;
 
+  /**
+   * Minimum number of objects per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
   /**
    * Constructor.
    *
@@ -122,25 +128,29 @@ public class DBCV<O> implements Evaluator {
       }
       // Store for use below:
       ArrayDBIDs ids = cids[c] = DBIDUtil.ensureArray(cluster.getIDs());
-      double[] clusterCoreDists = coreDists[c] = new double[ids.size()];
-      for(DBIDArrayIter it = ids.iter(), it2 = ids.iter(); it.valid(); it.advance()) {
-        double currentCoreDist = 0;
-        int neighbors = 0;
-        for(it2.seek(0); it2.valid(); it2.advance()) {
-          if(DBIDUtil.equal(it, it2)) {
-            continue;
-          }
-          double dist = dq.distance(it, it2);
-          // Unfortunately, the DBCV definition has a division by zero.
-          // We ignore such objects.
-          if(dist > 0) {
-            currentCoreDist += MathUtil.powi(1. / dist, dim);
-            ++neighbors;
+      final double[] clusterCoreDists = coreDists[c] = new double[ids.size()];
+      ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+        DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+        for(it.seek(start); it.getOffset() < end; it.advance()) {
+          double currentCoreDist = 0;
+          int neighbors = 0;
+          for(it2.seek(0); it2.valid(); it2.advance()) {
+            if(DBIDUtil.equal(it, it2)) {
+              continue;
+            }
+            double dist = dq.distance(it, it2);
+            // Unfortunately, the DBCV definition has a division by zero.
+            // We ignore such objects.
+            if(dist > 0) {
+              currentCoreDist += MathUtil.powi(1. / dist, dim);
+              ++neighbors;
+            }
           }
+          // Average, and undo power.
+          clusterCoreDists[it.getOffset()] = FastMath.pow(currentCoreDist / neighbors, -1. / dim);
         }
-        // Average, and undo power.
-        clusterCoreDists[it.getOffset()] = FastMath.pow(currentCoreDist / neighbors, -1. / dim);
-      }
+        return null;
+      });
     }
 
     // compute density sparseness of all clusters
@@ -155,20 +165,25 @@ public class DBCV<O> implements Evaluator {
         clusterDscMax[c] = Double.NaN;
         continue;
       }
-      double[] clusterCoreDists = coreDists[c];
-      ArrayDBIDs ids = cids[c];
+      final double[] clusterCoreDists = coreDists[c];
+      final ArrayDBIDs ids = cids[c];
       double dscMax = 0; // Density Sparseness of the Cluster
-      double[][] distances = new double[cluster.size()][cluster.size()];
+      final double[][] distances = new double[cluster.size()][cluster.size()];
 
       // create mutability distance matrix for Minimum Spanning Tree
-      for(DBIDArrayIter it = ids.iter(), it2 = ids.iter(); it.valid(); it.advance()) {
-        double currentCoreDist = clusterCoreDists[it.getOffset()];
-        for(it2.seek(it.getOffset() + 1); it2.valid(); it2.advance()) {
-          double mutualReachDist = MathUtil.max(currentCoreDist, clusterCoreDists[it2.getOffset()], dq.distance(it, it2));
-          distances[it.getOffset()][it2.getOffset()] = mutualReachDist;
-          distances[it2.getOffset()][it.getOffset()] = mutualReachDist;
+      // (every row fills its part of the upper triangle, and mirrors it)
+      ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+        DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+        for(it.seek(start); it.getOffset() < end; it.advance()) {
+          double currentCoreDist = clusterCoreDists[it.getOffset()];
+          for(it2.seek(it.getOffset() + 1); it2.valid(); it2.advance()) {
+            double mutualReachDist = MathUtil.max(currentCoreDist, clusterCoreDists[it2.getOffset()], dq.distance(it, it2));
+            distances[it.getOffset()][it2.getOffset()] = mutualReachDist;
+            distances[it2.getOffset()][it.getOffset()] = mutualReachDist;
+          }
         }
-      }
+        return null;
+      });
 
       // generate Minimum Spanning Tree
       int[] nodes = PrimsMinimumSpanningTree.processDense(distances);
@@ -207,34 +222,41 @@ public class DBCV<O> implements Evaluator {
         continue;
       }
       double currentDscMax = clusterDscMax[c];
-      double[] clusterCoreDists = coreDists[c];
-      int[] currentDegree = clusterDegrees[c];
+      final double[] clusterCoreDists = coreDists[c];
+      final int[] currentDegree = clusterDegrees[c];
+      final ArrayDBIDs ids = cids[c];
 
       // minimal Density Separation of the Cluster
       double dspcMin = Double.POSITIVE_INFINITY;
-      for(DBIDArrayIter it = cids[c].iter(); it.valid(); it.advance()) {
-        // We again ignore external nodes, if the cluster has any internal
-        // nodes (edge count is not reliable because of stars, use node count)
-        if(currentDegree[it.getOffset()] < 2 && cluster.size() > 2) {
-          continue;
-        }
-        double currentCoreDist = clusterCoreDists[it.getOffset()];
-        for(int oc = 0; oc < numc; oc++) {
-          Cluster<?> ocluster = clusters.get(oc);
-          if(ocluster.isNoise() || ocluster.size() < 2 || cluster == ocluster) {
+      for(double blockMin : ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+        double min = Double.POSITIVE_INFINITY;
+        for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+          // We again ignore external nodes, if the cluster has any internal
+          // nodes (edge count is not reliable because of stars, use node count)
+          if(currentDegree[it.getOffset()] < 2 && cluster.size() > 2) {
             continue;
           }
-          int[] oDegree = clusterDegrees[oc];
-          double[] oclusterCoreDists = coreDists[oc];
-          for(DBIDArrayIter it2 = cids[oc].iter(); it2.valid(); it2.advance()) {
-            // See above.
-            if(oDegree[it2.getOffset()] < 2 && cluster.size() > 2) {
+          double currentCoreDist = clusterCoreDists[it.getOffset()];
+          for(int oc = 0; oc < numc; oc++) {
+            Cluster<?> ocluster = clusters.get(oc);
+            if(ocluster.isNoise() || ocluster.size() < 2 || cluster == ocluster) {
               continue;
             }
-            double mutualReachDist = MathUtil.max(currentCoreDist, oclusterCoreDists[it2.getOffset()], dq.distance(it, it2));
-            dspcMin = mutualReachDist < dspcMin ? mutualReachDist : dspcMin;
+            int[] oDegree = clusterDegrees[oc];
+            double[] oclusterCoreDists = coreDists[oc];
+            for(DBIDArrayIter it2 = cids[oc].iter(); it2.valid(); it2.advance()) {
+              // See above.
+              if(oDegree[it2.getOffset()] < 2 && cluster.size() > 2) {
+                continue;
+              }
+              double mutualReachDist = MathUtil.max(currentCoreDist, oclusterCoreDists[it2.getOffset()], dq.distance(it, it2));
+              min = mutualReachDist < min ? mutualReachDist : min;
+            }
           }
         }
+        return min;
+      })) {
+        dspcMin = blockMin < dspcMin ? blockMin : dspcMin;
       }
 
       // compute DBCV
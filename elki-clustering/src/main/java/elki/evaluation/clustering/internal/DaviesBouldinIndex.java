@@ -20,7 +20,6 @@
  */
 package elki.evaluation.clustering.internal;
 
-import java.util.Iterator;
 import java.util.List;
 
 import elki.data.Cluster;
@@ -39,6 +38,7 @@ import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
 import elki.logging.statistics.StringStatistic;
 import elki.math.Mean;
+import elki.parallel.ParallelExecutor;
 import elki.result.EvaluationResult;
 import elki.result.EvaluationResult.MeasurementGroup;
 import elki.result.Metadata;
@@ -194,24 +194,35 @@ public class DaviesBouldinIndex implements Evaluator {
     return daviesBouldinMean;
   }
 
+  /**
+   * Compute the within-group distances of all clusters, in parallel (one
+   * cluster per task, so the sums do not depend on the number of threads).
+   *
+   * @param rel Data relation
+   * @param clusters Clusters
+   * @param centroids Cluster centroids
+   * @return Within-group distances
+   */
   public double[] withinGroupDistances(Relation<? extends NumberVector> rel, List<? extends Cluster<?>> clusters, NumberVector[] centroids) {
-    double[] withinGroupDists = new double[clusters.size()];
-    Iterator<? extends Cluster<?>> ci = clusters.iterator();
-    for(int i = 0; ci.hasNext(); i++) {
-      Cluster<?> cluster = ci.next();
-      NumberVector centroid = centroids[i];
-      if(centroid == null) { // Empty, noise or singleton cluster:
-        withinGroupDists[i] = 0.;
-        continue;
-      }
-      double wD = 0.;
-      for(DBIDIter it = cluster.getIDs().iter(); it.valid(); it.advance()) {
-        double dist = distance.distance(centroid, rel.get(it));
-        wD += p != 1 ? FastMath.pow(dist, p) : dist;
+    final double[] withinGroupDists = new double[clusters.size()];
+    ParallelExecutor.run(clusters.size(), 1, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        Cluster<?> cluster = clusters.get(i);
+        NumberVector centroid = centroids[i];
+        if(centroid == null) { // Empty, noise or singleton cluster:
+          withinGroupDists[i] = 0.;
+          continue;
+        }
+        double wD = 0.;
+        for(DBIDIter it = cluster.getIDs().iter(); it.valid(); it.advance()) {
+          double dist = distance.distance(centroid, rel.get(it));
+          wD += p != 1 ? FastMath.pow(dist, p) : dist;
+        }
+        wD /= cluster.size(); // Average
+        withinGroupDists[i] = p != 1 ? FastMath.pow(wD, 1. / p) : wD;
       }
-      wD /= cluster.size(); // Average
-      withinGroupDists[i] = p != 1 ? FastMath.pow(wD, 1. / p) : wD;
-    }
+      return null;
+    });
     return withinGroupDists;
   }
 
@@ -20,7 +20,9 @@
  */
 package elki.evaluation.clustering.internal;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import elki.data.Cluster;
 import elki.data.Clustering;
@@ -36,7 +38,9 @@ import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
 import elki.logging.statistics.StringStatistic;
+import elki.math.MathUtil;
 import elki.math.MeanVariance;
+import elki.parallel.ParallelExecutor;
 import elki.result.EvaluationResult;
 import elki.result.EvaluationResult.MeasurementGroup;
 import elki.result.Metadata;
@@ -45,10 +49,16 @@ import elki.utilities.documentation.Reference;
 import elki.utilities.io.FormatUtil;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.EnumParameter;
 import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
 
 /**
  * Compute the silhouette of a data set.
@@ -60,6 +70,12 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * analysis<br>
  * In: Journal of Computational and Applied Mathematics Volume 20, November 1987
  * <p>
+ * The silhouettes of the individual objects are computed in parallel. For
+ * large data sets, the silhouette can be estimated from a random sample of
+ * objects (each still compared to all objects), which reduces the cost from
+ * O(n²) to O(s·n) distance computations; a 95% confidence interval of the
+ * estimate is reported along with it.
+ * <p>
  * TODO: keep all silhouette values, and allow visualization!
  *
  * @author Erich Schubert
@@ -96,23 +112,63 @@ public class Silhouette<O> implements Evaluator {
    */
   private boolean penalize = true;
 
+  /**
+   * Sample size, 0 to evaluate all objects.
+   */
+  private int sample = 0;
+
+  /**
+   * Random generator for sampling.
+   */
+  private RandomFactory rnd = RandomFactory.DEFAULT;
+
   /**
    * Key for logging statistics.
    */
   private String key = Silhouette.class.getName();
 
+  /**
+   * Minimum number of objects per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Number of rows per block of the within-cluster distance sums.
+   */
+  private static final int SYM_BLOCKSIZE = 64;
+
+  /**
+   * Quantile of the standard normal distribution for 95% confidence.
+   */
+  private static final double CI95_Z = 1.959963984540054;
+
   /**
    * Constructor.
    *
    * @param distance Distance function
    * @param noiseOption Handling of "noise" clusters.
    * @param penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   * @param sample Sample size, 0 to evaluate all objects
+   * @param rnd Random generator for sampling
    */
-  public Silhouette(Distance<? super O> distance, NoiseHandling noiseOption, boolean penalize) {
+  public Silhouette(Distance<? super O> distance, NoiseHandling noiseOption, boolean penalize, int sample, RandomFactory rnd) {
     super();
     this.distance = distance;
     this.noiseOption = noiseOption;
     this.penalize = penalize;
+    this.sample = sample;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param noiseOption Handling of "noise" clusters.
+   * @param penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   */
+  public Silhouette(Distance<? super O> distance, NoiseHandling noiseOption, boolean penalize) {
+    this(distance, noiseOption, penalize, 0, RandomFactory.DEFAULT);
   }
 
   /**
@@ -136,9 +192,14 @@ public class Silhouette<O> implements Evaluator {
    */
   public double evaluateClustering(Relation<O> rel, DistanceQuery<O> dq, Clustering<?> c) {
     List<? extends Cluster<?>> clusters = c.getAllClusters();
-    MeanVariance msil = new MeanVariance();
-    int ignorednoise = 0;
-    for(Cluster<?> cluster : clusters) {
+    final int numc = clusters.size();
+    // Cluster members, null for ignored noise
+    final ArrayDBIDs[] cids = new ArrayDBIDs[numc];
+    // Clusters treated as singletons
+    final boolean[] singletons = new boolean[numc];
+    int ignorednoise = 0, m = 0;
+    for(int i = 0; i < numc; i++) {
+      Cluster<?> cluster = clusters.get(i);
       // Note: we treat 1-element clusters the same as noise.
       if(cluster.size() <= 1 || cluster.isNoise()) {
         switch(noiseOption){
@@ -146,59 +207,78 @@ public class Silhouette<O> implements Evaluator {
           ignorednoise += cluster.size();
           continue; // Ignore noise elements
         case TREAT_NOISE_AS_SINGLETONS:
-          // As suggested in Rousseeuw, we use 0 for singletons.
-          msil.put(0., cluster.size());
-          continue;
+          singletons[i] = true;
+          break;
         case MERGE_NOISE:
           break; // Treat as cluster below
         }
       }
-      ArrayDBIDs ids = DBIDUtil.ensureArray(cluster.getIDs());
-      double[] as = new double[ids.size()]; // temporary storage.
-      DBIDArrayIter it1 = ids.iter(), it2 = ids.iter();
-      for(it1.seek(0); it1.valid(); it1.advance()) {
-        // a: In-cluster distances
-        double a = as[it1.getOffset()]; // Already computed distances
-        for(it2.seek(it1.getOffset() + 1); it2.valid(); it2.advance()) {
-          final double dist = dq.distance(it1, it2);
-          a += dist;
-          as[it2.getOffset()] += dist;
-        }
-        a /= (ids.size() - 1);
-        // b: minimum average distance to other clusters:
-        double b = Double.POSITIVE_INFINITY;
-        for(Cluster<?> ocluster : clusters) {
-          if(ocluster == /* yes, reference identity */cluster) {
-            continue; // Same cluster
-          }
-          if(ocluster.size() <= 1 || ocluster.isNoise()) {
-            switch(noiseOption){
-            case IGNORE_NOISE:
-              continue; // Ignore noise elements
-            case TREAT_NOISE_AS_SINGLETONS:
-              // Treat noise cluster as singletons:
-              for(DBIDIter it3 = ocluster.getIDs().iter(); it3.valid(); it3.advance()) {
-                final double dist = dq.distance(it1, it3);
-                b = dist < b ? dist : b; // Minimum average
-              }
-              continue;
-            case MERGE_NOISE:
-              break; // Treat as cluster below
-            }
-          }
-          final DBIDs oids = ocluster.getIDs();
-          double btmp = 0.;
-          for(DBIDIter it3 = oids.iter(); it3.valid(); it3.advance()) {
-            btmp += dq.distance(it1, it3);
+      cids[i] = DBIDUtil.ensureArray(cluster.getIDs());
+      m += cids[i].size();
+    }
+    // Flatten the objects to evaluate, in cluster order:
+    final ArrayModifiableDBIDs all = DBIDUtil.newArray(m);
+    final int[] cnum = new int[m];
+    for(int i = 0, p = 0; i < numc; i++) {
+      if(cids[i] != null) {
+        all.addDBIDs(cids[i]);
+        Arrays.fill(cnum, p, p += cids[i].size(), i);
+      }
+    }
+    final int[] sel = sample > 0 && sample < m ? randomSample(m, sample) : null;
+    final int s = sel != null ? sel.length : m;
+
+    // Within-cluster distance sums of all objects, using symmetry. A sample
+    // computes them per object instead.
+    final double[] asum = sel == null ? new double[m] : null;
+    if(sel == null) {
+      for(int i = 0, p = 0; i < numc; i++) {
+        if(cids[i] != null) {
+          if(!singletons[i]) {
+            withinSums(cids[i], dq, asum, p);
           }
-          btmp /= oids.size(); // Average
-          b = btmp < b ? btmp : b; // Minimum average
+          p += cids[i].size();
+        }
+      }
+    }
+
+    // Compute the silhouette of each object in parallel:
+    final double[] sils = new double[s];
+    ParallelExecutor.run(s, MIN_BLOCKSIZE, (start, end) -> {
+      DBIDArrayIter it = all.iter();
+      for(int i = start; i < end; i++) {
+        final int p = sel != null ? sel[i] : i;
+        final int ci = cnum[p];
+        if(singletons[ci]) {
+          sils[i] = 0.; // As suggested in Rousseeuw, we use 0 for singletons.
+          continue;
+        }
+        final double a = asum != null ? asum[p] : withinSum(it.seek(p), cids[ci], dq);
+        sils[i] = silhouette(it.seek(p), ci, a / (cids[ci].size() - 1), cids, singletons, dq);
+      }
+      return null;
+    });
+
+    MeanVariance msil = new MeanVariance();
+    if(sel == null) {
+      for(int i = 0, p = 0; i < numc; i++) {
+        if(cids[i] == null) {
+          continue;
+        }
+        final int size = cids[i].size();
+        if(singletons[i]) {
+          msil.put(0., size);
+          p += size;
+          continue;
+        }
+        for(int e = p + size; p < e; p++) {
+          msil.put(sils[p]);
         }
-        // One cluster only?
-        b = b < Double.POSITIVE_INFINITY ? b : a;
-        msil.put((b - a) / (b > a ? b : a));
       }
     }
+    else {
+      msil.put(sils);
+    }
     double penalty = 1.;
     // Only if {@link NoiseHandling#IGNORE_NOISE}:
     if(penalize && ignorednoise > 0) {
@@ -206,11 +286,19 @@ public class Silhouette<O> implements Evaluator {
     }
     final double meansil = penalty * msil.getMean();
     final double stdsil = penalty * msil.getSampleStddev();
+    // Confidence interval of the sampled estimate, with finite population
+    // correction because we sample without replacement.
+    final double cisil = sel == null ? 0. : //
+        penalty * CI95_Z * msil.getSampleStddev() / FastMath.sqrt(s) * FastMath.sqrt((m - s) / (double) (m - 1));
     if(LOG.isStatistics()) {
       LOG.statistics(new StringStatistic(key + ".silhouette.noise-handling", noiseOption.toString()));
       if(ignorednoise > 0) {
         LOG.statistics(new LongStatistic(key + ".silhouette.noise", ignorednoise));
       }
+      if(sel != null) {
+        LOG.statistics(new LongStatistic(key + ".silhouette.sample-size", s));
+        LOG.statistics(new DoubleStatistic(key + ".silhouette.ci95", cisil));
+      }
       LOG.statistics(new DoubleStatistic(key + ".silhouette.mean", meansil));
       LOG.statistics(new DoubleStatistic(key + ".silhouette.stddev", stdsil));
     }
@@ -218,12 +306,129 @@ public class Silhouette<O> implements Evaluator {
     EvaluationResult ev = EvaluationResult.findOrCreate(c, "Internal Clustering Evaluation");
     MeasurementGroup g = ev.findOrCreateGroup("Distance-based");
     g.addMeasure("Silhouette +-" + FormatUtil.NF2.format(stdsil), meansil, -1., 1., 0., false);
+    if(sel != null) {
+      g.addMeasure("Silhouette 95% confidence radius", cisil, 0., 2., 0., true);
+    }
     if(!Metadata.hierarchyOf(c).addChild(ev)) {
       Metadata.of(ev).notifyChanged();
     }
     return meansil;
   }
 
+  /**
+   * Compute the within-cluster distance sums of all members of a cluster.
+   * Every distance is computed once, and added to both objects. Blocks of rows
+   * have a fixed size and are added in order, so the result does not depend on
+   * the number of threads.
+   *
+   * @param ids Cluster members
+   * @param dq Distance query
+   * @param asum Output array of distance sums
+   * @param off Offset of the cluster in the output array
+   */
+  private static <O> void withinSums(ArrayDBIDs ids, DistanceQuery<O> dq, double[] asum, int off) {
+    final int size = ids.size();
+    final int numblocks = (size + SYM_BLOCKSIZE - 1) / SYM_BLOCKSIZE;
+    ParallelExecutor.runOrdered(numblocks, ParallelExecutor.concurrencyForMemory(Double.BYTES * (long) size), b -> {
+      final int start = b * SYM_BLOCKSIZE, end = Math.min(start + SYM_BLOCKSIZE, size);
+      // Sums of the block rows and all following columns
+      double[] as = new double[size - start];
+      DBIDArrayIter it1 = ids.iter(), it2 = ids.iter();
+      for(int p = start; p < end; p++) {
+        double a = 0.;
+        for(it2.seek(p + 1); it2.valid(); it2.advance()) {
+          final double dist = dq.distance(it1.seek(p), it2);
+          a += dist;
+          as[it2.getOffset() - start] += dist;
+        }
+        as[p - start] += a;
+      }
+      return as;
+    }, (as, b) -> {
+      for(int i = 0, o = off + b * SYM_BLOCKSIZE; i < as.length; i++, o++) {
+        asum[o] += as[i];
+      }
+    });
+  }
+
+  /**
+   * Compute the within-cluster distance sum of a single object.
+   *
+   * @param it1 Object
+   * @param ids Cluster members
+   * @param dq Distance query
+   * @return Sum of distances
+   */
+  private static <O> double withinSum(DBIDRef it1, ArrayDBIDs ids, DistanceQuery<O> dq) {
+    double a = 0.;
+    for(DBIDIter it2 = ids.iter(); it2.valid(); it2.advance()) {
+      if(!DBIDUtil.equal(it1, it2)) {
+        a += dq.distance(it1, it2);
+      }
+    }
+    return a;
+  }
+
+  /**
+   * Compute the silhouette of a single object.
+   *
+   * @param it1 Object
+   * @param ci Cluster number of the object
+   * @param a Average within-cluster distance
+   * @param cids Cluster members, {@code null} for ignored noise
+   * @param singletons Clusters to treat as singletons
+   * @param dq Distance query
+   * @return Silhouette
+   */
+  private static <O> double silhouette(DBIDRef it1, int ci, double a, ArrayDBIDs[] cids, boolean[] singletons, DistanceQuery<O> dq) {
+    // b: minimum average distance to other clusters:
+    double b = Double.POSITIVE_INFINITY;
+    for(int oc = 0; oc < cids.length; oc++) {
+      final ArrayDBIDs oids = cids[oc];
+      if(oc == ci || oids == null) {
+        continue; // Same cluster, or ignored noise
+      }
+      if(singletons[oc]) {
+        // Treat noise cluster as singletons:
+        for(DBIDIter it3 = oids.iter(); it3.valid(); it3.advance()) {
+          final double dist = dq.distance(it1, it3);
+          b = dist < b ? dist : b; // Minimum average
+        }
+        continue;
+      }
+      double btmp = 0.;
+      for(DBIDIter it3 = oids.iter(); it3.valid(); it3.advance()) {
+        btmp += dq.distance(it1, it3);
+      }
+      btmp /= oids.size(); // Average
+      b = btmp < b ? btmp : b; // Minimum average
+    }
+    // One cluster only?
+    b = b < Double.POSITIVE_INFINITY ? b : a;
+    return (b - a) / (b > a ? b : a);
+  }
+
+  /**
+   * Choose a sorted random sample of positions, without replacement.
+   *
+   * @param m Number of positions
+   * @param s Sample size
+   * @return Sorted sample
+   */
+  private int[] randomSample(int m, int s) {
+    Random r = rnd.getSingleThreadedRandom();
+    int[] idx = MathUtil.sequence(0, m);
+    for(int i = 0; i < s; i++) {
+      final int j = i + r.nextInt(m - i);
+      final int tmp = idx[i];
+      idx[i] = idx[j];
+      idx[j] = tmp;
+    }
+    idx = Arrays.copyOf(idx, s);
+    Arrays.sort(idx);
+    return idx;
+  }
+
   @Override
   public void processNewResult(Object result) {
     List<Clustering<?>> crs = Clustering.getClusteringResults(result);
@@ -259,6 +464,16 @@ public class Silhouette<O> implements Evaluator {
      */
     public static final OptionID NO_PENALIZE_ID = new OptionID("silhouette.no-penalize-noise", "Do not penalize ignored noise.");
 
+    /**
+     * Sample size, to estimate the silhouette.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("silhouette.sample", "Estimate the silhouette from a sample of this size, and report a confidence interval.");
+
+    /**
+     * Random seed for sampling.
+     */
+    public static final OptionID SEED_ID = new OptionID("silhouette.seed", "Random generator seed for sampling.");
+
     /**
      * Distance function to use.
      */
@@ -274,6 +489,16 @@ public class Silhouette<O> implements Evaluator {
      */
     private boolean penalize = true;
 
+    /**
+     * Sample size.
+     */
+    private int sample = 0;
+
+    /**
+     * Random generator.
+     */
+    private RandomFactory rnd = RandomFactory.DEFAULT;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(DISTANCE_ID, Distance.class, EuclideanDistance.class) //
@@ -283,11 +508,17 @@ public class Silhouette<O> implements Evaluator {
       if(noiseOption == NoiseHandling.IGNORE_NOISE) {
         new Flag(NO_PENALIZE_ID).grab(config, x -> penalize = !x);
       }
+      IntParameter sampleP = new IntParameter(SAMPLE_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .setOptional(true);
+      if(sampleP.grab(config, x -> sample = x)) {
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
     }
 
     @Override
     public Silhouette<O> make() {
-      return new Silhouette<>(distance, noiseOption, penalize);
+      return new Silhouette<>(distance, noiseOption, penalize, sample, rnd);
     }
   }
 }
@@ -0,0 +1,96 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering;
+
+import org.junit.Test;
+
+import elki.Algorithm;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.distance.minkowski.WeightedEuclideanDistance;
+import elki.math.statistics.kernelfunctions.TriweightKernelDensityFunction;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for mean-shift clustering.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class MeanShiftClusteringTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testTriweight() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<?> result = new ELKIBuilder<MeanShiftClustering<DoubleVector>>(MeanShiftClustering.class) //
+        .with(NaiveMeanShiftClustering.Par.KERNEL_ID, TriweightKernelDensityFunction.class) //
+        .with(NaiveMeanShiftClustering.Par.RANGE_ID, 0.2) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.9604136);
+    assertClusterSizes(result, new int[] { 1, 2, 2, 3, 3, 3, 4, 55, 105, 152 });
+  }
+
+  @Test
+  public void testBinSeeding() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<?> result = new ELKIBuilder<MeanShiftClustering<DoubleVector>>(MeanShiftClustering.class) //
+        .with(NaiveMeanShiftClustering.Par.KERNEL_ID, TriweightKernelDensityFunction.class) //
+        .with(NaiveMeanShiftClustering.Par.RANGE_ID, 0.2) //
+        .with(MeanShiftClustering.Par.BINNING_ID) //
+        .with(MeanShiftClustering.Par.MINBINFREQ_ID, 2) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.9633043);
+    assertClusterSizes(result, new int[] { 3, 3, 3, 4, 6, 55, 104, 152 });
+  }
+
+  @Test
+  public void testMeanShiftClusteringOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> result = new ELKIBuilder<MeanShiftClustering<DoubleVector>>(MeanShiftClustering.class) //
+        .with(NaiveMeanShiftClustering.Par.RANGE_ID, 25) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.9385142);
+    assertClusterSizes(result, new int[] { 202, 209, 227 });
+  }
+
+  @Test
+  public void testBinSeedingOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> result = new ELKIBuilder<MeanShiftClustering<DoubleVector>>(MeanShiftClustering.class) //
+        .with(NaiveMeanShiftClustering.Par.RANGE_ID, 25) //
+        .with(MeanShiftClustering.Par.BINNING_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.938539);
+    assertClusterSizes(result, new int[] { 200, 212, 226 });
+  }
+
+  @Test
+  public void testWeighted() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<?> result = new ELKIBuilder<MeanShiftClustering<DoubleVector>>(MeanShiftClustering.class) //
+        .with(Algorithm.Utils.DISTANCE_FUNCTION_ID, new WeightedEuclideanDistance(new double[] { 0.04, 1. })) //
+        .with(NaiveMeanShiftClustering.Par.RANGE_ID, 0.2) //
+        .with(MeanShiftClustering.Par.MERGE_ID, 2.) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.4958563535911602);
+    assertClusterSizes(result, new int[] { 330 });
+  }
+}
@@ -20,11 +20,15 @@
  */
 package elki.clustering.dbscan.parallel;
 
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
 import elki.clustering.dbscan.DBSCAN;
+import elki.data.Cluster;
 import elki.data.Clustering;
+import elki.data.model.CoreObjectsModel;
 import elki.data.model.Model;
 import elki.database.Database;
 import elki.utilities.ELKIBuilder;
@@ -68,4 +72,24 @@ public class ParallelGeneralizedDBSCANTest extends AbstractClusterAlgorithmTest
     assertFMeasure(db, result, 0.954382);
     assertClusterSizes(result, new int[] { 11, 200, 203, 224 });
   }
+
+  /**
+   * Run Generalized DBSCAN with the core model.
+   */
+  @Test
+  public void testParallelDBSCANCoreModel() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<Model> result = new ELKIBuilder<>(ParallelGeneralizedDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 0.04) //
+        .with(DBSCAN.Par.MINPTS_ID, 20) //
+        .with(ParallelGeneralizedDBSCAN.Par.COREMODEL_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.996413);
+    assertClusterSizes(result, new int[] { 29, 50, 101, 150 });
+    for(Cluster<Model> c : result.getAllClusters()) {
+      if(!c.isNoise()) {
+        assertTrue("Missing core model.", c.getModel() instanceof CoreObjectsModel);
+      }
+    }
+  }
 }
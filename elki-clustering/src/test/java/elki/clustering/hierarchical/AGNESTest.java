@@ -20,6 +20,9 @@
  */
 package elki.clustering.hierarchical;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
 import elki.Algorithm;
@@ -28,6 +31,12 @@ import elki.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import elki.clustering.hierarchical.linkage.*;
 import elki.data.Clustering;
 import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -183,4 +192,49 @@ public class AGNESTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.9277466);
     assertClusterSizes(clustering, new int[] { 196, 200, 242 });
   }
+
+  /**
+   * Verify that the parallel version produces the same hierarchy as the
+   * serial version, on a grid with many tied distances.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeGridDatabase(32);
+    assertSameHierarchy(db, new AGNES<>(EuclideanDistance.STATIC, GroupAverageLinkage.STATIC, false), //
+        new AGNES<>(EuclideanDistance.STATIC, GroupAverageLinkage.STATIC, true));
+    assertSameHierarchy(db, new AGNES<>(SquaredEuclideanDistance.STATIC, WardLinkage.STATIC, false), //
+        new AGNES<>(SquaredEuclideanDistance.STATIC, WardLinkage.STATIC, true));
+  }
+
+  /**
+   * Make a database of a regular grid, which has many tied distances.
+   *
+   * @param w Grid width
+   * @return Database
+   */
+  protected static Database makeGridDatabase(int w) {
+    double[][] data = new double[w * w][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { i / w, i % w };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Assert that two algorithms produce the same pointer hierarchy.
+   *
+   * @param db Database
+   * @param serial Serial algorithm
+   * @param parallel Parallel algorithm
+   */
+  protected static void assertSameHierarchy(Database db, HierarchicalClusteringAlgorithm serial, HierarchicalClusteringAlgorithm parallel) {
+    PointerHierarchyRepresentationResult a = serial.autorun(db), b = parallel.autorun(db);
+    for(DBIDIter it = a.getDBIDs().iter(); it.valid(); it.advance()) {
+      assertTrue("Parents differ.", DBIDUtil.equal(a.getParentStore().get(it), b.getParentStore().get(it)));
+      assertEquals("Merge heights differ.", a.getParentDistanceStore().doubleValue(it), b.getParentDistanceStore().doubleValue(it), 0.);
+      assertEquals("Merge order differs.", a.getPositions().intValue(it), b.getPositions().intValue(it));
+    }
+  }
 }
@@ -28,6 +28,8 @@ import elki.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import elki.clustering.hierarchical.linkage.*;
 import elki.data.Clustering;
 import elki.database.Database;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -182,4 +184,17 @@ public class AnderbergTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.9277466);
     assertClusterSizes(clustering, new int[] { 196, 200, 242 });
   }
+
+  /**
+   * Verify that the parallel version produces the same hierarchy as the
+   * serial version, on a grid with many tied distances.
+   */
+  @Test
+  public void testParallel() {
+    Database db = AGNESTest.makeGridDatabase(32);
+    AGNESTest.assertSameHierarchy(db, new Anderberg<>(EuclideanDistance.STATIC, GroupAverageLinkage.STATIC, false), //
+        new Anderberg<>(EuclideanDistance.STATIC, GroupAverageLinkage.STATIC, true));
+    AGNESTest.assertSameHierarchy(db, new Anderberg<>(SquaredEuclideanDistance.STATIC, WardLinkage.STATIC, false), //
+        new Anderberg<>(SquaredEuclideanDistance.STATIC, WardLinkage.STATIC, true));
+  }
 }
@@ -28,6 +28,8 @@ import elki.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import elki.clustering.hierarchical.linkage.*;
 import elki.data.Clustering;
 import elki.database.Database;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -183,4 +185,17 @@ public class NNChainTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.9381678);
     assertClusterSizes(clustering, new int[] { 200, 217, 221 });
   }
+
+  /**
+   * Verify that the parallel version produces the same hierarchy as the
+   * serial version, on a grid with many tied distances.
+   */
+  @Test
+  public void testParallel() {
+    Database db = AGNESTest.makeGridDatabase(32);
+    AGNESTest.assertSameHierarchy(db, new NNChain<>(EuclideanDistance.STATIC, GroupAverageLinkage.STATIC, false), //
+        new NNChain<>(EuclideanDistance.STATIC, GroupAverageLinkage.STATIC, true));
+    AGNESTest.assertSameHierarchy(db, new NNChain<>(SquaredEuclideanDistance.STATIC, WardLinkage.STATIC, false), //
+        new NNChain<>(SquaredEuclideanDistance.STATIC, WardLinkage.STATIC, true));
+  }
 }
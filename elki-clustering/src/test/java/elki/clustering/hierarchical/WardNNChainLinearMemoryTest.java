@@ -0,0 +1,95 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import elki.Algorithm;
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
+import elki.clustering.hierarchical.linkage.WardLinkage;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the matrix-free NNChain for Ward linkage.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class WardNNChainLinearMemoryTest extends AbstractClusterAlgorithmTest {
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testWard() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, WardNNChainLinearMemory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.93866265);
+    assertClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Compare the merge heights to the matrix-based NNChain.
+   */
+  @Test
+  public void testSameHeights() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    PointerHierarchyRepresentationResult ref = new NNChain<NumberVector>(SquaredEuclideanDistance.STATIC, WardLinkage.STATIC).run(rel);
+    PointerHierarchyRepresentationResult res = new ELKIBuilder<WardNNChainLinearMemory<NumberVector>>(WardNNChainLinearMemory.class) //
+        .with(WardNNChainLinearMemory.Par.LEAFSIZE_ID, 4) //
+        .build().run(rel);
+    assertArrayEquals(sortedHeights(ref), sortedHeights(res), 1e-10);
+  }
+
+  /**
+   * Get the sorted merge heights.
+   *
+   * @param r Hierarchy
+   * @return Sorted heights
+   */
+  private static double[] sortedHeights(PointerHierarchyRepresentationResult r) {
+    DoubleDataStore heights = r.getParentDistanceStore();
+    double[] h = new double[r.getDBIDs().size()];
+    int i = 0;
+    for(DBIDIter it = r.getDBIDs().iter(); it.valid(); it.advance()) {
+      h[i++] = heights.doubleValue(it);
+    }
+    Arrays.sort(h);
+    return h;
+  }
+}
@@ -45,6 +45,30 @@ public class BIRCHLeafClusteringTest extends AbstractClusterAlgorithmTest {
     assertClusterSizes(clustering, new int[] { 59, 176, 196, 207 });
   }
 
+  @Test
+  public void testDiameterPartitioned() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(BIRCHLeafClustering.class) //
+        .with(CFTree.Factory.Par.ABSORPTION_ID, DiameterCriterion.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 4) //
+        .with(CFTree.Factory.Par.PARTITIONS_ID, 2) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.93607);
+    assertClusterSizes(clustering, new int[] { 201, 209, 228 });
+  }
+
+  @Test
+  public void testDiameterManyPartitions() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(BIRCHLeafClustering.class) //
+        .with(CFTree.Factory.Par.ABSORPTION_ID, DiameterCriterion.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 4) //
+        .with(CFTree.Factory.Par.PARTITIONS_ID, 8) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.69464);
+    assertClusterSizes(clustering, new int[] { 212, 426 });
+  }
+
   @Test
   public void testRadius() {
     Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
@@ -46,4 +46,18 @@ public class BIRCHLloydKMeansTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.84944);
     assertClusterSizes(clustering, new int[] { 96, 104, 211, 227 });
   }
+
+  @Test
+  public void testEuclideanDistancePartitioned() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(BIRCHLloydKMeans.class) //
+        .with(CFTree.Factory.Par.ABSORPTION_ID, EuclideanDistanceCriterion.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 50) //
+        .with(CFTree.Factory.Par.PARTITIONS_ID, 4) //
+        .with(AbstractKMeans.K_ID, 4) //
+        .with(AbstractKMeans.SEED_ID, 0) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.85340);
+    assertClusterSizes(clustering, new int[] { 79, 121, 212, 226 });
+  }
 }
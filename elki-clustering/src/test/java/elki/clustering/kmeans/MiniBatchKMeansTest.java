@@ -0,0 +1,117 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.initialization.KMeansPlusPlus;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.datasource.bundle.StreamFromBundle;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for mini-batch k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class MiniBatchKMeansTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testMiniBatchKMeans() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<?> result = new ELKIBuilder<MiniBatchKMeans<DoubleVector>>(MiniBatchKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(MiniBatchKMeans.Par.BATCHSIZE_ID, 100) //
+        .with(MiniBatchKMeans.Par.BATCHES_ID, 20) //
+        .with(MiniBatchKMeans.Par.SEED_ID, 0) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  @Test
+  public void testMiniBatchKMeansRefine() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<?> result = new ELKIBuilder<MiniBatchKMeans<DoubleVector>>(MiniBatchKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(MiniBatchKMeans.Par.BATCHSIZE_ID, 10) //
+        .with(MiniBatchKMeans.Par.BATCHES_ID, 5) //
+        .with(MiniBatchKMeans.Par.REFINE_ID, 10) //
+        .with(MiniBatchKMeans.Par.SEED_ID, 0) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  @Test
+  public void testStream() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    List<NumberVector> data = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      data.add(rel.get(it));
+    }
+    // The file is ordered by cluster, which a single pass cannot handle well.
+    Collections.shuffle(data, new Random(3L));
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle().appendColumn(rel.getDataTypeInformation(), data);
+    MiniBatchKMeans<NumberVector> km = new ELKIBuilder<MiniBatchKMeans<NumberVector>>(MiniBatchKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(KMeans.INIT_ID, KMeansPlusPlus.class) //
+        .with(MiniBatchKMeans.Par.BATCHSIZE_ID, 100) //
+        .build();
+    double[][] means = km.processStream(new StreamFromBundle(bundle));
+    assertEquals("Number of centers", 5, means.length);
+    // Every center must be close to a center of the regular k-means result.
+    Clustering<KMeansModel> reference = new ELKIBuilder<LloydKMeans<NumberVector>>(LloydKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .build().run(rel);
+    for(double[] mean : means) {
+      double best = Double.POSITIVE_INFINITY;
+      for(Cluster<KMeansModel> c : reference.getAllClusters()) {
+        best = Math.min(best, SquaredEuclideanDistance.STATIC.distance(DoubleVector.wrap(mean), DoubleVector.wrap(c.getModel().getMean())));
+      }
+      assertTrue("Center too far from reference: " + best, best < 1e-3);
+    }
+  }
+}
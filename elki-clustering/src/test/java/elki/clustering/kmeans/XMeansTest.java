@@ -23,6 +23,7 @@ package elki.clustering.kmeans;
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.parallel.ParallelLloydKMeans;
 import elki.data.Clustering;
 import elki.data.DoubleVector;
 import elki.database.Database;
@@ -52,4 +53,22 @@ public class XMeansTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.959044);
     assertClusterSizes(result, new int[] { 1, 1, 2, 2, 2, 2, 2, 3, 5, 51, 106, 153 });
   }
+
+  /**
+   * X-means with a parallel inner k-means, nested within the concurrent split
+   * evaluation.
+   */
+  @Test
+  public void testXMeansParallelInner() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<?> result = new ELKIBuilder<XMeans<DoubleVector, ?>>(XMeans.class) //
+        .with(XMeans.Par.K_MIN_ID, 2) //
+        .with(KMeans.K_ID, 20) //
+        .with(XMeans.Par.INNER_KMEANS_ID, ParallelLloydKMeans.class) //
+        .with(KMeans.SEED_ID, 0) // // Initializer seed
+        .with(XMeans.Par.SEED_ID, 0) // // X-means seed
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.959044);
+    assertClusterSizes(result, new int[] { 1, 1, 2, 2, 2, 2, 2, 3, 5, 51, 106, 153 });
+  }
 }
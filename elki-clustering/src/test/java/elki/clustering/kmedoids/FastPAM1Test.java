@@ -20,14 +20,20 @@
  */
 package elki.clustering.kmedoids;
 
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
 import elki.clustering.kmeans.KMeans;
+import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.data.DoubleVector;
 import elki.data.model.MedoidModel;
 import elki.database.Database;
+import elki.database.ids.DBIDUtil;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -49,4 +55,22 @@ public class FastPAM1Test extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.998005);
     assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  @Test
+  public void testKMedoidsPAMParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> serial = new ELKIBuilder<FastPAM1<DoubleVector>>(FastPAM1.class) //
+        .with(KMeans.K_ID, 5) //
+        .build().autorun(db);
+    Clustering<MedoidModel> result = new ELKIBuilder<FastPAM1<DoubleVector>>(FastPAM1.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(FastPAM1.Par.PARALLEL_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+    List<? extends Cluster<MedoidModel>> a = serial.getAllClusters(), b = result.getAllClusters();
+    for(int i = 0; i < a.size(); i++) {
+      assertTrue("Medoids differ from the serial run.", DBIDUtil.equal(a.get(i).getModel().getMedoid(), b.get(i).getModel().getMedoid()));
+    }
+  }
 }
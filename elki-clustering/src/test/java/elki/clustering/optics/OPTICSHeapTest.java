@@ -20,11 +20,20 @@
  */
 package elki.clustering.optics;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
 import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
 import elki.database.Database;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDVar;
+import elki.database.relation.Relation;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -50,4 +59,42 @@ public class OPTICSHeapTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.893865);
     assertClusterSizes(clustering, new int[] { 8, 35, 72, 115, 209, 271 });
   }
+
+  @Test
+  public void testOPTICSParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> clustering = new ELKIBuilder<>(OPTICSXi.class) //
+        .with(OPTICSHeap.Par.MINPTS_ID, 20) //
+        .with(OPTICSHeap.Par.EPSILON_ID, 0.15) //
+        .with(OPTICSHeap.Par.PARALLEL_ID) //
+        .with(OPTICSXi.Par.XI_ID, 0.05) //
+        .with(OPTICSXi.Par.XIALG_ID, OPTICSHeap.class) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.893865);
+    assertClusterSizes(clustering, new int[] { 8, 35, 72, 115, 209, 271 });
+  }
+
+  @Test
+  public void testOPTICSParallelIdentical() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ClusterOrder serial = new ELKIBuilder<OPTICSHeap<NumberVector>>(OPTICSHeap.class) //
+        .with(OPTICSHeap.Par.MINPTS_ID, 20) //
+        .with(OPTICSHeap.Par.EPSILON_ID, 0.15) //
+        .build().run(rel);
+    ClusterOrder parallel = new ELKIBuilder<OPTICSHeap<NumberVector>>(OPTICSHeap.class) //
+        .with(OPTICSHeap.Par.MINPTS_ID, 20) //
+        .with(OPTICSHeap.Par.EPSILON_ID, 0.15) //
+        .with(OPTICSHeap.Par.PARALLEL_ID) //
+        .build().run(rel);
+    assertEquals("Cluster order size differs.", serial.size(), parallel.size());
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    for(DBIDArrayIter i1 = serial.iter(), i2 = parallel.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertTrue("Cluster order differs.", DBIDUtil.equal(i1, i2));
+      assertEquals("Reachability differs.", serial.getReachability(i1), parallel.getReachability(i2), 0.);
+      serial.getPredecessor(i1, p1);
+      parallel.getPredecessor(i2, p2);
+      assertTrue("Predecessor differs.", p1.isSet() == p2.isSet() && (!p1.isSet() || DBIDUtil.equal(p1, p2)));
+    }
+  }
 }
@@ -22,6 +22,7 @@ package elki.evaluation.clustering.internal;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 import org.junit.Test;
@@ -30,10 +31,15 @@ import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.clustering.kmeans.LloydKMeans;
 import elki.clustering.kmeans.initialization.RandomlyChosen;
 import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Cluster;
 import elki.data.Clustering;
+import elki.data.model.ClusterModel;
+import elki.data.model.Model;
 import elki.data.NumberVector;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDUtil;
 import elki.database.query.distance.PrimitiveDistanceQuery;
 import elki.database.relation.Relation;
 import elki.datasource.AbstractDatabaseConnection;
@@ -178,4 +184,22 @@ public class CIndexTest {
     assertNotNull("No C-Index Value", m);
     assertEquals("C-Index not as expected", 0.00891005391901485, m.getVal(), 1e-15);
   }
+
+  /**
+   * Test for {@link CIndex} with overlapping clusters.
+   */
+  @Test
+  public void testEvaluateCIndexOverlapping() {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20);
+    CIndex<NumberVector> cind = new ELKIBuilder<>(CIndex.class). //
+        with(CIndex.Par.DISTANCE_ID, dist).build();
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    Clustering<Model> overlap = new Clustering<>(Arrays.asList( //
+        new Cluster<Model>(ids.slice(0, 14), ClusterModel.CLUSTER), //
+        new Cluster<Model>(ids.slice(6, 20), ClusterModel.CLUSTER)));
+    double c = cind.evaluateClustering(rel, new PrimitiveDistanceQuery<NumberVector>(rel, dist), overlap);
+    assertEquals("C-Index not as expected", 0.45319703679639833, c, 1e-15);
+  }
 }
@@ -22,6 +22,7 @@ package elki.evaluation.clustering.internal;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 import org.junit.Test;
@@ -30,10 +31,15 @@ import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.clustering.kmeans.LloydKMeans;
 import elki.clustering.kmeans.initialization.RandomlyChosen;
 import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Cluster;
 import elki.data.Clustering;
+import elki.data.model.ClusterModel;
+import elki.data.model.Model;
 import elki.data.NumberVector;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDUtil;
 import elki.database.relation.Relation;
 import elki.datasource.AbstractDatabaseConnection;
 import elki.datasource.filter.typeconversions.ClassLabelFilter;
@@ -139,4 +145,35 @@ public class ConcordantPairsGammaTauTest {
     assertNotNull("No Concordance Tau Value", t);
     assertEquals("Tau Value not as expected", 0.655704137488994, t.getVal(), 1e-15);
   }
+
+  /**
+   * Test for {@link ConcordantPairsGammaTau} with overlapping clusters.
+   */
+  @Test
+  public void testEvaluateConcordantPairsOverlapping() {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20);
+    ConcordantPairsGammaTau ecp = new ELKIBuilder<>(ConcordantPairsGammaTau.class).with(ConcordantPairsGammaTau.Par.DISTANCE_ID, dist).build();
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    Clustering<Model> overlap = new Clustering<>(Arrays.asList( //
+        new Cluster<Model>(ids.slice(0, 14), ClusterModel.CLUSTER), //
+        new Cluster<Model>(ids.slice(6, 20), ClusterModel.CLUSTER)));
+    double gamma = ecp.evaluateClustering(rel, overlap);
+    assertEquals("Gamma Value not as expected", 0.12165895936945584, gamma, 1e-15);
+  }
+
+  /**
+   * Regression test for {@link ConcordantPairsGammaTau} with more
+   * within-cluster distances than one sorting block.
+   */
+  @Test
+  public void testEvaluateConcordantPairsLarger() {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/3clusters-and-noise-2d.csv", 330);
+    ConcordantPairsGammaTau ecp = new ELKIBuilder<>(ConcordantPairsGammaTau.class).with(ConcordantPairsGammaTau.Par.DISTANCE_ID, dist).with(ConcordantPairsGammaTau.Par.NOISE_ID, NoiseHandling.MERGE_NOISE).build();
+    Clustering<?> rbl = new ByLabelClustering().autorun(db);
+    double gamma = ecp.evaluateClustering(db.getRelation(dist.getInputTypeRestriction()), rbl);
+    assertEquals("Gamma Value not as expected", 0.9801448134298181, gamma, 1e-15);
+  }
 }
@@ -174,4 +174,49 @@ public class SilhouetteTest {
 
     assertEquals("Silhouette not as expected", 0.6970597031375269, m.getVal(), 1e-15);
   }
+
+  /**
+   * Regression test for the sampled {@link Silhouette} estimate with KMeans
+   * clustering.
+   */
+  @Test
+  public void testEvaluateSilhouetteSampled() {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20);
+    Silhouette<NumberVector> silh = new ELKIBuilder<>(Silhouette.class).with(Silhouette.Par.DISTANCE_ID, dist) //
+        .with(Silhouette.Par.NOISE_ID, NoiseHandling.TREAT_NOISE_AS_SINGLETONS) //
+        .with(Silhouette.Par.SAMPLE_ID, 10).with(Silhouette.Par.SEED_ID, 0L).build();
+
+    LloydKMeans<NumberVector> clustering = new LloydKMeans<NumberVector>(dist, 3, 20, new RandomlyChosen<>(new RandomFactory(12341234L)));
+    Clustering<?> rbl = clustering.run(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD_2D));
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    silh.evaluateClustering(rel, new PrimitiveDistanceQuery<NumberVector>(rel, dist), rbl);
+
+    EvaluationResult er = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class).get();
+    Iterator<Measurement> silit = er.findOrCreateGroup("Distance-based").iterator();
+    assertTrue("No silhouette measurement", silit.hasNext());
+    Measurement m = silit.next();
+    assertTrue("No confidence measurement", silit.hasNext());
+    Measurement ci = silit.next();
+    assertFalse("Too many measurements", silit.hasNext());
+
+    assertEquals("Silhouette not as expected", 0.7640502495338632, m.getVal(), 1e-15);
+    assertEquals("Confidence not as expected", 0.01677867886774375, ci.getVal(), 1e-15);
+  }
+
+  /**
+   * Regression test for {@link Silhouette} with clusters larger than one
+   * block of within-cluster distances.
+   */
+  @Test
+  public void testEvaluateSilhouetteLarger() {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/3clusters-and-noise-2d.csv", 330);
+    Silhouette<NumberVector> silh = new ELKIBuilder<>(Silhouette.class).with(Silhouette.Par.DISTANCE_ID, dist) //
+        .with(Silhouette.Par.NOISE_ID, NoiseHandling.MERGE_NOISE).build();
+    Clustering<?> rbl = new ByLabelClustering().autorun(db);
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    double sil = silh.evaluateClustering(rel, new PrimitiveDistanceQuery<NumberVector>(rel, dist), rbl);
+    assertEquals("Silhouette not as expected", 0.799228462344818, sil, 1e-15);
+  }
 }
@@ -0,0 +1,330 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.math;
+
+import java.util.Arrays;
+
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.documentation.Reference;
+
+/**
+ * Mergeable approximate quantile sketch, using a hierarchy of compactors.
+ * <p>
+ * Values are collected in a buffer of size k. When a buffer is full, it is
+ * sorted and every second element is moved to the next level, where each
+ * element represents twice as many values. The sketch therefore uses
+ * O(k log(n/k)) memory, and the total weight is always exactly the number of
+ * values added. Two sketches can be merged, which allows computing the sketch
+ * in parallel on partitions of the data.
+ * <p>
+ * Compaction alternates between keeping the odd and even elements, so the
+ * results are deterministic.
+ * <p>
+ * Reference:
+ * <p>
+ * G. S. Manku, S. Rajagopalan, B. G. Lindsay<br>
+ * Approximate medians and other quantiles in one pass and with limited
+ * memory<br>
+ * Proc. 1998 ACM SIGMOD Int. Conf. on Management of Data
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+@Reference(authors = "G. S. Manku, S. Rajagopalan, B. G. Lindsay", //
+    title = "Approximate medians and other quantiles in one pass and with limited memory", //
+    booktitle = "Proc. 1998 ACM SIGMOD Int. Conf. on Management of Data", //
+    url = "https://doi.org/10.1145/276304.276342", //
+    bibkey = "DBLP:conf/sigmod/MankuRL98")
+public class QuantileSketch {
+  /**
+   * Buffer size per level.
+   */
+  private final int k;
+
+  /**
+   * Values on each level.
+   */
+  private double[][] levels = new double[1][];
+
+  /**
+   * Number of values on each level.
+   */
+  private int[] sizes = new int[1];
+
+  /**
+   * Compaction parity on each level.
+   */
+  private boolean[] parity = new boolean[1];
+
+  /**
+   * Number of values added.
+   */
+  private long count = 0;
+
+  /**
+   * Sorted values, for queries (lazily computed). Volatile, and assigned after
+   * {@link #cumweight}, so concurrent queries see both arrays.
+   */
+  private volatile double[] sorted;
+
+  /**
+   * Cumulative weights of the sorted values.
+   */
+  private long[] cumweight;
+
+  /**
+   * Constructor.
+   *
+   * @param k Buffer size per level, controls the accuracy
+   */
+  public QuantileSketch(int k) {
+    super();
+    this.k = Math.max(2, k);
+    levels[0] = new double[this.k];
+  }
+
+  /**
+   * Add a single value.
+   *
+   * @param val Value
+   */
+  public void put(double val) {
+    sorted = null;
+    levels[0][sizes[0]++] = val;
+    ++count;
+    if(sizes[0] == k) {
+      compact(0);
+    }
+  }
+
+  /**
+   * Merge the data of another sketch.
+   *
+   * @param other Other sketch
+   */
+  public void put(QuantileSketch other) {
+    sorted = null;
+    count += other.count;
+    for(int h = 0; h < other.sizes.length; h++) {
+      final int osize = other.sizes[h];
+      if(osize == 0) {
+        continue;
+      }
+      ensureLevel(h);
+      if(levels[h].length < sizes[h] + osize) {
+        levels[h] = Arrays.copyOf(levels[h], sizes[h] + osize);
+      }
+      System.arraycopy(other.levels[h], 0, levels[h], sizes[h], osize);
+      sizes[h] += osize;
+    }
+    // Compact bottom-up, this can cascade.
+    for(int h = 0; h < sizes.length; h++) {
+      if(sizes[h] >= k) {
+        compact(h);
+      }
+    }
+  }
+
+  /**
+   * Make sure that a level exists.
+   *
+   * @param h Level
+   */
+  private void ensureLevel(int h) {
+    if(h >= levels.length) {
+      levels = Arrays.copyOf(levels, h + 1);
+      sizes = Arrays.copyOf(sizes, h + 1);
+      parity = Arrays.copyOf(parity, h + 1);
+    }
+    if(levels[h] == null) {
+      levels[h] = new double[k];
+    }
+  }
+
+  /**
+   * Compact a level, moving half of the values to the next level.
+   *
+   * @param h Level
+   */
+  private void compact(int h) {
+    ensureLevel(h + 1);
+    double[] buf = levels[h];
+    int size = sizes[h];
+    Arrays.sort(buf, 0, size);
+    // With an odd number of values, keep the largest on this level.
+    final int even = size & ~1;
+    final int half = even >>> 1;
+    if(levels[h + 1].length < sizes[h + 1] + half) {
+      levels[h + 1] = Arrays.copyOf(levels[h + 1], Math.max(k, sizes[h + 1] + half));
+    }
+    double[] next = levels[h + 1];
+    int pos = sizes[h + 1];
+    for(int i = parity[h] ? 1 : 0; i < even; i += 2) {
+      next[pos++] = buf[i];
+    }
+    parity[h] = !parity[h];
+    sizes[h + 1] = pos;
+    if(even < size) {
+      buf[0] = buf[size - 1];
+    }
+    sizes[h] = size - even;
+    if(sizes[h + 1] >= k) {
+      compact(h + 1);
+    }
+  }
+
+  /**
+   * Build the sorted array for queries.
+   *
+   * @return Sorted values
+   */
+  private double[] prepareQueries() {
+    final double[] cur = sorted;
+    if(cur != null) {
+      return cur;
+    }
+    int total = 0;
+    for(int h = 0; h < sizes.length; h++) {
+      total += sizes[h];
+    }
+    // Sort by value, keeping track of the level.
+    double[] vals = new double[total];
+    int[] lvl = new int[total];
+    for(int h = 0, p = 0; h < sizes.length; h++) {
+      for(int i = 0; i < sizes[h]; i++, p++) {
+        vals[p] = levels[h][i];
+        lvl[p] = h;
+      }
+    }
+    DoubleIntegerArrayQuickSort.sort(vals, lvl, total);
+    long[] cum = new long[total];
+    long c = 0;
+    for(int i = 0; i < total; i++) {
+      cum[i] = c += 1L << lvl[i];
+    }
+    cumweight = cum;
+    sorted = vals; // Publish last.
+    return vals;
+  }
+
+  /**
+   * Number of values added.
+   *
+   * @return Count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Get an approximate quantile.
+   *
+   * @param q Quantile, in [0:1]
+   * @return Approximate quantile value, NaN if empty
+   */
+  public double quantile(double q) {
+    if(count == 0) {
+      return Double.NaN;
+    }
+    final double[] sorted = prepareQueries();
+    final long rank = (long) Math.ceil(q * count);
+    int pos = Arrays.binarySearch(cumweight, Math.max(1, rank));
+    pos = pos >= 0 ? pos : -pos - 1;
+    return sorted[Math.min(pos, sorted.length - 1)];
+  }
+
+  /**
+   * Get the approximate empirical cumulative distribution function value, i.e.
+   * the fraction of values less than or equal to x.
+   *
+   * @param x Value
+   * @return Fraction of values {@code <= x}
+   */
+  public double cdf(double x) {
+    if(count == 0) {
+      return Double.NaN;
+    }
+    final double[] sorted = prepareQueries();
+    // Find the last position with a value <= x
+    int lo = 0, hi = sorted.length;
+    while(lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if(sorted[mid] <= x) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    return lo == 0 ? 0. : cumweight[lo - 1] / (double) count;
+  }
+
+  /**
+   * Get an approximate quantile of the absolute deviations from a center,
+   * such as the median absolute deviation from the median (MAD).
+   *
+   * @param center Center value
+   * @param q Quantile, in [0:1]
+   * @return Approximate quantile of {@code |x - center|}
+   */
+  public double absoluteDeviationQuantile(double center, double q) {
+    if(count == 0) {
+      return Double.NaN;
+    }
+    final double[] sorted = prepareQueries();
+    // Merge the deviations below and above the center, in increasing order.
+    int lo = Arrays.binarySearch(sorted, center);
+    lo = lo >= 0 ? lo : -lo - 1;
+    int hi = lo;
+    --lo;
+    final long rank = Math.max(1, (long) Math.ceil(q * count));
+    long cum = 0;
+    double dev = 0.;
+    while(cum < rank && (lo >= 0 || hi < sorted.length)) {
+      final double dlo = lo >= 0 ? center - sorted[lo] : Double.POSITIVE_INFINITY;
+      final double dhi = hi < sorted.length ? sorted[hi] - center : Double.POSITIVE_INFINITY;
+      if(dlo <= dhi) {
+        cum += weight(lo--);
+        dev = dlo;
+      }
+      else {
+        cum += weight(hi++);
+        dev = dhi;
+      }
+    }
+    return dev;
+  }
+
+  /**
+   * Weight of the i'th sorted value.
+   *
+   * @param i Position
+   * @return Weight
+   */
+  private long weight(int i) {
+    return i == 0 ? cumweight[0] : cumweight[i] - cumweight[i - 1];
+  }
+
+  @Override
+  public String toString() {
+    return "QuantileSketch(n=" + count + ", median=" + quantile(.5) + ")";
+  }
+}
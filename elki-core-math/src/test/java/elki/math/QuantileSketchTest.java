@@ -0,0 +1,94 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.math;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test {@link QuantileSketch}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class QuantileSketchTest {
+  /**
+   * Size of test data set.
+   */
+  private static final int SIZE = 100000;
+
+  @Test
+  public void testQuantiles() {
+    Random r = new Random(0L);
+    double[] data = new double[SIZE];
+    QuantileSketch sketch = new QuantileSketch(200);
+    for(int i = 0; i < SIZE; i++) {
+      sketch.put(data[i] = r.nextGaussian());
+    }
+    assertEquals("Count", SIZE, sketch.getCount());
+    Arrays.sort(data);
+    for(double q : new double[] { .01, .1, .25, .5, .75, .9, .99 }) {
+      // Compare ranks, not values:
+      assertEquals("Quantile " + q, q, rank(data, sketch.quantile(q)), 0.01);
+      assertEquals("CDF " + q, q, sketch.cdf(data[(int) (q * SIZE)]), 0.01);
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    Random r = new Random(0L);
+    double[] data = new double[SIZE];
+    QuantileSketch[] parts = new QuantileSketch[7];
+    for(int i = 0; i < parts.length; i++) {
+      parts[i] = new QuantileSketch(200);
+    }
+    for(int i = 0; i < SIZE; i++) {
+      parts[i % parts.length].put(data[i] = r.nextDouble() * 10);
+    }
+    QuantileSketch sketch = parts[0];
+    for(int i = 1; i < parts.length; i++) {
+      sketch.put(parts[i]);
+    }
+    assertEquals("Count", SIZE, sketch.getCount());
+    Arrays.sort(data);
+    for(double q : new double[] { .01, .1, .25, .5, .75, .9, .99 }) {
+      assertEquals("Quantile " + q, q, rank(data, sketch.quantile(q)), 0.01);
+    }
+    // Uniform on [0;10]: the MAD is 2.5
+    assertEquals("MAD", 2.5, sketch.absoluteDeviationQuantile(sketch.quantile(.5), .5), 0.1);
+  }
+
+  /**
+   * Relative rank of a value in sorted data.
+   *
+   * @param sorted Sorted data
+   * @param val Value
+   * @return Relative rank
+   */
+  private static double rank(double[] sorted, double val) {
+    int pos = Arrays.binarySearch(sorted, val);
+    return (pos >= 0 ? pos : -pos - 1) / (double) sorted.length;
+  }
+}
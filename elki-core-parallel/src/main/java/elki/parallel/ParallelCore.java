@@ -25,6 +25,10 @@ import java.util.concurrent.*;
 /**
  * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
  * <p>
+ * Tasks running on the worker threads must not wait for other tasks of the
+ * same core, as all workers may be blocked this way; nested parallel
+ * operations can use {@link #isWorkerThread()} to run inline instead.
+ * <p>
  * TODO: make configurable how many threads are used.
  * 
  * @author Erich Schubert
@@ -82,6 +86,16 @@ public class ParallelCore {
     return executor != null ? executor.getMaximumPoolSize() : processors;
   }
 
+  /**
+   * Test whether the current thread is a worker thread of a parallel core,
+   * i.e., whether we are inside a parallel operation already.
+   *
+   * @return {@code true} when called from a worker thread
+   */
+  public static boolean isWorkerThread() {
+    return Thread.currentThread() instanceof WorkerThread;
+  }
+
   /**
    * Submit a task to the executor core.
    * 
@@ -98,7 +112,7 @@ public class ParallelCore {
    */
   public synchronized void connect() {
     if(executor == null) {
-      executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+      executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), WorkerThread::new);
       executor.allowCoreThreadTimeOut(true);
     }
     if(++connected == 1) {
@@ -116,4 +130,20 @@ public class ParallelCore {
       executor.setCorePoolSize(0);
     }
   }
+
+  /**
+   * Marker class for worker threads.
+   *
+   * @author Erich Schubert
+   */
+  private static class WorkerThread extends Thread {
+    /**
+     * Constructor.
+     *
+     * @param r Runnable
+     */
+    WorkerThread(Runnable r) {
+      super(r);
+    }
+  }
 }
@@ -20,12 +20,16 @@
  */
 package elki.parallel;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
@@ -61,6 +65,12 @@ public final class ParallelExecutor {
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
+    if(ParallelCore.isWorkerThread()) {
+      // Nested parallelism: run inline, to not block the workers.
+      ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+      new BlockArrayRunner(aids, 0, aids.size(), procs).call();
+      return;
+    }
     ParallelCore core = ParallelCore.getCore();
     core.connect();
     try {
@@ -95,6 +105,140 @@ public final class ParallelExecutor {
     }
   }
 
+  /**
+   * Run a task on contiguous blocks of an index range, on all available CPUs.
+   * The results are returned in block order, so they can be merged
+   * deterministically.
+   *
+   * @param size Size of the index range
+   * @param minblock Minimum block size, to avoid overhead for small inputs
+   * @param task Task to run on each block
+   * @param <T> Result type
+   * @return Block results, in order
+   */
+  public static <T> List<T> run(int size, int minblock, BlockTask<T> task) {
+    ParallelCore core = ParallelCore.getCore();
+    final int numparts = Math.min(core.getParallelism(), size / Math.max(1, minblock));
+    // Run inline if not worth it, or nested within another parallel task.
+    if(numparts <= 1 || ParallelCore.isWorkerThread()) {
+      return Collections.singletonList(task.run(0, size));
+    }
+    core.connect();
+    try {
+      final int blocksize = (size + (numparts - 1)) / numparts;
+      List<Future<T>> parts = new ArrayList<>(numparts);
+      for(int start = 0; start < size; start += blocksize) {
+        final int s = start, e = Math.min(start + blocksize, size);
+        parts.add(core.submit(() -> task.run(s, e)));
+      }
+      List<T> results = new ArrayList<>(parts.size());
+      for(Future<T> fut : parts) {
+        results.add(fut.get());
+      }
+      return results;
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Run independent tasks concurrently, and pass their results to a consumer
+   * in task order, as soon as they become available.
+   * <p>
+   * At most {@code maxconcurrent} tasks are in flight (running, or finished
+   * but not yet consumed), which bounds both the number of concurrently built
+   * indexes and the number of results held in memory. The consumer is only
+   * called from the calling thread, so it does not need to be thread-safe, and
+   * results are always consumed in the same order. If a task or the consumer
+   * fails, the tasks still in flight are cancelled.
+   *
+   * @param size Number of tasks
+   * @param maxconcurrent Maximum number of tasks in flight
+   * @param task Task to run, given the task number
+   * @param consumer Consumer of the results and their task numbers
+   * @param <T> Result type
+   */
+  public static <T> void runOrdered(int size, int maxconcurrent, IntFunction<T> task, ObjIntConsumer<T> consumer) {
+    ParallelCore core = ParallelCore.getCore();
+    final int limit = Math.min(maxconcurrent, core.getParallelism());
+    // Run inline if not worth it, or nested within another parallel task.
+    if(limit <= 1 || size <= 1 || ParallelCore.isWorkerThread()) {
+      for(int i = 0; i < size; i++) {
+        consumer.accept(task.apply(i), i);
+      }
+      return;
+    }
+    ArrayDeque<Future<T>> inflight = new ArrayDeque<>(limit);
+    core.connect();
+    try {
+      int next = 0;
+      for(int i = 0; i < size; i++) {
+        if(inflight.size() >= limit) {
+          consumer.accept(inflight.poll().get(), next++);
+        }
+        final int j = i;
+        inflight.add(core.submit(() -> task.apply(j)));
+      }
+      while(!inflight.isEmpty()) {
+        consumer.accept(inflight.poll().get(), next++);
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Parallel execution interrupted.", e);
+    }
+    finally {
+      // Only non-empty on failure: do not leave the remaining tasks running.
+      for(Future<T> fut : inflight) {
+        fut.cancel(true);
+      }
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Number of tasks that can run concurrently in the currently available
+   * memory, e.g., to limit the number of concurrent index builds.
+   *
+   * @param bytesPerTask Estimated memory use of a single task
+   * @return Number of concurrent tasks, at least 1 and at most the parallelism
+   */
+  public static int concurrencyForMemory(long bytesPerTask) {
+    final Runtime rt = Runtime.getRuntime();
+    final long avail = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+    final long fit = avail / Math.max(1L, bytesPerTask);
+    return (int) Math.max(1L, Math.min(fit, ParallelCore.getCore().getParallelism()));
+  }
+
+  /**
+   * Task processing a block of an index range.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Result type
+   */
+  @FunctionalInterface
+  public interface BlockTask<T> {
+    /**
+     * Process a block.
+     *
+     * @param start Start index (inclusive)
+     * @param end End index (exclusive)
+     * @return Result for this block
+     */
+    T run(int start, int end);
+  }
+
   /**
    * Run for an array part, without step size.
    *
@@ -0,0 +1,114 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel.processor;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+import elki.math.DoubleMinMax;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.variables.SharedDouble;
+
+/**
+ * Processor computing a double value for each object with a function.
+ * <p>
+ * The function is obtained from a supplier once for each instance, so it may
+ * keep thread-local state such as query objects or scratch buffers.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - Instance
+ */
+public class DoubleFunctionProcessor extends AbstractDoubleProcessor {
+  /**
+   * Function supplier
+   */
+  Supplier<? extends ToDoubleFunction<DBIDRef>> func;
+
+  /**
+   * Constructor.
+   *
+   * @param func Supplier of the function to compute, called for each instance
+   */
+  public DoubleFunctionProcessor(Supplier<? extends ToDoubleFunction<DBIDRef>> func) {
+    super();
+    this.func = func;
+  }
+
+  @Override
+  public Instance instantiate(Executor executor) {
+    return new Instance(func.get(), executor.getInstance(output));
+  }
+
+  /**
+   * Compute a function for all objects in parallel, store the values and
+   * collect their minimum and maximum.
+   *
+   * @param ids Objects to process
+   * @param func Supplier of the function to compute, called for each thread
+   * @param store Output storage
+   * @return Minimum and maximum of the values
+   */
+  public static DoubleMinMax run(DBIDs ids, Supplier<? extends ToDoubleFunction<DBIDRef>> func, WritableDoubleDataStore store) {
+    DoubleFunctionProcessor funcm = new DoubleFunctionProcessor(func);
+    SharedDouble val = new SharedDouble();
+    funcm.connectOutput(val);
+    WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(store);
+    storem.connectInput(val);
+    DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+    mmm.connectInput(val);
+    ParallelExecutor.run(ids, funcm, storem, mmm);
+    return mmm.getMinMax();
+  }
+
+  /**
+   * Instance for a particular thread.
+   *
+   * @author Erich Schubert
+   */
+  private static class Instance extends AbstractDoubleProcessor.Instance {
+    /**
+     * Function to compute
+     */
+    ToDoubleFunction<DBIDRef> func;
+
+    /**
+     * Constructor.
+     *
+     * @param func Function to compute
+     * @param output Output variable
+     */
+    protected Instance(ToDoubleFunction<DBIDRef> func, SharedDouble.Instance output) {
+      super(output);
+      this.func = func;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      output.set(func.applyAsDouble(id));
+    }
+  }
+}
@@ -78,8 +78,7 @@ public class DoubleMinMaxProcessor implements Processor {
    * @param minmax Minmax value
    */
   protected synchronized void merge(DoubleMinMax minmax) {
-    this.minmax.put(minmax.getMin());
-    this.minmax.put(minmax.getMax());
+    this.minmax.put(minmax); // May be empty, for small data sets.
   }
 
   /**
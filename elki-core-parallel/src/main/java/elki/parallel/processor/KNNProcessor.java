@@ -22,10 +22,15 @@ package elki.parallel.processor;
 
 import java.util.function.Supplier;
 
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
 import elki.database.ids.KNNList;
 import elki.database.query.knn.KNNSearcher;
 import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
 import elki.parallel.variables.SharedObject;
 
 /**
@@ -86,6 +91,26 @@ public class KNNProcessor implements Processor {
     // Nothing to do.
   }
 
+  /**
+   * Materialize the kNN of all objects in parallel, such that they can be
+   * shared by multiple passes of an algorithm.
+   *
+   * @param ids Objects to process
+   * @param k Number of neighbors (including the query point)
+   * @param knnq Supplier of kNN searchers, called for each thread
+   * @return Storage of the kNN lists
+   */
+  public static WritableDataStore<KNNList> materialize(DBIDs ids, int k, Supplier<KNNSearcher<DBIDRef>> knnq) {
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    KNNProcessor knnm = new KNNProcessor(k, knnq);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    knnm.connectKNNOutput(knnv);
+    WriteDataStoreProcessor<KNNList> storek = new WriteDataStoreProcessor<>(knns);
+    storek.connectInput(knnv);
+    ParallelExecutor.run(ids, knnm, storek);
+    return knns;
+  }
+
   /**
    * Instance for precomputing the kNN.
    * 
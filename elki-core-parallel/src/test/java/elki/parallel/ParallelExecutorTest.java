@@ -0,0 +1,100 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test the ordered execution of tasks in {@link ParallelExecutor}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class ParallelExecutorTest {
+  @Test
+  public void testRunOrdered() {
+    final int size = 100, limit = 3;
+    AtomicInteger inflight = new AtomicInteger(), maxinflight = new AtomicInteger();
+    int[] next = new int[1];
+    ParallelExecutor.runOrdered(size, limit, i -> {
+      maxinflight.accumulateAndGet(inflight.incrementAndGet(), Math::max);
+      // Later tasks finish first, to test the ordering.
+      try {
+        Thread.sleep((size - i) % 5);
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return i * 2;
+    }, (r, i) -> {
+      assertEquals("Results not consumed in order.", next[0]++, i);
+      assertEquals("Result does not belong to task.", i * 2, r.intValue());
+      inflight.decrementAndGet();
+    });
+    assertEquals("Not all results consumed.", size, next[0]);
+    assertTrue("Too many tasks in flight: " + maxinflight.get(), maxinflight.get() <= limit);
+  }
+
+  @Test
+  public void testRunOrderedCancel() throws InterruptedException {
+    assumeTrue(ParallelCore.getCore().getParallelism() > 1);
+    final int size = 100;
+    AtomicInteger started = new AtomicInteger(), running = new AtomicInteger();
+    CountDownLatch never = new CountDownLatch(1);
+    try {
+      ParallelExecutor.runOrdered(size, 4, i -> {
+        started.incrementAndGet();
+        running.incrementAndGet();
+        try {
+          if(i == 0) {
+            throw new IllegalStateException("Task failed.");
+          }
+          // Block until cancelled.
+          never.await(10, TimeUnit.SECONDS);
+          return i;
+        }
+        catch(InterruptedException e) {
+          return -1;
+        }
+        finally {
+          running.decrementAndGet();
+        }
+      }, (r, i) -> {
+      });
+      fail("Exception not propagated.");
+    }
+    catch(RuntimeException e) {
+      assertTrue("Cause not kept.", e.getCause().getCause() instanceof IllegalStateException);
+    }
+    for(int i = 0; i < 100 && running.get() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("Tasks still running after failure.", 0, running.get());
+    assertTrue("Tasks submitted after failure.", started.get() < size);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import elki.utilities.documentation.Reference;
+
+/**
+ * Lock-free union-find for primitive integers, for concurrent use by multiple
+ * threads.
+ * <p>
+ * Parent pointers are updated with compare-and-swap operations only. Roots are
+ * linked by index (the larger index is linked to the smaller index), so the
+ * root of each component is its smallest element, independent of the order
+ * of the union operations. Find uses path-halving, and failed path-halving
+ * updates are simply ignored, as they do not affect correctness.
+ * <p>
+ * Reference:
+ * <p>
+ * S. V. Jayanti, R. E. Tarjan<br>
+ * A Randomized Concurrent Algorithm for Disjoint Set Union<br>
+ * Proc. ACM Symposium on Principles of Distributed Computing (PODC)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+@Reference(authors = "S. V. Jayanti, R. E. Tarjan", //
+    title = "A Randomized Concurrent Algorithm for Disjoint Set Union", //
+    booktitle = "Proc. ACM Symposium on Principles of Distributed Computing (PODC)", //
+    url = "https://doi.org/10.1145/2933057.2933108", //
+    bibkey = "DBLP:conf/podc/JayantiT16")
+public class ConcurrentUnionFindInteger {
+  /**
+   * Parent element
+   */
+  private final AtomicIntegerArray parent;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of elements
+   */
+  public ConcurrentUnionFindInteger(int size) {
+    parent = new AtomicIntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      parent.lazySet(i, i);
+    }
+  }
+
+  /**
+   * Find the current root of a component.
+   *
+   * @param cur Element
+   * @return Component root, the smallest element of the component
+   */
+  public int find(int cur) {
+    while(true) {
+      final int p = parent.get(cur);
+      if(p == cur) {
+        return cur;
+      }
+      final int gp = parent.get(p);
+      if(p != gp) {
+        parent.compareAndSet(cur, p, gp); // Path halving, may fail.
+      }
+      cur = gp;
+    }
+  }
+
+  /**
+   * Join the components of two elements.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return Component root
+   */
+  public int union(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return first;
+      }
+      // Link the larger index to the smaller index.
+      if(first < second) {
+        if(parent.compareAndSet(second, second, first)) {
+          return first;
+        }
+      }
+      else if(parent.compareAndSet(first, first, second)) {
+        return second;
+      }
+      // Another thread modified a root, retry.
+    }
+  }
+
+  /**
+   * Test if two elements are connected.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return {@code true} if they are in the same component
+   */
+  public boolean isConnected(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return true;
+      }
+      // If first is still a root, the components were different.
+      if(parent.get(first) == first) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Number of elements.
+   *
+   * @return Size
+   */
+  public int size() {
+    return parent.length();
+  }
+}
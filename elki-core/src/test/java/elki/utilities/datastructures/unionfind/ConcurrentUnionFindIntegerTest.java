@@ -0,0 +1,107 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the concurrent union find.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class ConcurrentUnionFindIntegerTest {
+  @Test
+  public void testTree() {
+    ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(8);
+    assertFalse(uf.isConnected(0, 7));
+    uf.union(0, 1);
+    assertTrue(uf.isConnected(0, 1));
+    uf.union(2, 3);
+    assertFalse(uf.isConnected(0, 2));
+    uf.union(0, 2);
+    assertTrue(uf.isConnected(3, 1));
+    uf.union(4, 5);
+    uf.union(7, 6);
+    uf.union(6, 4);
+    assertFalse(uf.isConnected(0, 4));
+    assertEquals(4, uf.find(7));
+    uf.union(5, 3);
+    for(int i = 0; i < 8; i++) {
+      assertEquals(0, uf.find(i));
+    }
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    final int size = 10000, threads = 4;
+    ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(size);
+    WeightedQuickUnionInteger ref = new WeightedQuickUnionInteger();
+    for(int i = 0; i < size; i++) {
+      ref.nextIndex(1);
+    }
+    // Generate random edges, and process them concurrently.
+    Random r = new Random(0L);
+    final int[][] edges = new int[threads][size >> 1];
+    for(int t = 0; t < threads; t++) {
+      for(int i = 0; i < edges[t].length; i++) {
+        final int a = r.nextInt(size), b = r.nextInt(size);
+        edges[t][i] = a * size + b;
+        ref.union(a, b);
+      }
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for(int t = 0; t < threads; t++) {
+        final int[] e = edges[t];
+        futures.add(pool.submit(() -> {
+          for(int v : e) {
+            uf.union(v / size, v % size);
+          }
+        }));
+      }
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+    for(int i = 0; i < size; i++) {
+      final int root = uf.find(i);
+      assertTrue("Root is not the smallest element.", root <= i);
+      assertTrue(ref.isConnected(i, root));
+      assertEquals(ref.isConnected(i, 0), uf.isConnected(i, 0));
+    }
+  }
+}
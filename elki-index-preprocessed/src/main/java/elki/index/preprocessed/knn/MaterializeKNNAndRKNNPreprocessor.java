@@ -229,10 +229,10 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
       SetDBIDs idsSet = DBIDUtil.ensureSet(ids);
       for(DBIDIter nn = kNNs.iter(); nn.valid(); nn.advance()) {
         ModifiableDoubleDBIDList rkNN = storageRkNN.get(nn);
+        // Several removed objects may be in the same list.
         for(DoubleDBIDListMIter it = rkNN.iter(); it.valid(); it.advance()) {
           if(idsSet.contains(it)) {
             it.remove();
-            break;
           }
         }
       }
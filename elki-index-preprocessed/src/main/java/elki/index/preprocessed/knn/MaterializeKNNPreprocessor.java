@@ -71,6 +71,12 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   protected final EventListenerList listenerList = new EventListenerList();
 
+  /**
+   * Insertions and deletions not yet processed, {@code null} unless updates
+   * are accumulated.
+   */
+  private HashSetModifiableDBIDs pendingInsertions, pendingDeletions;
+
   /**
    * Constructor with preprocessing step.
    *
@@ -138,6 +144,11 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
 
   @Override
   public final void insert(DBIDRef id) {
+    if(pendingInsertions != null) {
+      flushDeletions();
+      pendingInsertions.add(id);
+      return;
+    }
     objectsInserted(DBIDUtil.deref(id));
   }
 
@@ -146,6 +157,10 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     if(storage == null && ids.size() > 0) {
       preprocess();
     }
+    else if(pendingInsertions != null) {
+      flushDeletions();
+      pendingInsertions.addDBIDs(ids);
+    }
     else {
       objectsInserted(ids);
     }
@@ -153,15 +168,81 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
 
   @Override
   public boolean delete(DBIDRef id) {
+    if(pendingDeletions != null) {
+      // Objects inserted in the same batch were never materialized.
+      if(!pendingInsertions.remove(id)) {
+        flushInsertions();
+        pendingDeletions.add(id);
+      }
+      return true;
+    }
     objectsRemoved(DBIDUtil.deref(id));
     return true;
   }
 
   @Override
   public void deleteAll(DBIDs ids) {
+    if(pendingDeletions != null) {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        delete(iter);
+      }
+      return;
+    }
     objectsRemoved(ids);
   }
 
+  /**
+   * Accumulate successive insertions or deletions, and process them as one
+   * batch when {@link #flushUpdates()} is called or a different type of update
+   * occurs. This mirrors {@link elki.database.Database#accumulateDataStoreEvents()},
+   * and listeners are informed once per batch. Until the batch is processed,
+   * the materialized neighbors are not up to date.
+   *
+   * @see #flushUpdates()
+   */
+  public void accumulateUpdates() {
+    if(pendingInsertions == null) {
+      pendingInsertions = DBIDUtil.newHashSet();
+      pendingDeletions = DBIDUtil.newHashSet();
+    }
+  }
+
+  /**
+   * Process the accumulated insertions or deletions, and stop accumulating.
+   *
+   * @see #accumulateUpdates()
+   */
+  public void flushUpdates() {
+    if(pendingInsertions == null) {
+      return;
+    }
+    flushInsertions();
+    flushDeletions();
+    pendingInsertions = pendingDeletions = null;
+  }
+
+  /**
+   * Process the accumulated insertions, if any.
+   */
+  private void flushInsertions() {
+    if(!pendingInsertions.isEmpty()) {
+      DBIDs ids = pendingInsertions;
+      pendingInsertions = DBIDUtil.newHashSet();
+      objectsInserted(ids);
+    }
+  }
+
+  /**
+   * Process the accumulated deletions, if any.
+   */
+  private void flushDeletions() {
+    if(!pendingDeletions.isEmpty()) {
+      DBIDs ids = pendingDeletions;
+      pendingDeletions = DBIDUtil.newHashSet();
+      objectsRemoved(ids);
+    }
+  }
+
   /**
    * Called after new objects have been inserted, updates the materialized
    * neighborhood.
@@ -27,6 +27,7 @@ import java.nio.file.Paths;
 import java.util.List;
 
 import elki.datasource.bundle.BundleReader;
+import elki.datasource.bundle.ColumnarBundleReader;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.datasource.filter.ObjectFilter;
 import elki.logging.Logging;
@@ -41,11 +42,15 @@ import elki.utilities.optionhandling.parameters.FileParameter;
  * Bundle files are stored in a compact binary format along with metadata, so
  * that parsing should be simpler, albeit the focus was on using it in on-disk
  * indexes.
+ * <p>
+ * Columnar bundles written by {@link elki.datasource.bundle.ColumnarBundleWriter}
+ * are detected automatically, and are memory mapped instead of being read.
  *
  * @author Erich Schubert
  * @since 0.5.5
  *
  * @composed - - - BundleReader
+ * @composed - - - ColumnarBundleReader
  */
 public class BundleDatabaseConnection extends AbstractDatabaseConnection {
   /**
@@ -72,6 +77,9 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
   @Override
   public MultipleObjectsBundle loadData() {
     try (FileChannel channel = FileChannel.open(infile)) {
+      if(ColumnarBundleReader.isColumnarBundle(channel)) {
+        return invokeBundleFilters(new ColumnarBundleReader(channel).read());
+      }
       return invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
     }
     catch(IOException e) {
@@ -0,0 +1,326 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeInformationSerializer;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDUtil;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Open a columnar bundle file written by {@link ColumnarBundleWriter}.
+ * <p>
+ * Only the header is read when opening the file. The column blocks are memory
+ * mapped, and the returned bundle provides list views on the mapped data, so
+ * objects are only created when they are accessed. Vectors are read with bulk
+ * double access, and dictionary values are deserialized once each.
+ * <p>
+ * Large blocks are mapped in multiple segments, as a single mapping is limited
+ * to 2 GB.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @assoc - reads - FileChannel
+ */
+public class ColumnarBundleReader {
+  /**
+   * Maximum size of a single mapped segment.
+   */
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * Input channel.
+   */
+  private FileChannel input;
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   */
+  public ColumnarBundleReader(FileChannel input) {
+    super();
+    this.input = input;
+  }
+
+  /**
+   * Test whether a file starts with the columnar bundle magic.
+   *
+   * @param input Input channel
+   * @return {@code true} if the file is a columnar bundle
+   * @throws IOException on IO errors
+   */
+  public static boolean isColumnarBundle(FileChannel input) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(ByteArrayUtil.SIZE_INT);
+    while(buf.hasRemaining() && input.read(buf, buf.position()) >= 0) {
+      // Read until full or end of file.
+    }
+    return !buf.hasRemaining() && buf.getInt(0) == ColumnarBundleWriter.MAGIC;
+  }
+
+  /**
+   * Open the bundle. The channel may be closed afterwards.
+   *
+   * @return Bundle, with views on the mapped data
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle read() throws IOException {
+    ByteBuffer pre = input.map(MapMode.READ_ONLY, 0, ColumnarBundleWriter.PREAMBLE_SIZE);
+    if(pre.getInt() != ColumnarBundleWriter.MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int size = pre.getInt(), numcols = pre.getInt(), flags = pre.getInt();
+    final long hsize = pre.getLong();
+    ByteBuffer header = input.map(MapMode.READ_ONLY, ColumnarBundleWriter.PREAMBLE_SIZE, hsize);
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int i = 0; i < numcols; i++) {
+      SimpleTypeInformation<?> type;
+      try {
+        type = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(header);
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+      }
+      final byte kind = header.get();
+      final long offset = header.getLong();
+      header.getLong(); // Block length, not needed.
+      switch(kind){
+      case ColumnarBundleWriter.KIND_VECTORS:
+        bundle.appendColumn(type, new VectorColumn(input, offset, size, (VectorFieldTypeInformation<?>) type));
+        break;
+      case ColumnarBundleWriter.KIND_DICTIONARY:
+        bundle.appendColumn(type, new DictionaryColumn(input, offset, size, type.getSerializer()));
+        break;
+      default:
+        throw new AbortException("Unknown block type in columnar bundle: " + kind);
+      }
+    }
+    if((flags & ColumnarBundleWriter.FLAG_DBIDS) != 0) {
+      final long offset = ColumnarBundleWriter.align(ColumnarBundleWriter.PREAMBLE_SIZE + hsize);
+      IntBuffer[] segs = mapInts(input, offset, size);
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+      for(IntBuffer seg : segs) {
+        for(int i = 0, e = seg.limit(); i < e; i++) {
+          ids.add(DBIDUtil.importInteger(seg.get(i)));
+        }
+      }
+      bundle.setDBIDs(ids);
+    }
+    return bundle;
+  }
+
+  /**
+   * Map an integer array, in segments.
+   *
+   * @param input Input channel
+   * @param offset Offset
+   * @param size Number of integers
+   * @return Segments
+   * @throws IOException on IO errors
+   */
+  static IntBuffer[] mapInts(FileChannel input, long offset, int size) throws IOException {
+    final int perseg = SEGMENT_SIZE / ByteArrayUtil.SIZE_INT;
+    IntBuffer[] segs = new IntBuffer[(int) ((size + (long) perseg - 1) / perseg)];
+    for(int i = 0; i < segs.length; i++) {
+      final int cnt = Math.min(perseg, size - i * perseg);
+      segs[i] = input.map(MapMode.READ_ONLY, offset + i * (long) SEGMENT_SIZE, cnt * (long) ByteArrayUtil.SIZE_INT).asIntBuffer();
+    }
+    return segs;
+  }
+
+  /**
+   * View on a block of dense vectors.
+   *
+   * @author Erich Schubert
+   */
+  private static class VectorColumn extends AbstractList<NumberVector> implements RandomAccess {
+    /**
+     * Mapped segments.
+     */
+    private DoubleBuffer[] segs;
+
+    /**
+     * Rows per segment.
+     */
+    private int perseg;
+
+    /**
+     * Number of rows.
+     */
+    private int size;
+
+    /**
+     * Dimensionality.
+     */
+    private int dim;
+
+    /**
+     * Vector factory.
+     */
+    private NumberVector.Factory<?> factory;
+
+    /**
+     * Constructor.
+     *
+     * @param input Input channel
+     * @param offset Block offset
+     * @param size Number of rows
+     * @param type Vector type
+     * @throws IOException on IO errors
+     */
+    VectorColumn(FileChannel input, long offset, int size, VectorFieldTypeInformation<?> type) throws IOException {
+      this.size = size;
+      this.dim = type.getDimensionality();
+      this.factory = (NumberVector.Factory<?>) type.getFactory();
+      final long rowbytes = dim * (long) ByteArrayUtil.SIZE_DOUBLE;
+      this.perseg = (int) Math.max(1, SEGMENT_SIZE / Math.max(1, rowbytes));
+      this.segs = new DoubleBuffer[(int) ((size + (long) perseg - 1) / perseg)];
+      for(int i = 0; i < segs.length; i++) {
+        final int cnt = Math.min(perseg, size - i * perseg);
+        segs[i] = input.map(MapMode.READ_ONLY, offset + i * perseg * rowbytes, cnt * rowbytes).asDoubleBuffer();
+      }
+    }
+
+    @Override
+    public NumberVector get(int index) {
+      if(index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException();
+      }
+      // Duplicate for thread safety of the bulk get.
+      DoubleBuffer seg = segs[index / perseg].duplicate();
+      seg.position((index % perseg) * dim);
+      double[] values = new double[dim];
+      seg.get(values);
+      return factory.newNumberVector(values);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * View on a dictionary-encoded column.
+   *
+   * @author Erich Schubert
+   */
+  private static class DictionaryColumn extends AbstractList<Object> implements RandomAccess {
+    /**
+     * Value offsets.
+     */
+    private IntBuffer offsets;
+
+    /**
+     * Dictionary indexes.
+     */
+    private IntBuffer[] indexes;
+
+    /**
+     * Rows per index segment.
+     */
+    private int perseg;
+
+    /**
+     * Serialized values.
+     */
+    private ByteBuffer values;
+
+    /**
+     * Cache of deserialized values.
+     */
+    private Object[] cache;
+
+    /**
+     * Number of rows.
+     */
+    private int size;
+
+    /**
+     * Value serializer.
+     */
+    private ByteBufferSerializer<?> serializer;
+
+    /**
+     * Constructor.
+     *
+     * @param input Input channel
+     * @param offset Block offset
+     * @param size Number of rows
+     * @param serializer Value serializer
+     * @throws IOException on IO errors
+     */
+    DictionaryColumn(FileChannel input, long offset, int size, ByteBufferSerializer<?> serializer) throws IOException {
+      this.size = size;
+      this.serializer = serializer;
+      ByteBuffer buf = input.map(MapMode.READ_ONLY, offset, ByteArrayUtil.SIZE_INT);
+      final int count = buf.getInt(0);
+      offset += ByteArrayUtil.SIZE_INT;
+      this.offsets = input.map(MapMode.READ_ONLY, offset, (count + 1L) * ByteArrayUtil.SIZE_INT).asIntBuffer();
+      offset += (count + 1L) * ByteArrayUtil.SIZE_INT;
+      this.indexes = mapInts(input, offset, size);
+      this.perseg = SEGMENT_SIZE / ByteArrayUtil.SIZE_INT;
+      offset += size * (long) ByteArrayUtil.SIZE_INT;
+      this.values = input.map(MapMode.READ_ONLY, offset, offsets.get(count));
+      this.cache = new Object[count];
+    }
+
+    @Override
+    public Object get(int index) {
+      if(index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException();
+      }
+      final int idx = indexes[index / perseg].get(index % perseg);
+      Object v = cache[idx];
+      if(v == null) {
+        ByteBuffer buf = values.duplicate();
+        buf.limit(offsets.get(idx + 1)).position(offsets.get(idx));
+        try {
+          cache[idx] = v = serializer.fromByteBuffer(buf);
+        }
+        catch(IOException e) {
+          throw new AbortException("Deserialization failed.", e);
+        }
+      }
+      return v;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,444 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.data.NumberVector;
+import elki.data.SparseNumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeInformationSerializer;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.io.ByteBufferSerializer;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Write an object bundle to a file in a columnar, memory-mappable format.
+ * <p>
+ * In contrast to the {@link BundleWriter}, which serializes the data row by
+ * row, each column is stored as a separate block:
+ * <ul>
+ * <li>dense number vector fields as a fixed-width block of
+ * {@code size * dim} doubles,</li>
+ * <li>all other columns (e.g., labels) with a dictionary of serialized values,
+ * and one dictionary index per row,</li>
+ * <li>DBIDs (if present) as integers.</li>
+ * </ul>
+ * The header stores the {@link SimpleTypeInformation} of each column, and the
+ * offset of each block, so the {@link ColumnarBundleReader} can map the blocks
+ * directly without reading the data first.
+ * <p>
+ * File layout (big endian):
+ * 
+ * <pre>
+ * int magic, int size, int columns, int flags, long header length
+ * header: per column type information, byte kind, long offset, long length
+ * blocks, aligned to 8 bytes
+ * </pre>
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @assoc - writes - WritableByteChannel
+ */
+public class ColumnarBundleWriter {
+  /**
+   * Random magic number, different from {@link BundleWriter#MAGIC}.
+   */
+  public static final int MAGIC = 0xa8123b2c;
+
+  /**
+   * Block containing a dense vector field.
+   */
+  static final byte KIND_VECTORS = 1;
+
+  /**
+   * Block containing a dictionary-encoded column.
+   */
+  static final byte KIND_DICTIONARY = 2;
+
+  /**
+   * Flag for bundles with DBIDs.
+   */
+  static final int FLAG_DBIDS = 1;
+
+  /**
+   * Size of the fixed preamble.
+   */
+  static final int PREAMBLE_SIZE = 24;
+
+  /**
+   * Size of the write buffer.
+   */
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Write buffer.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * Output channel.
+   */
+  private WritableByteChannel output;
+
+  /**
+   * Write a bundle to an output channel.
+   * 
+   * @param bundle Bundle to write
+   * @param output Output channel
+   * @throws IOException on IO errors
+   */
+  public void write(MultipleObjectsBundle bundle, WritableByteChannel output) throws IOException {
+    final int size = bundle.dataLength(), numcols = bundle.metaLength();
+    final boolean hasids = bundle.getDBIDs() != null;
+    // Encode non-vector columns first, to know the block sizes.
+    ColumnBlock[] blocks = new ColumnBlock[numcols];
+    for(int i = 0; i < numcols; i++) {
+      SimpleTypeInformation<?> type = bundle.meta(i);
+      blocks[i] = isDenseVectorField(type) ? //
+          new VectorBlock(bundle.getColumn(i), ((VectorFieldTypeInformation<?>) type).getDimensionality()) : //
+          new DictionaryBlock(bundle.getColumn(i), type);
+    }
+    // The header has a fixed size, independent of the offsets.
+    final int hsize = encodeHeader(bundle, blocks).remaining();
+    long pos = align(PREAMBLE_SIZE + hsize);
+    final long idoff = pos;
+    if(hasids) {
+      pos = align(pos + size * (long) ByteArrayUtil.SIZE_INT);
+    }
+    for(ColumnBlock block : blocks) {
+      block.offset = pos;
+      pos = align(pos + block.length());
+    }
+    ByteBuffer header = encodeHeader(bundle, blocks);
+    this.output = output;
+    this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, PREAMBLE_SIZE + hsize));
+    try {
+      buffer.putInt(MAGIC).putInt(size).putInt(numcols).putInt(hasids ? FLAG_DBIDS : 0).putLong(hsize);
+      buffer.put(header);
+      long written = pad(PREAMBLE_SIZE + hsize);
+      if(hasids) {
+        assert written == idoff;
+        for(DBIDArrayIter it = DBIDUtil.ensureArray(bundle.getDBIDs()).iter(); it.valid(); it.advance()) {
+          ensureBuffer(ByteArrayUtil.SIZE_INT);
+          buffer.putInt(DBIDUtil.asInteger(it));
+        }
+        written = pad(written + size * (long) ByteArrayUtil.SIZE_INT);
+      }
+      for(ColumnBlock block : blocks) {
+        assert written == block.offset;
+        block.write();
+        written = pad(written + block.length());
+      }
+      flushBuffer();
+    }
+    finally {
+      this.buffer = null;
+      this.output = null;
+    }
+  }
+
+  /**
+   * Encode the header, containing type information and block offsets.
+   *
+   * @param bundle Bundle
+   * @param blocks Column blocks
+   * @return Header buffer, ready for reading
+   * @throws IOException on serialization errors
+   */
+  private static ByteBuffer encodeHeader(MultipleObjectsBundle bundle, ColumnBlock[] blocks) throws IOException {
+    for(int cap = 1024;; cap <<= 1) {
+      ByteBuffer header = ByteBuffer.allocate(cap);
+      try {
+        for(int i = 0; i < blocks.length; i++) {
+          TypeInformationSerializer.STATIC.toByteBuffer(header, bundle.meta(i));
+          header.put(blocks[i].kind()).putLong(blocks[i].offset).putLong(blocks[i].length());
+        }
+      }
+      catch(BufferOverflowException e) {
+        continue; // Retry with a larger buffer.
+      }
+      header.flip();
+      return header;
+    }
+  }
+
+  /**
+   * Test whether a column is stored as dense vector block.
+   *
+   * @param type Column type
+   * @return {@code true} for dense number vector fields
+   */
+  private static boolean isDenseVectorField(SimpleTypeInformation<?> type) {
+    return type instanceof VectorFieldTypeInformation //
+        && NumberVector.class.isAssignableFrom(type.getRestrictionClass()) //
+        && !SparseNumberVector.class.isAssignableFrom(type.getRestrictionClass());
+  }
+
+  /**
+   * Round up to the next multiple of 8.
+   *
+   * @param pos Position
+   * @return Aligned position
+   */
+  static long align(long pos) {
+    return (pos + 7) & ~7L;
+  }
+
+  /**
+   * Write padding bytes to the next multiple of 8.
+   *
+   * @param pos Current position
+   * @return Aligned position
+   */
+  private long pad(long pos) throws IOException {
+    final long aligned = align(pos);
+    ensureBuffer((int) (aligned - pos));
+    for(long i = pos; i < aligned; i++) {
+      buffer.put((byte) 0);
+    }
+    return aligned;
+  }
+
+  /**
+   * Flush the current write buffer to disk.
+   *
+   * @throws IOException on IO errors
+   */
+  private void flushBuffer() throws IOException {
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Ensure the buffer has enough space.
+   *
+   * @param size Required size to add
+   * @throws IOException on IO errors
+   */
+  private void ensureBuffer(int size) throws IOException {
+    if(buffer.remaining() < size) {
+      flushBuffer();
+      if(buffer.remaining() < size) {
+        buffer = ByteBuffer.allocateDirect(Math.max(buffer.capacity() << 1, size));
+      }
+    }
+  }
+
+  /**
+   * Encoded column block.
+   *
+   * @author Erich Schubert
+   */
+  private abstract static class ColumnBlock {
+    /**
+     * Block offset in the file.
+     */
+    long offset;
+
+    /**
+     * Block type.
+     *
+     * @return kind
+     */
+    abstract byte kind();
+
+    /**
+     * Block length in bytes.
+     *
+     * @return length
+     */
+    abstract long length();
+
+    /**
+     * Write the block.
+     *
+     * @throws IOException on IO errors
+     */
+    abstract void write() throws IOException;
+  }
+
+  /**
+   * Dense vectors, stored as {@code size * dim} doubles.
+   *
+   * @author Erich Schubert
+   */
+  private class VectorBlock extends ColumnBlock {
+    /**
+     * Column data.
+     */
+    private List<?> data;
+
+    /**
+     * Dimensionality.
+     */
+    private int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param data Column data
+     * @param dim Dimensionality
+     */
+    VectorBlock(List<?> data, int dim) {
+      this.data = data;
+      this.dim = dim;
+    }
+
+    @Override
+    byte kind() {
+      return KIND_VECTORS;
+    }
+
+    @Override
+    long length() {
+      return data.size() * (long) dim * ByteArrayUtil.SIZE_DOUBLE;
+    }
+
+    @Override
+    void write() throws IOException {
+      for(Object o : data) {
+        NumberVector v = (NumberVector) o;
+        if(v.getDimensionality() != dim) {
+          throw new AbortException("Vector dimensionality does not agree with the column type.");
+        }
+        ensureBuffer(dim * ByteArrayUtil.SIZE_DOUBLE);
+        for(int d = 0; d < dim; d++) {
+          buffer.putDouble(v.doubleValue(d));
+        }
+      }
+    }
+  }
+
+  /**
+   * Dictionary-encoded column: the distinct serialized values, and one
+   * dictionary index per row.
+   * <p>
+   * Layout: int count, int[count+1] value offsets, int[size] indexes, bytes.
+   *
+   * @author Erich Schubert
+   */
+  private class DictionaryBlock extends ColumnBlock {
+    /**
+     * Serialized distinct values.
+     */
+    private List<byte[]> values = new ArrayList<>();
+
+    /**
+     * Dictionary index for each row.
+     */
+    private int[] indexes;
+
+    /**
+     * Total size of the serialized values.
+     */
+    private long bytes = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param data Column data
+     * @param type Column type
+     * @throws IOException on serialization errors
+     */
+    DictionaryBlock(List<?> data, SimpleTypeInformation<?> type) throws IOException {
+      @SuppressWarnings("unchecked")
+      ByteBufferSerializer<Object> ser = (ByteBufferSerializer<Object>) type.getSerializer();
+      if(ser == null) {
+        throw new AbortException("Cannot serialize - no serializer found for type: " + type.toString());
+      }
+      // Deduplicate by serialized representation:
+      Object2IntOpenHashMap<ByteBuffer> dict = new Object2IntOpenHashMap<>();
+      dict.defaultReturnValue(-1);
+      indexes = new int[data.size()];
+      int i = 0;
+      for(Object o : data) {
+        ByteBuffer tmp = ByteBuffer.allocate(ser.getByteSize(o));
+        ser.toByteBuffer(tmp, o);
+        tmp.flip();
+        int idx = dict.getInt(tmp);
+        if(idx < 0) {
+          dict.put(tmp, idx = values.size());
+          values.add(tmp.array());
+          bytes += tmp.limit();
+        }
+        indexes[i++] = idx;
+      }
+      if(bytes > Integer.MAX_VALUE) {
+        throw new AbortException("Dictionary too large for columnar bundle format.");
+      }
+    }
+
+    @Override
+    byte kind() {
+      return KIND_DICTIONARY;
+    }
+
+    @Override
+    long length() {
+      return (1L + values.size() + 1 + indexes.length) * ByteArrayUtil.SIZE_INT + bytes;
+    }
+
+    @Override
+    void write() throws IOException {
+      ensureBuffer(ByteArrayUtil.SIZE_INT);
+      buffer.putInt(values.size());
+      int off = 0;
+      for(byte[] v : values) {
+        ensureBuffer(ByteArrayUtil.SIZE_INT);
+        buffer.putInt(off);
+        off += v.length;
+      }
+      ensureBuffer(ByteArrayUtil.SIZE_INT);
+      buffer.putInt(off);
+      for(int idx : indexes) {
+        ensureBuffer(ByteArrayUtil.SIZE_INT);
+        buffer.putInt(idx);
+      }
+      for(byte[] v : values) {
+        if(v.length > buffer.capacity()) {
+          flushBuffer();
+          ByteBuffer wrapped = ByteBuffer.wrap(v);
+          while(wrapped.hasRemaining()) {
+            output.write(wrapped);
+          }
+          continue;
+        }
+        ensureBuffer(v.length);
+        buffer.put(v);
+      }
+    }
+  }
+}
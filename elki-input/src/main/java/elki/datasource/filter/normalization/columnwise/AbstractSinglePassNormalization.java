@@ -0,0 +1,400 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.datasource.filter.FilterUtil;
+import elki.datasource.filter.normalization.NonNumericFeaturesException;
+import elki.datasource.filter.normalization.Normalization;
+import elki.logging.Logging;
+import elki.parallel.ParallelCore;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Base class for column-wise normalizations that need only a single pass over
+ * the data to compute their statistics.
+ * <p>
+ * The statistics are computed on blocks of the data in parallel, and the
+ * partial statistics are merged afterwards. The normalization itself is
+ * applied lazily: the resulting bundle contains a view of the input column
+ * that normalizes each vector when it is accessed, so no second pass over the
+ * data is necessary before the database is built. Each vector column is
+ * normalized with its own statistics; {@link #restore} uses the statistics of
+ * the last column.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @assoc - - - ParallelCore
+ *
+ * @param <V> Vector type
+ * @param <S> Statistics type
+ */
+public abstract class AbstractSinglePassNormalization<V extends NumberVector, S> implements Normalization<V> {
+  /**
+   * Minimum number of objects per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Normalization of the last column processed, for {@link #restore}.
+   */
+  protected Column last;
+
+  @Override
+  public MultipleObjectsBundle filter(MultipleObjectsBundle objects) {
+    if(objects.dataLength() == 0) {
+      return objects;
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int r = 0; r < objects.metaLength(); r++) {
+      SimpleTypeInformation<?> type = objects.meta(r);
+      List<?> column = objects.getColumn(r);
+      if(!TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type)) {
+        bundle.appendColumn(type, column);
+        continue;
+      }
+      @SuppressWarnings("unchecked")
+      final VectorFieldTypeInformation<V> castType = (VectorFieldTypeInformation<V>) type;
+      @SuppressWarnings("unchecked")
+      final List<? extends V> castColumn = (List<? extends V>) column;
+      final int dim = castType.getDimensionality();
+      Scaling scaling = finish(needsStatistics() ? computeStatistics(castColumn, dim) : null, dim);
+      last = new Column(FilterUtil.guessFactory(castType), dim, scaling);
+      bundle.appendColumn(castType, new NormalizedColumn(castColumn, last));
+    }
+    if(objects.getDBIDs() != null) {
+      bundle.setDBIDs(objects.getDBIDs());
+    }
+    return bundle;
+  }
+
+  /**
+   * Compute the statistics on blocks of the data, in parallel.
+   *
+   * @param column Data column
+   * @param dim Dimensionality
+   * @return Merged statistics
+   */
+  protected S computeStatistics(final List<? extends V> column, int dim) {
+    final int size = column.size();
+    ParallelCore core = ParallelCore.getCore();
+    final int numparts = Math.max(1, Math.min(core.getParallelism(), size / MIN_BLOCKSIZE));
+    if(numparts == 1) {
+      return new Block(column, dim, 0, size).call();
+    }
+    core.connect();
+    try {
+      final int blocksize = (size + numparts - 1) / numparts;
+      List<Future<S>> parts = new ArrayList<>(numparts);
+      for(int start = 0; start < size; start += blocksize) {
+        parts.add(core.submit(new Block(column, dim, start, Math.min(start + blocksize, size))));
+      }
+      // Merge in a fixed order, for reproducible results.
+      S stats = null;
+      for(Future<S> part : parts) {
+        stats = stats == null ? part.get() : merge(stats, part.get());
+      }
+      return stats;
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Computing normalization statistics failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Test whether the statistics need to be computed from the data.
+   *
+   * @return {@code true} if the statistics need to be computed
+   */
+  protected boolean needsStatistics() {
+    return true;
+  }
+
+  /**
+   * Initialize new (empty) statistics.
+   *
+   * @param dim Dimensionality
+   * @return Statistics
+   */
+  protected abstract S newStatistics(int dim);
+
+  /**
+   * Add a vector to the statistics.
+   *
+   * @param stats Statistics
+   * @param vec Vector
+   */
+  protected abstract void update(S stats, V vec);
+
+  /**
+   * Merge two partial statistics.
+   *
+   * @param first First statistics, may be modified
+   * @param second Second statistics
+   * @return Merged statistics
+   */
+  protected abstract S merge(S first, S second);
+
+  /**
+   * Finish the statistics of one column.
+   *
+   * @param stats Statistics, {@code null} if {@link #needsStatistics()} is
+   *        false
+   * @param dim Dimensionality
+   * @return Normalization of this column
+   */
+  protected abstract Scaling finish(S stats, int dim);
+
+  @Override
+  public V restore(V featureVector) throws NonNumericFeaturesException {
+    if(last == null) {
+      throw new NonNumericFeaturesException("No data has been normalized yet.");
+    }
+    final int dim = last.dim;
+    if(featureVector.getDimensionality() != dim) {
+      throw new NonNumericFeaturesException("Attributes cannot be resized: current dimensionality: " + featureVector.getDimensionality() + " former dimensionality: " + dim);
+    }
+    double[] values = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      values[d] = last.scaling.restore(d, featureVector.doubleValue(d));
+    }
+    return last.factory.newNumberVector(values);
+  }
+
+  @Override
+  public String toString() {
+    return new StringBuilder(1000) //
+        .append("normalization class: ").append(getClass().getName()).append('\n') //
+        .append(last != null ? last.scaling.toString() : "not initialized") //
+        .toString();
+  }
+
+  /**
+   * Class logger.
+   *
+   * @return Logger
+   */
+  protected abstract Logging getLogger();
+
+  /**
+   * Compute the statistics of a block of the data.
+   *
+   * @author Erich Schubert
+   */
+  private class Block implements Callable<S> {
+    /**
+     * Data column.
+     */
+    private List<? extends V> column;
+
+    /**
+     * Dimensionality.
+     */
+    private int dim;
+
+    /**
+     * Block range.
+     */
+    private int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param column Data column
+     * @param dim Dimensionality
+     * @param start Start position
+     * @param end End position (exclusive)
+     */
+    Block(List<? extends V> column, int dim, int start, int end) {
+      this.column = column;
+      this.dim = dim;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public S call() {
+      S stats = newStatistics(dim);
+      for(int i = start; i < end; i++) {
+        update(stats, column.get(i));
+      }
+      return stats;
+    }
+  }
+
+  /**
+   * Finished statistics of one column, used to normalize and restore values.
+   *
+   * @author Erich Schubert
+   */
+  protected interface Scaling {
+    /**
+     * Normalize a single value.
+     *
+     * @param d Dimension
+     * @param val Value
+     * @return Normalized value
+     */
+    double normalize(int d, double val);
+
+    /**
+     * Restore a single value.
+     *
+     * @param d Dimension
+     * @param val Normalized value
+     * @return Original value
+     */
+    double restore(int d, double val);
+  }
+
+  /**
+   * Normalization of a single vector column.
+   *
+   * @author Erich Schubert
+   */
+  protected class Column {
+    /**
+     * Number vector factory.
+     */
+    final NumberVector.Factory<V> factory;
+
+    /**
+     * Dimensionality of the column.
+     */
+    final int dim;
+
+    /**
+     * Statistics of this column.
+     */
+    final Scaling scaling;
+
+    /**
+     * Constructor.
+     *
+     * @param factory Vector factory
+     * @param dim Dimensionality
+     * @param scaling Statistics of the column
+     */
+    Column(NumberVector.Factory<V> factory, int dim, Scaling scaling) {
+      this.factory = factory;
+      this.dim = dim;
+      this.scaling = scaling;
+    }
+
+    /**
+     * Normalize a vector.
+     *
+     * @param vec Vector
+     * @return Normalized vector
+     */
+    V normalize(V vec) {
+      if(vec.getDimensionality() != dim) {
+        throw new IllegalArgumentException("FeatureVectors differ in length.");
+      }
+      double[] values = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = scaling.normalize(i, vec.doubleValue(i));
+      }
+      return factory.newNumberVector(values);
+    }
+  }
+
+  /**
+   * Lazily normalized view of the input column.
+   * <p>
+   * Later filters may replace objects using {@link #set}.
+   *
+   * @author Erich Schubert
+   */
+  private class NormalizedColumn extends AbstractList<V> implements RandomAccess {
+    /**
+     * Input data.
+     */
+    private List<? extends V> column;
+
+    /**
+     * Normalization of this column.
+     */
+    private Column normalization;
+
+    /**
+     * Replaced objects, allocated on demand.
+     */
+    private Object[] replaced;
+
+    /**
+     * Constructor.
+     *
+     * @param column Input data
+     * @param normalization Normalization of this column
+     */
+    NormalizedColumn(List<? extends V> column, Column normalization) {
+      this.column = column;
+      this.normalization = normalization;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(int index) {
+      if(replaced != null && replaced[index] != null) {
+        return (V) replaced[index];
+      }
+      return normalization.normalize(column.get(index));
+    }
+
+    @Override
+    public V set(int index, V element) {
+      V prev = get(index);
+      if(replaced == null) {
+        replaced = new Object[column.size()];
+      }
+      replaced[index] = element;
+      return prev;
+    }
+
+    @Override
+    public int size() {
+      return column.size();
+    }
+  }
+}
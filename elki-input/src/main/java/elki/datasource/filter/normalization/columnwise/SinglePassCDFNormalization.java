@@ -0,0 +1,158 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.math.QuantileSketch;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Single-pass, parallel CDF normalization: map each attribute to [0:1] using
+ * its (approximate) empirical cumulative distribution function, applied
+ * lazily.
+ * <p>
+ * In contrast to {@link AttributeWiseCDFNormalization}, no parametric
+ * distribution is fitted, as this would require all data in memory. Instead,
+ * the empirical distribution is approximated with a mergeable
+ * {@link QuantileSketch}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - QuantileSketch
+ *
+ * @param <V> vector type
+ */
+public class SinglePassCDFNormalization<V extends NumberVector> extends AbstractSinglePassNormalization<V, QuantileSketch[]> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SinglePassCDFNormalization.class);
+
+  /**
+   * Sketch size.
+   */
+  private int sketchsize;
+
+  /**
+   * Constructor.
+   *
+   * @param sketchsize Sketch buffer size
+   */
+  public SinglePassCDFNormalization(int sketchsize) {
+    super();
+    this.sketchsize = sketchsize;
+  }
+
+  @Override
+  protected QuantileSketch[] newStatistics(int dim) {
+    return SinglePassMADNormalization.newSketches(dim, sketchsize);
+  }
+
+  @Override
+  protected void update(QuantileSketch[] stats, V vec) {
+    SinglePassMADNormalization.updateSketches(stats, vec);
+  }
+
+  @Override
+  protected QuantileSketch[] merge(QuantileSketch[] first, QuantileSketch[] second) {
+    return SinglePassMADNormalization.mergeSketches(first, second);
+  }
+
+  @Override
+  protected Scaling finish(QuantileSketch[] stats, int dim) {
+    return new CDFScaling(stats);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Distribution sketches of one column.
+   *
+   * @author Erich Schubert
+   */
+  private static class CDFScaling implements Scaling {
+    /**
+     * Distribution sketch of each dimension.
+     */
+    private QuantileSketch[] sketches;
+
+    /**
+     * Constructor.
+     *
+     * @param sketches Distribution sketches
+     */
+    CDFScaling(QuantileSketch[] sketches) {
+      this.sketches = sketches;
+    }
+
+    @Override
+    public double normalize(int d, double val) {
+      return val == val ? sketches[d].cdf(val) : val;
+    }
+
+    @Override
+    public double restore(int d, double val) {
+      return val == val ? sketches[d].quantile(val) : val;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder buf = new StringBuilder(100 + 50 * sketches.length) //
+          .append("normalization distributions: ");
+      for(QuantileSketch s : sketches) {
+        buf.append(s.toString()).append(' ');
+      }
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Sketch size.
+     */
+    protected int sketchsize;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(SinglePassMADNormalization.Par.SKETCH_SIZE_ID, SinglePassMADNormalization.Par.DEFAULT_SKETCH_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> sketchsize = x);
+    }
+
+    @Override
+    public SinglePassCDFNormalization<V> make() {
+      return new SinglePassCDFNormalization<>(sketchsize);
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.math.QuantileSketch;
+import elki.math.statistics.distribution.NormalDistribution;
+import elki.utilities.io.FormatUtil;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Single-pass, parallel variant of the {@link AttributeWiseMADNormalization}:
+ * normalize each attribute by its median and median absolute deviation (MAD),
+ * applied lazily.
+ * <p>
+ * Median and MAD are estimated from a mergeable {@link QuantileSketch}, and
+ * thus are approximate.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - QuantileSketch
+ *
+ * @param <V> vector type
+ */
+public class SinglePassMADNormalization<V extends NumberVector> extends AbstractSinglePassNormalization<V, QuantileSketch[]> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SinglePassMADNormalization.class);
+
+  /**
+   * Sketch size.
+   */
+  private int sketchsize;
+
+  /**
+   * Constructor.
+   *
+   * @param sketchsize Sketch buffer size
+   */
+  public SinglePassMADNormalization(int sketchsize) {
+    super();
+    this.sketchsize = sketchsize;
+  }
+
+  @Override
+  protected QuantileSketch[] newStatistics(int dim) {
+    return newSketches(dim, sketchsize);
+  }
+
+  @Override
+  protected void update(QuantileSketch[] stats, V vec) {
+    updateSketches(stats, vec);
+  }
+
+  @Override
+  protected QuantileSketch[] merge(QuantileSketch[] first, QuantileSketch[] second) {
+    return mergeSketches(first, second);
+  }
+
+  @Override
+  protected Scaling finish(QuantileSketch[] stats, int dim) {
+    double[] median = new double[stats.length], imadsigma = new double[stats.length];
+    for(int d = 0; d < stats.length; d++) {
+      final double med = median[d] = stats[d].quantile(.5);
+      final double mad = stats[d].absoluteDeviationQuantile(med, .5);
+      if(mad > 0) {
+        imadsigma[d] = NormalDistribution.PHIINV075 / mad;
+      }
+      else {
+        LOG.warning("Constant or near-constant attribute detected. Using MAD=1.");
+        imadsigma[d] = 1.;
+      }
+    }
+    return new MADScaling(median, imadsigma);
+  }
+
+  /**
+   * Initialize a sketch for each dimension.
+   *
+   * @param dim Dimensionality
+   * @param sketchsize Sketch size
+   * @return Sketches
+   */
+  static QuantileSketch[] newSketches(int dim, int sketchsize) {
+    QuantileSketch[] sketches = new QuantileSketch[dim];
+    for(int d = 0; d < dim; d++) {
+      sketches[d] = new QuantileSketch(sketchsize);
+    }
+    return sketches;
+  }
+
+  /**
+   * Add a vector to the sketches.
+   *
+   * @param sketches Sketches
+   * @param vec Vector
+   */
+  static void updateSketches(QuantileSketch[] sketches, NumberVector vec) {
+    if(vec.getDimensionality() != sketches.length) {
+      throw new IllegalArgumentException("FeatureVectors differ in length.");
+    }
+    for(int d = 0; d < sketches.length; d++) {
+      final double v = vec.doubleValue(d);
+      if(v == v) { // Skip NaN
+        sketches[d].put(v);
+      }
+    }
+  }
+
+  /**
+   * Merge two arrays of sketches.
+   *
+   * @param first First sketches, will be modified
+   * @param second Second sketches
+   * @return First sketches
+   */
+  static QuantileSketch[] mergeSketches(QuantileSketch[] first, QuantileSketch[] second) {
+    for(int d = 0; d < first.length; d++) {
+      first[d].put(second[d]);
+    }
+    return first;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Median and MAD of one column.
+   *
+   * @author Erich Schubert
+   */
+  private static class MADScaling implements Scaling {
+    /**
+     * Median of each dimension.
+     */
+    private double[] median;
+
+    /**
+     * Inverse of the scaled MAD of each dimension.
+     */
+    private double[] imadsigma;
+
+    /**
+     * Constructor.
+     *
+     * @param median Medians
+     * @param imadsigma Inverse scaled MADs
+     */
+    MADScaling(double[] median, double[] imadsigma) {
+      this.median = median;
+      this.imadsigma = imadsigma;
+    }
+
+    @Override
+    public double normalize(int d, double val) {
+      return (val - median[d]) * imadsigma[d];
+    }
+
+    @Override
+    public double restore(int d, double val) {
+      return (val / imadsigma[d]) + median[d];
+    }
+
+    @Override
+    public String toString() {
+      return new StringBuilder(1000) //
+          .append("normalization median: ").append(FormatUtil.format(median)).append('\n') //
+          .append("normalization scaling factor: ").append(FormatUtil.format(imadsigma)).toString();
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Buffer size of the quantile sketches.
+     */
+    public static final OptionID SKETCH_SIZE_ID = new OptionID("normalize.sketchsize", "Buffer size of the quantile sketches, controlling the accuracy.");
+
+    /**
+     * Default sketch size.
+     */
+    public static final int DEFAULT_SKETCH_SIZE = 1000;
+
+    /**
+     * Sketch size.
+     */
+    protected int sketchsize;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(SKETCH_SIZE_ID, DEFAULT_SKETCH_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> sketchsize = x);
+    }
+
+    @Override
+    public SinglePassMADNormalization<V> make() {
+      return new SinglePassMADNormalization<>(sketchsize);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import java.util.Arrays;
+
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.utilities.io.FormatUtil;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.WrongParameterValueException;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleListParameter;
+
+/**
+ * Single-pass, parallel variant of the {@link AttributeWiseMinMaxNormalization}:
+ * normalize each attribute to the range [0:1], applied lazily.
+ * <p>
+ * If minima and maxima are given, no statistics are computed.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @param <V> vector type
+ */
+public class SinglePassMinMaxNormalization<V extends NumberVector> extends AbstractSinglePassNormalization<V, double[][]> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SinglePassMinMaxNormalization.class);
+
+  /**
+   * Empty double array.
+   */
+  private static final double[] EMPTY_ARRAY = new double[0];
+
+  /**
+   * User-supplied minimum in each dimension, may be empty.
+   */
+  private double[] minima;
+
+  /**
+   * User-supplied maximum in each dimension, may be empty.
+   */
+  private double[] maxima;
+
+  /**
+   * Constructor.
+   */
+  public SinglePassMinMaxNormalization() {
+    this(EMPTY_ARRAY, EMPTY_ARRAY);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param minima Minimum values
+   * @param maxima Maximum values
+   */
+  public SinglePassMinMaxNormalization(double[] minima, double[] maxima) {
+    super();
+    this.minima = minima != null ? minima : EMPTY_ARRAY;
+    this.maxima = maxima != null ? maxima : EMPTY_ARRAY;
+  }
+
+  @Override
+  protected boolean needsStatistics() {
+    return minima.length == 0 || maxima.length == 0;
+  }
+
+  @Override
+  protected double[][] newStatistics(int dim) {
+    double[] min = new double[dim], max = new double[dim];
+    Arrays.fill(min, Double.MAX_VALUE);
+    Arrays.fill(max, -Double.MAX_VALUE);
+    return new double[][] { min, max };
+  }
+
+  @Override
+  protected void update(double[][] stats, V vec) {
+    final double[] min = stats[0], max = stats[1];
+    if(vec.getDimensionality() != min.length) {
+      throw new IllegalArgumentException("FeatureVectors differ in length.");
+    }
+    for(int d = 0; d < min.length; d++) {
+      final double val = vec.doubleValue(d);
+      if(val < Double.POSITIVE_INFINITY && val > max[d]) {
+        max[d] = val;
+      }
+      if(val > Double.NEGATIVE_INFINITY && val < min[d]) {
+        min[d] = val;
+      }
+    }
+  }
+
+  @Override
+  protected double[][] merge(double[][] first, double[][] second) {
+    for(int d = 0; d < first[0].length; d++) {
+      first[0][d] = Math.min(first[0][d], second[0][d]);
+      first[1][d] = Math.max(first[1][d], second[1][d]);
+    }
+    return first;
+  }
+
+  @Override
+  protected Scaling finish(double[][] stats, int dim) {
+    if(stats == null) {
+      if(minima.length != dim || maxima.length != dim) {
+        throw new IllegalArgumentException("Dimensionalities do not agree: data " + dim + ", minima " + minima.length + ", maxima " + maxima.length);
+      }
+      return new MinMaxScaling(minima, maxima);
+    }
+    return new MinMaxScaling(stats[0], stats[1]);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Minima and maxima of one column.
+   *
+   * @author Erich Schubert
+   */
+  private static class MinMaxScaling implements Scaling {
+    /**
+     * Minimum in each dimension.
+     */
+    private double[] minima;
+
+    /**
+     * Maximum in each dimension.
+     */
+    private double[] maxima;
+
+    /**
+     * Constructor.
+     *
+     * @param minima Minimum values
+     * @param maxima Maximum values
+     */
+    MinMaxScaling(double[] minima, double[] maxima) {
+      this.minima = minima;
+      this.maxima = maxima;
+    }
+
+    @Override
+    public double normalize(int d, double val) {
+      return (val - minima[d]) / factor(d);
+    }
+
+    @Override
+    public double restore(int d, double val) {
+      return val * factor(d) + minima[d];
+    }
+
+    /**
+     * Returns a factor for normalization in a certain dimension, as in
+     * {@link AttributeWiseMinMaxNormalization}.
+     *
+     * @param d the dimension to get a factor for normalization
+     * @return a factor for normalization in a certain dimension
+     */
+    private double factor(int d) {
+      return maxima[d] > minima[d] ? maxima[d] - minima[d] : maxima[d] > 0 ? maxima[d] : 1;
+    }
+
+    @Override
+    public String toString() {
+      return new StringBuilder(1000) //
+          .append("normalization minima: ").append(FormatUtil.format(minima)).append('\n') //
+          .append("normalization maxima: ").append(FormatUtil.format(maxima)) //
+          .toString();
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Stores the maximum in each dimension.
+     */
+    private double[] maxima = EMPTY_ARRAY;
+
+    /**
+     * Stores the minimum in each dimension.
+     */
+    private double[] minima = EMPTY_ARRAY;
+
+    @Override
+    public void configure(Parameterization config) {
+      DoubleListParameter minimaP = new DoubleListParameter(AttributeWiseMinMaxNormalization.Par.MINIMA_ID) //
+          .setOptional(true);
+      minimaP.grab(config, x -> minima = x.clone());
+      DoubleListParameter maximaP = new DoubleListParameter(AttributeWiseMinMaxNormalization.Par.MAXIMA_ID) //
+          .setOptional(!minimaP.isDefined());
+      maximaP.grab(config, x -> maxima = x.clone());
+      // Non-formalized parameter constraint:
+      if(minima != null && maxima != null && minima.length != maxima.length) {
+        config.reportError(new WrongParameterValueException(minimaP, "and", maximaP, "must have the same number of values."));
+      }
+    }
+
+    @Override
+    public SinglePassMinMaxNormalization<V> make() {
+      return new SinglePassMinMaxNormalization<>(minima, maxima);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.math.MeanVariance;
+import elki.utilities.io.FormatUtil;
+
+/**
+ * Single-pass, parallel variant of the
+ * {@link AttributeWiseVarianceNormalization}: standardize each attribute to
+ * mean 0 and standard deviation 1, applied lazily.
+ * <p>
+ * The partial moments of each block are merged using
+ * {@link MeanVariance#put(elki.math.Mean)}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @param <V> vector type
+ */
+public class SinglePassVarianceNormalization<V extends NumberVector> extends AbstractSinglePassNormalization<V, MeanVariance[]> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SinglePassVarianceNormalization.class);
+
+  /**
+   * Constructor.
+   */
+  public SinglePassVarianceNormalization() {
+    super();
+  }
+
+  @Override
+  protected MeanVariance[] newStatistics(int dim) {
+    return MeanVariance.newArray(dim);
+  }
+
+  @Override
+  protected void update(MeanVariance[] stats, V vec) {
+    if(vec.getDimensionality() != stats.length) {
+      throw new IllegalArgumentException("FeatureVectors differ in length.");
+    }
+    for(int d = 0; d < stats.length; d++) {
+      final double v = vec.doubleValue(d);
+      if(v > Double.NEGATIVE_INFINITY && v < Double.POSITIVE_INFINITY) {
+        stats[d].put(v);
+      }
+    }
+  }
+
+  @Override
+  protected MeanVariance[] merge(MeanVariance[] first, MeanVariance[] second) {
+    for(int d = 0; d < first.length; d++) {
+      first[d].put(second[d]);
+    }
+    return first;
+  }
+
+  @Override
+  protected Scaling finish(MeanVariance[] stats, int dim) {
+    double[] mean = new double[stats.length], stddev = new double[stats.length];
+    for(int d = 0; d < stats.length; d++) {
+      mean[d] = stats[d].getMean();
+      final double s = stats[d].getPopulationStddev();
+      stddev[d] = s > Double.MIN_NORMAL ? s : 1.;
+    }
+    return new VarianceScaling(mean, stddev);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Mean and standard deviation of one column.
+   *
+   * @author Erich Schubert
+   */
+  private static class VarianceScaling implements Scaling {
+    /**
+     * Stores the mean in each dimension.
+     */
+    private double[] mean;
+
+    /**
+     * Stores the standard deviation in each dimension.
+     */
+    private double[] stddev;
+
+    /**
+     * Constructor.
+     *
+     * @param mean Mean values
+     * @param stddev Standard deviations
+     */
+    VarianceScaling(double[] mean, double[] stddev) {
+      this.mean = mean;
+      this.stddev = stddev;
+    }
+
+    @Override
+    public double normalize(int d, double val) {
+      return (val - mean[d]) / stddev[d];
+    }
+
+    @Override
+    public double restore(int d, double val) {
+      return val * stddev[d] + mean[d];
+    }
+
+    @Override
+    public String toString() {
+      return new StringBuilder(200) //
+          .append("normalization means: ").append(FormatUtil.format(mean)).append('\n')//
+          .append("normalization stddevs: ").append(FormatUtil.format(stddev))//
+          .toString();
+    }
+  }
+}
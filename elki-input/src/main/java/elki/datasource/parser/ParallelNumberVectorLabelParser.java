@@ -0,0 +1,421 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import elki.data.DoubleVector;
+import elki.data.LabelList;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.logging.Logging;
+import elki.parallel.ParallelCore;
+import elki.utilities.datastructures.BitsUtil;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntListParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Parallel variant of the {@link NumberVectorLabelParser}.
+ * <p>
+ * The input is read in large blocks, which are cut at the last line break.
+ * Each block is then tokenized and parsed by a separate task on the
+ * {@link ParallelCore}, while the next blocks are being read. The results are
+ * reassembled in input order, so the resulting bundle is the same as with the
+ * serial parser.
+ * <p>
+ * Because the parser is not a streaming parser, the complete data set is
+ * materialized. Only a bounded number of blocks is in flight at any time.
+ * <p>
+ * As in the serial parser, a line without any numerical value is treated as
+ * column header only if no vector has been read before; later such lines
+ * become empty vectors with labels, independent of the block size. Labels are
+ * deduplicated across blocks when the results are merged.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @composed - - - NumberVectorLabelParser
+ * @assoc - - - ParallelCore
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> implements Parser {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Default block size, 4 MiB.
+   */
+  public static final int DEFAULT_BLOCKSIZE = 1 << 22;
+
+  /**
+   * Input format.
+   */
+  protected CSVReaderFormat format;
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  protected long[] labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  protected NumberVector.Factory<V> factory;
+
+  /**
+   * Block size in bytes.
+   */
+  protected int blocksize;
+
+  /**
+   * Emit a double-precision limit warning once.
+   */
+  volatile boolean warnedPrecision = false;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param blocksize Block size in bytes
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory, int blocksize) {
+    super();
+    this.format = format;
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.blocksize = blocksize;
+  }
+
+  /**
+   * Constructor with defaults.
+   *
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(NumberVector.Factory<V> factory) {
+    this(CSVReaderFormat.DEFAULT_FORMAT, null, factory, DEFAULT_BLOCKSIZE);
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    // Bound the number of blocks in memory.
+    final int maxpending = core.getParallelism() << 1;
+    ArrayDeque<Future<Block>> pending = new ArrayDeque<>(maxpending + 1);
+    Block result = new Block(null, 0);
+    try {
+      byte[] buf = new byte[blocksize];
+      int len = 0;
+      while(true) {
+        final int read = in.read(buf, len, buf.length - len);
+        if(read < 0) {
+          if(len > 0) {
+            pending.add(core.submit(new Block(buf, len)));
+          }
+          break;
+        }
+        len += read;
+        if(len < buf.length) {
+          continue; // Try to fill the buffer.
+        }
+        int pos = len - 1;
+        while(pos >= 0 && buf[pos] != '\n') {
+          --pos;
+        }
+        if(pos < 0) { // Line longer than buffer, grow.
+          buf = Arrays.copyOf(buf, buf.length << 1);
+          continue;
+        }
+        final int rest = len - ++pos;
+        byte[] next = new byte[Math.max(blocksize, rest << 1)];
+        System.arraycopy(buf, pos, next, 0, rest);
+        pending.add(core.submit(new Block(buf, pos)));
+        buf = next;
+        len = rest;
+        while(pending.size() >= maxpending) {
+          result.append(pending.removeFirst().get());
+        }
+      }
+      while(!pending.isEmpty()) {
+        result.append(pending.removeFirst().get());
+      }
+    }
+    catch(IOException e) {
+      throw new IllegalArgumentException("Error while reading input.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalArgumentException("Error while parsing input.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel parsing interrupted.");
+    }
+    finally {
+      for(Future<Block> f : pending) {
+        f.cancel(true);
+      }
+      core.disconnect();
+    }
+    if(result.maxdim == 0) {
+      throw new AbortException("No numeric data was read. Verify the column separator; for textual data use other parsers.");
+    }
+    NumberVectorLabelParser<V> proto = new NumberVectorLabelParser<>(format, labelIndices, factory);
+    proto.columnnames = result.columnnames;
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    bundle.appendColumn(proto.getTypeInformation(result.mindim, result.maxdim), result.vecs);
+    if(result.haslabels) {
+      bundle.appendColumn(TypeUtil.LABELLIST, result.lbls);
+    }
+    if(LOG.isVerbose() && result.mindim != result.maxdim) {
+      LOG.verbose("Non-uniform column width detected, using data type with " + result.mindim + "-" + result.maxdim + " dimensions.");
+    }
+    return bundle;
+  }
+
+  @Override
+  public void cleanup() {
+    // Nothing to do, blocks are cleaned up after parsing.
+  }
+
+  /**
+   * A block of input lines, and the parsing result.
+   *
+   * @author Erich Schubert
+   */
+  private class Block implements Callable<Block> {
+    /**
+     * Input data.
+     */
+    private byte[] buf;
+
+    /**
+     * Input length.
+     */
+    private int len;
+
+    /**
+     * Parsed vectors.
+     */
+    List<V> vecs = new ArrayList<>();
+
+    /**
+     * Parsed labels.
+     */
+    List<LabelList> lbls = new ArrayList<>();
+
+    /**
+     * Dimensionality range observed.
+     */
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+
+    /**
+     * Whether labels were observed.
+     */
+    boolean haslabels = false;
+
+    /**
+     * Lines without numerical values before the first vector of the block.
+     * These are column headers only if no vector was read in an earlier block.
+     */
+    List<List<String>> leading = null;
+
+    /**
+     * Column names, if a header line was found.
+     */
+    List<String> columnnames = null;
+
+    /**
+     * For String unification when merging blocks.
+     */
+    ObjectOpenHashSet<String> unique = null;
+
+    /**
+     * Constructor.
+     *
+     * @param buf Buffer
+     * @param len Length
+     */
+    Block(byte[] buf, int len) {
+      this.buf = buf;
+      this.len = len;
+    }
+
+    @Override
+    public Block call() throws IOException {
+      NumberVectorLabelParser<V> parser = new NumberVectorLabelParser<>(format, labelIndices, factory);
+      parser.initStream(new ByteArrayInputStream(buf, 0, len));
+      parser.warnedPrecision = warnedPrecision;
+      try {
+        while(parser.reader.nextLineExceptComments()) {
+          if(parser.parseLineInternal()) {
+            final int curdim = parser.curvec.getDimensionality();
+            mindim = curdim < mindim ? curdim : mindim;
+            maxdim = curdim > maxdim ? curdim : maxdim;
+            vecs.add(parser.curvec);
+            lbls.add(parser.curlbl);
+          }
+          else { // Only before the first vector of this block.
+            if(leading == null) {
+              leading = new ArrayList<>();
+            }
+            leading.add(parser.columnnames);
+          }
+        }
+        haslabels = parser.haslabels;
+        warnedPrecision |= parser.warnedPrecision;
+      }
+      finally {
+        parser.cleanup();
+        buf = null; // Allow garbage collection
+      }
+      return this;
+    }
+
+    /**
+     * Append the results of another block.
+     *
+     * @param other Other block
+     */
+    void append(Block other) {
+      if(unique == null) {
+        unique = new ObjectOpenHashSet<>();
+      }
+      if(other.leading != null) {
+        for(List<String> row : other.leading) {
+          if(vecs.isEmpty()) {
+            columnnames = row;
+            continue;
+          }
+          // Not a header, but an empty vector (as in the serial parser).
+          vecs.add(factory.newNumberVector(new double[0]));
+          lbls.add(unique(LabelList.make(row)));
+          mindim = 0;
+          haslabels |= !row.isEmpty();
+        }
+      }
+      vecs.addAll(other.vecs);
+      for(LabelList lbl : other.lbls) {
+        lbls.add(unique(lbl));
+      }
+      mindim = other.mindim < mindim ? other.mindim : mindim;
+      maxdim = other.maxdim > maxdim ? other.maxdim : maxdim;
+      haslabels |= other.haslabels;
+    }
+
+    /**
+     * Unify the label strings with those of previous blocks.
+     *
+     * @param lbl Label list
+     * @return Label list using unified strings
+     */
+    private LabelList unique(LabelList lbl) {
+      ArrayList<String> copy = null;
+      for(int i = 0; i < lbl.size(); i++) {
+        final String l = lbl.get(i), u = unique.addOrGet(l);
+        if(u != l && copy == null) {
+          copy = new ArrayList<>(lbl.size());
+          for(int j = 0; j < i; j++) {
+            copy.add(lbl.get(j));
+          }
+        }
+        if(copy != null) {
+          copy.add(u);
+        }
+      }
+      return copy != null ? LabelList.make(copy) : lbl;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Block size for parallel parsing.
+     */
+    public static final OptionID BLOCKSIZE_ID = new OptionID("parser.blocksize", "Size of the input blocks (in bytes) that are parsed concurrently.");
+
+    /**
+     * Reader format.
+     */
+    protected CSVReaderFormat format;
+
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected long[] labelIndices;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    /**
+     * Block size.
+     */
+    protected int blocksize;
+
+    @Override
+    public void configure(Parameterization config) {
+      format = config.tryInstantiate(CSVReaderFormat.class);
+      new IntListParameter(NumberVectorLabelParser.Par.LABEL_INDICES_ID) //
+          .setOptional(true) //
+          .grab(config, x -> labelIndices = BitsUtil.of(x));
+      new ObjectParameter<NumberVector.Factory<V>>(NumberVectorLabelParser.Par.VECTOR_TYPE_ID, NumberVector.Factory.class, DoubleVector.Factory.class) //
+          .grab(config, x -> factory = x);
+      new IntParameter(BLOCKSIZE_ID, DEFAULT_BLOCKSIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> blocksize = x);
+    }
+
+    @Override
+    public ParallelNumberVectorLabelParser<V> make() {
+      return new ParallelNumberVectorLabelParser<>(format, labelIndices, factory, blocksize);
+    }
+  }
+}
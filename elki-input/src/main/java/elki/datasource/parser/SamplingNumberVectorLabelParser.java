@@ -0,0 +1,461 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Variant of the {@link NumberVectorLabelParser} that samples the input
+ * <em>before</em> converting numbers, such that only the sampled lines are
+ * parsed. In contrast to the
+ * {@link elki.datasource.filter.selection.RandomSamplingStreamFilter}, which
+ * discards objects after they have been parsed, this reduces the parsing cost
+ * on huge input files to approximately the cost of splitting the input into
+ * lines.
+ * <p>
+ * If the sample size is less than 1, it is used as Bernoulli sampling rate,
+ * i.e., every line is kept with this probability, and the data is streamed.
+ * Otherwise, reservoir sampling is used to retain exactly this many lines; the
+ * raw text of the retained lines is buffered until the end of the input, then
+ * only these lines are parsed (in their original order).
+ * <p>
+ * Optionally, a column can be specified to stratify the sample by (e.g., the
+ * class label column). With reservoir sampling, a separate reservoir is used
+ * for each stratum; with Bernoulli sampling, the first line of each stratum is
+ * always kept, so that rare classes do not vanish from the sample. To find the
+ * stratum, the line is only tokenized up to this column.
+ * <p>
+ * Reference:
+ * <p>
+ * J. S. Vitter<br>
+ * Random sampling with a reservoir<br>
+ * ACM Trans. Math. Softw. 11(1)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @param <V> the type of NumberVector used
+ */
+@Reference(authors = "J. S. Vitter", //
+    title = "Random sampling with a reservoir", //
+    booktitle = "ACM Transactions on Mathematical Software 11(1)", //
+    url = "https://doi.org/10.1145/3147.3165", //
+    bibkey = "DBLP:journals/toms/Vitter85")
+public class SamplingNumberVectorLabelParser<V extends NumberVector> extends NumberVectorLabelParser<V> {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(SamplingNumberVectorLabelParser.class);
+
+  /**
+   * Sample size (absolute) or sampling rate (relative, if less than 1).
+   */
+  private double sample;
+
+  /**
+   * Column to stratify by, or -1.
+   */
+  private int stratify;
+
+  /**
+   * Random generator factory.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Random generator for the current stream.
+   */
+  private Random random;
+
+  /**
+   * Reservoirs, by stratum (reservoir sampling only).
+   */
+  private Object2ObjectOpenHashMap<String, Reservoir> reservoirs;
+
+  /**
+   * Strata seen so far (Bernoulli sampling only).
+   */
+  private ObjectOpenHashSet<String> strata;
+
+  /**
+   * Sampled lines to parse, once the input is exhausted.
+   */
+  private String[] replay;
+
+  /**
+   * Position in the sampled lines.
+   */
+  private int replaypos;
+
+  /**
+   * Flag to indicate the first (possibly header) line.
+   */
+  private boolean first;
+
+  /**
+   * Number of (non-comment) lines read. The reader only counts up to 2^31
+   * lines, which is not enough for huge files.
+   */
+  private long lineno;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param sample Sample size (absolute) or sampling rate (if less than 1)
+   * @param stratify Column to stratify by, -1 to not stratify
+   * @param rnd Random generator
+   */
+  public SamplingNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory, double sample, int stratify, RandomFactory rnd) {
+    super(format, labelIndices, factory);
+    this.sample = sample;
+    this.stratify = stratify;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param colSep Column separator
+   * @param quoteChars Quote character
+   * @param comment Comment pattern
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param sample Sample size (absolute) or sampling rate (if less than 1)
+   * @param stratify Column to stratify by, -1 to not stratify
+   * @param rnd Random generator
+   */
+  public SamplingNumberVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, long[] labelIndices, NumberVector.Factory<V> factory, double sample, int stratify, RandomFactory rnd) {
+    this(new CSVReaderFormat(colSep, quoteChars, comment), labelIndices, factory, sample, stratify, rnd);
+  }
+
+  @Override
+  public void initStream(InputStream in) {
+    super.initStream(in);
+    random = rnd.getSingleThreadedRandom();
+    reservoirs = sample >= 1 ? new Object2ObjectOpenHashMap<>() : null;
+    strata = sample < 1 && stratify >= 0 ? new ObjectOpenHashSet<>() : null;
+    replay = null;
+    replaypos = 0;
+    first = true;
+    lineno = 0;
+  }
+
+  @Override
+  public Event nextEvent() {
+    if(nextevent != null) {
+      Event ret = nextevent;
+      nextevent = null;
+      return ret;
+    }
+    if(replay != null) {
+      return nextReplay();
+    }
+    try {
+      while(reader.nextLineExceptComments()) {
+        ++lineno;
+        if(first) {
+          first = false;
+          // Parse the first line, to detect a header row.
+          if(!parseLineInternal()) {
+            continue;
+          }
+          if(reservoirs != null) {
+            offer(stratum(reader.getBuffer()), reader.getBuffer());
+            continue;
+          }
+          if(keep(stratify >= 0 ? stratum(reader.getBuffer()) : null)) {
+            return reportNextObject();
+          }
+          continue;
+        }
+        if(reservoirs != null) {
+          offer(stratum(reader.getBuffer()), reader.getBuffer());
+          continue;
+        }
+        if(keep(stratify >= 0 ? stratum(reader.getBuffer()) : null)) {
+          tokenizer.initialize(reader.getBuffer(), 0, reader.getBuffer().length());
+          if(parseLineInternal()) {
+            return reportNextObject();
+          }
+        }
+      }
+      if(reservoirs != null) {
+        prepareReplay();
+        return nextReplay();
+      }
+      return endOfStream();
+    }
+    catch(IOException e) {
+      throw new IllegalArgumentException("Error while parsing data line " + lineno + ".");
+    }
+  }
+
+  /**
+   * Bernoulli sampling decision.
+   *
+   * @param stratum Stratum of the current line, or {@code null}
+   * @return {@code true} if the line is to be kept
+   */
+  private boolean keep(String stratum) {
+    // Always record the stratum, even if the random draw keeps the line:
+    final boolean isnew = stratum != null && strata.add(stratum);
+    return random.nextDouble() < sample || isnew;
+  }
+
+  /**
+   * Offer a line to the reservoir of its stratum.
+   *
+   * @param stratum Stratum, or {@code null}
+   * @param line Raw line, only copied if kept
+   */
+  private void offer(String stratum, CharSequence line) {
+    Reservoir r = reservoirs.get(stratum);
+    if(r == null) {
+      reservoirs.put(stratum, r = new Reservoir((int) sample));
+    }
+    final int slot = r.slot(random);
+    if(slot >= 0) {
+      r.lines[slot] = line.toString();
+      r.lineno[slot] = lineno;
+    }
+  }
+
+  /**
+   * Get the stratum of the current line, tokenizing only up to the stratum
+   * column.
+   *
+   * @param line Line
+   * @return Stratum (empty string if the column is missing)
+   */
+  private String stratum(CharSequence line) {
+    if(stratify < 0) {
+      return null;
+    }
+    tokenizer.initialize(line, 0, line.length());
+    for(int i = 0; i < stratify && tokenizer.valid(); i++) {
+      tokenizer.advance();
+    }
+    return tokenizer.valid() ? tokenizer.getStrippedSubstring() : "";
+  }
+
+  /**
+   * Collect the reservoirs, restoring the original line order.
+   */
+  private void prepareReplay() {
+    int size = 0;
+    for(Reservoir r : reservoirs.values()) {
+      size += r.size;
+    }
+    final int[] order = new int[size];
+    final long[] linenos = new long[size];
+    final String[] lines = new String[size];
+    int i = 0;
+    for(Reservoir r : reservoirs.values()) {
+      for(int j = 0; j < r.size; j++, i++) {
+        order[i] = i;
+        linenos[i] = r.lineno[j];
+        lines[i] = r.lines[j];
+      }
+    }
+    // Sort by line number, then by index:
+    IntArrays.quickSort(order, (a, b) -> linenos[a] != linenos[b] ? Long.compare(linenos[a], linenos[b]) : Integer.compare(a, b));
+    replay = new String[size];
+    for(i = 0; i < size; i++) {
+      replay[i] = lines[order[i]];
+    }
+    reservoirs = null;
+    if(LOG.isVerbose()) {
+      LOG.verbose("Sampled " + size + " of " + lineno + " lines.");
+    }
+  }
+
+  /**
+   * Parse the next sampled line.
+   *
+   * @return Event
+   */
+  private Event nextReplay() {
+    while(replaypos < replay.length) {
+      final String line = replay[replaypos];
+      replay[replaypos++] = null; // Allow garbage collection
+      tokenizer.initialize(line, 0, line.length());
+      if(parseLineInternal()) {
+        return reportNextObject();
+      }
+    }
+    return endOfStream();
+  }
+
+  /**
+   * Finish the stream.
+   *
+   * @return End of stream event
+   */
+  private Event endOfStream() {
+    if(maxdim == 0) {
+      throw new AbortException("No numeric data was sampled from " + lineno + " lines. Verify the column separator and sample size.");
+    }
+    return Event.END_OF_STREAM;
+  }
+
+  @Override
+  public void cleanup() {
+    super.cleanup();
+    reservoirs = null;
+    strata = null;
+    replay = null;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Reservoir of raw input lines.
+   *
+   * @author Erich Schubert
+   */
+  private static class Reservoir {
+    /**
+     * Raw lines.
+     */
+    String[] lines;
+
+    /**
+     * Line numbers.
+     */
+    long[] lineno;
+
+    /**
+     * Number of lines in the reservoir.
+     */
+    int size;
+
+    /**
+     * Number of lines offered.
+     */
+    long seen;
+
+    /**
+     * Constructor.
+     *
+     * @param k Reservoir size
+     */
+    Reservoir(int k) {
+      lines = new String[k];
+      lineno = new long[k];
+    }
+
+    /**
+     * Choose the slot for the next offered line (Algorithm R).
+     *
+     * @param random Random generator
+     * @return Slot to store the line in, or -1 if the line is not kept
+     */
+    int slot(Random random) {
+      ++seen;
+      if(size < lines.length) {
+        return size++;
+      }
+      final long j = (long) (random.nextDouble() * seen);
+      return j < lines.length ? (int) j : -1;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends NumberVectorLabelParser.Par<V> {
+    /**
+     * Sample size.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("parser.sample", "Number of lines to sample using reservoir sampling, or, if less than 1, the Bernoulli sampling rate.");
+
+    /**
+     * Column to stratify by.
+     */
+    public static final OptionID STRATIFY_ID = new OptionID("parser.sample.stratify", "Column (starting with 0) to stratify the sample by, such as the class label.");
+
+    /**
+     * Random seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("parser.sample.seed", "Random generator seed for sampling.");
+
+    /**
+     * Sample size.
+     */
+    protected double sample;
+
+    /**
+     * Column to stratify by.
+     */
+    protected int stratify = -1;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new DoubleParameter(SAMPLE_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> sample = x);
+      new IntParameter(STRATIFY_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> stratify = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+
+    @Override
+    public SamplingNumberVectorLabelParser<V> make() {
+      return new SamplingNumberVectorLabelParser<>(format, labelIndices, factory, sample, stratify, rnd);
+    }
+  }
+}
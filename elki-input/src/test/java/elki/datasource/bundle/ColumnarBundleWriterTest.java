@@ -0,0 +1,78 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.ids.DBIDUtil;
+import elki.datasource.AbstractDataSourceTest;
+
+/**
+ * Round-trip test for the columnar bundle format.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class ColumnarBundleWriterTest extends AbstractDataSourceTest {
+  @Test
+  public void roundtrip() throws IOException {
+    MultipleObjectsBundle bundle = readBundle(UNITTEST + "label-selection-test-1.csv");
+    bundle.setDBIDs(DBIDUtil.generateStaticDBIDRange(bundle.dataLength()));
+    Path tmp = Files.createTempFile("elki-columnar", ".bundle");
+    try {
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        new ColumnarBundleWriter().write(bundle, channel);
+      }
+      MultipleObjectsBundle read;
+      try (FileChannel channel = FileChannel.open(tmp)) {
+        assertTrue("Not detected as columnar bundle.", ColumnarBundleReader.isColumnarBundle(channel));
+        read = new ColumnarBundleReader(channel).read();
+      }
+      assertEquals("Columns do not agree", bundle.metaLength(), read.metaLength());
+      assertEquals("Length does not agree", bundle.dataLength(), read.dataLength());
+      assertTrue("Not a vector field.", TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(read.meta(0)));
+      assertTrue("Not a label list.", TypeUtil.LABELLIST.isAssignableFromType(read.meta(1)));
+      assertEquals("DBIDs do not agree", bundle.getDBIDs().size(), read.getDBIDs().size());
+      for(int i = 0; i < bundle.dataLength(); i++) {
+        NumberVector e = (NumberVector) bundle.data(i, 0), v = (NumberVector) read.data(i, 0);
+        assertEquals("Dimensionality", e.getDimensionality(), v.getDimensionality());
+        for(int d = 0; d < e.getDimensionality(); d++) {
+          assertEquals("Value differs", e.doubleValue(d), v.doubleValue(d), 0.);
+        }
+        assertEquals("Label differs", bundle.data(i, 1).toString(), read.data(i, 1).toString());
+      }
+    }
+    finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.datasource.AbstractDataSourceTest;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the single-pass CDF normalization filter.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class SinglePassCDFNormalizationTest extends AbstractDataSourceTest {
+  /**
+   * Test with default parameters.
+   */
+  @Test
+  public void defaultParameters() {
+    String filename = UNITTEST + "normalization-test-1.csv";
+    SinglePassCDFNormalization<DoubleVector> filter = new ELKIBuilder<SinglePassCDFNormalization<DoubleVector>>(SinglePassCDFNormalization.class).build();
+    MultipleObjectsBundle bundle = readBundle(filename, filter);
+    int dim = getFieldDimensionality(bundle, 0, TypeUtil.NUMBER_VECTOR_FIELD);
+
+    // The result should be approximately uniform on [0;1].
+    int[][] counts = new int[dim][4];
+    for(int row = 0; row < bundle.dataLength(); row++) {
+      DoubleVector d = get(bundle, row, 0, DoubleVector.class);
+      for(int col = 0; col < dim; col++) {
+        final double val = d.doubleValue(col);
+        counts[col][Math.min(3, (int) (val * 4))]++;
+      }
+    }
+    for(int col = 0; col < dim; col++) {
+      for(int i = 0; i < 4; i++) {
+        assertEquals("Not uniform", .25, counts[col][i] / (double) bundle.dataLength(), 0.02);
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.datasource.AbstractDataSourceTest;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.math.statistics.distribution.NormalDistribution;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the single-pass MAD normalization filter.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class SinglePassMADNormalizationTest extends AbstractDataSourceTest {
+  /**
+   * Test with a small sketch, so the approximation is used.
+   */
+  @Test
+  public void smallSketch() {
+    String filename = UNITTEST + "normalization-test-1.csv";
+    SinglePassMADNormalization<DoubleVector> filter = new ELKIBuilder<SinglePassMADNormalization<DoubleVector>>(SinglePassMADNormalization.class) //
+        .with(SinglePassMADNormalization.Par.SKETCH_SIZE_ID, 100).build();
+    MultipleObjectsBundle bundle = readBundle(filename, filter);
+    int dim = getFieldDimensionality(bundle, 0, TypeUtil.NUMBER_VECTOR_FIELD);
+
+    // Count how many values in each column are positive, and how many are
+    // within the MAD.
+    int[][] counts = new int[dim][2];
+    for(int row = 0; row < bundle.dataLength(); row++) {
+      DoubleVector d = get(bundle, row, 0, DoubleVector.class);
+      for(int col = 0; col < dim; col++) {
+        final double val = d.doubleValue(col);
+        counts[col][0] += val > 0. ? 1 : 0;
+        counts[col][1] += Math.abs(val) < NormalDistribution.PHIINV075 ? 1 : 0;
+      }
+    }
+    // Approximately 50% each, the sketch is not exact.
+    for(int col = 0; col < dim; col++) {
+      assertEquals("~50% of the values in each column should be positive", .5, counts[col][0] / (double) bundle.dataLength(), 0.03);
+      assertEquals("~50% of the values in each column should be -1 to +1", .5, counts[col][1] / (double) bundle.dataLength(), 0.03);
+    }
+  }
+}
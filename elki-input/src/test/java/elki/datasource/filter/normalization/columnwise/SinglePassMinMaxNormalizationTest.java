@@ -0,0 +1,120 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.datasource.AbstractDataSourceTest;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.math.DoubleMinMax;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the single-pass min-max normalization filter.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class SinglePassMinMaxNormalizationTest extends AbstractDataSourceTest {
+  /**
+   * Test with default parameters.
+   */
+  @Test
+  public void defaultParameters() {
+    String filename = UNITTEST + "normalization-test-1.csv";
+    SinglePassMinMaxNormalization<DoubleVector> filter = new ELKIBuilder<SinglePassMinMaxNormalization<DoubleVector>>(SinglePassMinMaxNormalization.class).build();
+    MultipleObjectsBundle bundle = readBundle(filename, filter);
+    int dim = getFieldDimensionality(bundle, 0, TypeUtil.NUMBER_VECTOR_FIELD);
+
+    DoubleMinMax[] mms = DoubleMinMax.newArray(dim);
+    for(int row = 0; row < bundle.dataLength(); row++) {
+      DoubleVector d = get(bundle, row, 0, DoubleVector.class);
+      for(int col = 0; col < dim; col++) {
+        mms[col].put(d.doubleValue(col));
+      }
+    }
+    for(int col = 0; col < dim; col++) {
+      assertEquals("Minimum not as expected", 0., mms[col].getMin(), 0.);
+      assertEquals("Maximum not as expected", 1., mms[col].getMax(), 0.);
+    }
+  }
+
+  /**
+   * Test with given minima and maxima.
+   */
+  @Test
+  public void givenMinMax() {
+    String filename = UNITTEST + "normalization-test-1.csv";
+    MultipleObjectsBundle orig = readBundle(filename);
+    int dim = getFieldDimensionality(orig, 0, TypeUtil.NUMBER_VECTOR_FIELD);
+    double[] min = new double[dim], max = new double[dim];
+    Arrays.fill(min, -1.);
+    Arrays.fill(max, 3.);
+    SinglePassMinMaxNormalization<DoubleVector> filter = new ELKIBuilder<SinglePassMinMaxNormalization<DoubleVector>>(SinglePassMinMaxNormalization.class) //
+        .with(AttributeWiseMinMaxNormalization.Par.MINIMA_ID, min) //
+        .with(AttributeWiseMinMaxNormalization.Par.MAXIMA_ID, max) //
+        .build();
+    MultipleObjectsBundle bundle = filter.filter(orig);
+    for(int row = 0; row < bundle.dataLength(); row++) {
+      DoubleVector o = get(orig, row, 0, DoubleVector.class);
+      DoubleVector d = get(bundle, row, 0, DoubleVector.class);
+      for(int col = 0; col < dim; col++) {
+        assertEquals("Value not as expected", (o.doubleValue(col) + 1.) / 4., d.doubleValue(col), 1e-15);
+      }
+    }
+  }
+
+  /**
+   * Test with two vector columns of different dimensionality.
+   */
+  @Test
+  public void twoColumns() {
+    MultipleObjectsBundle orig = new MultipleObjectsBundle();
+    List<DoubleVector> first = new ArrayList<>(), second = new ArrayList<>();
+    for(int i = 0; i < 1000; i++) {
+      first.add(DoubleVector.wrap(new double[] { i, -i }));
+      second.add(DoubleVector.wrap(new double[] { 10. * i, 5., 2. * i }));
+    }
+    orig.appendColumn(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 2), first);
+    orig.appendColumn(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 3), second);
+    MultipleObjectsBundle bundle = new SinglePassMinMaxNormalization<DoubleVector>().filter(orig);
+    for(int row = 0; row < bundle.dataLength(); row++) {
+      DoubleVector a = get(bundle, row, 0, DoubleVector.class);
+      DoubleVector b = get(bundle, row, 1, DoubleVector.class);
+      assertEquals("Wrong dimensionality", 2, a.getDimensionality());
+      assertEquals("Wrong dimensionality", 3, b.getDimensionality());
+      assertEquals("First column not normalized", row / 999., a.doubleValue(0), 1e-15);
+      assertEquals("First column not normalized", 1. - row / 999., a.doubleValue(1), 1e-15);
+      assertEquals("Second column not normalized", row / 999., b.doubleValue(0), 1e-15);
+      assertEquals("Constant column not mapped to 0", 0., b.doubleValue(1), 1e-15);
+      assertEquals("Second column not normalized", row / 999., b.doubleValue(2), 1e-15);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.filter.normalization.columnwise;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.datasource.AbstractDataSourceTest;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.datasource.filter.normalization.NonNumericFeaturesException;
+import elki.math.MeanVariance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the single-pass variance normalization filter.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class SinglePassVarianceNormalizationTest extends AbstractDataSourceTest {
+  /**
+   * Test with default parameters.
+   */
+  @Test
+  public void defaultParameters() throws NonNumericFeaturesException {
+    String filename = UNITTEST + "normalization-test-1.csv";
+    SinglePassVarianceNormalization<DoubleVector> filter = new ELKIBuilder<SinglePassVarianceNormalization<DoubleVector>>(SinglePassVarianceNormalization.class).build();
+    MultipleObjectsBundle bundle = readBundle(filename, filter);
+    int dim = getFieldDimensionality(bundle, 0, TypeUtil.NUMBER_VECTOR_FIELD);
+
+    // We verify that the resulting data has mean 0 and variance 1 in each
+    // column:
+    MeanVariance[] mvs = MeanVariance.newArray(dim);
+    for(int row = 0; row < bundle.dataLength(); row++) {
+      DoubleVector d = get(bundle, row, 0, DoubleVector.class);
+      for(int col = 0; col < dim; col++) {
+        mvs[col].put(d.doubleValue(col));
+      }
+    }
+    for(int col = 0; col < dim; col++) {
+      assertEquals("Mean not as expected", 0., mvs[col].getMean(), 1e-14);
+      assertEquals("Variance not as expected", 1., mvs[col].getPopulationVariance(), 1e-14);
+    }
+    // Restore the original data:
+    MultipleObjectsBundle orig = readBundle(filename);
+    DoubleVector o = get(orig, 0, 0, DoubleVector.class);
+    DoubleVector r = filter.restore(get(bundle, 0, 0, DoubleVector.class));
+    for(int col = 0; col < dim; col++) {
+      assertEquals("Not restored", o.doubleValue(col), r.doubleValue(col), 1e-10);
+    }
+  }
+}
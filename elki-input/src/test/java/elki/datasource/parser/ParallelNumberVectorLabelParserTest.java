@@ -0,0 +1,105 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.LabelList;
+import elki.data.NumberVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.datasource.AbstractDataSourceTest;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the parallel number vector parser against the serial parser.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class ParallelNumberVectorLabelParserTest extends AbstractDataSourceTest {
+  @Test
+  public void compareSerial() throws IOException {
+    String filename = UNITTEST + "label-selection-test-1.csv";
+    MultipleObjectsBundle expect;
+    try (InputStream is = open(filename)) {
+      expect = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(is);
+    }
+    // Very small blocks, to test block boundaries and buffer growth.
+    for(int blocksize : new int[] { 7, 64, 1000 }) {
+      Parser parser = new ELKIBuilder<>(ParallelNumberVectorLabelParser.class) //
+          .with(ParallelNumberVectorLabelParser.Par.BLOCKSIZE_ID, blocksize) //
+          .build();
+      MultipleObjectsBundle bundle;
+      try (InputStream is = open(filename)) {
+        bundle = parser.parse(is);
+      }
+      assertEquals("Columns do not agree", expect.metaLength(), bundle.metaLength());
+      assertEquals("Length does not agree", expect.dataLength(), bundle.dataLength());
+      for(int i = 0; i < expect.dataLength(); i++) {
+        assertEquals("Vector " + i + " differs", expect.data(i, 0).toString(), bundle.data(i, 0).toString());
+        assertEquals("Label " + i + " differs", expect.data(i, 1).toString(), bundle.data(i, 1).toString());
+      }
+    }
+  }
+
+  @Test
+  public void header() {
+    String data = "# Comment\nx,y\n1,2\n3,4\n\n5,6";
+    ParallelNumberVectorLabelParser<DoubleVector> parser = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, 4);
+    MultipleObjectsBundle bundle = parser.parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    assertEquals("Unexpected columns", 1, bundle.metaLength());
+    assertEquals("Unexpected length", 3, bundle.dataLength());
+    VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) bundle.meta(0);
+    assertEquals("Column label", "y", type.getLabel(1));
+    assertEquals("Value", 6., ((NumberVector) bundle.data(2, 0)).doubleValue(1), 0.);
+  }
+
+  @Test
+  public void labelRows() throws IOException {
+    String data = "x,y\n1,2,a\nfoo,bar\n3,4,a\nbaz\n5,6,a\n7,8,b\nqux\n";
+    MultipleObjectsBundle expect = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    assertEquals("Unexpected length", 7, expect.dataLength());
+    // Every block size puts the label rows at different block positions.
+    for(int blocksize = 1; blocksize < data.length(); blocksize++) {
+      ParallelNumberVectorLabelParser<DoubleVector> parser = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, blocksize);
+      MultipleObjectsBundle bundle = parser.parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+      assertEquals("Columns do not agree", expect.metaLength(), bundle.metaLength());
+      assertEquals("Type does not agree", expect.meta(0).toString(), bundle.meta(0).toString());
+      assertEquals("Length does not agree", expect.dataLength(), bundle.dataLength());
+      for(int i = 0; i < expect.dataLength(); i++) {
+        assertEquals("Vector " + i + " differs", expect.data(i, 0).toString(), bundle.data(i, 0).toString());
+        assertEquals("Label " + i + " differs", expect.data(i, 1).toString(), bundle.data(i, 1).toString());
+      }
+      // Labels are unified across blocks.
+      assertSame("Labels not deduplicated", ((LabelList) bundle.data(0, 1)).get(0), ((LabelList) bundle.data(4, 1)).get(0));
+    }
+  }
+}
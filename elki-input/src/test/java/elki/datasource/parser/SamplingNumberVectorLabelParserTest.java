@@ -0,0 +1,140 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.random.RandomFactory;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Test the sampling number vector parser.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class SamplingNumberVectorLabelParserTest {
+  /**
+   * Generate a data set with a header row, and a rare class "c" (every 100th
+   * line), with the line number in the first column.
+   *
+   * @param n Number of lines
+   * @return Input stream
+   */
+  private static ByteArrayInputStream generate(int n) {
+    StringBuilder buf = new StringBuilder(n * 10).append("# Comment\nid,x,class\n");
+    for(int i = 0; i < n; i++) {
+      buf.append(i).append(',').append(i * .5).append(',').append(i % 100 == 0 ? 'c' : i % 2 == 0 ? 'a' : 'b').append('\n');
+    }
+    return new ByteArrayInputStream(buf.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void reservoir() {
+    Parser parser = new ELKIBuilder<>(SamplingNumberVectorLabelParser.class) //
+        .with(SamplingNumberVectorLabelParser.Par.SAMPLE_ID, 50) //
+        .with(SamplingNumberVectorLabelParser.Par.SEED_ID, 0L) //
+        .build();
+    MultipleObjectsBundle bundle = parser.parse(generate(10000));
+    assertEquals("Unexpected columns", 2, bundle.metaLength());
+    assertEquals("Unexpected length", 50, bundle.dataLength());
+    VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) bundle.meta(0);
+    assertEquals("Column label", "x", type.getLabel(1));
+    double prev = -1;
+    for(int i = 0; i < bundle.dataLength(); i++) {
+      NumberVector v = (NumberVector) bundle.data(i, 0);
+      assertTrue("Input order not preserved", v.doubleValue(0) > prev);
+      assertEquals("Line parsed incorrectly", v.doubleValue(0) * .5, v.doubleValue(1), 0.);
+      prev = v.doubleValue(0);
+    }
+  }
+
+  @Test
+  public void stratified() {
+    Parser parser = new ELKIBuilder<>(SamplingNumberVectorLabelParser.class) //
+        .with(SamplingNumberVectorLabelParser.Par.SAMPLE_ID, 20) //
+        .with(SamplingNumberVectorLabelParser.Par.STRATIFY_ID, 2) //
+        .with(SamplingNumberVectorLabelParser.Par.SEED_ID, 0L) //
+        .build();
+    MultipleObjectsBundle bundle = parser.parse(generate(10000));
+    assertEquals("Unexpected length", 60, bundle.dataLength());
+    Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<>();
+    for(int i = 0; i < bundle.dataLength(); i++) {
+      counts.addTo(bundle.data(i, 1).toString(), 1);
+    }
+    assertEquals("Stratum a", 20, counts.getInt("a"));
+    assertEquals("Stratum b", 20, counts.getInt("b"));
+    assertEquals("Stratum c", 20, counts.getInt("c"));
+  }
+
+  @Test
+  public void bernoulli() {
+    SamplingNumberVectorLabelParser<DoubleVector> parser = new SamplingNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, 0.01, -1, RandomFactory.get(0L));
+    MultipleObjectsBundle bundle = parser.parse(generate(100000));
+    assertEquals("Unexpected columns", 2, bundle.metaLength());
+    assertTrue("Sample size implausible: " + bundle.dataLength(), bundle.dataLength() > 850 && bundle.dataLength() < 1150);
+    for(int i = 0; i < bundle.dataLength(); i++) {
+      NumberVector v = (NumberVector) bundle.data(i, 0);
+      assertEquals("Line parsed incorrectly", v.doubleValue(0) * .5, v.doubleValue(1), 0.);
+    }
+  }
+
+  @Test
+  public void bernoulliStratified() {
+    SamplingNumberVectorLabelParser<DoubleVector> parser = new SamplingNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, 1e-9, 2, RandomFactory.get(0L));
+    MultipleObjectsBundle bundle = parser.parse(generate(1000));
+    // Only the first object of each stratum:
+    assertEquals("Unexpected length", 3, bundle.dataLength());
+  }
+
+  @Test
+  public void bernoulliStratifiedFirstKept() {
+    final double rate = 0.5;
+    SamplingNumberVectorLabelParser<DoubleVector> parser = new SamplingNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, rate, 2, RandomFactory.get(0L));
+    MultipleObjectsBundle bundle = parser.parse(generate(1000));
+    // Replay the sampling decisions: a stratum is recorded on its first line,
+    // whether or not the random draw already keeps that line.
+    Random random = RandomFactory.get(0L).getSingleThreadedRandom();
+    HashSet<Character> strata = new HashSet<>();
+    int j = 0;
+    for(int i = 0; i < 1000; i++) {
+      final boolean isnew = strata.add(i % 100 == 0 ? 'c' : i % 2 == 0 ? 'a' : 'b');
+      if(random.nextDouble() < rate || isnew) {
+        assertEquals("Unexpected sample", i, ((NumberVector) bundle.data(j++, 0)).doubleValue(0), 0.);
+      }
+    }
+    assertEquals("Unexpected length", j, bundle.dataLength());
+  }
+}
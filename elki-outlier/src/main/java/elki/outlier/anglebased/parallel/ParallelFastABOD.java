@@ -0,0 +1,314 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.anglebased.parallel;
+
+import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.similarity.SimilarityQuery;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.logging.Logging;
+import elki.math.DoubleMinMax;
+import elki.math.MeanVariance;
+import elki.outlier.anglebased.FastABOD;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.result.outlier.InvertedOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.similarity.Similarity;
+import elki.similarity.kernel.LinearKernel;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.GreaterEqualConstraint;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel, index-based version of Fast-ABOD (approximateABOF).
+ * <p>
+ * Instead of scanning a full kernel matrix for the nearest neighbors, this
+ * version obtains candidates from the kNN query API (using an index, if
+ * available), and restricts the angle variance computation to the k nearest
+ * of these candidates in kernel space. For the linear kernel, the candidates
+ * are the exact neighbors; for other kernels, 4 k candidates are used by
+ * default to approximate the neighborhood in kernel space. Neighbors in the
+ * space of a polynomial kernel can be far in Euclidean space, so this may need
+ * many more candidates to match {@link FastABOD}.
+ * <p>
+ * The self-similarities are computed once, and the kernel values of each
+ * neighborhood are computed as one block, so each kernel value is only
+ * computed once per object. No quadratic kernel matrix is needed, and the
+ * scores are computed in parallel.
+ * <p>
+ * Reference:
+ * <p>
+ * Hans-Peter Kriegel, Matthias Schubert, Arthur Zimek<br>
+ * Angle-Based Outlier Detection in High-dimensional Data<br>
+ * Proc. 14th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining (KDD'08)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "Hans-Peter Kriegel, Matthias Schubert, Arthur Zimek", //
+    title = "Angle-Based Outlier Detection in High-dimensional Data", //
+    booktitle = "Proc. 14th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining (KDD'08)", //
+    url = "https://doi.org/10.1145/1401890.1401946", //
+    bibkey = "DBLP:conf/kdd/KriegelSZ08")
+public class ParallelFastABOD<V extends NumberVector> extends FastABOD<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFastABOD.class);
+
+  /**
+   * Default number of candidates for non-linear kernels, as multiple of k.
+   */
+  public static final int DEFAULT_CANDIDATE_FACTOR = 4;
+
+  /**
+   * Number of candidates to obtain from the kNN query.
+   */
+  protected int candidates;
+
+  /**
+   * Constructor.
+   *
+   * @param kernelFunction kernel function to use
+   * @param k Number of nearest neighbors
+   * @param candidates Number of candidates, at least k
+   */
+  public ParallelFastABOD(Similarity<? super V> kernelFunction, int k, int candidates) {
+    super(kernelFunction, k);
+    this.candidates = Math.max(k, candidates);
+  }
+
+  /**
+   * Run Fast-ABOD on the data set.
+   *
+   * @param relation Relation to process
+   * @return Outlier detection result
+   */
+  @Override
+  public OutlierResult run(Relation<V> relation) {
+    if(candidates == k && kernelFunction.getClass() != LinearKernel.class) {
+      LOG.warning("Using only k candidates with a non-linear kernel; the neighbors in kernel space may differ from the Euclidean neighbors.");
+    }
+    final DBIDs ids = relation.getDBIDs();
+    final int c1 = candidates + 1; // We will get the query point back.
+    // Prefer an index for squared Euclidean, then for Euclidean distance.
+    DistanceQuery<V> dq = new QueryBuilder<>(relation, SquaredEuclideanDistance.STATIC).distanceQuery();
+    if(new QueryBuilder<>(dq).optimizedOnly().kNNByDBID(c1) == null) {
+      DistanceQuery<V> edq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+      dq = new QueryBuilder<>(edq).optimizedOnly().kNNByDBID(c1) != null ? edq : dq;
+    }
+    final DistanceQuery<V> knndq = dq;
+    final SimilarityQuery<V> sq = new QueryBuilder<>(relation, kernelFunction).similarityQuery();
+
+    // Cache the self-similarities.
+    WritableDoubleDataStore selfsim = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    DoubleFunctionProcessor.run(ids, () -> id -> sq.similarity(id, id), selfsim);
+
+    WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmaxabod = DoubleFunctionProcessor.run(ids, () -> {
+      final KNNSearcher<DBIDRef> knnq = new QueryBuilder<>(knndq).kNNByDBID(c1);
+      final Block block = new Block(c1);
+      return id -> computeABOF(id, knnq.getKNN(id, c1), relation, sq, selfsim, block);
+    }, abodvalues);
+    selfsim.destroy();
+
+    // Build result representation.
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Angle-Based Outlier Degree", relation.getDBIDs(), abodvalues);
+    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the approximate ABOF of a single object.
+   *
+   * @param pA Object
+   * @param cands Candidate neighbors
+   * @param relation Data relation
+   * @param sq Kernel similarity query
+   * @param selfsim Self-similarities
+   * @param block Scratch storage
+   * @return ABOF
+   */
+  protected double computeABOF(DBIDRef pA, KNNList cands, Relation<V> relation, SimilarityQuery<V> sq, WritableDoubleDataStore selfsim, Block block) {
+    final V vA = relation.get(pA);
+    final double simAA = selfsim.doubleValue(pA);
+    block.ensureCapacity(cands.size()); // kNN lists may contain ties
+    final NumberVector[] vecs = block.vecs;
+    final double[] simA = block.simA, sqd = block.sqd;
+    final int[] idx = block.idx;
+    // Kernel values of the candidates, ordered by their kernel distance:
+    int n = 0;
+    for(DoubleDBIDListIter it = cands.iter(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, pA)) {
+        continue;
+      }
+      final double simAB = sq.similarity(vA, it);
+      final double sqdAB = simAA + selfsim.doubleValue(it) - simAB - simAB;
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      // Insertion sort, as the candidate lists are small.
+      int pos = n++;
+      for(; pos > 0 && sqd[idx[pos - 1]] > sqdAB; pos--) {
+        idx[pos] = idx[pos - 1];
+      }
+      idx[pos] = it.getOffset();
+      vecs[it.getOffset()] = relation.get(it);
+      simA[it.getOffset()] = simAB;
+      sqd[it.getOffset()] = sqdAB;
+    }
+    n = Math.min(n, k);
+    MeanVariance s = block.s;
+    s.reset();
+    for(int i = 0; i < n; i++) {
+      final int b = idx[i];
+      final double sqdAB = sqd[b], simAB = simA[b];
+      @SuppressWarnings("unchecked")
+      final V vB = (V) vecs[b];
+      for(int j = i + 1; j < n; j++) {
+        final int c = idx[j];
+        final double sqdAC = sqd[c], simAC = simA[c];
+        // Exploit bilinearity of scalar product:
+        // <B-A, C-A> = <B,C> - <B,A> - <A,C> + <A,A>
+        @SuppressWarnings("unchecked")
+        final double simBC = sq.similarity(vB, (V) vecs[c]);
+        final double numerator = simBC - simAB - simAC + simAA;
+        final double div = 1. / (sqdAB * sqdAC);
+        s.put(numerator * div, FastMath.sqrt(div));
+      }
+    }
+    return s.getCount() > 0 ? s.getPopulationVariance() : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Scratch storage for the kernel values of one neighborhood, for each
+   * thread.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Block {
+    /**
+     * Vectors of the candidates.
+     */
+    NumberVector[] vecs;
+
+    /**
+     * Similarity to the query object.
+     */
+    double[] simA;
+
+    /**
+     * Squared kernel distance to the query object.
+     */
+    double[] sqd;
+
+    /**
+     * Candidate order.
+     */
+    int[] idx;
+
+    /**
+     * Variance statistics.
+     */
+    MeanVariance s = new MeanVariance();
+
+    /**
+     * Constructor.
+     *
+     * @param size Maximum number of candidates
+     */
+    protected Block(int size) {
+      vecs = new NumberVector[size];
+      simA = new double[size];
+      sqd = new double[size];
+      idx = new int[size];
+    }
+
+    /**
+     * Ensure the block can hold the given number of candidates.
+     *
+     * @param size Number of candidates
+     */
+    protected void ensureCapacity(int size) {
+      if(size > idx.length) {
+        vecs = new NumberVector[size];
+        simA = new double[size];
+        sqd = new double[size];
+        idx = new int[size];
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends FastABOD.Par<V> {
+    /**
+     * Number of candidates to obtain from the kNN query.
+     */
+    public static final OptionID CANDIDATES_ID = new OptionID("fastabod.candidates", "Number of candidates to retrieve with the kNN query, reranked by kernel distance. Defaults to k for the linear kernel, where it is exact, and to " + DEFAULT_CANDIDATE_FACTOR + " * k otherwise.");
+
+    /**
+     * Number of candidates.
+     */
+    protected int candidates;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(CANDIDATES_ID) //
+          .setOptional(true) //
+          .addConstraint(new GreaterEqualConstraint(k)) //
+          .grab(config, x -> candidates = x);
+      if(candidates == 0) {
+        candidates = kernelFunction != null && kernelFunction.getClass() != LinearKernel.class ? DEFAULT_CANDIDATE_FACTOR * k : k;
+      }
+    }
+
+    @Override
+    public ParallelFastABOD<V> make() {
+      return new ParallelFastABOD<>(kernelFunction, k, candidates);
+    }
+  }
+}
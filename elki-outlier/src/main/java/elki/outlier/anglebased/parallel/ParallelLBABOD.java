@@ -0,0 +1,351 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.anglebased.parallel;
+
+import java.util.List;
+
+import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.IntegerDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.similarity.SimilarityQuery;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.logging.Logging;
+import elki.logging.Logging.Level;
+import elki.logging.LoggingConfiguration;
+import elki.logging.statistics.LongStatistic;
+import elki.math.DoubleMinMax;
+import elki.math.MeanVariance;
+import elki.outlier.anglebased.LBABOD;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.result.outlier.InvertedOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.similarity.Similarity;
+import elki.utilities.datastructures.heap.DoubleMinHeap;
+import elki.utilities.documentation.Reference;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of LB-ABOD (lower-bound) Angle-Based Outlier Detection.
+ * <p>
+ * The lower bound needs the distances to all other objects, so this version
+ * cannot be restricted to kNN candidates. Instead of a quadratic kernel
+ * matrix, it caches the self-similarities, computes the kernel values of one
+ * object against all others as a block, and computes the bounds in parallel.
+ * The candidates are then refined in parallel batches; the batch results are
+ * applied in candidate order, so the result is the same as with the
+ * sequential refinement.
+ * <p>
+ * Reference:
+ * <p>
+ * Hans-Peter Kriegel, Matthias Schubert, Arthur Zimek<br>
+ * Angle-Based Outlier Detection in High-dimensional Data<br>
+ * Proc. 14th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining (KDD'08)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "Hans-Peter Kriegel, Matthias Schubert, Arthur Zimek", //
+    title = "Angle-Based Outlier Detection in High-dimensional Data", //
+    booktitle = "Proc. 14th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining (KDD'08)", //
+    url = "https://doi.org/10.1145/1401890.1401946", //
+    bibkey = "DBLP:conf/kdd/KriegelSZ08")
+public class ParallelLBABOD<V extends NumberVector> extends LBABOD<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelLBABOD.class);
+
+  /**
+   * Constructor.
+   *
+   * @param kernelFunction Kernel function to use
+   * @param k k parameter
+   * @param l Number of outliers to find exact
+   */
+  public ParallelLBABOD(Similarity<? super V> kernelFunction, int k, int l) {
+    super(kernelFunction, k, l);
+  }
+
+  /**
+   * Run LB-ABOD on the data set.
+   *
+   * @param relation Relation to process
+   * @return Outlier detection result
+   */
+  @Override
+  public OutlierResult run(Relation<V> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final SimilarityQuery<V> sq = new QueryBuilder<>(relation, kernelFunction).similarityQuery();
+
+    // Map objects to offsets, and cache the self-similarities by offset.
+    final WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    final double[] selfsim = new double[size];
+    ParallelExecutor.run(size, 1024, (start, end) -> {
+      for(DBIDArrayIter it = ids.iter().seek(start); it.valid() && it.getOffset() < end; it.advance()) {
+        selfsim[it.getOffset()] = sq.similarity(it, it);
+      }
+      return null;
+    });
+
+    // Output storage.
+    WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmaxabod = new DoubleMinMax();
+
+    // Compute the lower bounds in parallel.
+    DoubleMinMax lbminmax = DoubleFunctionProcessor.run(ids, () -> {
+      final double[] simrow = new double[size];
+      final DBIDArrayIter pB = ids.iter();
+      final KNNHeap nn = DBIDUtil.newHeap(k);
+      return pA -> computeLBABOF(pA, relation, sq, selfsim, offsets, pB, simrow, nn);
+    }, abodvalues);
+    minmaxabod.put(Math.max(0., lbminmax.getMax())); // Maximum of approximate values.
+
+    // Candidate ranking
+    ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(size);
+    for(DBIDIter pA = ids.iter(); pA.valid(); pA.advance()) {
+      candidates.add(abodvalues.doubleValue(pA), pA);
+    }
+    candidates.sort();
+
+    // Refine candidates in parallel batches, but apply them in order.
+    final int batchsize = ParallelCore.getCore().getParallelism();
+    int refinements = 0;
+    DoubleMinHeap topscores = new DoubleMinHeap(l);
+    final DoubleDBIDListIter pA = candidates.iter();
+    refine: while(pA.valid()) {
+      final int first = pA.getOffset(), batch = Math.min(batchsize, candidates.size() - first);
+      List<double[]> abofs = ParallelExecutor.run(batch, 1, (start, end) -> {
+        final double[] simrow = new double[size];
+        final DBIDArrayIter pB = ids.iter(), pC = ids.iter();
+        final DoubleDBIDListIter it = candidates.iter();
+        final MeanVariance s = new MeanVariance();
+        double[] res = new double[end - start];
+        for(int i = start; i < end; i++) {
+          res[i - start] = computeExactABOF(it.seek(first + i), relation, sq, selfsim, offsets, pB, pC, simrow, s);
+        }
+        return res;
+      });
+      for(double[] part : abofs) {
+        for(double abof : part) {
+          // Stop refining
+          if(topscores.size() >= k && pA.doubleValue() > topscores.peek()) {
+            break refine;
+          }
+          // Store refined score:
+          abodvalues.putDouble(pA, abof);
+          minmaxabod.put(abof);
+          // Update the heap tracking the top scores.
+          if(topscores.size() < k) {
+            topscores.add(abof);
+          }
+          else {
+            if(topscores.peek() > abof) {
+              topscores.replaceTopElement(abof);
+            }
+          }
+          refinements += 1;
+          pA.advance();
+        }
+      }
+    }
+    if(LOG.isStatistics()) {
+      LoggingConfiguration.setVerbose(Level.VERYVERBOSE);
+      LOG.statistics(new LongStatistic(ParallelLBABOD.class.getName() + ".refinements", refinements));
+    }
+    offsets.destroy();
+    // Build result representation.
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Angle-based Outlier Detection", ids, abodvalues);
+    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the kernel values of one object against all objects.
+   *
+   * @param vA Object
+   * @param sq Kernel similarity query
+   * @param pB Iterator over all objects
+   * @param simrow Output array
+   */
+  private static <V> void kernelRow(V vA, SimilarityQuery<V> sq, DBIDArrayIter pB, double[] simrow) {
+    for(pB.seek(0); pB.valid(); pB.advance()) {
+      simrow[pB.getOffset()] = sq.similarity(vA, pB);
+    }
+  }
+
+  /**
+   * Compute the lower bound of the ABOF of a single object.
+   *
+   * @param pA Object
+   * @param relation Data relation
+   * @param sq Kernel similarity query
+   * @param selfsim Self-similarities
+   * @param offsets Object offsets
+   * @param pB Iterator over all objects
+   * @param simrow Scratch array for the kernel values
+   * @param nn Nearest neighbor heap
+   * @return Lower bound of ABOF
+   */
+  private double computeLBABOF(DBIDRef pA, Relation<V> relation, SimilarityQuery<V> sq, double[] selfsim, IntegerDataStore offsets, DBIDArrayIter pB, double[] simrow, KNNHeap nn) {
+    kernelRow(relation.get(pA), sq, pB, simrow);
+    final int a = offsets.intValue(pA);
+    final double simAA = selfsim[a];
+    // Compute nearest neighbors and distances.
+    nn.clear();
+    // Sum of 1./(|AB|) and 1./(|AB|^2); for computing R2.
+    double sumid = 0., sumisqd = 0.;
+    for(pB.seek(0); pB.valid(); pB.advance()) {
+      final int b = pB.getOffset();
+      if(b == a) {
+        continue;
+      }
+      double simAB = simrow[b];
+      double sqdAB = simAA + selfsim[b] - simAB - simAB;
+      final double isqdAB = 1. / sqdAB;
+      sumid += FastMath.sqrt(isqdAB);
+      sumisqd += isqdAB;
+      // Update heap
+      nn.insert(sqdAB, pB);
+    }
+
+    // Compute FastABOD approximation, adjust for lower bound.
+    // LB-ABOF is defined via a numerically unstable formula.
+    // Variance as E(X^2)-E(X)^2 suffers from catastrophic cancellation!
+    double nnsum = 0., nnsumsq = 0., nnsumisqd = 0.;
+    KNNList nl = nn.toKNNList();
+    DoubleDBIDListIter iB = nl.iter(), iC = nl.iter();
+    for(; iB.valid(); iB.advance()) {
+      double sqdAB = iB.doubleValue();
+      double simAB = simrow[offsets.intValue(iB)];
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      final V vB = relation.get(iB);
+      for(iC.seek(iB.getOffset() + 1); iC.valid(); iC.advance()) {
+        double sqdAC = iC.doubleValue();
+        double simAC = simrow[offsets.intValue(iC)];
+        if(!(sqdAC > 0.)) {
+          continue;
+        }
+        // Exploit bilinearity of scalar product:
+        // <B-A, C-A> = <B,C> - <B,A> - <A,C> + <A,A>
+        double simBC = sq.similarity(vB, iC);
+        double numerator = simBC - simAB - simAC + simAA;
+        double sqweight = 1. / (sqdAB * sqdAC);
+        double weight = FastMath.sqrt(sqweight);
+        double val = numerator * sqweight;
+        nnsum += val * weight;
+        nnsumsq += val * val * weight;
+        nnsumisqd += sqweight;
+      }
+    }
+    // Remaining weight, term R2:
+    double r2 = sumisqd * sumisqd - 2. * nnsumisqd;
+    double tmp = (2. * nnsum + r2) / (sumid * sumid);
+    return 2. * nnsumsq / (sumid * sumid) - tmp * tmp;
+  }
+
+  /**
+   * Compute the exact ABOF value, without a kernel matrix.
+   *
+   * @param pA Object A to compute ABOF for
+   * @param relation Data relation
+   * @param sq Kernel similarity query
+   * @param selfsim Self-similarities
+   * @param offsets Object offsets
+   * @param pB Iterator over objects B
+   * @param pC Iterator over objects C
+   * @param simrow Scratch array for the kernel values
+   * @param s Statistics tracker
+   * @return ABOF value
+   */
+  private double computeExactABOF(DBIDRef pA, Relation<V> relation, SimilarityQuery<V> sq, double[] selfsim, IntegerDataStore offsets, DBIDArrayIter pB, DBIDArrayIter pC, double[] simrow, MeanVariance s) {
+    kernelRow(relation.get(pA), sq, pB, simrow);
+    final int a = offsets.intValue(pA);
+    final double simAA = selfsim[a];
+    s.reset(); // Reused
+    for(pB.seek(0); pB.valid(); pB.advance()) {
+      final int b = pB.getOffset();
+      if(b == a) {
+        continue;
+      }
+      double simAB = simrow[b];
+      double sqdAB = simAA + selfsim[b] - simAB - simAB;
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      final V vB = relation.get(pB);
+      for(pC.seek(b + 1); pC.valid(); pC.advance()) {
+        final int c = pC.getOffset();
+        if(c == a) {
+          continue;
+        }
+        double simAC = simrow[c];
+        double sqdAC = simAA + selfsim[c] - simAC - simAC;
+        if(!(sqdAC > 0.)) {
+          continue;
+        }
+        // Exploit bilinearity of scalar product:
+        // <B-A, C-A> = <B,C> - <B,A> - <A,C> + <A,A>
+        double simBC = sq.similarity(vB, pC);
+        double numerator = simBC - simAB - simAC + simAA;
+        double div = 1. / (sqdAB * sqdAC);
+        s.put(numerator * div, FastMath.sqrt(div));
+      }
+    }
+    // Sample variance probably would be better here, but the ABOD publication
+    // uses the naive variance.
+    return s.getPopulationVariance();
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends LBABOD.Par<V> {
+    @Override
+    public ParallelLBABOD<V> make() {
+      return new ParallelLBABOD<>(kernelFunction, k, l);
+    }
+  }
+}
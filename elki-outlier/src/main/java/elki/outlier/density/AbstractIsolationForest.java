@@ -0,0 +1,281 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.density;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.logging.Logging;
+import elki.math.DoubleMinMax;
+import elki.math.statistics.distribution.GammaDistribution;
+import elki.outlier.OutlierAlgorithm;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.result.outlier.BasicOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.FastNonThreadsafeRandom;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Abstract base class for isolation forest outlier detectors.
+ * <p>
+ * An ensemble of random trees is built, each on a small subsample of the data.
+ * Outliers are isolated close to the root, so their average path length is
+ * short. Each tree has a height limit of ⌈log₂ s⌉ for a subsample size s, and
+ * the expected path length of the remaining points in a leaf is estimated with
+ * the average path length of an unsuccessful search in a binary search tree.
+ * <p>
+ * Trees are built independently in parallel, and then stored in flat arrays;
+ * scoring then is a parallel batch pass over the data, so the total cost is
+ * O(t n log s) for t trees, without any neighbor queries.
+ * <p>
+ * Reference:
+ * <p>
+ * F. T. Liu, K. M. Ting, Z.-H. Zhou<br>
+ * Isolation-Based Anomaly Detection<br>
+ * ACM Trans. Knowledge Discovery from Data (TKDD) 6(1)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - Tree
+ */
+@Reference(authors = "F. T. Liu, K. M. Ting, Z.-H. Zhou", //
+    title = "Isolation-Based Anomaly Detection", //
+    booktitle = "ACM Trans. Knowledge Discovery from Data (TKDD) 6(1)", //
+    url = "https://doi.org/10.1145/2133360.2133363", //
+    bibkey = "DBLP:journals/tkdd/LiuTZ12")
+public abstract class AbstractIsolationForest implements OutlierAlgorithm {
+  /**
+   * Number of trees to build.
+   */
+  protected int numtrees;
+
+  /**
+   * Subsample size for each tree.
+   */
+  protected int subsample;
+
+  /**
+   * Random generator.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param numtrees Number of trees
+   * @param subsample Subsample size
+   * @param rnd Random generator
+   */
+  public AbstractIsolationForest(int numtrees, int subsample, RandomFactory rnd) {
+    super();
+    this.numtrees = numtrees;
+    this.subsample = subsample;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Run the isolation forest algorithm.
+   *
+   * @param relation Data relation
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<? extends NumberVector> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int s = Math.min(subsample, ids.size());
+    final int maxdepth = s > 1 ? 32 - Integer.numberOfLeadingZeros(s - 1) : 0;
+    // Draw the seeds up front, so the trees do not depend on the thread count.
+    final Random random = rnd.getSingleThreadedRandom();
+    final long[] seeds = new long[numtrees];
+    for(int i = 0; i < numtrees; i++) {
+      seeds[i] = random.nextLong();
+    }
+    List<Tree> trees = new ArrayList<>(numtrees);
+    for(List<Tree> block : ParallelExecutor.run(numtrees, 1, (start, end) -> {
+      List<Tree> part = new ArrayList<>(end - start);
+      for(int i = start; i < end; i++) {
+        Random r = new FastNonThreadsafeRandom(seeds[i]);
+        double[][] data = new double[s][];
+        int j = 0;
+        for(DBIDIter it = DBIDUtil.randomSample(ids, s, r).iter(); it.valid(); it.advance()) {
+          data[j++] = relation.get(it).toArray();
+        }
+        part.add(buildTree(data, maxdepth, r));
+      }
+      return part;
+    })) {
+      trees.addAll(block);
+    }
+    if(getLogger().isVerbose()) {
+      getLogger().verbose("Built " + trees.size() + " trees on subsamples of size " + s + ".");
+    }
+
+    // Batch scoring of all points:
+    final double cs = c(s), norm = cs > 0 ? -1. / (numtrees * cs) : 0.;
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    DoubleMinMax mm = DoubleFunctionProcessor.run(ids, () -> id -> {
+      final NumberVector v = relation.get(id);
+      double sum = 0.;
+      for(Tree tree : trees) {
+        sum += tree.pathLength(v);
+      }
+      return FastMath.pow(2., sum * norm);
+    }, scores);
+    DoubleRelation scoreres = new MaterializedDoubleRelation("Isolation Forest Score", ids, scores);
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(mm.getMin(), mm.getMax(), 0., 1., 0.5);
+    return new OutlierResult(meta, scoreres);
+  }
+
+  /**
+   * Build a single isolation tree.
+   *
+   * @param data Subsample, may be reordered
+   * @param maxdepth Height limit
+   * @param random Random generator
+   * @return Tree
+   */
+  protected abstract Tree buildTree(double[][] data, int maxdepth, Random random);
+
+  /**
+   * Get the class logger.
+   *
+   * @return Logger
+   */
+  protected abstract Logging getLogger();
+
+  /**
+   * Average path length of an unsuccessful search in a binary search tree of
+   * size n, used to normalize the path lengths.
+   *
+   * @param n Number of points
+   * @return Average path length
+   */
+  protected static double c(int n) {
+    return n > 2 ? 2. * (FastMath.log(n - 1.) + GammaDistribution.EULERS_CONST) - 2. * (n - 1.) / n : n == 2 ? 1. : 0.;
+  }
+
+  /**
+   * Swap two rows of the data.
+   *
+   * @param data Data
+   * @param i First row
+   * @param j Second row
+   */
+  protected static void swap(double[][] data, int i, int j) {
+    double[] tmp = data[i];
+    data[i] = data[j];
+    data[j] = tmp;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Isolation tree, encoded in flat arrays.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface Tree {
+    /**
+     * Path length of a vector, including the estimated depth of the leaf
+     * subtree that was not built.
+     *
+     * @param v Vector
+     * @return Path length
+     */
+    double pathLength(NumberVector v);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public abstract static class Par implements Parameterizer {
+    /**
+     * Number of trees to build.
+     */
+    public static final OptionID NUM_TREES_ID = new OptionID("iforest.numtrees", "Number of trees to build.");
+
+    /**
+     * Subsample size for each tree.
+     */
+    public static final OptionID SUBSAMPLE_ID = new OptionID("iforest.subsample", "Subsample size used for building each tree.");
+
+    /**
+     * Random seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("iforest.seed", "Random seed for subsampling and splitting.");
+
+    /**
+     * Number of trees to build.
+     */
+    protected int numtrees = 100;
+
+    /**
+     * Subsample size for each tree.
+     */
+    protected int subsample = 256;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(NUM_TREES_ID, 100) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> numtrees = x);
+      new IntParameter(SUBSAMPLE_ID, 256) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> subsample = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+  }
+}
@@ -0,0 +1,393 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.density;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Extended isolation forest, which splits with random hyperplanes instead of
+ * axis-parallel cuts. This avoids the axis-aligned artifacts of the original
+ * isolation forest in the score landscape.
+ * <p>
+ * The extension level controls how many attributes each hyperplane uses: with
+ * level 0, each split uses a single attribute (as in the original isolation
+ * forest), and with level d-1 (the default) all attributes are used.
+ * <p>
+ * Reference:
+ * <p>
+ * S. Hariri, M. Carrasco Kind, R. J. Brunner<br>
+ * Extended Isolation Forest<br>
+ * IEEE Trans. Knowledge and Data Engineering 33(4)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - HyperplaneTree
+ */
+@Title("Extended Isolation Forest")
+@Reference(authors = "S. Hariri, M. Carrasco Kind, R. J. Brunner", //
+    title = "Extended Isolation Forest", //
+    booktitle = "IEEE Trans. Knowledge and Data Engineering 33(4)", //
+    url = "https://doi.org/10.1109/TKDE.2019.2947676", //
+    bibkey = "DBLP:journals/tkde/HaririKB21")
+public class ExtendedIsolationForest extends AbstractIsolationForest {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ExtendedIsolationForest.class);
+
+  /**
+   * Extension level, -1 for all attributes.
+   */
+  protected int extension;
+
+  /**
+   * Constructor.
+   *
+   * @param numtrees Number of trees
+   * @param subsample Subsample size
+   * @param extension Extension level, -1 for all attributes
+   * @param rnd Random generator
+   */
+  public ExtendedIsolationForest(int numtrees, int subsample, int extension, RandomFactory rnd) {
+    super(numtrees, subsample, rnd);
+    this.extension = extension;
+  }
+
+  @Override
+  protected Tree buildTree(double[][] data, int maxdepth, Random random) {
+    final int dim = data[0].length;
+    final int k = extension < 0 || extension >= dim ? dim : extension + 1;
+    return new HyperplaneTree.Builder(data, k, random).build(maxdepth);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Isolation tree with hyperplane splits, stored in preorder. The left child
+   * of an inner node immediately follows its parent. The hyperplane normals of
+   * the inner nodes are stored sparsely, with k attributes each.
+   *
+   * @author Erich Schubert
+   */
+  public static class HyperplaneTree implements Tree {
+    /**
+     * Number of attributes per hyperplane.
+     */
+    private int k;
+
+    /**
+     * Index of the inner node (for the normal vector), or -1 for leaves.
+     */
+    private int[] inner;
+
+    /**
+     * Index of the right child.
+     */
+    private int[] right;
+
+    /**
+     * Hyperplane offset, or the estimated remaining path length for leaves.
+     */
+    private double[] values;
+
+    /**
+     * Attributes of the normal vectors, {@code null} if all are used.
+     */
+    private int[] ndims;
+
+    /**
+     * Weights of the normal vectors.
+     */
+    private double[] nweights;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of attributes per hyperplane
+     * @param inner Inner node indexes
+     * @param right Right child indexes
+     * @param values Hyperplane offsets
+     * @param ndims Normal vector attributes, may be {@code null}
+     * @param nweights Normal vector weights
+     */
+    protected HyperplaneTree(int k, int[] inner, int[] right, double[] values, int[] ndims, double[] nweights) {
+      this.k = k;
+      this.inner = inner;
+      this.right = right;
+      this.values = values;
+      this.ndims = ndims;
+      this.nweights = nweights;
+    }
+
+    @Override
+    public double pathLength(NumberVector v) {
+      int node = 0, depth = 0;
+      for(int in = inner[0]; in >= 0; in = inner[node], depth++) {
+        double dot = 0.;
+        if(ndims == null) {
+          for(int j = 0, off = in * k; j < k; j++, off++) {
+            dot += v.doubleValue(j) * nweights[off];
+          }
+        }
+        else {
+          for(int j = 0, off = in * k; j < k; j++, off++) {
+            dot += v.doubleValue(ndims[off]) * nweights[off];
+          }
+        }
+        node = dot < values[node] ? node + 1 : right[node];
+      }
+      return depth + values[node];
+    }
+
+    /**
+     * Builder for a single tree.
+     *
+     * @author Erich Schubert
+     */
+    private static class Builder {
+      /**
+       * Subsample data, reordered during construction.
+       */
+      double[][] data;
+
+      /**
+       * Number of attributes per hyperplane.
+       */
+      int k;
+
+      /**
+       * Random generator.
+       */
+      Random random;
+
+      /**
+       * Attribute permutation, to choose the hyperplane attributes.
+       */
+      int[] perm;
+
+      /**
+       * Node storage.
+       */
+      int[] inner, right;
+
+      /**
+       * Node values.
+       */
+      double[] values;
+
+      /**
+       * Normal vectors.
+       */
+      int[] ndims;
+
+      /**
+       * Normal vector weights.
+       */
+      double[] nweights;
+
+      /**
+       * Number of nodes and inner nodes.
+       */
+      int size, numinner;
+
+      /**
+       * Constructor.
+       *
+       * @param data Subsample
+       * @param k Number of attributes per hyperplane
+       * @param random Random generator
+       */
+      Builder(double[][] data, int k, Random random) {
+        this.data = data;
+        this.k = k;
+        this.random = random;
+        final int dim = data[0].length;
+        this.perm = new int[dim];
+        for(int i = 0; i < dim; i++) {
+          perm[i] = i;
+        }
+        final int maxnodes = Math.max(1, 2 * data.length - 1);
+        this.inner = new int[maxnodes];
+        this.right = new int[maxnodes];
+        this.values = new double[maxnodes];
+        final int maxinner = Math.max(1, data.length - 1) * k;
+        this.ndims = k < dim ? new int[maxinner] : null;
+        this.nweights = new double[maxinner];
+      }
+
+      /**
+       * Build the tree.
+       *
+       * @param maxdepth Height limit
+       * @return Tree
+       */
+      HyperplaneTree build(int maxdepth) {
+        build(0, data.length, maxdepth);
+        final int ninner = numinner * k;
+        return new HyperplaneTree(k, Arrays.copyOf(inner, size), Arrays.copyOf(right, size), Arrays.copyOf(values, size), //
+            ndims != null ? Arrays.copyOf(ndims, ninner) : null, Arrays.copyOf(nweights, ninner));
+      }
+
+      /**
+       * Build a subtree.
+       *
+       * @param start Start of the data range
+       * @param end End of the data range (exclusive)
+       * @param depth Remaining depth
+       */
+      private void build(int start, int end, int depth) {
+        final int node = size++;
+        if(node == inner.length) {
+          inner = Arrays.copyOf(inner, node << 1);
+          right = Arrays.copyOf(right, node << 1);
+          values = Arrays.copyOf(values, node << 1);
+        }
+        if(depth <= 0 || end - start <= 1 || allEqual(start, end)) {
+          inner[node] = -1;
+          values[node] = c(end - start);
+          return;
+        }
+        final int in = numinner++, off = in * k;
+        if(off + k > nweights.length) {
+          nweights = Arrays.copyOf(nweights, nweights.length << 1);
+          ndims = ndims != null ? Arrays.copyOf(ndims, nweights.length) : null;
+        }
+        // Random normal vector, and random intercept within the bounding box:
+        double offset = 0.;
+        for(int j = 0; j < k; j++) {
+          final int d;
+          if(ndims != null) {
+            final int r = j + random.nextInt(perm.length - j);
+            d = perm[r];
+            perm[r] = perm[j];
+            perm[j] = d;
+            ndims[off + j] = d;
+          }
+          else {
+            d = j;
+          }
+          double min = data[start][d], max = min;
+          for(int i = start + 1; i < end; i++) {
+            final double x = data[i][d];
+            min = x < min ? x : min;
+            max = x > max ? x : max;
+          }
+          final double w = random.nextGaussian();
+          nweights[off + j] = w;
+          offset += w * (min + random.nextDouble() * (max - min));
+        }
+        int l = start, r = end;
+        while(l < r) {
+          if(dot(data[l], off) < offset) {
+            l++;
+          }
+          else {
+            swap(data, l, --r);
+          }
+        }
+        inner[node] = in;
+        values[node] = offset;
+        build(start, l, depth - 1);
+        right[node] = size;
+        build(l, end, depth - 1);
+      }
+
+      /**
+       * Dot product with a normal vector.
+       *
+       * @param vec Data vector
+       * @param off Offset of the normal vector
+       * @return Dot product
+       */
+      private double dot(double[] vec, int off) {
+        double dot = 0.;
+        for(int j = 0; j < k; j++, off++) {
+          dot += vec[ndims != null ? ndims[off] : j] * nweights[off];
+        }
+        return dot;
+      }
+
+      /**
+       * Test whether all points in a range are identical.
+       *
+       * @param start Start of the data range
+       * @param end End of the data range (exclusive)
+       * @return {@code true} if all points are equal
+       */
+      private boolean allEqual(int start, int end) {
+        final double[] first = data[start];
+        for(int i = start + 1; i < end; i++) {
+          if(!Arrays.equals(first, data[i])) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends AbstractIsolationForest.Par {
+    /**
+     * Extension level, i.e., the number of additional attributes used by each
+     * hyperplane.
+     */
+    public static final OptionID EXTENSION_ID = new OptionID("eiforest.extension", "Extension level, the number of attributes used by each hyperplane minus one. 0 yields axis-parallel splits; by default all attributes are used.");
+
+    /**
+     * Extension level.
+     */
+    protected int extension = -1;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(EXTENSION_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> extension = x);
+    }
+
+    @Override
+    public ExtendedIsolationForest make() {
+      return new ExtendedIsolationForest(numtrees, subsample, extension, rnd);
+    }
+  }
+}
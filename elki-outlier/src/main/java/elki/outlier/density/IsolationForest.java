@@ -0,0 +1,242 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.density;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import elki.data.NumberVector;
+import elki.logging.Logging;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Isolation forest outlier detection, using axis-parallel random splits.
+ * <p>
+ * Reference:
+ * <p>
+ * F. T. Liu, K. M. Ting, Z.-H. Zhou<br>
+ * Isolation Forest<br>
+ * Proc. IEEE Int. Conf. on Data Mining (ICDM 2008)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - AxisTree
+ */
+@Title("Isolation Forest")
+@Reference(authors = "F. T. Liu, K. M. Ting, Z.-H. Zhou", //
+    title = "Isolation Forest", //
+    booktitle = "Proc. IEEE Int. Conf. on Data Mining (ICDM 2008)", //
+    url = "https://doi.org/10.1109/ICDM.2008.17", //
+    bibkey = "DBLP:conf/icdm/LiuTZ08")
+public class IsolationForest extends AbstractIsolationForest {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(IsolationForest.class);
+
+  /**
+   * Constructor.
+   *
+   * @param numtrees Number of trees
+   * @param subsample Subsample size
+   * @param rnd Random generator
+   */
+  public IsolationForest(int numtrees, int subsample, RandomFactory rnd) {
+    super(numtrees, subsample, rnd);
+  }
+
+  @Override
+  protected Tree buildTree(double[][] data, int maxdepth, Random random) {
+    return new AxisTree.Builder(data, random).build(maxdepth);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Isolation tree with axis-parallel splits, stored in preorder. The left
+   * child of an inner node immediately follows its parent.
+   *
+   * @author Erich Schubert
+   */
+  public static class AxisTree implements Tree {
+    /**
+     * Split dimension, or -1 for leaves.
+     */
+    private int[] dims;
+
+    /**
+     * Index of the right child.
+     */
+    private int[] right;
+
+    /**
+     * Split value, or the estimated remaining path length for leaves.
+     */
+    private double[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param dims Split dimensions
+     * @param right Right child indexes
+     * @param values Split values
+     */
+    protected AxisTree(int[] dims, int[] right, double[] values) {
+      this.dims = dims;
+      this.right = right;
+      this.values = values;
+    }
+
+    @Override
+    public double pathLength(NumberVector v) {
+      int node = 0, depth = 0;
+      for(int d = dims[0]; d >= 0; d = dims[node], depth++) {
+        node = v.doubleValue(d) < values[node] ? node + 1 : right[node];
+      }
+      return depth + values[node];
+    }
+
+    /**
+     * Builder for a single tree.
+     *
+     * @author Erich Schubert
+     */
+    private static class Builder {
+      /**
+       * Subsample data, reordered during construction.
+       */
+      double[][] data;
+
+      /**
+       * Random generator.
+       */
+      Random random;
+
+      /**
+       * Node storage.
+       */
+      int[] dims, right;
+
+      /**
+       * Node values.
+       */
+      double[] values;
+
+      /**
+       * Number of nodes.
+       */
+      int size;
+
+      /**
+       * Constructor.
+       *
+       * @param data Subsample
+       * @param random Random generator
+       */
+      Builder(double[][] data, Random random) {
+        this.data = data;
+        this.random = random;
+        final int maxnodes = Math.max(1, 2 * data.length - 1);
+        this.dims = new int[maxnodes];
+        this.right = new int[maxnodes];
+        this.values = new double[maxnodes];
+      }
+
+      /**
+       * Build the tree.
+       *
+       * @param maxdepth Height limit
+       * @return Tree
+       */
+      AxisTree build(int maxdepth) {
+        build(0, data.length, maxdepth);
+        return new AxisTree(Arrays.copyOf(dims, size), Arrays.copyOf(right, size), Arrays.copyOf(values, size));
+      }
+
+      /**
+       * Build a subtree.
+       *
+       * @param start Start of the data range
+       * @param end End of the data range (exclusive)
+       * @param depth Remaining depth
+       */
+      private void build(int start, int end, int depth) {
+        final int node = size++;
+        if(node == dims.length) {
+          dims = Arrays.copyOf(dims, node << 1);
+          right = Arrays.copyOf(right, node << 1);
+          values = Arrays.copyOf(values, node << 1);
+        }
+        if(depth > 0 && end - start > 1) {
+          // Choose a random attribute that is not constant:
+          final int dim = data[start].length;
+          for(int i = 0, d = random.nextInt(dim); i < dim; i++, d = d + 1 < dim ? d + 1 : 0) {
+            double min = data[start][d], max = min;
+            for(int j = start + 1; j < end; j++) {
+              final double x = data[j][d];
+              min = x < min ? x : min;
+              max = x > max ? x : max;
+            }
+            if(!(min < max)) {
+              continue;
+            }
+            final double split = min + random.nextDouble() * (max - min);
+            int l = start, r = end;
+            while(l < r) {
+              if(data[l][d] < split) {
+                l++;
+              }
+              else {
+                swap(data, l, --r);
+              }
+            }
+            dims[node] = d;
+            values[node] = split;
+            build(start, l, depth - 1);
+            right[node] = size;
+            build(l, end, depth - 1);
+            return;
+          }
+        }
+        dims[node] = -1;
+        values[node] = c(end - start);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends AbstractIsolationForest.Par {
+    @Override
+    public IsolationForest make() {
+      return new IsolationForest(numtrees, subsample, rnd);
+    }
+  }
+}
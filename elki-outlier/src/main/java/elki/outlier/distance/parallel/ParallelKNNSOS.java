@@ -0,0 +1,249 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.distance.parallel;
+
+import java.util.Arrays;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.distance.KNNSOS;
+import elki.outlier.distance.SOS;
+import elki.outlier.intrinsic.ISOS;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.ProbabilisticOutlierScore;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel implementation of the kNN-based adaption of Stochastic Outlier
+ * Selection.
+ * <p>
+ * Reference of the kNN variant:
+ * <p>
+ * Erich Schubert, Michael Gertz<br>
+ * Intrinsic t-Stochastic Neighbor Embedding for Visualization and Outlier
+ * Detection: A Remedy Against the Curse of Dimensionality?<br>
+ * Proc. Int. Conf. Similarity Search and Applications, SISAP'2017
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ * <p>
+ * The kNN and the affinities are computed in parallel; the binding
+ * probabilities are then aggregated in a single pass in the original order, so
+ * the results are the same as with {@link KNNSOS}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @composed - - - KNNProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelKNNSOS<O> implements OutlierAlgorithm {
+  /**
+   * Minimum block size for parallel processing.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Number of neighbors (not including query point).
+   */
+  protected int k;
+
+  /**
+   * Expected outlier rate.
+   */
+  protected double phi = 0.01;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Number of neighbors to consider
+   */
+  public ParallelKNNSOS(Distance<? super O> distance, int k) {
+    super();
+    this.distance = distance;
+    this.k = k;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm in parallel.
+   *
+   * @param relation data relation
+   * @return outlier detection result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int k1 = k + 1; // Query size
+    final double perplexity = k / 3.;
+    final double logPerp = perplexity > 1. ? FastMath.log(perplexity) : .1;
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    WritableDataStore<KNNList> knns = KNNProcessor.materialize(ids, k1, () -> qb.kNNByDBID(k1));
+
+    // Compute the log binding probabilities for the neighbors, in parallel.
+    WritableDataStore<double[]> logs = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, double[].class);
+    ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+      double[] p = new double[k + 10];
+      for(DBIDArrayIter it = ids.iter().seek(start); it.valid() && it.getOffset() < end; it.advance()) {
+        KNNList knn = knns.get(it);
+        if(p.length < knn.size() + 1) {
+          p = new double[knn.size() + 10];
+        }
+        logs.put(it, computeLogBindings(it, knn, p, perplexity, logPerp));
+      }
+      return null;
+    });
+
+    // Aggregate, in the same order as the sequential version.
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB, 1.);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final double[] l = logs.get(it);
+      DoubleDBIDListIter di = knns.get(it).iter();
+      for(int j = 0; j < l.length; j++, di.advance()) {
+        if(!DBIDUtil.equal(it, di)) {
+          scores.increment(di, l[j]);
+        }
+      }
+    }
+    logs.destroy();
+    knns.destroy();
+
+    DoubleMinMax minmax = ISOS.transformScores(scores, ids, logPerp, phi);
+    DoubleRelation scoreres = new MaterializedDoubleRelation("kNN Stoachastic Outlier Selection", ids, scores);
+    OutlierScoreMeta meta = new ProbabilisticOutlierScore(minmax.getMin(), minmax.getMax(), 0.);
+    return new OutlierResult(meta, scoreres);
+  }
+
+  /**
+   * Compute the log binding probabilities of the neighbors of an object, see
+   * {@link ISOS#nominateNeighbors}.
+   *
+   * @param it Object
+   * @param knn Nearest neighbors
+   * @param p Scratch buffer for affinities
+   * @param perplexity Perplexity
+   * @param logPerp Log perplexity
+   * @return Values to add to the neighbors scores, up to the first zero
+   */
+  protected static double[] computeLogBindings(DBIDIter it, KNNList knn, double[] p, double perplexity, double logPerp) {
+    final DoubleDBIDListIter ki = knn.iter();
+    // Compute affinities
+    SOS.computePi(it, ki, p, perplexity, logPerp);
+    // Normalization factor:
+    double s = SOS.sumOfProbabilities(it, ki, p);
+    if(!(s > 0)) {
+      return new double[0];
+    }
+    final double norm = 1. / s;
+    double[] l = new double[knn.size()];
+    int j = 0;
+    for(ki.seek(0); ki.valid(); ki.advance(), j++) {
+      if(DBIDUtil.equal(it, ki)) {
+        continue;
+      }
+      double v = p[ki.getOffset()] * norm; // Normalize
+      if(!(v > 0)) {
+        break;
+      }
+      l[j] = FastMath.log1p(-v);
+    }
+    return Arrays.copyOf(l, j);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Number of neighbors
+     */
+    protected int k = 15;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(KNNSOS.Par.KNN_ID, 15) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+    }
+
+    @Override
+    public ParallelKNNSOS<O> make() {
+      return new ParallelKNNSOS<>(distance, k);
+    }
+  }
+}
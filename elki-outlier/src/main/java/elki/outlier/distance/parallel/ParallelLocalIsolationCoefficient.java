@@ -0,0 +1,182 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.distance.parallel;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.distance.LocalIsolationCoefficient;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.result.outlier.BasicOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel implementation of the Local Isolation Coefficient.
+ * <p>
+ * Reference:
+ * <p>
+ * B. Yu, M. Song, L. Wang<br>
+ * Local Isolation Coefficient-Based Outlier Mining Algorithm<br>
+ * Int. Conf. on Information Technology and Computer Science (ITCS) 2009
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @composed - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelLocalIsolationCoefficient<O> implements OutlierAlgorithm {
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Parameter k + 1
+   */
+  protected int kplus;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k k Parameter (not including query point!)
+   */
+  public ParallelLocalIsolationCoefficient(Distance<? super O> distance, int k) {
+    super();
+    this.distance = distance;
+    this.kplus = k + 1;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the parallel local isolation coefficient.
+   *
+   * @param relation Data relation
+   * @return Outlier detection result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    WritableDoubleDataStore lic_score = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmax = DoubleFunctionProcessor.run(ids, () -> {
+      final KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(kplus);
+      return id -> computeLIC(id, knnq.getKNN(id, kplus));
+    }, lic_score);
+
+    DoubleRelation res = new MaterializedDoubleRelation("Local Isolation Coefficient", ids, lic_score);
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 0.);
+    return new OutlierResult(meta, res);
+  }
+
+  /**
+   * Compute the local isolation coefficient of a single object.
+   *
+   * @param id Object
+   * @param knn Nearest neighbors
+   * @return Local isolation coefficient
+   */
+  protected double computeLIC(DBIDRef id, KNNList knn) {
+    double skn = 0; // sum of the distances to the k nearest neighbors
+    int i = 0; // number of neighbors so far
+    for(DoubleDBIDListIter neighbor = knn.iter(); neighbor.getOffset() < kplus && neighbor.valid(); neighbor.advance()) {
+      if(DBIDUtil.equal(id, neighbor)) {
+        continue;
+      }
+      skn += neighbor.doubleValue();
+      ++i;
+    }
+    return knn.getKNNDistance() + (i > 0 ? skn / i : 0);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * k parameter
+     */
+    protected int k = 0;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(LocalIsolationCoefficient.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+    }
+
+    @Override
+    public ParallelLocalIsolationCoefficient<O> make() {
+      return new ParallelLocalIsolationCoefficient<>(distance, k);
+    }
+  }
+}
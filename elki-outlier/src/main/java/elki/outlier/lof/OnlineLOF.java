@@ -20,7 +20,10 @@
  */
 package elki.outlier.lof;
 
+import elki.database.Database;
+import elki.database.datastore.DataStoreEvent;
 import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreListener;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.*;
@@ -36,19 +39,30 @@ import elki.logging.Logging;
 import elki.logging.progress.StepProgress;
 import elki.math.DoubleMinMax;
 import elki.result.Metadata;
+import elki.result.ResultUtil;
 import elki.result.outlier.BasicOutlierScoreMeta;
 import elki.result.outlier.OutlierResult;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.pairs.Pair;
 
 /**
  * Incremental version of the {@link LOF} Algorithm, supports insertions and
  * removals.
+ * <p>
+ * In batch mode, the neighborhood preprocessors accumulate insertions and
+ * deletions until the database fires its next {@link DataStoreEvent}. Combined
+ * with {@link Database#accumulateDataStoreEvents()}, the kNN and RkNN are then
+ * updated in one pass over the data, and the LRD and LOF values are recomputed
+ * once per batch instead of once per object.
  *
  * @author Elke Achtert
  * @since 0.4.0
  *
  * @navhas - updates - FlexibleLOF.LOFResult
  * @composed - - - LOFKNNListener
+ * @composed - - - BatchListener
  */
 // TODO: related to publication?
 public class OnlineLOF<O> extends FlexibleLOF<O> {
@@ -57,6 +71,11 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
    */
   private static final Logging LOG = Logging.getLogger(OnlineLOF.class);
 
+  /**
+   * Process updates in batches.
+   */
+  protected boolean batch;
+
   /**
    * Constructor.
    *
@@ -66,7 +85,21 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
    * @param reachabilityDistance the reachability distance function
    */
   public OnlineLOF(int krefer, int kreach, Distance<? super O> neighborhoodDistance, Distance<? super O> reachabilityDistance) {
+    this(krefer, kreach, neighborhoodDistance, reachabilityDistance, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param krefer The number of neighbors for reference
+   * @param kreach The number of neighbors for reachability distance
+   * @param neighborhoodDistance the neighborhood distance function
+   * @param reachabilityDistance the reachability distance function
+   * @param batch Process updates in batches
+   */
+  public OnlineLOF(int krefer, int kreach, Distance<? super O> neighborhoodDistance, Distance<? super O> reachabilityDistance, boolean batch) {
     super(krefer, kreach, neighborhoodDistance, reachabilityDistance);
+    this.batch = batch;
   }
 
   /**
@@ -90,8 +123,21 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
 
     // add listener
     KNNListener l = new LOFKNNListener(lofResult);
-    ((MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNRefer()).getPreprocessor()).addKNNListener(l);
-    ((MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNReach()).getPreprocessor()).addKNNListener(l);
+    MaterializeKNNPreprocessor<?> p1 = (MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNRefer()).getPreprocessor();
+    MaterializeKNNPreprocessor<?> p2 = (MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNReach()).getPreprocessor();
+    p1.addKNNListener(l);
+    p2.addKNNListener(l);
+    if(batch) {
+      Database db = ResultUtil.findDatabase(relation);
+      if(db == null) {
+        LOG.warning("Relation is not part of a database, updates will not be processed in batches.");
+      }
+      else {
+        p1.accumulateUpdates();
+        p2.accumulateUpdates();
+        db.addDataStoreListener(new BatchListener(p1, p2));
+      }
+    }
 
     return lofResult.getResult();
   }
@@ -104,9 +150,10 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
    * @return the kNN and rkNN queries
    */
   private Pair<Pair<KNNSearcher<DBIDRef>, KNNSearcher<DBIDRef>>, Pair<RKNNSearcher<DBIDRef>, RKNNSearcher<DBIDRef>>> getKNNAndRkNNQueries(Relation<O> relation, StepProgress stepprog) {
+    // Only use existing indexes: indexes built by the optimizer are static.
     DistanceQuery<O> drefQ = new QueryBuilder<>(relation, referenceDistance).distanceQuery();
-    KNNSearcher<DBIDRef> kNNRefer = new QueryBuilder<>(drefQ).optimizedOnly().kNNByDBID(krefer);
-    RKNNSearcher<DBIDRef> rkNNRefer = new QueryBuilder<>(drefQ).optimizedOnly().rKNNByDBID(krefer);
+    KNNSearcher<DBIDRef> kNNRefer = new QueryBuilder<>(drefQ).optimizedOnly().cheapOnly().kNNByDBID(krefer);
+    RKNNSearcher<DBIDRef> rkNNRefer = new QueryBuilder<>(drefQ).optimizedOnly().cheapOnly().rKNNByDBID(krefer);
 
     // No optimized kNN query or RkNN query - use a preprocessor!
     if(kNNRefer == null || rkNNRefer == null) {
@@ -126,8 +173,8 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
     }
 
     DistanceQuery<O> dreachQ = new QueryBuilder<>(relation, reachabilityDistance).distanceQuery();
-    KNNSearcher<DBIDRef> kNNReach = new QueryBuilder<>(dreachQ).optimizedOnly().kNNByDBID(kreach);
-    RKNNSearcher<DBIDRef> rkNNReach = new QueryBuilder<>(dreachQ).optimizedOnly().rKNNByDBID(kreach);
+    KNNSearcher<DBIDRef> kNNReach = new QueryBuilder<>(dreachQ).optimizedOnly().cheapOnly().kNNByDBID(kreach);
+    RKNNSearcher<DBIDRef> rkNNReach = new QueryBuilder<>(dreachQ).optimizedOnly().cheapOnly().rKNNByDBID(kreach);
     if(kNNReach == null || rkNNReach == null) {
       if(stepprog != null) {
         stepprog.beginStep(2, "Materializing neighborhood w.r.t. reachability distance function.", LOG);
@@ -211,7 +258,8 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
       if(!e1.getType().equals(e2.getType())) {
         throw new UnsupportedOperationException("Event types do not fit: " + e1.getType() + " != " + e2.getType());
       }
-      if(!e1.getObjects().equals(e2.getObjects())) {
+      final DBIDs o1 = e1.getObjects(), o2 = e2.getObjects();
+      if(o1.size() != o2.size() || DBIDUtil.intersectionSize(o1, o2) != o1.size()) {
         throw new UnsupportedOperationException("Objects do not fit: " + e1.getObjects() + " != " + e2.getObjects());
       }
 
@@ -371,15 +419,64 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
     }
   }
 
+  /**
+   * Processes the accumulated updates of the neighborhood preprocessors when
+   * the database content has changed, so the scores are updated once per
+   * batch.
+   *
+   * @author Erich Schubert
+   */
+  private static class BatchListener implements DataStoreListener {
+    /**
+     * Neighborhood preprocessors, may be the same.
+     */
+    private MaterializeKNNPreprocessor<?> p1, p2;
+
+    /**
+     * Constructor.
+     *
+     * @param p1 Reference neighborhood preprocessor
+     * @param p2 Reachability neighborhood preprocessor
+     */
+    public BatchListener(MaterializeKNNPreprocessor<?> p1, MaterializeKNNPreprocessor<?> p2) {
+      this.p1 = p1;
+      this.p2 = p2;
+    }
+
+    @Override
+    public void contentChanged(DataStoreEvent e) {
+      p1.flushUpdates();
+      p2.flushUpdates();
+      p1.accumulateUpdates();
+      p2.accumulateUpdates();
+    }
+  }
+
   /**
    * Parameterization class.
    *
    * @author Erich Schubert
    */
   public static class Par<O> extends FlexibleLOF.Par<O> {
+    /**
+     * Flag to process updates in batches.
+     */
+    public static final OptionID BATCH_ID = new OptionID("onlinelof.batch", "Accumulate insertions and deletions, and update the scores once per database change event instead of once per object.");
+
+    /**
+     * Process updates in batches.
+     */
+    protected boolean batch = false;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new Flag(BATCH_ID).grab(config, x -> batch = x);
+    }
+
     @Override
     public OnlineLOF<O> make() {
-      return new OnlineLOF<>(kreach, krefer, distance, reachabilityDistance);
+      return new OnlineLOF<>(kreach, krefer, distance, reachabilityDistance, batch);
     }
   }
 }
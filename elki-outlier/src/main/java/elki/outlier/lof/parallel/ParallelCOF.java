@@ -0,0 +1,244 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.*;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.COF;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel implementation of the Connectivity-based Outlier Factor (COF),
+ * using processors.
+ * <p>
+ * Reference:
+ * <p>
+ * J. Tang, Z. Chen, A. W. C. Fu, D. W. Cheung<br>
+ * Enhancing effectiveness of outlier detections for low density patterns.<br>
+ * Advances in Knowledge Discovery and Data Mining.
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelCOF<O> implements OutlierAlgorithm {
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * The number of neighbors to query (including the query point!)
+   */
+  protected int k;
+
+  /**
+   * Constructor.
+   *
+   * @param distance the neighborhood distance function
+   * @param k the number of neighbors to use for comparison (excluding the query
+   *        point)
+   */
+  public ParallelCOF(Distance<? super O> distance, int k) {
+    super();
+    this.distance = distance;
+    this.k = k + 1; // + query point
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the COF algorithm in parallel.
+   *
+   * @param relation Data to process
+   * @return COF outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+
+    // Phase one: kNN
+    WritableDataStore<KNNList> knns = KNNProcessor.materialize(ids, k, () -> qb.kNNByDBID(k));
+
+    // Phase two: average chaining distances
+    WritableDoubleDataStore acds = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    DoubleFunctionProcessor.run(ids, () -> {
+      final DistanceQuery<O> dq = qb.distanceQuery();
+      return id -> computeAverageChainingDistance(id, knns.get(id), dq);
+    }, acds);
+
+    // Phase three: COF
+    WritableDoubleDataStore cofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    DoubleMinMax cofminmax = DoubleFunctionProcessor.run(ids, () -> id -> computeCOF(id, knns.get(id), acds), cofs);
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Connectivity-Based Outlier Factor", ids, cofs);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(cofminmax.getMin(), cofminmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 1.0);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Computes the average chaining distance of a single object, see
+   * {@link COF#computeAverageChainingDistances}.
+   *
+   * @param id Object
+   * @param neighbors Nearest neighbors
+   * @param dq Distance query
+   * @return Average chaining distance
+   */
+  protected double computeAverageChainingDistance(DBIDRef id, KNNList neighbors, DistanceQuery<O> dq) {
+    final int r = neighbors.size();
+    DoubleDBIDListIter it1 = neighbors.iter(), it2 = neighbors.iter();
+    // Store the current lowest reachability.
+    final double[] mindists = new double[r];
+    for(int i = 0; it1.valid(); it1.advance(), ++i) {
+      mindists[i] = DBIDUtil.equal(it1, id) ? Double.NaN : it1.doubleValue();
+    }
+
+    double acsum = 0.;
+    for(int j = ((r < k) ? r : k) - 1; j > 0; --j) {
+      // Find the minimum:
+      int minpos = -1;
+      double mindist = Double.NaN;
+      for(int i = 0; i < mindists.length; ++i) {
+        double curdist = mindists[i];
+        // Both values could be NaN, deliberately.
+        if(curdist == curdist && !(curdist > mindist)) {
+          minpos = i;
+          mindist = curdist;
+        }
+      }
+      acsum += mindist * j; // Weighted sum, decreasing weights
+      mindists[minpos] = Double.NaN;
+      it1.seek(minpos);
+      // Update distances
+      it2.seek(0);
+      for(int i = 0; it2.valid(); it2.advance(), ++i) {
+        final double curdist = mindists[i];
+        if(curdist != curdist) {
+          continue; // NaN = processed!
+        }
+        double newdist = dq.distance(it1, it2);
+        if(newdist < curdist) {
+          mindists[i] = newdist;
+        }
+      }
+    }
+    return acsum / (r * 0.5 * (r - 1.));
+  }
+
+  /**
+   * Compute the connectivity outlier factor of a single object.
+   *
+   * @param id Object
+   * @param neighbors Nearest neighbors
+   * @param acds Average chaining distances
+   * @return COF score
+   */
+  protected double computeCOF(DBIDRef id, KNNList neighbors, DoubleDataStore acds) {
+    // Aggregate the average chaining distances of all neighbors:
+    double sum = 0.;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      sum += acds.doubleValue(neighbor);
+    }
+    final double acd = acds.doubleValue(id);
+    return (sum > 0.) ? (acd * k / sum) : (acd > 0. ? Double.POSITIVE_INFINITY : 1.);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * The neighborhood size to use.
+     */
+    protected int k;
+
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(COF.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+    }
+
+    @Override
+    public ParallelCOF<O> make() {
+      return new ParallelCOF<>(distance, k);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.*;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.INFLO;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel implementation of Influence Outliers using Symmetric Relationship
+ * (INFLO), using processors.
+ * <p>
+ * Reference:
+ * <p>
+ * W. Jin, A. Tung, J. Han, W. Wang<br>
+ * Ranking outliers using symmetric neighborhood relationship<br>
+ * Proc. 10th Pacific-Asia conference on Advances in Knowledge Discovery and
+ * Data Mining, 2006.
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ * <p>
+ * The kNN and the final scores are computed in parallel; the reverse kNN are
+ * collected in a single linear pass over the materialized kNN in between. See
+ * {@link INFLO} for the interpretation of the method used.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelINFLO<O> implements OutlierAlgorithm {
+  /**
+   * Minimum block size for parallel processing.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Pruning threshold m.
+   */
+  protected double m;
+
+  /**
+   * Number of neighbors to use.
+   */
+  protected int kplus;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function in use
+   * @param m m Parameter
+   * @param k k Parameter
+   */
+  public ParallelINFLO(Distance<? super O> distance, double m, int k) {
+    super();
+    this.distance = distance;
+    this.m = m;
+    this.kplus = k + 1;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the INFLO algorithm in parallel.
+   *
+   * @param relation Relation to process
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+
+    // Phase one: kNN, and a set-copy of the kNN for fast lookups
+    WritableDataStore<KNNList> knns = KNNProcessor.materialize(ids, kplus, () -> qb.kNNByDBID(kplus));
+    WritableDataStore<SetDBIDs> knnsets = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, SetDBIDs.class);
+    ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+      for(DBIDArrayIter it = ids.iter().seek(start); it.valid() && it.getOffset() < end; it.advance()) {
+        knnsets.put(it, DBIDUtil.ensureSet(knns.get(it)));
+      }
+      return null;
+    });
+
+    // Phase two: reverse kNN minus kNN, and pruning
+    ModifiableDBIDs pruned = DBIDUtil.newHashSet();
+    WritableDataStore<ModifiableDBIDs> rnnMinusKNNs = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, ModifiableDBIDs.class);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      rnnMinusKNNs.put(iter, DBIDUtil.newArray());
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      DBIDs knn = knnsets.get(iter);
+      int count = 1; // The point itself.
+      for(DBIDIter niter = knn.iter(); niter.valid(); niter.advance()) {
+        if(DBIDUtil.equal(iter, niter)) {
+          continue;
+        }
+        if(knnsets.get(niter).contains(iter)) {
+          count++;
+        }
+        else {
+          rnnMinusKNNs.get(niter).add(iter);
+        }
+      }
+      // INFLO pruning rule
+      if(count >= knn.size() * m) {
+        pruned.add(iter);
+      }
+    }
+    knnsets.destroy(); // No longer needed.
+
+    // Phase three: INFLO scores
+    WritableDoubleDataStore inflos = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax inflominmax = DoubleFunctionProcessor.run(ids, //
+        () -> id -> pruned.contains(id) ? 1. : computeINFLO(id, knns, rnnMinusKNNs.get(id)), inflos);
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Influence Outlier Score", ids, inflos);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(inflominmax.getMin(), inflominmax.getMax(), 0., Double.POSITIVE_INFINITY, 1.);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the INFLO score of a single object.
+   * <p>
+   * The reverse neighbors passed do not include the kNN, so the two lists are
+   * disjoint and we do not need to build their union.
+   *
+   * @param id Object
+   * @param knns Nearest neighbors
+   * @param rnnMinusKNN Reverse nearest neighbors, except the kNN
+   * @return INFLO score
+   */
+  protected double computeINFLO(DBIDRef id, DataStore<KNNList> knns, DBIDs rnnMinusKNN) {
+    final KNNList knn = knns.get(id);
+    if(knn.getKNNDistance() == 0.) {
+      return 1.;
+    }
+    // Compute mean density of NN \cup RNN
+    double sum = 0.;
+    int c = 0;
+    for(int i = 0; i < 2 && sum < Double.POSITIVE_INFINITY; i++) {
+      for(DBIDIter niter = (i == 0 ? knn : rnnMinusKNN).iter(); niter.valid(); niter.advance()) {
+        if(DBIDUtil.equal(id, niter)) {
+          continue;
+        }
+        final double kdist = knns.get(niter).getKNNDistance();
+        if(kdist <= 0) {
+          sum = Double.POSITIVE_INFINITY;
+          c++;
+          break;
+        }
+        sum += 1. / kdist;
+        c++;
+      }
+    }
+    sum *= knn.getKNNDistance();
+    return sum == 0 ? 1. : sum / c;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * M parameter
+     */
+    protected double m = 1.0;
+
+    /**
+     * Number of neighbors to use.
+     */
+    protected int k = 0;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new DoubleParameter(INFLO.Par.M_ID, 1.0)//
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> m = x);
+      new IntParameter(INFLO.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+    }
+
+    @Override
+    public ParallelINFLO<O> make() {
+      return new ParallelINFLO<>(distance, m, k);
+    }
+  }
+}
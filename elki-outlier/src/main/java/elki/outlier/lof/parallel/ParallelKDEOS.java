@@ -0,0 +1,396 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import java.util.Arrays;
+
+import elki.Algorithm;
+import elki.data.NumberVector;
+import elki.data.type.CombinedTypeInformation;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.*;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.MeanVariance;
+import elki.math.statistics.distribution.NormalDistribution;
+import elki.math.statistics.kernelfunctions.GaussianKernelDensityFunction;
+import elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.KDEOS;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.ProbabilisticOutlierScore;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.WrongParameterValueException;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel implementation of KDEOS, generalized outlier detection with flexible
+ * kernel density estimates, using processors.
+ * <p>
+ * Reference:
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Generalized Outlier Detection with Flexible Kernel Density Estimates<br>
+ * Proc. 14th SIAM International Conference on Data Mining (SDM 2014)
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ * <p>
+ * The kernel contributions of each object to its neighbors are computed in
+ * parallel, then added up in a single pass in the original order, so the
+ * results are the same as with {@link KDEOS}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - KernelDensityFunction
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelKDEOS<O> implements OutlierAlgorithm {
+  /**
+   * Minimum block size for parallel processing.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Significance cutoff when computing kernel density.
+   */
+  private final static double CUTOFF = 1e-20;
+
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Kernel function to use for density estimation.
+   */
+  protected KernelDensityFunction kernel;
+
+  /**
+   * Minimum number of neighbors to use.
+   */
+  protected int kmin;
+
+  /**
+   * Maximum number of neighbors to use.
+   */
+  protected int kmax;
+
+  /**
+   * Kernel scaling parameter.
+   */
+  protected double scale;
+
+  /**
+   * Kernel minimum bandwidth.
+   */
+  protected double minBandwidth = 1e-6;
+
+  /**
+   * Intrinsic dimensionality.
+   */
+  protected int idim = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param kmin Minimum number of neighbors
+   * @param kmax Maximum number of neighbors
+   * @param kernel Kernel function
+   * @param minBandwidth Minimum bandwidth
+   * @param scale Kernel scaling parameter
+   * @param idim Intrinsic dimensionality (use 0 to use real dimensionality)
+   */
+  public ParallelKDEOS(Distance<? super O> distance, int kmin, int kmax, KernelDensityFunction kernel, double minBandwidth, double scale, int idim) {
+    super();
+    this.distance = distance;
+    this.kmin = kmin;
+    this.kmax = kmax;
+    this.kernel = kernel;
+    this.minBandwidth = minBandwidth;
+    this.scale = scale;
+    this.idim = idim;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    TypeInformation res = distance.getInputTypeRestriction();
+    res = idim == 0 ? res : new CombinedTypeInformation(TypeUtil.NUMBER_VECTOR_FIELD, res);
+    return TypeUtil.array(res);
+  }
+
+  /**
+   * Run the KDEOS outlier detection algorithm in parallel.
+   *
+   * @param rel Relation to process
+   * @return Outlier detection result
+   */
+  public OutlierResult run(Relation<O> rel) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    final int dim = dimensionality(rel), knum = kmax + 1 - kmin;
+    QueryBuilder<O> qb = new QueryBuilder<>(rel, distance);
+
+    // Phase one: kNN
+    WritableDataStore<KNNList> knns = KNNProcessor.materialize(ids, kmax + 1, () -> qb.kNNByDBID(kmax + 1));
+
+    // Phase two: kernel contributions of each object to its neighbors
+    WritableDataStore<double[][]> contribs = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, double[][].class);
+    ParallelExecutor.run(ids.size(), MIN_BLOCKSIZE, (start, end) -> {
+      for(DBIDArrayIter it = ids.iter().seek(start); it.valid() && it.getOffset() < end; it.advance()) {
+        contribs.put(it, computeContributions(knns.get(it), dim, knum));
+      }
+      return null;
+    });
+    // Add up the densities, in the same order as the sequential version.
+    WritableDataStore<double[]> densities = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, double[].class);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      densities.put(iter, new double[knum]);
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      final KNNList neighbors = knns.get(iter);
+      final double[][] contrib = contribs.get(iter);
+      for(int idx = 0; idx < knum; idx++) {
+        final double[] c = contrib[idx];
+        DoubleDBIDListIter neighbor = neighbors.iter();
+        for(int j = 0; j < c.length; j++, neighbor.advance()) {
+          densities.get(neighbor)[idx] += c[j];
+        }
+      }
+    }
+    contribs.destroy(); // No longer needed.
+
+    // Phase three: scores
+    WritableDoubleDataStore kofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB);
+    DoubleMinMax minmax = DoubleFunctionProcessor.run(ids, () -> {
+      final MeanVariance mv = new MeanVariance();
+      return id -> computeScore(densities.get(id), knns.get(id), densities, mv);
+    }, kofs);
+
+    DoubleRelation scoreres = new MaterializedDoubleRelation("Kernel Density Estimation Outlier Scores", ids, kofs);
+    OutlierScoreMeta meta = new ProbabilisticOutlierScore(minmax.getMin(), minmax.getMax());
+    return new OutlierResult(meta, scoreres);
+  }
+
+  /**
+   * Compute the kernel density contributions of an object to its neighbors.
+   *
+   * @param neighbors Nearest neighbors
+   * @param dim Dimensionality
+   * @param knum Number of k values
+   * @return Contributions, for each k, to the leading neighbors
+   */
+  protected double[][] computeContributions(KNNList neighbors, int dim, int knum) {
+    final double iminbw = (minBandwidth > 0.) ? 1. / (minBandwidth * scale) : Double.POSITIVE_INFINITY;
+    final double[][] contrib = new double[knum][];
+    final double[] buf = new double[neighbors.size()];
+    int k = 1, idx = 0;
+    double sum = 0.;
+    for(DoubleDBIDListIter kneighbor = neighbors.iter(); k <= kmax && kneighbor.valid(); kneighbor.advance(), k++) {
+      sum += kneighbor.doubleValue();
+      if(k < kmin) {
+        continue;
+      }
+      final double ibw = Math.min(k / (sum * scale), iminbw);
+      final double sca = MathUtil.powi(ibw, dim);
+      int j = 0;
+      for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+        final double dens;
+        if(sca < Double.POSITIVE_INFINITY) { // NaNs with duplicate points!
+          dens = sca * kernel.density(neighbor.doubleValue() * ibw);
+        }
+        else {
+          dens = neighbor.doubleValue() == 0. ? 1. : 0.;
+        }
+        buf[j++] = dens;
+        if(dens < CUTOFF) {
+          break;
+        }
+      }
+      contrib[idx++] = Arrays.copyOf(buf, j); // Only if k >= kmin
+    }
+    // Fewer neighbors than kmin:
+    while(idx < knum) {
+      contrib[idx++] = new double[0];
+    }
+    return contrib;
+  }
+
+  /**
+   * Compute the KDEOS score of a single object.
+   *
+   * @param dens Density estimates of the object
+   * @param neighbors Nearest neighbors
+   * @param densities Density estimates
+   * @param mv Scratch variance accumulator
+   * @return KDEOS score
+   */
+  protected double computeScore(double[] dens, KNNList neighbors, DataStore<double[]> densities, MeanVariance mv) {
+    final int knum = dens.length;
+    // Compute means and stddevs for each k
+    double score = 0.;
+    for(int i = 0; i < knum; i++) {
+      mv.reset();
+      for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+        mv.put(densities.get(neighbor)[i]);
+      }
+      final double mean = mv.getMean(), stddev = mv.getSampleStddev();
+      if(stddev > 0.) {
+        score += (mean - dens[i]) / stddev;
+      }
+    }
+    score /= knum; // average
+    return NormalDistribution.standardNormalCDF(score);
+  }
+
+  /**
+   * Ugly hack to allow using this implementation without having a well-defined
+   * dimensionality.
+   *
+   * @param rel Data relation
+   * @return Dimensionality
+   */
+  private int dimensionality(Relation<O> rel) {
+    // Explicit:
+    if(idim >= 0) {
+      return idim;
+    }
+    // Cast to vector field relation.
+    @SuppressWarnings("unchecked")
+    final Relation<NumberVector> frel = (Relation<NumberVector>) rel;
+    int dim = RelationUtil.dimensionality(frel);
+    if(dim < 1) {
+      throw new AbortException("When using KDEOS with non-vectorspace data, the intrinsic dimensionality parameter must be set!");
+    }
+    return dim;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Kernel function to use for density estimation.
+     */
+    protected KernelDensityFunction kernel;
+
+    /**
+     * Minimum number of neighbors to use.
+     */
+    protected int kmin;
+
+    /**
+     * Maximum number of neighbors to use.
+     */
+    protected int kmax;
+
+    /**
+     * Kernel scaling parameter.
+     */
+    protected double scale;
+
+    /**
+     * Kernel minimum bandwidth.
+     */
+    protected double minBandwidth = 0.;
+
+    /**
+     * Intrinsic dimensionality.
+     */
+    protected int idim = -1;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new ObjectParameter<KernelDensityFunction>(KDEOS.Par.KERNEL_ID, KernelDensityFunction.class, GaussianKernelDensityFunction.class) //
+          .grab(config, x -> kernel = x);
+      IntParameter kminP = new IntParameter(KDEOS.Par.KMIN_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      kminP.grab(config, x -> kmin = x);
+      IntParameter kmaxP = new IntParameter(KDEOS.Par.KMAX_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      kmaxP.grab(config, x -> kmax = x);
+      // Non-formalized parameter constraint: k_min <= k_max
+      if(kmin > kmax) {
+        config.reportError(new WrongParameterValueException(kminP, "must be at most", kmaxP, ""));
+      }
+      new DoubleParameter(KDEOS.Par.KERNEL_SCALE_ID)//
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .setDefaultValue(.25) //
+          .grab(config, x -> scale = x * ((kernel != null) ? kernel.canonicalBandwidth() : 1.));
+      new DoubleParameter(KDEOS.Par.KERNEL_MIN_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE) //
+          .setOptional(true) //
+          .grab(config, x -> minBandwidth = x);
+      new IntParameter(KDEOS.Par.IDIM_ID, 1) //
+          .grab(config, x -> idim = x);
+    }
+
+    @Override
+    public ParallelKDEOS<O> make() {
+      return new ParallelKDEOS<>(distance, kmin, kmax, kernel, minBandwidth, scale, idim);
+    }
+  }
+}
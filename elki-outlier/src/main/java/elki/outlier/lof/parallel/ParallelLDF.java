@@ -0,0 +1,270 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.Algorithm;
+import elki.data.NumberVector;
+import elki.data.type.CombinedTypeInformation;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.*;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.statistics.kernelfunctions.GaussianKernelDensityFunction;
+import elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.LDF;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.BasicOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel implementation of Outlier Detection with Kernel Density Functions
+ * (LDF), using processors.
+ * <p>
+ * Reference:
+ * <p>
+ * Outlier Detection with Kernel Density Functions<br>
+ * L. J. Latecki, A. Lazarevic, D. Pokrajac<br>
+ * Machine Learning and Data Mining in Pattern Recognition
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - KernelDensityFunction
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelLDF<O extends NumberVector> implements OutlierAlgorithm {
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Parameter k + 1 for query point.
+   */
+  protected int kplus;
+
+  /**
+   * Bandwidth scaling factor.
+   */
+  protected double h = 1;
+
+  /**
+   * Scaling constant, to limit value range to 1/c
+   */
+  protected double c = 0.1;
+
+  /**
+   * Kernel density function
+   */
+  protected KernelDensityFunction kernel;
+
+  /**
+   * Constructor.
+   *
+   * @param k the value of k
+   * @param distance Distance function
+   * @param kernel Kernel function
+   * @param h Kernel bandwidth scaling
+   * @param c Score scaling parameter
+   */
+  public ParallelLDF(int k, Distance<? super O> distance, KernelDensityFunction kernel, double h, double c) {
+    super();
+    this.distance = distance;
+    this.kplus = k + 1;
+    this.kernel = kernel;
+    this.h = h;
+    this.c = c;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(new CombinedTypeInformation(distance.getInputTypeRestriction(), TypeUtil.NUMBER_VECTOR_FIELD));
+  }
+
+  /**
+   * Run the LDF algorithm in parallel.
+   *
+   * @param relation Data to process
+   * @return LDF outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+
+    // Phase one: kNN
+    WritableDataStore<KNNList> knns = KNNProcessor.materialize(ids, kplus, () -> qb.kNNByDBID(kplus));
+
+    // Phase two: local density estimates
+    WritableDoubleDataStore ldes = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    DoubleFunctionProcessor.run(ids, () -> id -> computeLDE(id, knns, dim), ldes);
+
+    // Phase three: local density factors
+    WritableDoubleDataStore ldfs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax lofminmax = DoubleFunctionProcessor.run(ids, () -> id -> computeLDF(id, knns.get(id), ldes), ldfs);
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Local Density Factor", ids, ldfs);
+    OutlierScoreMeta scoreMeta = new BasicOutlierScoreMeta(lofminmax.getMin(), lofminmax.getMax(), 0.0, 1. / c, 1 / (1 + c));
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the local density estimate of a single object.
+   *
+   * @param id Object
+   * @param knns Nearest neighbors of all objects
+   * @param dim Dimensionality
+   * @return Density estimate
+   */
+  protected double computeLDE(DBIDRef id, DataStore<KNNList> knns, int dim) {
+    double sum = 0.0;
+    int count = 0;
+    for(DoubleDBIDListIter neighbor = knns.get(id).iter(); neighbor.valid(); neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      final double nkdist = knns.get(neighbor).getKNNDistance();
+      if(!(nkdist > 0.) || nkdist == Double.POSITIVE_INFINITY) {
+        sum = Double.POSITIVE_INFINITY;
+        count++;
+        break;
+      }
+      final double v = MathUtil.max(nkdist, neighbor.doubleValue()) / (h * nkdist);
+      sum += kernel.density(v) / MathUtil.powi(h * nkdist, dim);
+      count++;
+    }
+    return sum / count;
+  }
+
+  /**
+   * Compute the local density factor of a single object.
+   *
+   * @param id Object
+   * @param neighbors Nearest neighbors
+   * @param ldes Local density estimates
+   * @return LDF score
+   */
+  protected double computeLDF(DBIDRef id, KNNList neighbors, DoubleDataStore ldes) {
+    double sum = 0.0;
+    int count = 0;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      sum += ldes.doubleValue(neighbor);
+      count++;
+    }
+    sum /= count;
+    final double div = ldes.doubleValue(id) + c * sum;
+    return div == Double.POSITIVE_INFINITY ? (sum < Double.POSITIVE_INFINITY ? 0. : 1) : (div > 0) ? sum / div : 0;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> vector type
+   */
+  public static class Par<O extends NumberVector> implements Parameterizer {
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * The neighborhood size to use.
+     */
+    protected int k = 2;
+
+    /**
+     * Kernel density function parameter
+     */
+    protected KernelDensityFunction kernel;
+
+    /**
+     * Bandwidth scaling factor.
+     */
+    protected double h = 1;
+
+    /**
+     * Scaling constant, to limit value range to 1/c
+     */
+    protected double c = 0.1;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(LDF.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> k = x);
+      new ObjectParameter<KernelDensityFunction>(LDF.Par.KERNEL_ID, KernelDensityFunction.class, GaussianKernelDensityFunction.class) //
+          .grab(config, x -> kernel = x);
+      new DoubleParameter(LDF.Par.H_ID) //
+          .grab(config, x -> h = x);
+      new DoubleParameter(LDF.Par.C_ID, 0.1) //
+          .grab(config, x -> c = x);
+    }
+
+    @Override
+    public ParallelLDF<O> make() {
+      return new ParallelLDF<>(k, distance, kernel, h, c);
+    }
+  }
+}
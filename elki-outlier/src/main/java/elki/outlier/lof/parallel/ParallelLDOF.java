@@ -0,0 +1,210 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.math.Mean;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.LDOF;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel implementation of the Local Distance-Based Outlier Factor (LDOF),
+ * using processors.
+ * <p>
+ * Reference:
+ * <p>
+ * K. Zhang, M. Hutter, H. Jin<br>
+ * A New Local Distance-Based Outlier Detection Approach for Scattered
+ * Real-World Data.<br>
+ * Proc. 13th Pacific-Asia Conf. Adv. Knowledge Discovery and Data Mining
+ * (PAKDD 2009)
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ * <p>
+ * As each score only depends on the neighbors of the object, this needs only
+ * a single parallel pass, and the kNN are not materialized.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelLDOF<O> implements OutlierAlgorithm {
+  /**
+   * The baseline for LDOF values. The paper gives 0.5 for uniform
+   * distributions, although one might also discuss using 1.0 as baseline.
+   */
+  private static final double LDOF_BASELINE = 0.5;
+
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Number of neighbors to query + query point itself.
+   */
+  protected int kplus;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k Parameter
+   */
+  public ParallelLDOF(Distance<? super O> distance, int k) {
+    super();
+    this.distance = distance;
+    this.kplus = k + 1; // + query point
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the LDOF algorithm in parallel.
+   *
+   * @param relation Relation to process
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    WritableDoubleDataStore ldofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    DoubleMinMax ldofminmax = DoubleFunctionProcessor.run(ids, () -> {
+      final KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(kplus);
+      final DistanceQuery<O> dq = qb.distanceQuery();
+      final Mean dxp = new Mean(), Dxp = new Mean();
+      return id -> computeLDOF(id, knnq.getKNN(id, kplus), dq, dxp, Dxp);
+    }, ldofs);
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("LDOF Outlier Score", ids, ldofs);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(ldofminmax.getMin(), ldofminmax.getMax(), 0.0, Double.POSITIVE_INFINITY, LDOF_BASELINE);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the LDOF of a single object.
+   *
+   * @param id Object
+   * @param neighbors Nearest neighbors
+   * @param dq Distance query
+   * @param dxp Scratch mean of distances to the neighbors
+   * @param Dxp Scratch mean of pairwise distances of the neighbors
+   * @return LDOF score
+   */
+  protected double computeLDOF(DBIDRef id, KNNList neighbors, DistanceQuery<O> dq, Mean dxp, Mean Dxp) {
+    dxp.reset();
+    Dxp.reset();
+    DoubleDBIDListIter neighbor1 = neighbors.iter(), neighbor2 = neighbors.iter();
+    for(; neighbor1.valid(); neighbor1.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor1, id)) {
+        continue;
+      }
+      dxp.put(neighbor1.doubleValue());
+      for(neighbor2.seek(neighbor1.getOffset() + 1); neighbor2.valid(); neighbor2.advance()) {
+        // skip the point itself
+        if(DBIDUtil.equal(neighbor2, id)) {
+          continue;
+        }
+        Dxp.put(dq.distance(neighbor1, neighbor2));
+      }
+    }
+    double ldof = dxp.getMean() / Dxp.getMean();
+    return Double.isNaN(ldof) || Double.isInfinite(ldof) ? 1.0 : ldof;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Number of neighbors to use
+     */
+    protected int k;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(LDOF.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+    }
+
+    @Override
+    public ParallelLDOF<O> make() {
+      return new ParallelLDOF<>(distance, k);
+    }
+  }
+}
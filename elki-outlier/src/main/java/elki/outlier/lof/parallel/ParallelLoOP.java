@@ -0,0 +1,287 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.data.type.CombinedTypeInformation;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.*;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.statistics.distribution.NormalDistribution;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.LoOP;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.ProbabilisticOutlierScore;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel implementation of LoOP: Local Outlier Probabilities, using
+ * processors.
+ * <p>
+ * Reference:
+ * <p>
+ * Hans-Peter Kriegel, Peer Kröger, Erich Schubert, Arthur Zimek:<br>
+ * LoOP: Local Outlier Probabilities<br>
+ * Proc. 18th Int. Conf. Information and Knowledge Management (CIKM 2009)
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelLoOP<O> implements OutlierAlgorithm {
+  /**
+   * Reachability neighborhood size.
+   */
+  protected int kreach;
+
+  /**
+   * Comparison neighborhood size.
+   */
+  protected int kcomp;
+
+  /**
+   * Lambda parameter.
+   */
+  protected double lambda;
+
+  /**
+   * Distance function for reachability.
+   */
+  protected Distance<? super O> reachabilityDistance;
+
+  /**
+   * Distance function for comparison set.
+   */
+  protected Distance<? super O> comparisonDistance;
+
+  /**
+   * Constructor.
+   *
+   * @param kreach k for reachability
+   * @param kcomp k for comparison
+   * @param reachabilityDistance distance function for reachability
+   * @param comparisonDistance distance function for comparison
+   * @param lambda Lambda parameter
+   */
+  public ParallelLoOP(int kreach, int kcomp, Distance<? super O> reachabilityDistance, Distance<? super O> comparisonDistance, double lambda) {
+    super();
+    this.kreach = kreach;
+    this.kcomp = kcomp;
+    this.reachabilityDistance = reachabilityDistance;
+    this.comparisonDistance = comparisonDistance;
+    this.lambda = lambda;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(reachabilityDistance.equals(comparisonDistance) ? reachabilityDistance.getInputTypeRestriction() : //
+        new CombinedTypeInformation(reachabilityDistance.getInputTypeRestriction(), comparisonDistance.getInputTypeRestriction()));
+  }
+
+  /**
+   * Run the LoOP algorithm in parallel.
+   *
+   * @param relation Relation to process
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    // Phase one: kNN, shared if both distances are the same
+    final DataStore<KNNList> knnComp, knnReach;
+    QueryBuilder<O> qbcomp = new QueryBuilder<>(relation, comparisonDistance);
+    if(comparisonDistance == reachabilityDistance || comparisonDistance.equals(reachabilityDistance)) {
+      final int kmax = MathUtil.max(kcomp, kreach) + 1;
+      knnReach = knnComp = KNNProcessor.materialize(ids, kmax, () -> qbcomp.kNNByDBID(kmax));
+    }
+    else {
+      QueryBuilder<O> qbreach = new QueryBuilder<>(relation, reachabilityDistance);
+      knnComp = KNNProcessor.materialize(ids, kcomp + 1, () -> qbcomp.kNNByDBID(kcomp + 1));
+      knnReach = KNNProcessor.materialize(ids, kreach + 1, () -> qbreach.kNNByDBID(kreach + 1));
+    }
+
+    // Phase two: probabilistic distances
+    WritableDoubleDataStore pdists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    DoubleFunctionProcessor.run(ids, () -> id -> computePDist(id, knnReach.get(id)), pdists);
+
+    // Phase three: PLOF
+    WritableDoubleDataStore plofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    DoubleFunctionProcessor.run(ids, () -> id -> computePLOF(id, knnComp.get(id), pdists), plofs);
+    pdists.destroy(); // No longer needed.
+
+    // Aggregate the normalization factor, in a deterministic order.
+    double nplof = 0.;
+    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      final double plof = plofs.doubleValue(iditer);
+      nplof += (plof - 1.0) * (plof - 1.0);
+    }
+    nplof = lambda * FastMath.sqrt(nplof / relation.size());
+    final double norm = 1. / ((nplof > 0. ? nplof : 1.) * MathUtil.SQRT2);
+
+    // Phase four: normalize the outlier scores.
+    DoubleMinMax mm = DoubleFunctionProcessor.run(ids, () -> id -> NormalDistribution.erf((plofs.doubleValue(id) - 1.) * norm), plofs);
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Local Outlier Probabilities", ids, plofs);
+    OutlierScoreMeta scoreMeta = new ProbabilisticOutlierScore(mm.getMin(), mm.getMax(), 0.);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the probabilistic distance of a single object.
+   *
+   * @param id Object
+   * @param neighbors Reachability neighbors
+   * @return Probabilistic distance
+   */
+  protected double computePDist(DBIDRef id, KNNList neighbors) {
+    // use first kreach neighbors as reference set
+    int ks = 0;
+    double ssum = 0.;
+    for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid() && ks < kreach; neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      final double d = neighbor.doubleValue();
+      ssum += d * d;
+      ks++;
+    }
+    return ks > 0 ? FastMath.sqrt(ssum / ks) : 0.;
+  }
+
+  /**
+   * Compute the probabilistic LOF of a single object.
+   *
+   * @param id Object
+   * @param neighbors Comparison neighbors
+   * @param pdists Probabilistic distances
+   * @return PLOF value
+   */
+  protected double computePLOF(DBIDRef id, KNNList neighbors, DoubleDataStore pdists) {
+    // use first kcomp neighbors as comparison set.
+    int ks = 0;
+    double sum = 0.;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid() && ks < kcomp; neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      sum += pdists.doubleValue(neighbor);
+      ks++;
+    }
+    double plof = MathUtil.max(pdists.doubleValue(id) * ks / sum, 1.0);
+    return Double.isNaN(plof) || Double.isInfinite(plof) ? 1.0 : plof;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Reachability neighborhood size.
+     */
+    protected int kreach = 0;
+
+    /**
+     * Comparison neighborhood size.
+     */
+    protected int kcomp = 0;
+
+    /**
+     * Lambda parameter.
+     */
+    protected double lambda = 2.0;
+
+    /**
+     * Distance function for reachability.
+     */
+    protected Distance<O> reachabilityDistance = null;
+
+    /**
+     * Distance function for comparison set.
+     */
+    protected Distance<O> comparisonDistance = null;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(LoOP.Par.KCOMP_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> kcomp = x);
+      new ObjectParameter<Distance<O>>(LoOP.Par.COMPARISON_DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> comparisonDistance = x);
+      kreach = kcomp;
+      new IntParameter(LoOP.Par.KREACH_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .setOptional(true) //
+          .grab(config, x -> kreach = x);
+      new ObjectParameter<Distance<O>>(LoOP.Par.REACHABILITY_DISTANCE_FUNCTION_ID, Distance.class) //
+          .setOptional(true) //
+          .grab(config, x -> reachabilityDistance = x);
+      new DoubleParameter(LoOP.Par.LAMBDA_ID, 2.0) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> lambda = x);
+    }
+
+    @Override
+    public ParallelLoOP<O> make() {
+      Distance<O> realreach = (reachabilityDistance != null) ? reachabilityDistance : comparisonDistance;
+      return new ParallelLoOP<>(kreach, kcomp, realreach, comparisonDistance, lambda);
+    }
+  }
+}
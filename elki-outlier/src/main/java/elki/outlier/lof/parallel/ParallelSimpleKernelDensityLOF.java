@@ -0,0 +1,237 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.Algorithm;
+import elki.data.NumberVector;
+import elki.data.type.CombinedTypeInformation;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.*;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.statistics.kernelfunctions.EpanechnikovKernelDensityFunction;
+import elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.LOF;
+import elki.outlier.lof.SimpleKernelDensityLOF;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel implementation of the simple kernel density variant of LOF, using
+ * processors.
+ * <p>
+ * This parallelized implementation is based on the easy-to-parallelize
+ * generalized pattern discussed in
+ * <p>
+ * Erich Schubert, Arthur Zimek, Hans-Peter Kriegel<br>
+ * Local Outlier Detection Reconsidered: a Generalized View on Locality with
+ * Applications to Spatial, Video, and Network Outlier Detection<br>
+ * Data Mining and Knowledge Discovery 28(1)
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ *
+ * @has - - - KernelDensityFunction
+ * @has - - - DoubleFunctionProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Erich Schubert, Arthur Zimek, Hans-Peter Kriegel", //
+    title = "Local Outlier Detection Reconsidered: a Generalized View on Locality with Applications to Spatial, Video, and Network Outlier Detection", //
+    booktitle = "Data Mining and Knowledge Discovery 28(1)", //
+    url = "https://doi.org/10.1007/s10618-012-0300-z", //
+    bibkey = "DBLP:journals/datamine/SchubertZK14")
+public class ParallelSimpleKernelDensityLOF<O extends NumberVector> implements OutlierAlgorithm {
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Number of neighbors + the query point
+   */
+  protected int kplus;
+
+  /**
+   * Kernel density function
+   */
+  protected KernelDensityFunction kernel;
+
+  /**
+   * Constructor.
+   *
+   * @param k number of neighbors
+   * @param distance Distance function
+   * @param kernel Kernel function
+   */
+  public ParallelSimpleKernelDensityLOF(int k, Distance<? super O> distance, KernelDensityFunction kernel) {
+    super();
+    this.distance = distance;
+    this.kplus = k + 1; // + query point
+    this.kernel = kernel;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(new CombinedTypeInformation(distance.getInputTypeRestriction(), TypeUtil.NUMBER_VECTOR_FIELD));
+  }
+
+  /**
+   * Run the kernel density LOF algorithm in parallel.
+   *
+   * @param relation Data to process
+   * @return LOF outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+
+    // Phase one: kNN
+    WritableDataStore<KNNList> knns = KNNProcessor.materialize(ids, kplus, () -> qb.kNNByDBID(kplus));
+
+    // Phase two: densities
+    WritableDoubleDataStore dens = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    DoubleFunctionProcessor.run(ids, () -> id -> computeDensity(id, knns, dim), dens);
+
+    // Phase three: kernel density LOF
+    WritableDoubleDataStore lofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax lofminmax = DoubleFunctionProcessor.run(ids, () -> id -> computeLOF(id, knns.get(id), dens), lofs);
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Kernel Density Local Outlier Factor", ids, lofs);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(lofminmax.getMin(), lofminmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 1.0);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the kernel density of a single object.
+   *
+   * @param id Object
+   * @param knns Nearest neighbors of all objects
+   * @param dim Dimensionality
+   * @return Density
+   */
+  protected double computeDensity(DBIDRef id, DataStore<KNNList> knns, int dim) {
+    int count = 0;
+    double sum = 0.0;
+    for(DoubleDBIDListIter neighbor = knns.get(id).iter(); neighbor.valid(); neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      double max = knns.get(neighbor).getKNNDistance();
+      if(max == 0) {
+        sum = Double.POSITIVE_INFINITY;
+        break;
+      }
+      final double v = neighbor.doubleValue() / max;
+      sum += kernel.density(v) / MathUtil.powi(max, dim);
+      count++;
+    }
+    return count > 0 ? sum / count : 0.;
+  }
+
+  /**
+   * Compute the kernel density LOF of a single object.
+   *
+   * @param id Object
+   * @param neighbors Nearest neighbors
+   * @param dens Densities
+   * @return LOF score
+   */
+  protected double computeLOF(DBIDRef id, KNNList neighbors, DoubleDataStore dens) {
+    final double lrdp = dens.doubleValue(id);
+    if(!(lrdp > 0)) {
+      return 1.0;
+    }
+    double sum = 0.0;
+    int count = 0;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      sum += dens.doubleValue(neighbor);
+      count++;
+    }
+    return (lrdp == Double.POSITIVE_INFINITY) ? (sum == Double.POSITIVE_INFINITY ? 1 : 0.) : sum / (count * lrdp);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> vector type
+   */
+  public static class Par<O extends NumberVector> implements Parameterizer {
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * The neighborhood size to use.
+     */
+    protected int k;
+
+    /**
+     * Kernel density function parameter
+     */
+    protected KernelDensityFunction kernel;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(LOF.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> k = x);
+      new ObjectParameter<KernelDensityFunction>(SimpleKernelDensityLOF.Par.KERNEL_ID, KernelDensityFunction.class, EpanechnikovKernelDensityFunction.class) //
+          .grab(config, x -> kernel = x);
+    }
+
+    @Override
+    public ParallelSimpleKernelDensityLOF<O> make() {
+      return new ParallelSimpleKernelDensityLOF<>(k, distance, kernel);
+    }
+  }
+}
@@ -40,6 +40,7 @@ import elki.logging.progress.FiniteProgress;
 import elki.math.DoubleMinMax;
 import elki.outlier.OutlierAlgorithm;
 import elki.outlier.lof.LOF;
+import elki.parallel.ParallelExecutor;
 import elki.result.outlier.BasicOutlierScoreMeta;
 import elki.result.outlier.OutlierResult;
 import elki.result.outlier.OutlierScoreMeta;
@@ -136,21 +137,41 @@ public class FeatureBagging implements OutlierAlgorithm {
     final int mindim = dbdim >> 1;
     final int maxdim = dbdim - 1;
     final Random rand = rnd.getSingleThreadedRandom();
+    // Choose all subspaces first, to not depend on the execution order.
+    final long[][] dimsets = new long[num][];
+    for(int i = 0; i < num; i++) {
+      dimsets[i] = randomSubspace(dbdim, mindim, maxdim, rand);
+    }
 
-    ArrayList<OutlierResult> results = new ArrayList<>(num);
+    // Run the LOF instances concurrently, as far as memory permits: each
+    // materializes the kNN lists and three score stores.
+    final long perlof = relation.size() * (64L + 16L * k);
+    final int concurrent = ParallelExecutor.concurrencyForMemory(perlof);
+    ArrayList<OutlierResult> results = new ArrayList<>(breadth ? num : 0);
+    // Cumulative sums are updated in order as the results arrive.
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC, breadth ? Double.NaN : 0.);
     {
       FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
-      for(int i = 0; i < num; i++) {
-        long[] dimset = randomSubspace(dbdim, mindim, maxdim, rand);
-        SubspaceEuclideanDistance df = new SubspaceEuclideanDistance(dimset);
-        // run LOF and collect the result
-        results.add(new LOF<>(k, df).run(relation));
+      ParallelExecutor.runOrdered(num, concurrent, i -> {
+        OutlierResult result = new LOF<>(k, new SubspaceEuclideanDistance(dimsets[i])).run(relation);
         LOG.incrementProcessed(prog);
-      }
+        return result;
+      }, (result, i) -> {
+        if(breadth) {
+          results.add(result);
+          return;
+        }
+        DoubleRelation r = result.getScores();
+        for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+          final double s = r.doubleValue(iter);
+          if(!Double.isNaN(s)) {
+            scores.increment(iter, s);
+          }
+        }
+      });
       LOG.ensureCompleted(prog);
     }
 
-    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmax = new DoubleMinMax();
     if(breadth) {
       FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
@@ -192,20 +213,9 @@ public class FeatureBagging implements OutlierAlgorithm {
       LOG.ensureCompleted(cprog);
     }
     else {
-      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
       for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-        double sum = 0.0;
-        for(OutlierResult r : results) {
-          final double s = r.getScores().doubleValue(iter);
-          if(!Double.isNaN(s)) {
-            sum += s;
-          }
-        }
-        scores.putDouble(iter, sum);
-        minmax.put(sum);
-        LOG.incrementProcessed(cprog);
+        minmax.put(scores.doubleValue(iter));
       }
-      LOG.ensureCompleted(cprog);
     }
     OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax());
     DoubleRelation scoreres = new MaterializedDoubleRelation("Feature bagging", relation.getDBIDs(), scores);
@@ -21,6 +21,7 @@
 package elki.outlier.meta;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
@@ -35,6 +36,7 @@ import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.*;
 import elki.database.relation.*;
 import elki.logging.Logging;
+import elki.logging.progress.AbstractProgress;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.progress.IndefiniteProgress;
 import elki.math.DoubleMinMax;
@@ -42,22 +44,30 @@ import elki.math.statistics.tests.GoodnessOfFitTest;
 import elki.math.statistics.tests.KolmogorovSmirnovTest;
 import elki.outlier.OutlierAlgorithm;
 import elki.outlier.lof.LOF;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
 import elki.result.outlier.BasicOutlierScoreMeta;
 import elki.result.outlier.OutlierResult;
 import elki.result.outlier.OutlierScoreMeta;
 import elki.utilities.datastructures.BitsUtil;
 import elki.utilities.datastructures.heap.Heap;
+import elki.utilities.ClassGenericsUtil;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Reference;
 import elki.utilities.documentation.Title;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameterization.TrackParameters;
+import elki.utilities.optionhandling.parameterization.TrackedParameter;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.Parameter;
 import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.FastNonThreadsafeRandom;
 import elki.utilities.random.RandomFactory;
 
 import net.jafama.FastMath;
@@ -109,10 +119,15 @@ public class HiCS implements OutlierAlgorithm {
   private double alpha;
 
   /**
-   * Outlier detection algorithm.
+   * Outlier detection algorithm, when shared by all subspaces.
    */
   private OutlierAlgorithm outlierAlgorithm;
 
+  /**
+   * Factory for a fresh outlier detector per subspace, may be {@code null}.
+   */
+  private Supplier<? extends OutlierAlgorithm> outlierAlgorithms;
+
   /**
    * Statistical test to use.
    */
@@ -130,6 +145,9 @@ public class HiCS implements OutlierAlgorithm {
 
   /**
    * Constructor.
+   * <p>
+   * The outlier detector is shared by all subspaces, which are then processed
+   * sequentially, because detectors are not necessarily stateless.
    * 
    * @param m value of m
    * @param alpha value of alpha
@@ -148,6 +166,24 @@ public class HiCS implements OutlierAlgorithm {
     this.rnd = rnd;
   }
 
+  /**
+   * Constructor.
+   * <p>
+   * A fresh outlier detector is created for every subspace, which allows
+   * processing the subspaces in parallel.
+   * 
+   * @param m value of m
+   * @param alpha value of alpha
+   * @param outlierAlgorithms Factory for the inner outlier detection algorithm
+   * @param statTest Test to use
+   * @param cutoff Candidate limit
+   * @param rnd Random generator
+   */
+  public HiCS(int m, double alpha, Supplier<? extends OutlierAlgorithm> outlierAlgorithms, GoodnessOfFitTest statTest, int cutoff, RandomFactory rnd) {
+    this(m, alpha, (OutlierAlgorithm) null, statTest, cutoff, rnd);
+    this.outlierAlgorithms = outlierAlgorithms;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
@@ -163,19 +199,37 @@ public class HiCS implements OutlierAlgorithm {
   public OutlierResult run(Relation<? extends NumberVector> relation) {
     final DBIDs ids = relation.getDBIDs();
 
+    final int dim = RelationUtil.dimensionality(relation);
+    // Sorted indexes and values, shared read-only by all tasks.
     ArrayList<ArrayDBIDs> subspaceIndex = buildOneDimIndexes(relation);
-    Set<HiCSSubspace> subspaces = calculateSubspaces(relation, subspaceIndex, rnd.getSingleThreadedRandom());
+    double[][] sortedValues = new double[dim][];
+    ParallelExecutor.run(dim, 1, (start, end) -> {
+      for(int d = start; d < end; d++) {
+        double[] values = sortedValues[d] = new double[relation.size()];
+        int l = 0;
+        for(DBIDIter iter = subspaceIndex.get(d).iter(); iter.valid(); iter.advance()) {
+          values[l++] = relation.get(iter).doubleValue(d);
+        }
+      }
+      return null;
+    });
+    Set<HiCSSubspace> subspaces = calculateSubspaces(relation, subspaceIndex, sortedValues, rnd.getSingleThreadedRandom());
 
     if(LOG.isVerbose()) {
       LOG.verbose("Number of high-contrast subspaces: " + subspaces.size());
     }
-    List<DoubleRelation> results = new ArrayList<>();
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
 
-    // run outlier detection and collect the result
+    // run outlier detection and collect the result, in subspace order. Without
+    // a factory, the inner detector is shared, and not necessarily stateless,
+    // so we then process the subspaces sequentially.
     // TODO extend so that any outlierAlgorithm can be used (use materialized
     // relation instead of SubspaceEuclideanDistance?)
-    for(HiCSSubspace dimset : subspaces) {
+    final List<HiCSSubspace> dimsets = new ArrayList<>(subspaces);
+    final int concurrency = outlierAlgorithms != null ? ParallelCore.getCore().getParallelism() : 1;
+    List<DoubleRelation> results = new ArrayList<>(dimsets.size());
+    ParallelExecutor.runOrdered(dimsets.size(), concurrency, i -> {
+      HiCSSubspace dimset = dimsets.get(i);
       if(LOG.isVerbose()) {
         LOG.verbose("Performing outlier detection in subspace " + dimset);
       }
@@ -184,10 +238,12 @@ public class HiCS implements OutlierAlgorithm {
       pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<>(dimset.bits)));
 
       // run LOF and collect the result
-      OutlierResult result = outlierAlgorithm.autorun(pdb);
-      results.add(result.getScores());
+      OutlierAlgorithm algorithm = outlierAlgorithms != null ? outlierAlgorithms.get() : outlierAlgorithm;
+      return algorithm.autorun(pdb).getScores();
+    }, (res, i) -> {
+      results.add(res);
       LOG.incrementProcessed(prog);
-    }
+    });
     LOG.ensureCompleted(prog);
 
     WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
@@ -221,15 +277,19 @@ public class HiCS implements OutlierAlgorithm {
   private ArrayList<ArrayDBIDs> buildOneDimIndexes(Relation<? extends NumberVector> relation) {
     final int dim = RelationUtil.dimensionality(relation);
     ArrayList<ArrayDBIDs> subspaceIndex = new ArrayList<>(dim + 1);
-
-    SortDBIDsBySingleDimension comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
-    for(int i = 0; i < dim; i++) {
-      ArrayModifiableDBIDs amDBIDs = DBIDUtil.newArray(relation.getDBIDs());
-      comp.setDimension(i);
-      amDBIDs.sort(comp);
-      subspaceIndex.add(amDBIDs);
+    for(List<ArrayDBIDs> part : ParallelExecutor.run(dim, 1, (start, end) -> {
+      List<ArrayDBIDs> partial = new ArrayList<>(end - start);
+      SortDBIDsBySingleDimension comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
+      for(int i = start; i < end; i++) {
+        ArrayModifiableDBIDs amDBIDs = DBIDUtil.newArray(relation.getDBIDs());
+        comp.setDimension(i);
+        amDBIDs.sort(comp);
+        partial.add(amDBIDs);
+      }
+      return partial;
+    })) {
+      subspaceIndex.addAll(part);
     }
-
     return subspaceIndex;
   }
 
@@ -238,9 +298,11 @@ public class HiCS implements OutlierAlgorithm {
    * 
    * @param relation the relation the HiCS should be evaluated for
    * @param subspaceIndex Subspace indexes
+   * @param sortedValues Attribute values, in the order of the subspace indexes
+   * @param random Random generator, for seeding the individual tasks
    * @return a set of high contrast subspaces
    */
-  private Set<HiCSSubspace> calculateSubspaces(Relation<? extends NumberVector> relation, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
+  private Set<HiCSSubspace> calculateSubspaces(Relation<? extends NumberVector> relation, ArrayList<ArrayDBIDs> subspaceIndex, double[][] sortedValues, Random random) {
     final int dbdim = RelationUtil.dimensionality(relation);
 
     FiniteProgress dprog = LOG.isVerbose() ? new FiniteProgress("Subspace dimensionality", dbdim, LOG) : null;
@@ -252,14 +314,16 @@ public class HiCS implements OutlierAlgorithm {
     Heap<HiCSSubspace> dDimensionalList = new Heap<>(cutoff, HiCSSubspace.SORT_BY_CONTRAST_ASC);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Generating two-element subsets", (dbdim * (dbdim - 1)) >> 1, LOG) : null;
     // compute two-element sets of subspaces
+    ArrayList<HiCSSubspace> pairs = new ArrayList<>((dbdim * (dbdim - 1)) >> 1);
     for(int i = 0; i < dbdim; i++) {
       for(int j = i + 1; j < dbdim; j++) {
-        HiCSSubspace ts = new HiCSSubspace(dbdim).set(i).set(j);
-        calculateContrast(relation, ts, subspaceIndex, random);
-        dDimensionalList.add(ts, cutoff);
-        LOG.incrementProcessed(prog);
+        pairs.add(new HiCSSubspace(dbdim).set(i).set(j));
       }
     }
+    calculateContrasts(relation, pairs, subspaceIndex, sortedValues, random, prog);
+    for(HiCSSubspace ts : pairs) {
+      dDimensionalList.add(ts, cutoff);
+    }
     LOG.ensureCompleted(prog);
 
     IndefiniteProgress qprog = LOG.isVerbose() ? new IndefiniteProgress("Testing subspace candidates", LOG) : null;
@@ -279,19 +343,20 @@ public class HiCS implements OutlierAlgorithm {
       Collections.sort(candidateList, HiCSSubspace.SORT_BY_SUBSPACE);
 
       // TODO: optimize APRIORI style, by not even computing the bit set or?
+      ArrayList<HiCSSubspace> joined = new ArrayList<>();
       for(int i = 0; i < candidateList.size() - 1; i++) {
         for(int j = i + 1; j < candidateList.size(); j++) {
           HiCSSubspace joinedSet = new HiCSSubspace(candidateList.get(i)) //
               .or(candidateList.get(j));
-          if(joinedSet.dimensionality() != d) {
-            continue;
+          if(joinedSet.dimensionality() == d) {
+            joined.add(joinedSet);
           }
-
-          calculateContrast(relation, joinedSet, subspaceIndex, random);
-          dDimensionalList.add(joinedSet, cutoff);
-          LOG.incrementProcessed(qprog);
         }
       }
+      calculateContrasts(relation, joined, subspaceIndex, sortedValues, random, qprog);
+      for(HiCSSubspace joinedSet : joined) {
+        dDimensionalList.add(joinedSet, cutoff);
+      }
       // Prune
       for(HiCSSubspace cand : candidateList) {
         for(Heap<HiCSSubspace>.UnorderedIter it = dDimensionalList.unorderedIter(); it.valid(); it.advance()) {
@@ -310,14 +375,43 @@ public class HiCS implements OutlierAlgorithm {
     return subspaceList;
   }
 
+  /**
+   * Calculates the contrast of multiple subspaces in parallel.
+   * <p>
+   * Each subspace uses its own random generator, seeded in order, so the
+   * result is reproducible independent of the number of threads.
+   * 
+   * @param relation Relation to process
+   * @param candidates Subspaces
+   * @param subspaceIndex Subspace indexes
+   * @param sortedValues Attribute values, in the order of the subspace indexes
+   * @param random Random generator, for seeding
+   * @param prog Progress, may be {@code null}
+   */
+  private void calculateContrasts(Relation<? extends NumberVector> relation, List<HiCSSubspace> candidates, ArrayList<ArrayDBIDs> subspaceIndex, double[][] sortedValues, Random random, AbstractProgress prog) {
+    final long[] seeds = new long[candidates.size()];
+    for(int i = 0; i < seeds.length; i++) {
+      seeds[i] = random.nextLong();
+    }
+    ParallelExecutor.run(seeds.length, 1, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        calculateContrast(relation, candidates.get(i), subspaceIndex, sortedValues, new FastNonThreadsafeRandom(seeds[i]));
+        LOG.incrementProcessed(prog);
+      }
+      return null;
+    });
+  }
+
   /**
    * Calculates the actual contrast of a given subspace.
    * 
    * @param relation Relation to process
    * @param subspace Subspace
    * @param subspaceIndex Subspace indexes
+   * @param sortedValues Attribute values, in the order of the subspace indexes
+   * @param random Random generator
    */
-  private void calculateContrast(Relation<? extends NumberVector> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
+  private void calculateContrast(Relation<? extends NumberVector> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, double[][] sortedValues, Random random) {
     final int card = subspace.dimensionality();
     final double alpha1 = FastMath.pow(alpha, (1.0 / card));
     final int windowsize = (int) (relation.size() * alpha1);
@@ -370,14 +464,8 @@ public class HiCS implements OutlierAlgorithm {
           sampleValues[l++] = relation.get(iter).doubleValue(chosen);
         }
       }
-      // Project full set
-      double[] fullValues = new double[relation.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = subspaceIndex.get(chosen).iter(); iter.valid(); iter.advance()) {
-          fullValues[l++] = relation.get(iter).doubleValue(chosen);
-        }
-      }
+      // Copy of the full set, as the test may modify its input
+      double[] fullValues = sortedValues[chosen].clone();
       double contrast = statTest.deviation(fullValues, sampleValues);
       if(Double.isNaN(contrast)) {
         i--;
@@ -578,6 +666,12 @@ public class HiCS implements OutlierAlgorithm {
      */
     private OutlierAlgorithm outlierAlgorithm;
 
+    /**
+     * Factory for fresh instances of {@link #ALGO_ID}, if it was configured
+     * from a class and parameters.
+     */
+    private Supplier<OutlierAlgorithm> outlierAlgorithms;
+
     /**
      * Holds the value of {@link #TEST_ID}.
      */
@@ -601,8 +695,33 @@ public class HiCS implements OutlierAlgorithm {
       new DoubleParameter(ALPHA_ID, 0.1) //
           .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
           .grab(config, x -> alpha = x);
-      new ObjectParameter<OutlierAlgorithm>(ALGO_ID, OutlierAlgorithm.class, LOF.class) //
-          .grab(config, x -> outlierAlgorithm = x);
+      TrackParameters track = new TrackParameters(config);
+      ObjectParameter<OutlierAlgorithm> algP = new ObjectParameter<>(ALGO_ID, OutlierAlgorithm.class, LOF.class);
+      if(algP.grab(track, x -> outlierAlgorithm = x) && isConfigured(track, algP)) {
+        // Remember the configuration, to create a new detector per subspace.
+        Class<? extends OutlierAlgorithm> cls = algP.getValue();
+        List<OptionID> options = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        Set<Parameter<?>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(TrackedParameter tp : track.getAllParameters()) {
+          Parameter<?> p = tp.getParameter();
+          if(p == algP || !p.isDefined() || !seen.add(p)) {
+            continue;
+          }
+          // Share nested objects only if they were not configured from
+          // parameters, i.e. given as instances.
+          options.add(p.getOptionID());
+          values.add(p instanceof ObjectParameter && !isConfigured(track, p) ? //
+              ((ObjectParameter<?>) p).instantiateClass(config) : p.getValue());
+        }
+        outlierAlgorithms = () -> {
+          ListParameterization params = new ListParameterization();
+          for(int i = 0; i < options.size(); i++) {
+            params.addParameter(options.get(i), values.get(i));
+          }
+          return ClassGenericsUtil.parameterizeOrAbort(cls, params);
+        };
+      }
       new ObjectParameter<GoodnessOfFitTest>(TEST_ID, GoodnessOfFitTest.class, KolmogorovSmirnovTest.class) //
           .grab(config, x -> statTest = x);
       new IntParameter(LIMIT_ID, 100) //
@@ -611,9 +730,30 @@ public class HiCS implements OutlierAlgorithm {
       new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
     }
 
+    /**
+     * Test whether an object parameter was configured from parameters, rather
+     * than given as an instance.
+     *
+     * @param track Parameter tracking
+     * @param param Parameter
+     * @return {@code true} if any parameter was grabbed below this parameter
+     */
+    private static boolean isConfigured(TrackParameters track, Parameter<?> param) {
+      for(TrackedParameter tp : track.getAllParameters()) {
+        for(Object o = tp.getOwner(); o != null; o = track.getParent(o)) {
+          if(o == param) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
     @Override
     public HiCS make() {
-      return new HiCS(m, alpha, outlierAlgorithm, statTest, cutoff, rnd);
+      return outlierAlgorithms != null ? //
+          new HiCS(m, alpha, outlierAlgorithms, statTest, cutoff, rnd) : //
+          new HiCS(m, alpha, outlierAlgorithm, statTest, cutoff, rnd);
     }
   }
 }
@@ -41,13 +41,17 @@ import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.math.DoubleMinMax;
 import elki.outlier.OutlierAlgorithm;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
 import elki.result.outlier.BasicOutlierScoreMeta;
 import elki.result.outlier.OutlierResult;
 import elki.result.outlier.OutlierScoreMeta;
 import elki.utilities.ensemble.EnsembleVoting;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectListParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -77,6 +81,11 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
    */
   private EnsembleVoting voting;
 
+  /**
+   * Maximum number of members to run concurrently.
+   */
+  private int concurrent;
+
   /**
    * Constructor.
    * 
@@ -84,8 +93,20 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
    * @param voting Voting method
    */
   public SimpleOutlierEnsemble(List<? extends OutlierAlgorithm> algorithms, EnsembleVoting voting) {
+    this(algorithms, voting, ParallelCore.ALL_PROCESSORS);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param algorithms Algorithms to run
+   * @param voting Voting method
+   * @param concurrent Maximum number of members to run concurrently
+   */
+  public SimpleOutlierEnsemble(List<? extends OutlierAlgorithm> algorithms, EnsembleVoting voting, int concurrent) {
     this.algorithms = algorithms;
     this.voting = voting;
+    this.concurrent = concurrent;
   }
 
   @Override
@@ -101,17 +122,21 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
   @Override
   public OutlierResult autorun(Database database) throws IllegalStateException {
     int num = algorithms.size();
-    // Run inner outlier algorithms
+    // Run inner outlier algorithms concurrently, keeping only their scores.
+    // Voting combines all scores of an object, so the scores of every member
+    // are kept until all members are done.
     ModifiableDBIDs ids = DBIDUtil.newHashSet();
-    ArrayList<OutlierResult> results = new ArrayList<>(num);
+    ArrayList<DoubleRelation> results = new ArrayList<>(num);
     {
       FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Inner outlier algorithms", num, LOG) : null;
-      for(OutlierAlgorithm alg : algorithms) {
-        OutlierResult or = alg.autorun(database);
-        results.add(or);
-        ids.addDBIDs(or.getScores().getDBIDs());
+      ParallelExecutor.runOrdered(num, concurrent, i -> {
+        OutlierResult or = algorithms.get(i).autorun(database);
         LOG.incrementProcessed(prog);
-      }
+        return or.getScores();
+      }, (scores, i) -> {
+        results.add(scores);
+        ids.addDBIDs(scores.getDBIDs());
+      });
       LOG.ensureCompleted(prog);
     }
     // Combine
@@ -122,8 +147,8 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
       for(DBIDIter id = ids.iter(); id.valid(); id.advance()) {
         double[] scores = new double[num];
         int i = 0;
-        for(OutlierResult r : results) {
-          double score = r.getScores().doubleValue(id);
+        for(DoubleRelation r : results) {
+          double score = r.doubleValue(id);
           if(!Double.isNaN(score)) {
             scores[i] = score;
             i++;
@@ -164,6 +189,11 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
      */
     public static final OptionID VOTING_ID = new OptionID("ensemble.voting", "Voting strategy to use in the ensemble.");
 
+    /**
+     * Maximum number of members to run concurrently.
+     */
+    public static final OptionID CONCURRENT_ID = new OptionID("ensemble.concurrent", "Maximum number of ensemble members to run concurrently, to limit the memory used by their indexes. Defaults to the number of processors.");
+
     /**
      * The algorithms to run.
      */
@@ -174,17 +204,26 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
      */
     private EnsembleVoting voting;
 
+    /**
+     * Maximum number of members to run concurrently.
+     */
+    private int concurrent = ParallelCore.ALL_PROCESSORS;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectListParameter<OutlierAlgorithm>(Algorithm.Utils.ALGORITHM_ID, OutlierAlgorithm.class) //
           .grab(config, x -> algorithms = x);
       new ObjectParameter<EnsembleVoting>(VOTING_ID, EnsembleVoting.class) //
           .grab(config, x -> voting = x);
+      new IntParameter(CONCURRENT_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> concurrent = x);
     }
 
     @Override
     public SimpleOutlierEnsemble make() {
-      return new SimpleOutlierEnsemble(algorithms, voting);
+      return new SimpleOutlierEnsemble(algorithms, voting, concurrent);
     }
   }
 }
@@ -0,0 +1,50 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.anglebased.parallel;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.anglebased.FastABOD;
+import elki.outlier.anglebased.LBABOD;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression tests the ParallelLBABOD algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class ParallelLBABODTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testLBABOD() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelLBABOD<DoubleVector>>(ParallelLBABOD.class) //
+        .with(FastABOD.Par.K_ID, 150) //
+        .with(LBABOD.Par.L_ID, 10) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.92279629629629);
+    assertSingleScore(result, 945, 2.0897348547799E-5);
+  }
+}
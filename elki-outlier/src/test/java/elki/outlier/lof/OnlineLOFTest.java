@@ -21,6 +21,7 @@
 package elki.outlier.lof;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -36,6 +37,7 @@ import elki.database.UpdatableDatabase;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.database.ids.ModifiableDBIDs;
 import elki.database.relation.DoubleRelation;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
@@ -103,4 +105,62 @@ public class OnlineLOFTest extends AbstractOutlierAlgorithmTest {
       assertEquals("lof(" + DBIDUtil.toString(id) + ") != lof(" + DBIDUtil.toString(id) + "): " + lof1 + " != " + lof2, lof1, lof2, 1e-10);
     }
   }
+
+  @Test
+  public void testOnlineLOFBatch() throws IOException {
+    UpdatableDatabase db = new ELKIBuilder<>(HashmapDatabase.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, //
+            getClass().getClassLoader().getResource(UNITTEST + "3clusters-and-noise-2d.csv")) //
+        .build();
+    // Initialize database.
+    db.initialize();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    final int k = 5;
+
+    // 1. Run LOF on original data:
+    FlexibleLOF<DoubleVector> lof = new FlexibleLOF<>(k, k, EuclideanDistance.STATIC, CosineDistance.STATIC);
+    DoubleRelation scores1 = lof.autorun(db).getScores();
+    Hierarchy h = Metadata.hierarchyOf(rep);
+    h.iterChildren().filter(KNNIndex.class).forEach(h::removeChild);
+
+    // 2. Run OnlineLOF in batch mode
+    OnlineLOF<DoubleVector> onlinelof = new ELKIBuilder<OnlineLOF<DoubleVector>>(OnlineLOF.class) //
+        .with(FlexibleLOF.Par.KREF_ID, k) //
+        .with(FlexibleLOF.Par.KREACH_ID, k) //
+        .with(FlexibleLOF.Par.REACHABILITY_DISTANCE_FUNCTION_ID, CosineDistance.STATIC) //
+        .with(OnlineLOF.Par.BATCH_ID) //
+        .build();
+    OutlierResult result = onlinelof.autorun(db);
+
+    // insert objects in several bundles, as one batch
+    int dim = RelationUtil.dimensionality(rep);
+    Random random = new Random(5);
+    ModifiableDBIDs deletions = DBIDUtil.newArray();
+    db.accumulateDataStoreEvents();
+    for(int j = 0; j < 5; j++) {
+      ArrayList<DoubleVector> insertions = new ArrayList<>();
+      for(int i = 0; i < 10; i++) {
+        insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, dim, random));
+      }
+      deletions.addDBIDs(db.insert(MultipleObjectsBundle.makeSimple(rep.getDataTypeInformation(), insertions)));
+    }
+    db.flushDataStoreEvents();
+    for(DBIDIter id = deletions.iter(); id.valid(); id.advance()) {
+      assertTrue("Inserted object not scored.", result.getScores().doubleValue(id) > 0.);
+    }
+
+    // delete objects, as one batch
+    db.accumulateDataStoreEvents();
+    db.delete(deletions);
+    db.flushDataStoreEvents();
+
+    // Get final OnlineLOF scores.
+    DoubleRelation scores2 = result.getScores();
+
+    // 3. Compare results
+    for(DBIDIter id = scores1.getDBIDs().iter(); id.valid(); id.advance()) {
+      double lof1 = scores1.doubleValue(id), lof2 = scores2.doubleValue(id);
+      assertEquals("lof(" + DBIDUtil.toString(id) + ") != lof(" + DBIDUtil.toString(id) + "): " + lof1 + " != " + lof2, lof1, lof2, 1e-10);
+    }
+  }
 }
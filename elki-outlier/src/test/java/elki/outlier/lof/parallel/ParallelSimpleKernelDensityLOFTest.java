@@ -0,0 +1,51 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import org.junit.Test;
+
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.lof.LOF;
+import elki.outlier.lof.SimpleKernelDensityLOF;
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.math.statistics.kernelfunctions.BiweightKernelDensityFunction;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression tests the ParallelSimpleKernelDensityLOF algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.7.5
+ */
+public class ParallelSimpleKernelDensityLOFTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testParallelSimpleKernelDensityLOF() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    OutlierResult result = new ELKIBuilder<ParallelSimpleKernelDensityLOF<DoubleVector>>(ParallelSimpleKernelDensityLOF.class) //
+        .with(LOF.Par.K_ID, 20) //
+        .with(SimpleKernelDensityLOF.Par.KERNEL_ID, BiweightKernelDensityFunction.class) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.87192156);
+    assertSingleScore(result, 1293, 12.271188);
+  }
+}
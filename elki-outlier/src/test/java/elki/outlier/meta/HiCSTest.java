@@ -26,6 +26,7 @@ import elki.database.Database;
 import elki.math.statistics.tests.KolmogorovSmirnovTest;
 import elki.math.statistics.tests.WelchTTest;
 import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.distance.HilOut;
 import elki.outlier.lof.LOF;
 import elki.result.outlier.OutlierResult;
 import elki.utilities.ELKIBuilder;
@@ -46,8 +47,8 @@ public class HiCSTest extends AbstractOutlierAlgorithmTest {
         .with(HiCS.Par.SEED_ID, 0) //
         .with(HiCS.Par.TEST_ID, KolmogorovSmirnovTest.STATIC) //
         .build().autorun(db);
-    assertAUC(db, "Noise", result, 0.85340056);
-    assertSingleScore(result, 1293, 4.935802);
+    assertAUC(db, "Noise", result, 0.86715966);
+    assertSingleScore(result, 1293, 4.7877822);
   }
 
   @Test
@@ -59,7 +60,21 @@ public class HiCSTest extends AbstractOutlierAlgorithmTest {
         .with(HiCS.Par.SEED_ID, 0) //
         .with(HiCS.Par.TEST_ID, WelchTTest.STATIC) //
         .build().autorun(db);
-    assertAUC(db, "Noise", result, 0.867159);
-    assertSingleScore(result, 1293, 4.7877822);
+    assertAUC(db, "Noise", result, 0.85340056);
+    assertSingleScore(result, 1293, 4.935802);
+  }
+
+  @Test
+  public void testHiCSHilOut() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    OutlierResult result = new ELKIBuilder<>(HiCS.class) //
+        .with(HiCS.Par.ALGO_ID, HilOut.class) //
+        .with(HilOut.Par.K_ID, 10) //
+        .with(HilOut.Par.N_ID, 50) //
+        .with(HiCS.Par.LIMIT_ID, 10) //
+        .with(HiCS.Par.SEED_ID, 0) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.85249300);
+    assertSingleScore(result, 1293, 218.44518256);
   }
 }
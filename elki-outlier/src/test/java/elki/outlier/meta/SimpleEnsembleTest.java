@@ -20,6 +20,8 @@
  */
 package elki.outlier.meta;
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
 import elki.outlier.AbstractOutlierAlgorithmTest;
@@ -27,6 +29,7 @@ import elki.outlier.distance.KNNOutlier;
 import elki.outlier.lof.LOF;
 import elki.Algorithm;
 import elki.database.Database;
+import elki.database.ids.DBIDIter;
 import elki.result.outlier.OutlierResult;
 import elki.utilities.ELKIBuilder;
 import elki.utilities.ensemble.*;
@@ -97,4 +100,23 @@ public class SimpleEnsembleTest extends AbstractOutlierAlgorithmTest {
         .with(KNNOutlier.Par.K_ID, 1).with(LOF.Par.K_ID, 10).build().autorun(db);
     assertAUC(db, "Noise", result, 0.1182);
   }
+
+  @Test
+  public void testEnsembleConcurrent() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult serial = new ELKIBuilder<>(SimpleOutlierEnsemble.class) //
+        .with(Algorithm.Utils.ALGORITHM_ID, LOF.class.getName() + "," + KNNOutlier.class.getName()) //
+        .with(SimpleOutlierEnsemble.Par.VOTING_ID, EnsembleVotingMean.class) //
+        .with(SimpleOutlierEnsemble.Par.CONCURRENT_ID, 1) //
+        .with(KNNOutlier.Par.K_ID, 1).with(LOF.Par.K_ID, 10).build().autorun(db);
+    OutlierResult concurrent = new ELKIBuilder<>(SimpleOutlierEnsemble.class) //
+        .with(Algorithm.Utils.ALGORITHM_ID, LOF.class.getName() + "," + KNNOutlier.class.getName()) //
+        .with(SimpleOutlierEnsemble.Par.VOTING_ID, EnsembleVotingMean.class) //
+        .with(SimpleOutlierEnsemble.Par.CONCURRENT_ID, 2) //
+        .with(KNNOutlier.Par.K_ID, 1).with(LOF.Par.K_ID, 10).build().autorun(db);
+    assertAUC(db, "Noise", serial, 0.98631);
+    for(DBIDIter it = serial.getScores().iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Scores differ.", serial.getScores().doubleValue(it), concurrent.getScores().doubleValue(it), 0.);
+    }
+  }
 }